@@ -12,6 +12,7 @@ import com.chillibits.particulatematterapi.repository.ClientRepository;
 import com.chillibits.particulatematterapi.repository.OldSensorRepository;
 import com.chillibits.particulatematterapi.repository.SensorRepository;
 import com.chillibits.particulatematterapi.repository.UserRepository;
+import com.chillibits.particulatematterapi.service.RegionService;
 import com.chillibits.particulatematterapi.shared.ConstantUtils;
 import lombok.extern.slf4j.Slf4j;
 import me.tongfei.progressbar.ProgressBar;
@@ -42,6 +43,8 @@ public class ParticulateMatterApiApplication implements CommandLineRunner {
 	private OldSensorRepository oldSensorRepository;
 	@Autowired
 	private MongoTemplate template;
+	@Autowired
+	private RegionService regionService;
 
 	public static void main(String[] args) {
 		SpringApplication.run(ParticulateMatterApiApplication.class, args);
@@ -55,6 +58,9 @@ public class ParticulateMatterApiApplication implements CommandLineRunner {
 		// Rollback to timestamp
 		if(ConstantUtils.ROLLBACK_TIMESTAMP > 0) rollbackToTimestamp(ConstantUtils.ROLLBACK_TIMESTAMP);
 
+		// Rebuild the region aggregates from the raw sensor data
+		if(ConstantUtils.BUILD_REGION_AGGREGATES_ON_STARTUP) regionService.rebuildAggregates(0, 0);
+
 		// Create mandatory data records
 		if(userRepository.count() == 0) userRepository.save(new User(ConstantUtils.UNKNOWN_USER_ID, "Unknown",
 				"User", "info@chillibits.com", "not set", "not set",
@@ -103,8 +109,7 @@ public class ParticulateMatterApiApplication implements CommandLineRunner {
 
 	private Set<String> getDataCollections() {
 		Set<String> collectionNames = template.getCollectionNames();
-		collectionNames.remove(ConstantUtils.LOG_TABLE_NAME);
-		collectionNames.remove(ConstantUtils.STATS_TABLE_NAME);
+		collectionNames.removeIf(name -> name.startsWith(ConstantUtils.META_TABLE_PREFIX));
 		return collectionNames;
 	}
 }
\ No newline at end of file
@@ -4,6 +4,7 @@
 
 package com.chillibits.particulatematterapi.config;
 
+import com.chillibits.particulatematterapi.service.AccessLogService;
 import com.chillibits.particulatematterapi.shared.ConstantUtils;
 import lombok.extern.slf4j.Slf4j;
 import me.tongfei.progressbar.ProgressBar;
@@ -25,6 +26,8 @@ public class CronJobs {
 
     @Autowired
     private MongoTemplate mongoTemplate;
+    @Autowired
+    private AccessLogService accessLogService;
 
     @PostConstruct
     public void onStartup() {
@@ -39,6 +42,17 @@ public class CronJobs {
         Set<String> collectionNames = mongoTemplate.getCollectionNames();
         for(String collectionName : ProgressBar.wrap(collectionNames, "Indexing"))
             mongoTemplate.indexOps(collectionName).ensureIndex(new Index().on("timestamp", Sort.Direction.ASC));
+        mongoTemplate.indexOps(ConstantUtils.REGION_TABLE_NAME).ensureIndex(new Index().on("country", Sort.Direction.ASC)
+                .on("city", Sort.Direction.ASC).on("hour", Sort.Direction.ASC));
+        mongoTemplate.indexOps(ConstantUtils.SKETCH_TABLE_NAME).ensureIndex(new Index().on("chipId", Sort.Direction.ASC)
+                .on("day", Sort.Direction.ASC));
+        for(String collectionName : collectionNames)
+            if(collectionName.startsWith(ConstantUtils.LOG_TABLE_NAME + "_")) accessLogService.ensureIndexes(collectionName);
+        mongoTemplate.indexOps(ConstantUtils.LOG_ROLLUP_TABLE_NAME).ensureIndex(new Index().on("day", Sort.Direction.ASC)
+                .on("clientId", Sort.Direction.ASC));
+        mongoTemplate.indexOps(ConstantUtils.LOG_ROLLUP_TABLE_NAME).ensureIndex(new Index().on("target", Sort.Direction.ASC)
+                .on("day", Sort.Direction.ASC));
+        mongoTemplate.indexOps(ConstantUtils.SENSOR_CHANGE_TABLE_NAME).ensureIndex(new Index().on("timestamp", Sort.Direction.ASC));
         log.info("Finished indexing.");
     }
 }
\ No newline at end of file
@@ -4,7 +4,16 @@
 
 package com.chillibits.particulatematterapi.config;
 
+import com.chillibits.particulatematterapi.filter.AccessLogFilter;
+import com.chillibits.particulatematterapi.filter.AuthFailureLimitFilter;
+import com.chillibits.particulatematterapi.filter.BulkheadFilter;
+import com.chillibits.particulatematterapi.filter.RateLimitFilter;
 import com.chillibits.particulatematterapi.model.db.main.Client;
+import com.chillibits.particulatematterapi.service.AccessLogService;
+import com.chillibits.particulatematterapi.service.RateLimitService;
+import com.chillibits.particulatematterapi.service.SpatialIndexService;
+import com.chillibits.particulatematterapi.shared.CachingPasswordEncoder;
+import com.chillibits.particulatematterapi.shared.ConstantUtils;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.annotation.Bean;
@@ -16,7 +25,7 @@ import org.springframework.security.config.annotation.web.configuration.WebSecur
 import org.springframework.security.config.http.SessionCreationPolicy;
 import org.springframework.security.core.userdetails.UserDetailsService;
 import org.springframework.security.crypto.bcrypt.BCryptPasswordEncoder;
-import org.springframework.security.crypto.password.PasswordEncoder;
+import org.springframework.security.web.authentication.www.BasicAuthenticationFilter;
 
 @EnableWebSecurity
 public class SecurityConfig extends WebSecurityConfigurerAdapter {
@@ -24,6 +33,12 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
     @Autowired
     @Qualifier("authDetailsService")
     private UserDetailsService userDetailsService; // Has to be auto wired. Without it, there is a dependency cycle
+    @Autowired
+    private AccessLogService accessLogService;
+    @Autowired
+    private RateLimitService rateLimitService;
+    @Autowired
+    private SpatialIndexService spatialIndexService;
 
     @Override
     protected void configure(AuthenticationManagerBuilder auth) throws Exception {
@@ -37,6 +52,8 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
                 .antMatchers(HttpMethod.GET, "/swagger-ui/**").permitAll()
                 // Sensors endpoint
                 .antMatchers(HttpMethod.GET, "/sensor").permitAll()
+                .antMatchers(HttpMethod.GET, "/sensor/nearest", "/sensor/clusters", "/sensor/changes").permitAll()
+                .antMatchers(HttpMethod.POST, "/sensor/area").permitAll()
                 .antMatchers(HttpMethod.POST, "/sensor").hasAnyAuthority(Client.ROLE_APPLICATION, Client.ROLE_APPLICATION_CHILLIBITS, Client.ROLE_APPLICATION_ADMIN)
                 .antMatchers(HttpMethod.PUT, "/sensor").hasAnyAuthority(Client.ROLE_APPLICATION, Client.ROLE_APPLICATION_CHILLIBITS, Client.ROLE_APPLICATION_ADMIN)
                 .antMatchers(HttpMethod.DELETE, "/sensor/**").hasAuthority(Client.ROLE_APPLICATION_ADMIN)
@@ -44,8 +61,10 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
                 .antMatchers(HttpMethod.GET, "/ranking/**").permitAll()
                 // Data endpoint
                 .antMatchers(HttpMethod.GET, "/data/**").permitAll()
+                .antMatchers(HttpMethod.POST, "/data/aggregates/rebuild").hasAuthority(Client.ROLE_APPLICATION_ADMIN)
                 // Push endpoint
                 .antMatchers(HttpMethod.POST, "/push").permitAll()
+                .antMatchers(HttpMethod.GET, "/push/offenders").hasAuthority(Client.ROLE_APPLICATION_ADMIN)
                 // Chart endpoint
                 .antMatchers(HttpMethod.GET, "/chart/**").permitAll()
                 // Confirm endpoint
@@ -70,13 +89,20 @@ public class SecurityConfig extends WebSecurityConfigurerAdapter {
                 .antMatchers(HttpMethod.GET, "/log/**").hasAuthority(Client.ROLE_APPLICATION_ADMIN)
                 // Stats endpoint
                 .antMatchers("/stats").permitAll()
+                // Actuator endpoints
+                .antMatchers(HttpMethod.GET, "/actuator/health").permitAll()
+                .antMatchers(HttpMethod.GET, "/actuator/**").hasAuthority(Client.ROLE_APPLICATION_ADMIN)
                 .and().csrf().disable()
                 .sessionManagement().sessionCreationPolicy(SessionCreationPolicy.STATELESS)
-                .and().httpBasic();
+                .and().httpBasic()
+                .and().addFilterBefore(new BulkheadFilter(), BasicAuthenticationFilter.class)
+                .addFilterAfter(new AuthFailureLimitFilter(rateLimitService), BulkheadFilter.class)
+                .addFilterAfter(new RateLimitFilter(rateLimitService), BasicAuthenticationFilter.class)
+                .addFilterAfter(new AccessLogFilter(accessLogService, spatialIndexService), RateLimitFilter.class);
     }
 
     @Bean
-    public PasswordEncoder getPasswordEncoder() {
-        return new BCryptPasswordEncoder();
+    public CachingPasswordEncoder getPasswordEncoder() {
+        return new CachingPasswordEncoder(new BCryptPasswordEncoder(), ConstantUtils.AUTH_CACHE_TTL, ConstantUtils.AUTH_CACHE_SIZE);
     }
 }
\ No newline at end of file
@@ -30,6 +30,7 @@ public class ChartController {
      * @param from Begin of the requested time range (unix timestamp in milliseconds)
      * @param to End of the requested time range (unix timestamp in milliseconds)
      * @param fieldIndex Index of the requested data field (e.g. 0 for PM10, 1 for PM2.5, ...)
+     * @param valueType Name of the requested data field (e.g. SDS_P1). Takes precedence over the fieldIndex
      * @param width Width of the generated chart
      * @param height Height of the generated chart
      * @param chartType Chart type (chart / stock)
@@ -43,6 +44,7 @@ public class ChartController {
             @RequestParam(defaultValue = "0") long from,
             @RequestParam(defaultValue = "0") long to,
             @RequestParam(defaultValue = "0") int fieldIndex,
+            @RequestParam(required = false) String valueType,
             @RequestParam(defaultValue = "800") int width,
             @RequestParam(defaultValue = "600") int height,
             @RequestParam(defaultValue = "chart") Types chartType,
@@ -58,6 +60,7 @@ public class ChartController {
      * @param from Begin of the requested time range (unix timestamp in milliseconds)
      * @param to End of the requested time range (unix timestamp in milliseconds)
      * @param fieldIndex Index of the requested data field (e.g. 0 for PM10, 1 for PM2.5, ...)
+     * @param valueType Name of the requested data field (e.g. SDS_P1). Takes precedence over the fieldIndex
      * @param width Width of the generated chart
      * @param height Height of the generated chart
      * @param chartType Chart type (chart / stock)
@@ -71,6 +74,7 @@ public class ChartController {
             @RequestParam(defaultValue = "0") long from,
             @RequestParam(defaultValue = "0") long to,
             @RequestParam(defaultValue = "0") int fieldIndex,
+            @RequestParam(required = false) String valueType,
             @RequestParam(defaultValue = "60") int granularity, // in minutes
             @RequestParam(defaultValue = "800") int width,
             @RequestParam(defaultValue = "600") int height,
@@ -88,6 +92,7 @@ public class ChartController {
      * @param from Begin of the requested time range (unix timestamp in milliseconds)
      * @param to End of the requested time range (unix timestamp in milliseconds)
      * @param fieldIndex Index of the requested data field (e.g. 0 for PM10, 1 for PM2.5, ...)
+     * @param valueType Name of the requested data field (e.g. SDS_P1). Takes precedence over the fieldIndex
      * @param width Width of the generated chart
      * @param height Height of the generated chart
      * @param chartType Chart type (chart / stock)
@@ -102,6 +107,7 @@ public class ChartController {
             @RequestParam(defaultValue = "0") long from,
             @RequestParam(defaultValue = "0") long to,
             @RequestParam(defaultValue = "0") int fieldIndex,
+            @RequestParam(required = false) String valueType,
             @RequestParam(defaultValue = "60") int granularity, // in minutes
             @RequestParam(defaultValue = "800") int width,
             @RequestParam(defaultValue = "600") int height,
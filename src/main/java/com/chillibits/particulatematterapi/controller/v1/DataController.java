@@ -4,11 +4,15 @@
 
 package com.chillibits.particulatematterapi.controller.v1;
 
-import com.chillibits.particulatematterapi.exception.ErrorCode;
-import com.chillibits.particulatematterapi.exception.exception.DataAccessException;
 import com.chillibits.particulatematterapi.model.dto.DataRecordCompressedDto;
 import com.chillibits.particulatematterapi.model.dto.DataRecordDto;
+import com.chillibits.particulatematterapi.model.dto.DataStatsDto;
+import com.chillibits.particulatematterapi.model.dto.DataTileDto;
 import com.chillibits.particulatematterapi.service.DataService;
+import com.chillibits.particulatematterapi.service.RegionService;
+import com.chillibits.particulatematterapi.service.SketchService;
+import com.chillibits.particulatematterapi.service.TileService;
+import com.chillibits.particulatematterapi.shared.ConstantUtils;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiResponse;
@@ -18,7 +22,11 @@ import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.json.JSONArray;
 import org.json.JSONObject;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
@@ -27,6 +35,7 @@ import org.springframework.web.bind.annotation.RestController;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Data endpoint
@@ -40,6 +49,12 @@ public class DataController {
 
     @Autowired
     private DataService dataService;
+    @Autowired
+    private TileService tileService;
+    @Autowired
+    private SketchService sketchService;
+    @Autowired
+    private RegionService regionService;
 
     // ------------------------------------------- Data for single sensor ----------------------------------------------
 
@@ -210,6 +225,7 @@ public class DataController {
      * @param from Begin of the requested time range (unix timestamp in milliseconds)
      * @param to End of the requested time range (unix timestamp in milliseconds)
      * @param fieldIndex Index of the field which is needed (e.g. 0 for PM10, 1 for PM2.5, etc.)
+     * @param valueType Name of the field which is needed (e.g. SDS_P1). Takes precedence over the fieldIndex
      * @param mergeCount How many records will be merged to one (for performance purposes)
      * @return Json string, which can be processed by the chart endpoint
      */
@@ -225,11 +241,12 @@ public class DataController {
         @RequestParam(defaultValue = "0") long from,
         @RequestParam(defaultValue = "0") long to,
         @RequestParam(defaultValue = "0") int fieldIndex,
+        @RequestParam(required = false) String valueType,
         @RequestParam(defaultValue = "1") int mergeCount
     ) {
         long startTimestamp = System.currentTimeMillis();
-        List<DataRecordDto> records = dataService.getChartData(chipId, from, to, fieldIndex, mergeCount);
-        return chartDataToJson(fieldIndex, startTimestamp, records, 1);
+        List<DataRecordDto> records = dataService.getChartData(chipId, from, to, fieldIndex, valueType, mergeCount);
+        return chartDataToJson(startTimestamp, records, 1);
     }
 
     /**
@@ -238,6 +255,7 @@ public class DataController {
      * @param from Begin of the requested time range (unix timestamp in milliseconds)
      * @param to End of the requested time range (unix timestamp in milliseconds)
      * @param fieldIndex Index of the field which is needed (e.g. 0 for PM10, 1 for PM2.5, etc.)
+     * @param valueType Name of the field which is needed (e.g. SDS_P1). Takes precedence over the fieldIndex
      * @param granularity Granularity in minutes (similar to mergeCount)
      * @return Json string, which can be processed by the chart endpoint
      */
@@ -253,11 +271,12 @@ public class DataController {
             @RequestParam(defaultValue = "0") long from,
             @RequestParam(defaultValue = "0") long to,
             @RequestParam(defaultValue = "0") int fieldIndex,
+            @RequestParam(required = false) String valueType,
             @RequestParam(defaultValue = "60") int granularity  // in minutes
     ) {
         long startTimestamp = System.currentTimeMillis();
-        ImmutablePair<List<DataRecordDto>, Integer> result = dataService.getChartDataCountry(country, from, to, fieldIndex, granularity);
-        return chartDataToJson(fieldIndex, startTimestamp, result.left, result.right);
+        ImmutablePair<List<DataRecordDto>, Integer> result = dataService.getChartDataCountry(country, from, to, fieldIndex, valueType, granularity);
+        return chartDataToJson(startTimestamp, result.left, result.right);
     }
 
     /**
@@ -267,6 +286,7 @@ public class DataController {
      * @param from Begin of the requested time range (unix timestamp in milliseconds)
      * @param to End of the requested time range (unix timestamp in milliseconds)
      * @param fieldIndex Index of the field which is needed (e.g. 0 for PM10, 1 for PM2.5, etc.)
+     * @param valueType Name of the field which is needed (e.g. SDS_P1). Takes precedence over the fieldIndex
      * @param granularity Granularity in minutes (similar to mergeCount)
      * @return Json string, which can be processed by the chart endpoint
      */
@@ -283,32 +303,220 @@ public class DataController {
             @RequestParam(defaultValue = "0") long from,
             @RequestParam(defaultValue = "0") long to,
             @RequestParam(defaultValue = "0") int fieldIndex,
+            @RequestParam(required = false) String valueType,
             @RequestParam(defaultValue = "60") int granularity  // in minutes
     ) {
         long startTimestamp = System.currentTimeMillis();
-        ImmutablePair<List<DataRecordDto>, Integer> result = dataService.getChartDataCity(country, city, from, to, fieldIndex, granularity);
-        return chartDataToJson(fieldIndex, startTimestamp, result.left, result.right);
+        ImmutablePair<List<DataRecordDto>, Integer> result = dataService.getChartDataCity(country, city, from, to, fieldIndex, valueType, granularity);
+        return chartDataToJson(startTimestamp, result.left, result.right);
+    }
+
+    // ----------------------------------------------- Stats functions -------------------------------------------------
+
+    /**
+     * Returns count, mean, min, max, standard deviation and approximate percentiles of the measurements from a specific sensor
+     * <p>Note: Percentiles have a relative error of at most 1%. Whole days, which are over, are served from precomputed sketches</p>
+     *
+     * @param chipId Chip-ID of the requested sensor
+     * @param from Begin of the requested time range (unix timestamp in milliseconds, inclusive)
+     * @param to End of the requested time range (unix timestamp in milliseconds, exclusive)
+     * @param valueType Name of the requested field (e.g. SDS_P1). All fields are returned, if not set
+     * @param percentiles Comma separated list of the requested percentiles (e.g. 50,95,99)
+     * @return Statistics for each field as DataStatsDto
+     */
+    @RequestMapping(method = RequestMethod.GET, path = "/data/{chipId}/stats", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Returns statistics of the measurements from a specific sensor")
+    @ApiResponses(value = {
+            @ApiResponse(code = 406, message = "Invalid time range. Please provide an unix timestamp: from >= 0 and to >=0"),
+            @ApiResponse(code = 406, message = "Invalid percentile. Please provide percentiles between 0 and 100")
+    })
+    public DataStatsDto getStats(
+            @PathVariable long chipId,
+            @RequestParam(defaultValue = "0") long from,
+            @RequestParam(defaultValue = "0") long to,
+            @RequestParam(required = false) String valueType,
+            @RequestParam(defaultValue = "50,90,95,99") double[] percentiles
+    ) {
+        return sketchService.getStatsSensor(chipId, from, to, valueType, percentiles);
+    }
+
+    /**
+     * Returns count, mean, min, max, standard deviation and approximate percentiles of the measurements from sensors from a specific country
+     * <p>Note: Percentiles have a relative error of at most 1%. Whole days, which are over, are served from precomputed sketches</p>
+     *
+     * @param country Name of the requested country
+     * @param from Begin of the requested time range (unix timestamp in milliseconds, inclusive)
+     * @param to End of the requested time range (unix timestamp in milliseconds, exclusive)
+     * @param valueType Name of the requested field (e.g. SDS_P1). All fields are returned, if not set
+     * @param percentiles Comma separated list of the requested percentiles (e.g. 50,95,99)
+     * @return Statistics for each field as DataStatsDto
+     */
+    @RequestMapping(method = RequestMethod.GET, path = "/data/country/{country}/stats", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Returns statistics of the measurements from sensors from a specific country")
+    @ApiResponses(value = {
+            @ApiResponse(code = 406, message = "Invalid time range. Please provide an unix timestamp: from >= 0 and to >=0"),
+            @ApiResponse(code = 406, message = "Invalid percentile. Please provide percentiles between 0 and 100")
+    })
+    public DataStatsDto getStatsCountry(
+            @PathVariable String country,
+            @RequestParam(defaultValue = "0") long from,
+            @RequestParam(defaultValue = "0") long to,
+            @RequestParam(required = false) String valueType,
+            @RequestParam(defaultValue = "50,90,95,99") double[] percentiles
+    ) {
+        return sketchService.getStatsCountry(country, from, to, valueType, percentiles);
+    }
+
+    /**
+     * Returns count, mean, min, max, standard deviation and approximate percentiles of the measurements from sensors from a specific city
+     * <p>Note: Percentiles have a relative error of at most 1%. Whole days, which are over, are served from precomputed sketches</p>
+     *
+     * @param country Name of the requested country
+     * @param city Name of the requested city
+     * @param from Begin of the requested time range (unix timestamp in milliseconds, inclusive)
+     * @param to End of the requested time range (unix timestamp in milliseconds, exclusive)
+     * @param valueType Name of the requested field (e.g. SDS_P1). All fields are returned, if not set
+     * @param percentiles Comma separated list of the requested percentiles (e.g. 50,95,99)
+     * @return Statistics for each field as DataStatsDto
+     */
+    @RequestMapping(method = RequestMethod.GET, path = "/data/city/{country}/{city}/stats", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Returns statistics of the measurements from sensors from a specific city")
+    @ApiResponses(value = {
+            @ApiResponse(code = 406, message = "Invalid time range. Please provide an unix timestamp: from >= 0 and to >=0"),
+            @ApiResponse(code = 406, message = "Invalid percentile. Please provide percentiles between 0 and 100")
+    })
+    public DataStatsDto getStatsCity(
+            @PathVariable String country,
+            @PathVariable String city,
+            @RequestParam(defaultValue = "0") long from,
+            @RequestParam(defaultValue = "0") long to,
+            @RequestParam(required = false) String valueType,
+            @RequestParam(defaultValue = "50,90,95,99") double[] percentiles
+    ) {
+        return sketchService.getStatsCity(country, city, from, to, valueType, percentiles);
+    }
+
+    // ------------------------------------------------ Tile functions -------------------------------------------------
+
+    /**
+     * Returns a level-of-detail tile with min / avg / max values for a specific sensor
+     * <p>Note: Closed tiles are immutable and can be cached forever</p>
+     *
+     * @param chipId Chip-ID of the requested sensor
+     * @param level Zoom level of the tile (0 = 6 hours, each level covers four times the span of the level below)
+     * @param index Index of the tile on the time axis (tile begins at index * span of the level)
+     * @return Tile as DataTileDto
+     */
+    @RequestMapping(method = RequestMethod.GET, path = "/data/{chipId}/tile", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Returns a level-of-detail tile for a specific sensor")
+    @ApiResponses(value = {
+            @ApiResponse(code = 406, message = "Invalid tile level. Please provide a level between 0 and 5"),
+            @ApiResponse(code = 406, message = "Invalid tile index. Please provide an index >= 0, which does not lie in the future")
+    })
+    public ResponseEntity<DataTileDto> getTile(
+            @PathVariable long chipId,
+            @RequestParam int level,
+            @RequestParam long index
+    ) {
+        return tileResponse(tileService.getTileSensor(chipId, level, index));
+    }
+
+    /**
+     * Returns a level-of-detail tile with min / avg / max values for sensors from a specific country
+     * <p>Note: Closed tiles are immutable and can be cached forever</p>
+     *
+     * @param country Name of the requested country
+     * @param level Zoom level of the tile (0 = 6 hours, each level covers four times the span of the level below)
+     * @param index Index of the tile on the time axis (tile begins at index * span of the level)
+     * @return Tile as DataTileDto
+     */
+    @RequestMapping(method = RequestMethod.GET, path = "/data/country/{country}/tile", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Returns a level-of-detail tile for a specific country")
+    @ApiResponses(value = {
+            @ApiResponse(code = 406, message = "Invalid tile level. Please provide a level between 0 and 5"),
+            @ApiResponse(code = 406, message = "Invalid tile index. Please provide an index >= 0, which does not lie in the future")
+    })
+    public ResponseEntity<DataTileDto> getTileCountry(
+            @PathVariable String country,
+            @RequestParam int level,
+            @RequestParam long index
+    ) {
+        return tileResponse(tileService.getTileCountry(country, level, index));
+    }
+
+    /**
+     * Returns a level-of-detail tile with min / avg / max values for sensors from a specific city
+     * <p>Note: Closed tiles are immutable and can be cached forever</p>
+     *
+     * @param country Name of the requested country
+     * @param city Name of the requested city
+     * @param level Zoom level of the tile (0 = 6 hours, each level covers four times the span of the level below)
+     * @param index Index of the tile on the time axis (tile begins at index * span of the level)
+     * @return Tile as DataTileDto
+     */
+    @RequestMapping(method = RequestMethod.GET, path = "/data/city/{country}/{city}/tile", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Returns a level-of-detail tile for a specific city")
+    @ApiResponses(value = {
+            @ApiResponse(code = 406, message = "Invalid tile level. Please provide a level between 0 and 5"),
+            @ApiResponse(code = 406, message = "Invalid tile index. Please provide an index >= 0, which does not lie in the future")
+    })
+    public ResponseEntity<DataTileDto> getTileCity(
+            @PathVariable String country,
+            @PathVariable String city,
+            @RequestParam int level,
+            @RequestParam long index
+    ) {
+        return tileResponse(tileService.getTileCity(country, city, level, index));
+    }
+
+    // ---------------------------------------------- Aggregate functions ----------------------------------------------
+
+    /**
+     * Starts rebuilding the hourly region aggregates of a time range from the raw sensor data in the background
+     * <p>Note: Only closed hours are rebuilt. Use this for backfilling history or repairing failed aggregate writes</p>
+     *
+     * @param from Begin of the time range (unix timestamp in milliseconds, 0 for the beginning)
+     * @param to End of the time range (unix timestamp in milliseconds, 0 for now)
+     * @return 202 if the rebuild was started, 409 if a rebuild is already running
+     */
+    @RequestMapping(method = RequestMethod.POST, path = "/data/aggregates/rebuild")
+    @ApiOperation(value = "Starts rebuilding the hourly region aggregates")
+    @ApiResponses(value = {
+            @ApiResponse(code = 202, message = "The rebuild was started"),
+            @ApiResponse(code = 409, message = "A rebuild is already running")
+    })
+    public ResponseEntity<Void> rebuildAggregates(
+            @RequestParam(defaultValue = "0") long from,
+            @RequestParam(defaultValue = "0") long to
+    ) {
+        return ResponseEntity.status(regionService.startRebuild(from, to) ? HttpStatus.ACCEPTED : HttpStatus.CONFLICT).build();
     }
 
     // ---------------------------------------------- Encoding functions -----------------------------------------------
 
-    private String chartDataToJson(int fieldIndex, long startTimestamp, List<DataRecordDto> records, int sensorCount) throws DataAccessException {
+    private ResponseEntity<DataTileDto> tileResponse(DataTileDto tile) {
+        // Closed tiles never change again, open tiles are only cached for a short time
+        String cacheControl = tile.isClosed() ? "public, max-age=31536000, immutable" :
+                CacheControl.maxAge(ConstantUtils.TILE_OPEN_CACHE_TTL, TimeUnit.MILLISECONDS).cachePublic().getHeaderValue();
+        return ResponseEntity.ok().header(HttpHeaders.CACHE_CONTROL, cacheControl).body(tile);
+    }
+
+    private String chartDataToJson(long startTimestamp, List<DataRecordDto> records, int sensorCount) {
         JSONObject json = new JSONObject();
-        // Handle possible errors
-        if(!records.isEmpty()) {
-            if(fieldIndex >= records.get(0).getSensorDataValues().length) throw new DataAccessException(ErrorCode.INVALID_FIELD_INDEX);
-            // Bring the records into json format
-            JSONArray jsonValues = new JSONArray();
-            records.forEach(record -> {
-                try {
-                    JSONArray recordObject = new JSONArray();
-                    recordObject.put(record.getTimestamp());
-                    recordObject.put(record.getSensorDataValues()[fieldIndex].getValue());
-                    jsonValues.put(recordObject);
-                } catch (Exception ignored) {}
-            });
+        // Bring the records into json format. Each record only contains the requested field
+        String field = null;
+        JSONArray jsonValues = new JSONArray();
+        for(DataRecordDto record : records) {
+            if(record.getSensorDataValues().length == 0) continue;
+            JSONArray recordObject = new JSONArray();
+            recordObject.put(record.getTimestamp());
+            recordObject.put(record.getSensorDataValues()[0].getValue());
+            jsonValues.put(recordObject);
+            field = record.getSensorDataValues()[0].getValueType();
+        }
+        if(field != null) {
             json.put("values", jsonValues);
-            json.put("field", records.get(0).getSensorDataValues()[fieldIndex].getValueType());
+            json.put("field", field);
         }
         long responseTime = System.currentTimeMillis() - startTimestamp;
         json.put("responseTime", responseTime);
@@ -4,8 +4,9 @@
 
 package com.chillibits.particulatematterapi.controller.v1;
 
-import com.chillibits.particulatematterapi.model.dto.LogItemDto;
+import com.chillibits.particulatematterapi.model.dto.LogPageDto;
 import com.chillibits.particulatematterapi.service.LogService;
+import com.chillibits.particulatematterapi.shared.ConstantUtils;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiResponse;
@@ -17,10 +18,9 @@ import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 import springfox.documentation.annotations.ApiIgnore;
 
-import java.util.List;
-
 /**
  * Log endpoint
  *
@@ -41,37 +41,50 @@ public class LogController {
      *
      * @param from Begin of the requested time range (unit timestamp in milliseconds)
      * @param to End of the requested time range (unit timestamp in milliseconds)
-     * @return List of log items as List of LogItemDto
+     * @param cursor Cursor of the requested page, as returned with the previous page. Empty for the first page
+     * @param limit Max number of log items per page. 0 for the default page size
+     * @return Page of log items as LogPageDto
      */
     @RequestMapping(method = RequestMethod.GET, path = "/log", produces = MediaType.APPLICATION_JSON_VALUE)
     @ApiOperation(value = "Returns the logs for the specified time span", hidden = true)
     @ApiResponses(value = {
-            @ApiResponse(code = 406, message = "Invalid time range. Please provide an unix timestamp: from >= 0 and to >=0")
+            @ApiResponse(code = 406, message = "Invalid time range. Please provide an unix timestamp: from >= 0 and to >=0"),
+            @ApiResponse(code = 406, message = "Invalid cursor. Please pass the cursor of the previous page.")
     })
-    public List<LogItemDto> getAllLogs(@RequestParam(defaultValue = "0") long from, @RequestParam(defaultValue = "0") long to) {
-        return logService.getAllLogs(from, to);
+    public LogPageDto getAllLogs(
+            @RequestParam(defaultValue = "0") long from,
+            @RequestParam(defaultValue = "0") long to,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "0") int limit
+    ) {
+        return logService.getAllLogs(from, to, cursor, limit);
     }
 
     /**
      * Returns the logs for the specified time span, filtered by target
      * <p>Note: Requires application role AA (admin application)</p>
      *
-     * @param target String, which identifies a process target (e.g. l1 for the link with id 1)
+     * @param target String, which identifies a process target (e.g. s12345 for the sensor with chip id 12345). A trailing * matches all targets with this prefix
      * @param from Begin of the requested time range (unit timestamp in milliseconds)
      * @param to End of the requested time range (unit timestamp in milliseconds)
-     * @return List of log items as List of LogItemDto
+     * @param cursor Cursor of the requested page, as returned with the previous page. Empty for the first page
+     * @param limit Max number of log items per page. 0 for the default page size
+     * @return Page of log items as LogPageDto
      */
     @RequestMapping(method = RequestMethod.GET, path = "/log/target/{target}", produces = MediaType.APPLICATION_JSON_VALUE)
     @ApiOperation(value = "Returns the logs for the specified time span, filtered by target", hidden = true)
     @ApiResponses(value = {
-            @ApiResponse(code = 406, message = "Invalid time range. Please provide an unix timestamp: from >= 0 and to >=0")
+            @ApiResponse(code = 406, message = "Invalid time range. Please provide an unix timestamp: from >= 0 and to >=0"),
+            @ApiResponse(code = 406, message = "Invalid cursor. Please pass the cursor of the previous page.")
     })
-    public List<LogItemDto> getLogsByTarget(
+    public LogPageDto getLogsByTarget(
             @PathVariable String target,
             @RequestParam(defaultValue = "0") long from,
-            @RequestParam(defaultValue = "0") long to
+            @RequestParam(defaultValue = "0") long to,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "0") int limit
     ) {
-        return logService.getLogsByTarget(target, from, to);
+        return logService.getLogsByTarget(target, from, to, cursor, limit);
     }
 
     /**
@@ -81,19 +94,24 @@ public class LogController {
      * @param userId Id of the executing user
      * @param from Begin of the requested time range (unit timestamp in milliseconds)
      * @param to End of the requested time range (unit timestamp in milliseconds)
-     * @return List of log items as List of LogItemDto
+     * @param cursor Cursor of the requested page, as returned with the previous page. Empty for the first page
+     * @param limit Max number of log items per page. 0 for the default page size
+     * @return Page of log items as LogPageDto
      */
     @RequestMapping(method = RequestMethod.GET, path = "/log/user/{userId}", produces = MediaType.APPLICATION_JSON_VALUE)
     @ApiOperation(value = "Returns the logs for the specified time span, filtered by user", hidden = true)
     @ApiResponses(value = {
-            @ApiResponse(code = 406, message = "Invalid time range. Please provide an unix timestamp: from >= 0 and to >=0")
+            @ApiResponse(code = 406, message = "Invalid time range. Please provide an unix timestamp: from >= 0 and to >=0"),
+            @ApiResponse(code = 406, message = "Invalid cursor. Please pass the cursor of the previous page.")
     })
-    public List<LogItemDto> getLogsByUser(
+    public LogPageDto getLogsByUser(
             @PathVariable int userId,
             @RequestParam(defaultValue = "0") long from,
-            @RequestParam(defaultValue = "0") long to
+            @RequestParam(defaultValue = "0") long to,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "0") int limit
     ) {
-        return logService.getLogsByUser(userId, from, to);
+        return logService.getLogsByUser(userId, from, to, cursor, limit);
     }
 
     /**
@@ -103,40 +121,78 @@ public class LogController {
      * @param clientId Id of the executing client
      * @param from Begin of the requested time range (unit timestamp in milliseconds)
      * @param to End of the requested time range (unit timestamp in milliseconds)
-     * @return List of log items as List of LogItemDto
+     * @param cursor Cursor of the requested page, as returned with the previous page. Empty for the first page
+     * @param limit Max number of log items per page. 0 for the default page size
+     * @return Page of log items as LogPageDto
      */
     @RequestMapping(method = RequestMethod.GET, path = "/log/client/{clientId}", produces = MediaType.APPLICATION_JSON_VALUE)
     @ApiOperation(value = "Returns the logs for the specified time span, filtered by client", hidden = true)
     @ApiResponses(value = {
-            @ApiResponse(code = 406, message = "Invalid time range. Please provide an unix timestamp: from >= 0 and to >=0")
+            @ApiResponse(code = 406, message = "Invalid time range. Please provide an unix timestamp: from >= 0 and to >=0"),
+            @ApiResponse(code = 406, message = "Invalid cursor. Please pass the cursor of the previous page.")
     })
-    public List<LogItemDto> getLogsByClient(
+    public LogPageDto getLogsByClient(
             @PathVariable int clientId,
             @RequestParam(defaultValue = "0") long from,
-            @RequestParam(defaultValue = "0") long to
+            @RequestParam(defaultValue = "0") long to,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "0") int limit
     ) {
-        return logService.getLogsByClient(clientId, from, to);
+        return logService.getLogsByClient(clientId, from, to, cursor, limit);
     }
 
     /**
      * Returns the logs for the specified time span, filtered by action
      * <p>Note: Requires application role AA (admin application)</p>
      *
-     * @param action Name of the executed action (e.g. update-user)
+     * @param action Name of the executed action (e.g. GET /stats/{chipId}). A trailing * matches all actions with this prefix
      * @param from Begin of the requested time range (unit timestamp in milliseconds)
      * @param to End of the requested time range (unit timestamp in milliseconds)
-     * @return List of log items as List of LogItemDto
+     * @param cursor Cursor of the requested page, as returned with the previous page. Empty for the first page
+     * @param limit Max number of log items per page. 0 for the default page size
+     * @return Page of log items as LogPageDto
      */
     @RequestMapping(method = RequestMethod.GET, path = "/log/action/{action}", produces = MediaType.APPLICATION_JSON_VALUE)
     @ApiOperation(value = "Returns the logs for the specified time span, filtered by action", hidden = true)
     @ApiResponses(value = {
-            @ApiResponse(code = 406, message = "Invalid time range. Please provide an unix timestamp: from >= 0 and to >=0")
+            @ApiResponse(code = 406, message = "Invalid time range. Please provide an unix timestamp: from >= 0 and to >=0"),
+            @ApiResponse(code = 406, message = "Invalid cursor. Please pass the cursor of the previous page.")
     })
-    public List<LogItemDto> getLogsByAction(
+    public LogPageDto getLogsByAction(
             @PathVariable String action,
             @RequestParam(defaultValue = "0") long from,
+            @RequestParam(defaultValue = "0") long to,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "0") int limit
+    ) {
+        return logService.getLogsByAction(action, from, to, cursor, limit);
+    }
+
+    /**
+     * Streams all logs for the specified time span as newline delimited JSON, optionally filtered
+     * <p>Note: Requires application role AA (admin application)</p>
+     *
+     * @param clientId Id of the executing client
+     * @param userId Id of the executing user
+     * @param target String, which identifies a process target. A trailing * matches all targets with this prefix
+     * @param action Name of the executed action. A trailing * matches all actions with this prefix
+     * @param from Begin of the requested time range (unit timestamp in milliseconds)
+     * @param to End of the requested time range (unit timestamp in milliseconds)
+     * @return One LogItemDto per line
+     */
+    @RequestMapping(method = RequestMethod.GET, path = "/log/export", produces = ConstantUtils.MEDIA_TYPE_NDJSON)
+    @ApiOperation(value = "Streams all logs for the specified time span as newline delimited JSON", hidden = true)
+    @ApiResponses(value = {
+            @ApiResponse(code = 406, message = "Invalid time range. Please provide an unix timestamp: from >= 0 and to >=0")
+    })
+    public StreamingResponseBody exportLogs(
+            @RequestParam(required = false) Integer clientId,
+            @RequestParam(required = false) Integer userId,
+            @RequestParam(required = false) String target,
+            @RequestParam(required = false) String action,
+            @RequestParam(defaultValue = "0") long from,
             @RequestParam(defaultValue = "0") long to
     ) {
-        return logService.getLogsByAction(action, from, to);
+        return logService.exportLogs(clientId, userId, target, action, from, to);
     }
 }
\ No newline at end of file
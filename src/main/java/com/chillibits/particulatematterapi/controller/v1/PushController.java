@@ -4,20 +4,30 @@
 
 package com.chillibits.particulatematterapi.controller.v1;
 
+import com.chillibits.particulatematterapi.exception.ErrorCode;
+import com.chillibits.particulatematterapi.exception.exception.PushDataException;
 import com.chillibits.particulatematterapi.model.dto.DataRecordInsertUpdateDto;
+import com.chillibits.particulatematterapi.model.dto.PushOffenderDto;
+import com.chillibits.particulatematterapi.service.PushAdmissionService;
 import com.chillibits.particulatematterapi.service.PushService;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.RequestBody;
 import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.List;
+
 /**
  * Push endpoint
  *
@@ -30,6 +40,8 @@ public class PushController {
 
     @Autowired
     private PushService pushService;
+    @Autowired
+    private PushAdmissionService pushAdmissionService;
 
     /**
      * Pushes a measurement record to the database
@@ -38,19 +50,39 @@ public class PushController {
      * @param record Instance of DataRecordInsertUpdateDto with all required data values
      * @param xSensorHeader Header attribute which contains the Chip-Id of a sensor with a pre-/suffix (e.g. esp8266-4017638)
      * @param sensorHeader Header attribute which contains the Chip-Id of a sensor with a pre-/suffix (e.g. esp8266-4017638)
-     * @return "ok" / "error"
+     * @return "ok" / "error", 429 Too Many Requests, if the record was dropped, because the sensor pushes too frequently
      */
     @RequestMapping(method = RequestMethod.POST, path = "/push", produces = MediaType.APPLICATION_JSON_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
     @ApiOperation(value = "Pushes a measurement record to the database")
     @ApiResponses(value = {
-            @ApiResponse(code = 406, message = "This record does not contain any data values")
+            @ApiResponse(code = 406, message = "This record does not contain any data values"),
+            @ApiResponse(code = 429, message = "This sensor pushes too frequently. Please retry after the time span of the Retry-After header")
     })
-    public String pushData(@RequestBody DataRecordInsertUpdateDto record, @RequestHeader(value = "X-Sensor", defaultValue = "0") String xSensorHeader, @RequestHeader(value = "Sensor", defaultValue = "0") String sensorHeader) {
+    public ResponseEntity<String> pushData(@RequestBody DataRecordInsertUpdateDto record, @RequestHeader(value = "X-Sensor", defaultValue = "0") String xSensorHeader, @RequestHeader(value = "Sensor", defaultValue = "0") String sensorHeader) {
         // Set chip id value correctly
         if(record.getChipId() == 0 && xSensorHeader.contains("-")) record.setChipId(Long.parseLong(xSensorHeader.substring(xSensorHeader.indexOf("-") +1)));
         if(record.getChipId() == 0 && sensorHeader.contains("-")) record.setChipId(Long.parseLong(sensorHeader.substring(sensorHeader.indexOf("-") +1)));
-        // Push record into the database
-        pushService.pushData(record);
-        return "ok";
+        // Push record into the database. Tell sensors, which push too frequently, when the next record is accepted
+        if(!pushService.pushData(record)) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(pushAdmissionService.getRetryAfter(record.getChipId())))
+                    .body(new PushDataException(ErrorCode.PUSH_TOO_FREQUENT).getMessage());
+        }
+        return ResponseEntity.ok("ok");
+    }
+
+    /**
+     * Returns the sensors with the most dropped pushes, because they pushed more often than the minimum interval
+     *
+     * @param items number of requested items
+     * @return List of offending sensors as List of PushOffenderDto
+     */
+    @RequestMapping(method = RequestMethod.GET, path = "/push/offenders", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Returns the sensors with the most dropped pushes")
+    @ApiResponses(value = {
+            @ApiResponse(code = 406, message = "Invalid items number. Please provide a number >= 1")
+    })
+    public List<PushOffenderDto> getOffenders(@RequestParam(defaultValue = "10") int items) {
+        return pushAdmissionService.getOffenders(items);
     }
 }
\ No newline at end of file
@@ -8,6 +8,7 @@ import com.chillibits.particulatematterapi.model.dto.RankingItemCityCompressedDt
 import com.chillibits.particulatematterapi.model.dto.RankingItemCityDto;
 import com.chillibits.particulatematterapi.model.dto.RankingItemCountryCompressedDto;
 import com.chillibits.particulatematterapi.model.dto.RankingItemCountryDto;
+import com.chillibits.particulatematterapi.model.dto.RankingItemPollutionDto;
 import com.chillibits.particulatematterapi.service.RankingService;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
@@ -95,4 +96,28 @@ public class RankingController {
     public List<RankingItemCountryCompressedDto> getRankingByCountryCompressed(@RequestParam(defaultValue = "10") int items) {
         return rankingService.getRankingByCountryCompressed(items);
     }
+
+    /**
+     * Returns a ranking of the cities or countries with the highest or lowest current pollution
+     * <p>Note: Only regions with at least three active sensors are ranked</p>
+     *
+     * @param items number of requested items
+     * @param valueType Value type to rank by (SDS_P1 for PM10, SDS_P2 for PM2.5)
+     * @param country Rank countries instead of cities
+     * @param ascending Return the least polluted regions first
+     * @return List of ranking items as List of RankingItemPollutionDto
+     */
+    @RequestMapping(method = RequestMethod.GET, path = "/ranking/pollution", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Returns a ranking of the cities or countries with the highest or lowest current pollution")
+    @ApiResponses(value = {
+            @ApiResponse(code = 406, message = "Invalid items number or value type")
+    })
+    public List<RankingItemPollutionDto> getRankingByPollution(
+            @RequestParam(defaultValue = "10") int items,
+            @RequestParam(defaultValue = "SDS_P1") String valueType,
+            @RequestParam(defaultValue = "false") boolean country,
+            @RequestParam(defaultValue = "false") boolean ascending
+    ) {
+        return rankingService.getRankingByPollution(items, valueType, country, ascending);
+    }
 }
\ No newline at end of file
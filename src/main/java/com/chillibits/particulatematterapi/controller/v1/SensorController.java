@@ -4,18 +4,27 @@
 
 package com.chillibits.particulatematterapi.controller.v1;
 
+import com.chillibits.particulatematterapi.model.dto.SensorChangesDto;
+import com.chillibits.particulatematterapi.model.dto.SensorClusterDto;
 import com.chillibits.particulatematterapi.model.dto.SensorCompressedDto;
 import com.chillibits.particulatematterapi.model.dto.SensorDto;
 import com.chillibits.particulatematterapi.model.dto.SensorInsertUpdateDto;
+import com.chillibits.particulatematterapi.service.ClusterService;
+import com.chillibits.particulatematterapi.service.SensorMapService;
 import com.chillibits.particulatematterapi.service.SensorService;
 import io.swagger.annotations.Api;
 import io.swagger.annotations.ApiOperation;
 import io.swagger.annotations.ApiResponse;
 import io.swagger.annotations.ApiResponses;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestMethod;
 import org.springframework.web.bind.annotation.RequestParam;
@@ -34,6 +43,10 @@ public class SensorController {
 
     @Autowired
     private SensorService sensorService;
+    @Autowired
+    private SensorMapService sensorMapService;
+    @Autowired
+    private ClusterService clusterService;
 
     /**
      * Returns all sensors, registered in the database
@@ -42,6 +55,7 @@ public class SensorController {
      * @param latitude Latitude of location filter
      * @param longitude Longitude of location filter
      * @param radius Radius of the location filter (in meters)
+     * @param bbox Bounding box filter as minLongitude,minLatitude,maxLongitude,maxLatitude. Takes precedence over the radius
      * @param onlyPublished Boolean (true: only published, false: all sensors)
      * @return List of sensor records as List of SensorDto
      */
@@ -49,15 +63,17 @@ public class SensorController {
     @ApiOperation(value = "Returns all sensors, registered in the database")
     @ApiResponses(value = {
             @ApiResponse(code = 406, message = "Invalid radius. Please provide a radius >= 0"),
-            @ApiResponse(code = 406, message = "Invalid gps coordinates.")
+            @ApiResponse(code = 406, message = "Invalid gps coordinates."),
+            @ApiResponse(code = 406, message = "Invalid bounding box. Please provide minLongitude,minLatitude,maxLongitude,maxLatitude")
     })
     public List<SensorDto> getAllSensors(
             @RequestParam(defaultValue = "0") double latitude,
             @RequestParam(defaultValue = "0") double longitude,
             @RequestParam(defaultValue = "0") int radius,
+            @RequestParam(required = false) String bbox,
             @RequestParam(defaultValue = "true") boolean onlyPublished
     ) {
-        return sensorService.getAllSensors(latitude, longitude, radius, onlyPublished);
+        return sensorService.getAllSensors(latitude, longitude, radius, bbox, onlyPublished);
     }
 
     /**
@@ -66,6 +82,7 @@ public class SensorController {
      * @param latitude Latitude of location filter
      * @param longitude Longitude of location filter
      * @param radius Radius of the location filter (in meters)
+     * @param bbox Bounding box filter as minLongitude,minLatitude,maxLongitude,maxLatitude. Takes precedence over the radius
      * @param onlyPublished Boolean (true: only published, false: all sensors)
      * @return List of sensor records as List of SensorCompressedDto
      */
@@ -73,15 +90,168 @@ public class SensorController {
     @ApiOperation(value = "Returns all sensors, registered in the database in a compressed form")
     @ApiResponses(value = {
             @ApiResponse(code = 406, message = "Invalid radius. Please provide a radius >= 0"),
-            @ApiResponse(code = 406, message = "Invalid gps coordinates.")
+            @ApiResponse(code = 406, message = "Invalid gps coordinates."),
+            @ApiResponse(code = 406, message = "Invalid bounding box. Please provide minLongitude,minLatitude,maxLongitude,maxLatitude")
     })
     public List<SensorCompressedDto> getAllSensorsCompressed(
             @RequestParam(defaultValue = "0") double latitude,
             @RequestParam(defaultValue = "0") double longitude,
             @RequestParam(defaultValue = "0") int radius,
+            @RequestParam(required = false) String bbox,
+            @RequestParam(defaultValue = "true") boolean onlyPublished
+    ) {
+        return sensorService.getAllSensorsCompressed(latitude, longitude, radius, bbox, onlyPublished);
+    }
+
+    /**
+     * Returns all sensors, registered in the database in a compressed form, from the precomputed sensor map
+     *
+     * This variant is used, when no location filter is passed. The response is served as pre-serialized JSON, gzip
+     * compressed if the client accepts it, and can be revalidated with the ETag.
+     *
+     * @param onlyPublished Boolean (true: only published, false: all sensors)
+     * @param acceptEncoding Accept-Encoding header of the request
+     * @param ifNoneMatch If-None-Match header of the request
+     * @return List of sensor records as serialized List of SensorCompressedDto
+     */
+    @RequestMapping(method = RequestMethod.GET, path = "/sensor", produces = MediaType.APPLICATION_JSON_VALUE,
+            params = {"compressed", "!latitude", "!longitude", "!radius", "!bbox"})
+    @ApiOperation(value = "Returns all sensors, registered in the database in a compressed form, from the precomputed sensor map")
+    public ResponseEntity<byte[]> getSensorMapCompressed(
+            @RequestParam(defaultValue = "true") boolean onlyPublished,
+            @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false) String acceptEncoding,
+            @RequestHeader(value = HttpHeaders.IF_NONE_MATCH, required = false) String ifNoneMatch
+    ) {
+        SensorMapService.Snapshot snapshot = sensorMapService.getSnapshot(onlyPublished);
+        boolean notModified = ifNoneMatch != null && ifNoneMatch.contains(snapshot.getETag()); // Client has the current map
+        ResponseEntity.BodyBuilder response = ResponseEntity.status(notModified ? HttpStatus.NOT_MODIFIED : HttpStatus.OK)
+                .eTag(snapshot.getETag())
+                .cacheControl(CacheControl.noCache())
+                .varyBy(HttpHeaders.ACCEPT_ENCODING);
+        if(notModified) return response.build();
+        if(acceptsGzip(acceptEncoding))
+            return response.header(HttpHeaders.CONTENT_ENCODING, "gzip").body(snapshot.getGzip());
+        return response.body(snapshot.getJson());
+    }
+
+    /**
+     * Returns all sensors within an area
+     *
+     * The area is passed in the request body, because polygons with many vertices exceed the URL length limits.
+     *
+     * @param polygon Area as GeoJSON Polygon or MultiPolygon
+     * @param onlyPublished Boolean (true: only published, false: all sensors)
+     * @return List of sensor records as List of SensorDto
+     */
+    @RequestMapping(method = RequestMethod.POST, path = "/sensor/area", produces = MediaType.APPLICATION_JSON_VALUE, consumes = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Returns all sensors within an area")
+    @ApiResponses(value = {
+            @ApiResponse(code = 406, message = "Invalid polygon. Please provide a GeoJSON Polygon or MultiPolygon with max. 10000 positions")
+    })
+    public List<SensorDto> getSensorsInPolygon(
+            @RequestBody String polygon,
+            @RequestParam(defaultValue = "true") boolean onlyPublished
+    ) {
+        return sensorService.getSensorsInPolygon(polygon, onlyPublished);
+    }
+
+    /**
+     * Returns all sensors within an area in a compressed form
+     *
+     * @param polygon Area as GeoJSON Polygon or MultiPolygon
+     * @param onlyPublished Boolean (true: only published, false: all sensors)
+     * @return List of sensor records as List of SensorCompressedDto
+     */
+    @RequestMapping(method = RequestMethod.POST, path = "/sensor/area", produces = MediaType.APPLICATION_JSON_VALUE,
+            consumes = MediaType.APPLICATION_JSON_VALUE, params = "compressed")
+    @ApiOperation(value = "Returns all sensors within an area in a compressed form")
+    @ApiResponses(value = {
+            @ApiResponse(code = 406, message = "Invalid polygon. Please provide a GeoJSON Polygon or MultiPolygon with max. 10000 positions")
+    })
+    public List<SensorCompressedDto> getSensorsInPolygonCompressed(
+            @RequestBody String polygon,
             @RequestParam(defaultValue = "true") boolean onlyPublished
     ) {
-        return sensorService.getAllSensorsCompressed(latitude, longitude, radius, onlyPublished);
+        return sensorService.getSensorsInPolygonCompressed(polygon, onlyPublished);
+    }
+
+    /**
+     * Returns the sensors within a viewport, clustered for the passed zoom level
+     *
+     * The clusters are computed on a grid with 4x4 cells per map tile of the zoom level. A cluster with only one
+     * sensor contains its chip id. If a value type is passed, the latest values of the sensors in the cluster are averaged.
+     *
+     * @param minLatitude Southern bound of the viewport
+     * @param minLongitude Western bound of the viewport
+     * @param maxLatitude Northern bound of the viewport
+     * @param maxLongitude Eastern bound of the viewport (smaller than minLongitude, if the viewport crosses the antimeridian)
+     * @param zoom Zoom level of the map (0 - 22)
+     * @param valueType Name of the field, which should be averaged (e.g. SDS_P1). No averages are computed, if not set
+     * @param onlyPublished Boolean (true: only published, false: all sensors)
+     * @return List of clusters as List of SensorClusterDto
+     */
+    @RequestMapping(method = RequestMethod.GET, path = "/sensor/clusters", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Returns the sensors within a viewport, clustered for the passed zoom level")
+    @ApiResponses(value = {
+            @ApiResponse(code = 406, message = "Invalid zoom level. Please provide a zoom level between 0 and 22"),
+            @ApiResponse(code = 406, message = "Invalid gps coordinates.")
+    })
+    public List<SensorClusterDto> getSensorClusters(
+            @RequestParam(defaultValue = "-90") double minLatitude,
+            @RequestParam(defaultValue = "-180") double minLongitude,
+            @RequestParam(defaultValue = "90") double maxLatitude,
+            @RequestParam(defaultValue = "180") double maxLongitude,
+            @RequestParam int zoom,
+            @RequestParam(required = false) String valueType,
+            @RequestParam(defaultValue = "true") boolean onlyPublished
+    ) {
+        return clusterService.getClusters(minLatitude, minLongitude, maxLatitude, maxLongitude, zoom, valueType, onlyPublished);
+    }
+
+    /**
+     * Returns the sensors, which were added, updated or deleted after the passed version
+     *
+     * The returned version has to be passed with the next request. If fullSync is set, the changes are not available
+     * anymore and the client has to reload all sensors.
+     *
+     * @param since Version of the last sync (0 for the first sync)
+     * @param onlyPublished Boolean (true: only published, false: all sensors)
+     * @return Changed sensors and chip ids of deleted sensors as SensorChangesDto
+     */
+    @RequestMapping(method = RequestMethod.GET, path = "/sensor/changes", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Returns the sensors, which were added, updated or deleted after the passed version")
+    @ApiResponses(value = {
+            @ApiResponse(code = 406, message = "Invalid version. Please provide a version >= 0")
+    })
+    public SensorChangesDto getSensorChanges(
+            @RequestParam long since,
+            @RequestParam(defaultValue = "true") boolean onlyPublished
+    ) {
+        return sensorService.getSensorChanges(since, onlyPublished);
+    }
+
+    /**
+     * Returns the sensors, which are nearest to a location
+     *
+     * @param latitude Latitude of the location
+     * @param longitude Longitude of the location
+     * @param count Number of requested sensors (max. 100)
+     * @param onlyPublished Boolean (true: only published, false: all sensors)
+     * @return List of sensor records, ordered by distance, as List of SensorDto
+     */
+    @RequestMapping(method = RequestMethod.GET, path = "/sensor/nearest", produces = MediaType.APPLICATION_JSON_VALUE)
+    @ApiOperation(value = "Returns the sensors, which are nearest to a location")
+    @ApiResponses(value = {
+            @ApiResponse(code = 406, message = "Invalid sensor count. Please provide a count between 1 and 100"),
+            @ApiResponse(code = 406, message = "Invalid gps coordinates.")
+    })
+    public List<SensorDto> getNearestSensors(
+            @RequestParam double latitude,
+            @RequestParam double longitude,
+            @RequestParam(defaultValue = "10") int count,
+            @RequestParam(defaultValue = "true") boolean onlyPublished
+    ) {
+        return sensorService.getNearestSensors(latitude, longitude, count, onlyPublished);
     }
 
     /**
@@ -144,4 +314,17 @@ public class SensorController {
     public void deleteSensor(@PathVariable("id") long id) {
         sensorService.deleteSensorByChipId(id);
     }
-}
\ No newline at end of file
+
+    // ---------------------------------------------- Utility functions ------------------------------------------------
+
+    private boolean acceptsGzip(String acceptEncoding) {
+        if(acceptEncoding == null) return false;
+        for(String encoding : acceptEncoding.split(",")) {
+            String[] parts = encoding.trim().split(";");
+            if(!parts[0].trim().equalsIgnoreCase("gzip")) continue;
+            // Respect an explicit refusal like "gzip;q=0"
+            return parts.length < 2 || !parts[1].trim().matches("q=0(\\.0*)?");
+        }
+        return false;
+    }
+}
@@ -20,12 +20,18 @@ public enum ErrorCode {
     INVALID_FIELD_INDEX(201),
     INVALID_MERGE_COUNT(202),
     INVALID_PERIOD(203),
+    INVALID_TILE_LEVEL(204),
+    INVALID_TILE_INDEX(205),
+    INVALID_PERCENTILE(206),
 
     // Push errors (3xx)
     NO_DATA_VALUES(300),
+    INVALID_OFFENDERS_NUMBER(301),
+    PUSH_TOO_FREQUENT(302),
 
     // Ranking errors (4xx)
     INVALID_ITEMS_NUMBER(400),
+    INVALID_VALUE_TYPE(401),
 
     // Sensor errors (5xx)
     SENSOR_ALREADY_EXISTS(500),
@@ -34,6 +40,11 @@ public enum ErrorCode {
     NO_DATA_RECORDS(503),
     CANNOT_ASSIGN_TO_USER(504),
     INVALID_RADIUS(505),
+    INVALID_SENSOR_COUNT(506),
+    INVALID_ZOOM_LEVEL(507),
+    INVALID_BOUNDING_BOX(508),
+    INVALID_POLYGON(509),
+    INVALID_CHANGE_VERSION(510),
 
     // Stats errors (6xx)
     STATS_ITEM_DOES_NOT_EXIST(600),
@@ -51,7 +62,12 @@ public enum ErrorCode {
     INVALID_LINK_DATA(800),
 
     // Log errors (9xx)
-    INVALID_TIME_RANGE_LOG(900);
+    INVALID_TIME_RANGE_LOG(900),
+    INVALID_LOG_CURSOR(901),
+
+    // Request errors (10xx)
+    RATE_LIMIT_EXCEEDED(1000),
+    SERVER_OVERLOADED(1001);
 
     private final int code;
 }
\ No newline at end of file
@@ -15,6 +15,9 @@ public class DataAccessException extends RuntimeException {
         put(ErrorCode.INVALID_TIME_RANGE_DATA, "Invalid time range. Please provide an unix timestamp: from >= 0 and to >=0");
         put(ErrorCode.INVALID_FIELD_INDEX, "Invalid field index. Please provide a number >= 0. Also make sure, it's not too high.");
         put(ErrorCode.INVALID_PERIOD, "Invalid period. Please provide a period >= 1");
+        put(ErrorCode.INVALID_TILE_LEVEL, "Invalid tile level. Please provide a level between 0 and 5");
+        put(ErrorCode.INVALID_TILE_INDEX, "Invalid tile index. Please provide an index >= 0, which does not lie in the future");
+        put(ErrorCode.INVALID_PERCENTILE, "Invalid percentile. Please provide percentiles between 0 and 100");
     }};
 
     public DataAccessException(ErrorCode errorCode) {
@@ -12,6 +12,7 @@ public class LogAccessException extends RuntimeException {
     // Error description list
     private static final HashMap<ErrorCode, String> descriptions = new HashMap<>() {{
         put(ErrorCode.INVALID_TIME_RANGE_LOG, "Invalid time range. Please provide an unix timestamp: from >= 0 and to >=0");
+        put(ErrorCode.INVALID_LOG_CURSOR, "Invalid cursor. Please pass the cursor of the previous page.");
     }};
 
     public LogAccessException(ErrorCode errorCode) {
@@ -12,6 +12,8 @@ public class PushDataException extends RuntimeException {
     // Error description list
     private static final HashMap<ErrorCode, String> descriptions = new HashMap<>() {{
         put(ErrorCode.NO_DATA_VALUES, "This record does not contain any data values");
+        put(ErrorCode.INVALID_OFFENDERS_NUMBER, "Invalid items number. Please provide a number >= 1");
+        put(ErrorCode.PUSH_TOO_FREQUENT, "This sensor pushes too frequently. Please retry after the time span of the Retry-After header");
     }};
 
     public PushDataException(ErrorCode errorCode) {
@@ -12,6 +12,7 @@ public class RankingDataException extends RuntimeException {
     // Error description list
     private static final HashMap<ErrorCode, String> descriptions = new HashMap<>() {{
         put(ErrorCode.INVALID_ITEMS_NUMBER, "Invalid items number. Please provide a number >= 1");
+        put(ErrorCode.INVALID_VALUE_TYPE, "Invalid value type. Please provide one of SDS_P1 (PM10) and SDS_P2 (PM2.5)");
     }};
 
     public RankingDataException(ErrorCode errorCode) {
@@ -0,0 +1,22 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.exception.exception;
+
+import com.chillibits.particulatematterapi.exception.ErrorCode;
+
+import java.util.HashMap;
+
+public class RequestException extends RuntimeException {
+    // Error description list
+    private static final HashMap<ErrorCode, String> descriptions = new HashMap<>() {{
+        put(ErrorCode.RATE_LIMIT_EXCEEDED, "Too many requests. Please retry later.");
+        put(ErrorCode.SERVER_OVERLOADED, "The server is overloaded. Please retry later.");
+    }};
+
+    public RequestException(ErrorCode errorCode) {
+        // Error description as json string to process the error code on client side for localizing the error messages, presented to the users.
+        super("{\"error_code\": " + errorCode.getCode() + ", \"description\": \"" + descriptions.get(errorCode) + "\"}");
+    }
+}
@@ -18,6 +18,11 @@ public class SensorDataException extends RuntimeException {
         put(ErrorCode.CANNOT_ASSIGN_TO_USER, "You cannot assign a sensor to a non-existing user.");
         put(ErrorCode.USER_NOT_EXISTING, "This user does not exist.");
         put(ErrorCode.INVALID_RADIUS, "Invalid radius. Please provide a radius >= 0");
+        put(ErrorCode.INVALID_SENSOR_COUNT, "Invalid sensor count. Please provide a count between 1 and 100");
+        put(ErrorCode.INVALID_ZOOM_LEVEL, "Invalid zoom level. Please provide a zoom level between 0 and 22");
+        put(ErrorCode.INVALID_BOUNDING_BOX, "Invalid bounding box. Please provide minLongitude,minLatitude,maxLongitude,maxLatitude");
+        put(ErrorCode.INVALID_POLYGON, "Invalid polygon. Please provide a GeoJSON Polygon or MultiPolygon with max. 10000 positions");
+        put(ErrorCode.INVALID_CHANGE_VERSION, "Invalid version. Please provide a version >= 0");
     }};
 
     public SensorDataException(ErrorCode errorCode) {
@@ -0,0 +1,96 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.filter;
+
+import com.chillibits.particulatematterapi.model.db.data.LogItem;
+import com.chillibits.particulatematterapi.model.io.AuthDetails;
+import com.chillibits.particulatematterapi.service.AccessLogService;
+import com.chillibits.particulatematterapi.service.SpatialIndexService;
+import com.chillibits.particulatematterapi.shared.ConstantUtils;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Writes an access log item for every request, which was handled by a controller
+ *
+ * The action is the request method with the matched path pattern, e.g. GET /stats/{chipId}. Requests for a single
+ * sensor are logged with the sensor as target, if the sensor is known. Otherwise arbitrary chip ids would create an
+ * unlimited number of rollups. The user is taken from the user id of the request, if there is one.
+ */
+public class AccessLogFilter extends OncePerRequestFilter {
+
+    private static final String CHIP_ID = "chipId";
+    private static final String USER_ID = "userId";
+    private static final String ID = "id";
+    private static final String USER_PATH_PREFIX = "/user/";
+
+    private final AccessLogService accessLogService;
+    private final SpatialIndexService spatialIndexService;
+
+    public AccessLogFilter(AccessLogService accessLogService, SpatialIndexService spatialIndexService) {
+        this.accessLogService = accessLogService;
+        this.spatialIndexService = spatialIndexService;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain) throws ServletException, IOException {
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            // The matched pattern is only known after the dispatching
+            Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+            if(pattern != null) accessLogService.log(getClientId(), getUserId(request, pattern.toString()), request.getMethod() + " " + pattern, getTarget(request));
+        }
+    }
+
+    // ---------------------------------------------- Utility functions ------------------------------------------------
+
+    private int getClientId() {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        return authentication != null && authentication.getPrincipal() instanceof AuthDetails
+                ? ((AuthDetails) authentication.getPrincipal()).getId() : ConstantUtils.UNKNOWN_CLIENT_ID;
+    }
+
+    private int getUserId(HttpServletRequest request, String pattern) {
+        // The id of a user route is the user id, the other routes carry it as userId variable or parameter
+        Map<String, String> variables = getUriVariables(request);
+        String userId = variables.containsKey(USER_ID) ? variables.get(USER_ID) : request.getParameter(USER_ID);
+        if(userId == null && pattern.startsWith(USER_PATH_PREFIX)) userId = variables.get(ID);
+        try {
+            return userId != null ? Integer.parseInt(userId) : ConstantUtils.UNKNOWN_USER_ID;
+        } catch (NumberFormatException e) {
+            return ConstantUtils.UNKNOWN_USER_ID;
+        }
+    }
+
+    private String getTarget(HttpServletRequest request) {
+        Map<String, String> variables = getUriVariables(request);
+        String chipId = variables.containsKey(CHIP_ID) ? variables.get(CHIP_ID) : request.getParameter(CHIP_ID);
+        if(chipId == null) return null;
+        try {
+            // The parsed chip id is used, so that different spellings of the same sensor share a rollup
+            long parsedChipId = Long.parseLong(chipId);
+            return spatialIndexService.containsSensor(parsedChipId) ? LogItem.TARGET_SENSOR + parsedChipId : null;
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private Map<String, String> getUriVariables(HttpServletRequest request) {
+        Map<String, String> variables = (Map<String, String>) request.getAttribute(HandlerMapping.URI_TEMPLATE_VARIABLES_ATTRIBUTE);
+        return variables != null ? variables : Collections.emptyMap();
+    }
+}
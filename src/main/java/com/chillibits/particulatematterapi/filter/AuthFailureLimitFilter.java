@@ -0,0 +1,54 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.filter;
+
+import com.chillibits.particulatematterapi.exception.ErrorCode;
+import com.chillibits.particulatematterapi.exception.exception.RequestException;
+import com.chillibits.particulatematterapi.service.RateLimitService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+
+/**
+ * Rejects requests with credentials from ip addresses, which failed to authenticate too often, with 429 Too Many Requests
+ *
+ * Has to run before the authentication, so that guessing client secrets is limited, before they are checked.
+ */
+public class AuthFailureLimitFilter extends OncePerRequestFilter {
+
+    private final RateLimitService rateLimitService;
+
+    public AuthFailureLimitFilter(RateLimitService rateLimitService) {
+        this.rateLimitService = rateLimitService;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain) throws ServletException, IOException {
+        // Requests without credentials cannot fail to authenticate
+        if(request.getHeader(HttpHeaders.AUTHORIZATION) == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+
+        String address = request.getRemoteAddr();
+        long retryAfter = rateLimitService.getAuthFailureWait(address);
+        if(retryAfter > 0) {
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter));
+            response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+            response.getWriter().write(new RequestException(ErrorCode.RATE_LIMIT_EXCEEDED).getMessage());
+            return;
+        }
+        chain.doFilter(request, response);
+        if(response.getStatus() == HttpStatus.UNAUTHORIZED.value()) rateLimitService.addAuthFailure(address);
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.filter;
+
+import com.chillibits.particulatematterapi.exception.ErrorCode;
+import com.chillibits.particulatematterapi.exception.exception.RequestException;
+import com.chillibits.particulatematterapi.shared.Bulkhead;
+import com.chillibits.particulatematterapi.shared.ConstantUtils;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.AsyncEvent;
+import javax.servlet.AsyncListener;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Limits the concurrent requests per endpoint class, so that slow analytical queries cannot occupy every server thread
+ *
+ * Runs before the authentication, because checking the client secret is expensive as well. As the limits of the
+ * analytics and default classes stay below the server thread count, ingest and latest value reads always keep capacity.
+ */
+public class BulkheadFilter extends OncePerRequestFilter {
+
+    private static final String CLASS_INGEST = "ingest";
+    private static final String CLASS_LATEST = "latest";
+    private static final String CLASS_ANALYTICS = "analytics";
+    private static final String CLASS_DEFAULT = "default";
+
+    private final Map<String, Bulkhead> bulkheads = new HashMap<>();
+
+    public BulkheadFilter() {
+        ConstantUtils.BULKHEAD_LIMITS.forEach((endpointClass, limit) -> bulkheads.put(endpointClass,
+                new Bulkhead(limit, ConstantUtils.BULKHEAD_QUEUE_SIZES.get(endpointClass), ConstantUtils.BULKHEAD_MAX_WAIT)));
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain) throws ServletException, IOException {
+        Bulkhead bulkhead = bulkheads.get(getEndpointClass(request.getServletPath()));
+        if(!bulkhead.tryAcquire()) {
+            response.setStatus(HttpStatus.SERVICE_UNAVAILABLE.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+            response.getWriter().write(new RequestException(ErrorCode.SERVER_OVERLOADED).getMessage());
+            return;
+        }
+        boolean async = false;
+        try {
+            chain.doFilter(request, response);
+            // Streaming responses are written after the request thread returned, so the slot is held until they complete
+            if(request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new ReleaseListener(bulkhead));
+                async = true;
+            }
+        } finally {
+            if(!async) bulkhead.release();
+        }
+    }
+
+    // ---------------------------------------------- Utility functions ------------------------------------------------
+
+    private String getEndpointClass(String path) {
+        if(path.equals("/push")) return CLASS_INGEST;
+        if(path.startsWith("/data/") && path.endsWith("/latest")) return CLASS_LATEST;
+        if(path.startsWith("/log") || path.startsWith("/chart") || path.startsWith("/stats") || path.startsWith("/ranking")
+                || path.equals("/data/chart") || path.equals("/data/average") || path.endsWith("/stats") || path.endsWith("/tile")
+                || path.startsWith("/data/country/") || path.startsWith("/data/city/") || (path.startsWith("/data/") && path.endsWith("/all")))
+            return CLASS_ANALYTICS;
+        return CLASS_DEFAULT;
+    }
+
+    private static class ReleaseListener implements AsyncListener {
+
+        private final Bulkhead bulkhead;
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        private ReleaseListener(Bulkhead bulkhead) {
+            this.bulkhead = bulkhead;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            // Also called after timeouts and errors
+            if(released.compareAndSet(false, true)) bulkhead.release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {}
+
+        @Override
+        public void onError(AsyncEvent event) {}
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // Listeners are removed, when the async processing is started again
+            event.getAsyncContext().addListener(this);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.filter;
+
+import com.chillibits.particulatematterapi.exception.ErrorCode;
+import com.chillibits.particulatematterapi.exception.exception.RequestException;
+import com.chillibits.particulatematterapi.model.io.AuthDetails;
+import com.chillibits.particulatematterapi.service.RateLimitService;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.context.SecurityContextHolder;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * Rejects requests of clients, which exceeded their rate limit, with 429 Too Many Requests
+ *
+ * Has to run after the authentication, to know the requesting client and its roles. Pushes are not authenticated and
+ * are limited per sensor, because many sensors can share a single ip address behind a NAT.
+ */
+public class RateLimitFilter extends OncePerRequestFilter {
+
+    private static final String PUSH_PATH = "/push";
+    private static final String[] SENSOR_HEADERS = { "X-Sensor", "Sensor" };
+
+    private final RateLimitService rateLimitService;
+
+    public RateLimitFilter(RateLimitService rateLimitService) {
+        this.rateLimitService = rateLimitService;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain) throws ServletException, IOException {
+        Authentication authentication = SecurityContextHolder.getContext().getAuthentication();
+        String clientKey = getAnonymousKey(request);
+        List<String> roles = Collections.emptyList();
+        if(authentication != null && authentication.getPrincipal() instanceof AuthDetails) {
+            AuthDetails client = (AuthDetails) authentication.getPrincipal();
+            clientKey = "c" + client.getId();
+            roles = client.getAuthorities().stream().map(GrantedAuthority::getAuthority).collect(Collectors.toList());
+        }
+
+        long retryAfter = rateLimitService.tryAcquire(request.getServletPath(), clientKey, roles);
+        if(retryAfter > 0) {
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(retryAfter));
+            response.setContentType(MediaType.TEXT_PLAIN_VALUE);
+            response.getWriter().write(new RequestException(ErrorCode.RATE_LIMIT_EXCEEDED).getMessage());
+            return;
+        }
+        chain.doFilter(request, response);
+    }
+
+    // ---------------------------------------------- Utility functions ------------------------------------------------
+
+    private String getAnonymousKey(HttpServletRequest request) {
+        if(PUSH_PATH.equals(request.getServletPath())) {
+            for(String header : SENSOR_HEADERS) {
+                String sensor = request.getHeader(header);
+                if(sensor != null && !sensor.isEmpty()) return "s" + sensor;
+            }
+        }
+        return request.getRemoteAddr();
+    }
+}
@@ -0,0 +1,27 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.model.db.data;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import java.util.HashMap;
+import java.util.Map;
+
+@Data
+@Document
+@NoArgsConstructor
+@AllArgsConstructor
+public class CollectionStats {
+    @Id
+    private String collectionName;
+    private long countedUntil; // Records before this timestamp are counted already
+    private long recordsTotal;
+    private Map<String, Long> recordsPerMonth = new HashMap<>(); // e.g. 2021-05
+    private Map<String, Long> recordsPerDay = new HashMap<>(); // e.g. 2021-05-03, only the last closed days
+}
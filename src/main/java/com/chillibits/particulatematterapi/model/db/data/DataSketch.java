@@ -0,0 +1,41 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.model.db.data;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+@Data
+@Document
+@AllArgsConstructor
+@NoArgsConstructor
+public class DataSketch {
+
+    @Id
+    private String id;
+    private long chipId;
+    private long day; // Begin of the day (unix timestamp in milliseconds)
+    private ValueSketch[] values;
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class ValueSketch {
+        private String valueType;
+        private long count;
+        private double mean;
+        private double m2;
+        private double min;
+        private double max;
+        private long zeroCount;
+        private int positiveOffset;
+        private long[] positiveCounts;
+        private int negativeOffset;
+        private long[] negativeCounts;
+    }
+}
@@ -0,0 +1,40 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.model.db.data;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+@Data
+@Document
+@AllArgsConstructor
+@NoArgsConstructor
+public class DataTile {
+
+    @Id
+    private String id;
+    private String source;
+    private int level;
+    private long index;
+    private long from;
+    private long to;
+    private int sensorCount;
+    private TileSeries[] series;
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class TileSeries {
+        private String valueType;
+        private long[] timestamps;
+        private double[] min;
+        private double[] avg;
+        private double[] max;
+        private int[] count;
+    }
+}
@@ -7,6 +7,7 @@ package com.chillibits.particulatematterapi.model.db.data;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 @Data
@@ -18,7 +19,12 @@ public class LogItem {
     // Actions
     public static final String ACTION_PUSH = "Push";
 
+    // Target prefixes
+    public static final String TARGET_SENSOR = "s"; // e.g. s12345 for the sensor with chip id 12345
+
     // Attributes
+    @Id
+    private String id; // Assigned on insert, breaks ties between items with the same timestamp
     private long timestamp;
     private int clientId;
     private int userId;
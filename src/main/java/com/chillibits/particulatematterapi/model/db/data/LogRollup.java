@@ -0,0 +1,25 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.model.db.data;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+@Data
+@Document
+@NoArgsConstructor
+@AllArgsConstructor
+public class LogRollup {
+    @Id
+    private String id; // Day, client and action or target, e.g. 2021-05-03_1_a_GET /stats or 2021-05-03_1_t_s12345
+    private String day; // e.g. 2021-05-03
+    private int clientId;
+    private String action; // Null for the rollups per target
+    private String target; // Null for the rollups per action
+    private long count;
+}
@@ -0,0 +1,31 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.model.db.data;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+@Data
+@Document
+@AllArgsConstructor
+@NoArgsConstructor
+public class RegionAggregate {
+
+    @Id
+    private String id;
+    private String country;
+    private String city; // Blank for country aggregates
+    private long hour; // Begin of the hour (unix timestamp in milliseconds)
+    private String valueType;
+    private int position; // Position of the value type within the first record of the hour
+    private double sum;
+    private double sumSquares;
+    private long count;
+    private double min;
+    private double max;
+}
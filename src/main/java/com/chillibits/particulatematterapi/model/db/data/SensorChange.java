@@ -0,0 +1,30 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.model.db.data;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+@Data
+@Document
+@NoArgsConstructor
+@AllArgsConstructor
+public class SensorChange {
+
+    // Types
+    public static final String TYPE_ADDED = "Added";
+    public static final String TYPE_UPDATED = "Updated";
+    public static final String TYPE_DELETED = "Deleted";
+
+    // Attributes
+    @Id
+    private long version;
+    private long chipId;
+    private String type;
+    private long timestamp;
+}
@@ -4,10 +4,14 @@
 
 package com.chillibits.particulatematterapi.model.db.main;
 
+import com.chillibits.particulatematterapi.shared.ConstantUtils;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
@@ -16,6 +20,8 @@ import javax.persistence.Table;
 
 @Entity
 @Table(name = "client")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = ConstantUtils.CACHE_REGION_CLIENT)
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
@@ -4,13 +4,18 @@
 
 package com.chillibits.particulatematterapi.model.db.main;
 
+import com.chillibits.particulatematterapi.shared.ConstantUtils;
 import com.fasterxml.jackson.annotation.JsonIdentityInfo;
 import com.fasterxml.jackson.annotation.ObjectIdGenerators;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
@@ -21,6 +26,8 @@ import javax.persistence.Table;
 
 @Entity
 @Table(name = "link")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = ConstantUtils.CACHE_REGION_LINK)
 @Data
 @AllArgsConstructor
 @NoArgsConstructor
@@ -31,12 +38,12 @@ public class Link {
     @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Integer id;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "user_id")
     @MapsId("user_id")
     public User user;
 
-    @ManyToOne
+    @ManyToOne(fetch = FetchType.LAZY)
     @JoinColumn(name = "sensor_id")
     @MapsId("sensor_id")
     private Sensor sensor;
@@ -4,14 +4,19 @@
 
 package com.chillibits.particulatematterapi.model.db.main;
 
+import com.chillibits.particulatematterapi.shared.ConstantUtils;
 import com.fasterxml.jackson.annotation.JsonIdentityInfo;
 import com.fasterxml.jackson.annotation.ObjectIdGenerators;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.Id;
 import javax.persistence.OneToMany;
 import javax.persistence.Table;
@@ -20,6 +25,8 @@ import java.util.Set;
 
 @Entity
 @Table(name = "sensor")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = ConstantUtils.CACHE_REGION_SENSOR)
 @NoArgsConstructor
 @AllArgsConstructor
 @Getter
@@ -28,7 +35,7 @@ import java.util.Set;
 public class Sensor {
     @Id
     private long chipId;
-    @OneToMany(mappedBy = "sensor")
+    @OneToMany(mappedBy = "sensor", fetch = FetchType.LAZY)
     private Set<Link> userLinks;
     private String firmwareVersion;
     private long creationTimestamp;
@@ -4,14 +4,19 @@
 
 package com.chillibits.particulatematterapi.model.db.main;
 
+import com.chillibits.particulatematterapi.shared.ConstantUtils;
 import com.fasterxml.jackson.annotation.JsonIdentityInfo;
 import com.fasterxml.jackson.annotation.ObjectIdGenerators;
 import lombok.AllArgsConstructor;
 import lombok.Getter;
 import lombok.NoArgsConstructor;
 import lombok.Setter;
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
 
+import javax.persistence.Cacheable;
 import javax.persistence.Entity;
+import javax.persistence.FetchType;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
@@ -21,6 +26,8 @@ import java.util.Set;
 
 @Entity
 @Table(name = "user")
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = ConstantUtils.CACHE_REGION_USER)
 @NoArgsConstructor
 @AllArgsConstructor
 @Getter
@@ -47,7 +54,7 @@ public class User {
     private String email;
     private String confirmationToken;
     private String password;
-    @OneToMany(mappedBy = "user")
+    @OneToMany(mappedBy = "user", fetch = FetchType.LAZY)
     private Set<Link> sensorLinks;
     private int role;
     private int status;
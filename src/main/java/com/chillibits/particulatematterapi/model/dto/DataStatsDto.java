@@ -0,0 +1,34 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.Map;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class DataStatsDto {
+    private long from;
+    private long to;
+    private int sensorCount;
+    private FieldStats[] fields;
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class FieldStats {
+        private String valueType;
+        private long count;
+        private double mean;
+        private double min;
+        private double max;
+        private double stdDev;
+        private Map<String, Double> percentiles;
+    }
+}
@@ -0,0 +1,35 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class DataTileDto {
+
+    private int level;
+    private long index;
+    private long from;
+    private long to;
+    private int sensorCount;
+    private boolean closed;
+    private TileSeries[] series;
+
+    @Data
+    @AllArgsConstructor
+    @NoArgsConstructor
+    public static class TileSeries {
+        private String valueType;
+        private long[] timestamps;
+        private double[] min;
+        private double[] avg;
+        private double[] max;
+        private int[] count;
+    }
+}
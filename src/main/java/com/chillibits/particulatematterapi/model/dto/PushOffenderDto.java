@@ -0,0 +1,19 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+public class PushOffenderDto {
+    private long chipId;
+    private int droppedPushes;
+    private long lastAcceptedTimestamp;
+    private long lastDroppedTimestamp;
+}
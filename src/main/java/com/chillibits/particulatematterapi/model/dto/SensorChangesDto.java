@@ -0,0 +1,21 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.List;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SensorChangesDto {
+    private long version; // Token for the next request
+    private boolean fullSync; // The changes are not available anymore, so the client has to reload all sensors
+    private List<SensorDto> sensors; // Added or updated sensors
+    private List<Long> deleted; // Chip ids of deleted sensors
+}
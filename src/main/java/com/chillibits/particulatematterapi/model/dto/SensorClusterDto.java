@@ -0,0 +1,21 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.model.dto;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class SensorClusterDto {
+    private double latitude;
+    private double longitude;
+    private int count;
+    private Long chipId; // Only set for clusters with a single sensor
+    private Double average; // Average of the latest values, if a value type was requested
+    private int valueCount; // Number of sensors, which contribute to the average
+}
@@ -17,6 +17,7 @@ import java.util.stream.Collectors;
 public class AuthDetails implements UserDetails {
 
     // Attributes
+    private final int id;
     private final String name;
     private final String secret;
     private final boolean active;
@@ -24,6 +25,7 @@ public class AuthDetails implements UserDetails {
     private final List<GrantedAuthority> authorities;
 
     public AuthDetails(Client client) {
+        this.id = client.getId();
         this.name = client.getName();
         this.secret = client.getSecret();
         this.active = client.isActive();
@@ -33,6 +35,10 @@ public class AuthDetails implements UserDetails {
                 .collect(Collectors.toList());
     }
 
+    public int getId() {
+        return id;
+    }
+
     @Override
     public Collection<? extends GrantedAuthority> getAuthorities() {
         return authorities;
@@ -5,15 +5,24 @@
 package com.chillibits.particulatematterapi.repository;
 
 import com.chillibits.particulatematterapi.model.db.main.Client;
+import com.chillibits.particulatematterapi.shared.ConstantUtils;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.transaction.annotation.Transactional;
 
+import javax.persistence.QueryHint;
+
 import java.util.Optional;
 
 public interface ClientRepository extends JpaRepository<Client, Integer> {
 
+    // Looked up on every authenticated request, so the result is kept in the query cache
+    @QueryHints({
+            @QueryHint(name = "org.hibernate.cacheable", value = "true"),
+            @QueryHint(name = "org.hibernate.cacheRegion", value = ConstantUtils.CACHE_REGION_CLIENT_BY_NAME)
+    })
     Optional<Client> findByName(String name);
 
     @Modifying
@@ -14,7 +14,7 @@ import java.util.List;
 
 public interface LinkRepository extends JpaRepository<Link, Integer> {
 
-    @Query("SELECT l FROM Link l WHERE l.user.id = ?1")
+    @Query("SELECT l FROM Link l JOIN FETCH l.sensor WHERE l.user.id = ?1")
     List<Link> getLinksByUserId(Integer userId);
 
     @Modifying
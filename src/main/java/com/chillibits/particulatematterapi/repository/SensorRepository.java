@@ -16,25 +16,21 @@ import org.springframework.transaction.annotation.Transactional;
 import java.util.List;
 
 public interface SensorRepository extends JpaRepository<Sensor, Long> {
-    @Meta(cursorBatchSize = 100)
-    @Query(value = "SELECT *, (6371000 * acos(cos(radians(?1)) * cos(radians(s.gps_latitude)) * cos(radians(s.gps_longitude) - radians(?2)) + sin(radians(?1)) * sin(radians(s.gps_latitude)))) AS distance FROM sensor s WHERE distance <= ?3 GROUP BY distance ORDER BY distance", nativeQuery = true)
-    List<Sensor> findAllInRadius(double lat, double lng, int radius);
-
     @Meta(cursorBatchSize = 100)
     @Query("SELECT s FROM Sensor s WHERE s.published = 1")
     List<Sensor> findAllPublished();
 
-    @Meta(cursorBatchSize = 100)
-    @Query(value = "SELECT *, (6371000 * acos(cos(radians(?1)) * cos(radians(s.gps_latitude)) * cos(radians(s.gps_longitude) - radians(?2)) + sin(radians(?1)) * sin(radians(s.gps_latitude)))) AS distance FROM sensor s WHERE distance <= ?3 AND s.published = 1 GROUP BY distance ORDER BY distance", nativeQuery = true)
-    List<Sensor> findAllPublishedInRadius(double lat, double lng, int radius);
-
     @Meta(cursorBatchSize = 100)
     @Query(value = "SELECT new com.chillibits.particulatematterapi.model.dto.RankingItemCityDto(s.country, s.city, COUNT(s.city)) FROM Sensor s GROUP BY s.city, s.country ORDER BY COUNT(s.city) DESC, s.country, s.city")
-    List<RankingItemCityDto> getRankingByCity(int items);
+    List<RankingItemCityDto> getRankingByCity();
 
     @Meta(cursorBatchSize = 10)
     @Query("SELECT new com.chillibits.particulatematterapi.model.dto.RankingItemCountryDto(s.country, COUNT(s.country)) FROM Sensor s GROUP BY s.country ORDER BY COUNT(s.country) DESC, s.country")
-    List<RankingItemCountryDto> getRankingByCountry(int items);
+    List<RankingItemCountryDto> getRankingByCountry();
+
+    @Meta(cursorBatchSize = 100)
+    @Query("SELECT s.chipId FROM Sensor s")
+    List<Long> getChipIdsOfAllSensors();
 
     @Meta(cursorBatchSize = 10)
     @Query("SELECT s.chipId FROM Sensor s WHERE s.country = ?1")
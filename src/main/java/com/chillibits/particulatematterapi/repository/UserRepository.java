@@ -10,9 +10,15 @@ import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.transaction.annotation.Transactional;
 
+import java.util.List;
+
 public interface UserRepository extends JpaRepository<User, Integer> {
 
-    @Query("SELECT u FROM User u WHERE u.email = ?1")
+    @Override
+    @Query("SELECT DISTINCT u FROM User u LEFT JOIN FETCH u.sensorLinks l LEFT JOIN FETCH l.sensor")
+    List<User> findAll();
+
+    @Query("SELECT DISTINCT u FROM User u LEFT JOIN FETCH u.sensorLinks l LEFT JOIN FETCH l.sensor WHERE u.email = ?1")
     User findByEmail(String email);
 
     @Query("SELECT u FROM User u WHERE u.confirmationToken = ?1")
@@ -0,0 +1,162 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.service;
+
+import com.chillibits.particulatematterapi.model.db.data.LogItem;
+import com.chillibits.particulatematterapi.model.db.data.LogRollup;
+import com.chillibits.particulatematterapi.shared.ConstantUtils;
+import com.chillibits.particulatematterapi.shared.RingBuffer;
+import com.chillibits.particulatematterapi.shared.SharedUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Writes the access log asynchronously
+ *
+ * Requests only put their log item into a ring buffer, which is written to the monthly partition of the access log in
+ * unordered bulk inserts. Under overload only a sample of the requests is logged and items, which do not fit into the
+ * buffer, are dropped. The rollups per client, day and action or target are counted for every request nevertheless.
+ */
+@Slf4j
+@Service
+public class AccessLogService {
+
+    @Autowired
+    private MongoTemplate template;
+
+    private final RingBuffer<LogItem> buffer = new RingBuffer<>(ConstantUtils.ACCESS_LOG_BUFFER_SIZE);
+    private final AtomicLong sampleCounter = new AtomicLong();
+    private final AtomicLong droppedCounter = new AtomicLong();
+    private final Map<LogRollup, LongAdder> rollups = new ConcurrentHashMap<>(); // Rollups without id and count as keys
+    private final Set<String> indexedTableNames = ConcurrentHashMap.newKeySet();
+
+    public void log(int clientId, int userId, String action, String target) {
+        String day = LocalDate.now().toString();
+        rollups.computeIfAbsent(new LogRollup(null, day, clientId, action, null, 0), key -> new LongAdder()).increment();
+        if(target != null) rollups.computeIfAbsent(new LogRollup(null, day, clientId, null, target, 0), key -> new LongAdder()).increment();
+
+        if(buffer.size() >= buffer.capacity() * ConstantUtils.ACCESS_LOG_SAMPLE_THRESHOLD
+                && sampleCounter.incrementAndGet() % ConstantUtils.ACCESS_LOG_SAMPLE_RATE != 0) {
+            droppedCounter.incrementAndGet();
+            return;
+        }
+        if(!buffer.offer(new LogItem(null, System.currentTimeMillis(), clientId, userId, action, target))) droppedCounter.incrementAndGet();
+    }
+
+    @PreDestroy
+    @Scheduled(fixedDelay = ConstantUtils.ACCESS_LOG_FLUSH_INTERVAL)
+    public synchronized void flush() {
+        List<LogItem> items = new ArrayList<>(ConstantUtils.ACCESS_LOG_BATCH_SIZE);
+        while(buffer.drainTo(items, ConstantUtils.ACCESS_LOG_BATCH_SIZE) > 0) {
+            // Items around midnight at the end of a month belong to different partitions
+            Map<String, List<LogItem>> partitions = new HashMap<>();
+            for(LogItem item : items) partitions.computeIfAbsent(SharedUtils.getLogTableName(item.getTimestamp()), key -> new ArrayList<>()).add(item);
+            partitions.forEach((tableName, partition) -> {
+                try {
+                    // The first write of the process creates the partition, so it is indexed before. Failures are retried
+                    if(!indexedTableNames.contains(tableName)) {
+                        ensureIndexes(tableName);
+                        indexedTableNames.add(tableName);
+                    }
+                    template.bulkOps(BulkOperations.BulkMode.UNORDERED, LogItem.class, tableName).insert(partition).execute();
+                } catch (RuntimeException e) {
+                    // The access log is not worth retrying, the items are lost
+                    log.warn("Was not able to write " + partition.size() + " access log items", e);
+                }
+            });
+            items.clear();
+        }
+        long dropped = droppedCounter.getAndSet(0);
+        if(dropped > 0) log.warn("Dropped " + dropped + " access log items due to overload");
+        flushRollups();
+    }
+
+    public void ensureIndexes(String tableName) {
+        // The id is part of every index, because the pages are sorted by timestamp and id
+        template.indexOps(tableName).ensureIndex(new Index().on("timestamp", Sort.Direction.ASC).on("_id", Sort.Direction.ASC));
+        for(String key : new String[] { "clientId", "userId", "target", "action" })
+            template.indexOps(tableName).ensureIndex(new Index().on(key, Sort.Direction.ASC).on("timestamp", Sort.Direction.ASC)
+                    .on("_id", Sort.Direction.ASC));
+    }
+
+    @Scheduled(cron = "0 0 4 * * ?") // Every day at 4:00
+    public void dropOutdatedPartitions() {
+        // Dropping a whole partition is much cheaper than deleting its items
+        String minTableName = SharedUtils.getLogTableName(YearMonth.now().minusMonths(ConstantUtils.LOG_RETENTION_MONTHS));
+        String prefix = ConstantUtils.LOG_TABLE_NAME + "_";
+        for(String tableName : template.getCollectionNames()) {
+            // Partition names sort chronologically
+            if(!tableName.startsWith(prefix) || tableName.compareTo(minTableName) >= 0) continue;
+            log.info("Dropping access log partition " + tableName);
+            template.dropCollection(tableName);
+            indexedTableNames.remove(tableName);
+        }
+    }
+
+    // ---------------------------------------------- Utility functions ------------------------------------------------
+
+    private void flushRollups() {
+        String today = LocalDate.now().toString();
+        List<LogRollup> updates = new ArrayList<>();
+        rollups.forEach((rollup, counter) -> {
+            long delta = counter.sumThenReset();
+            if(delta > 0) {
+                updates.add(new LogRollup(null, rollup.getDay(), rollup.getClientId(), rollup.getAction(), rollup.getTarget(), delta));
+            } else if(!rollup.getDay().equals(today)) {
+                // Rollups of past days are final now
+                rollups.remove(rollup, counter);
+            }
+        });
+        if(updates.isEmpty()) return;
+
+        BulkOperations operations = template.bulkOps(BulkOperations.BulkMode.UNORDERED, LogRollup.class, ConstantUtils.LOG_ROLLUP_TABLE_NAME);
+        for(LogRollup rollup : updates) {
+            String id = rollup.getDay() + "_" + rollup.getClientId() + (rollup.getAction() != null ? "_a_" + rollup.getAction() : "_t_" + rollup.getTarget());
+            Update update = new Update().inc("count", rollup.getCount())
+                    .setOnInsert("day", rollup.getDay())
+                    .setOnInsert("clientId", rollup.getClientId())
+                    .setOnInsert("action", rollup.getAction())
+                    .setOnInsert("target", rollup.getTarget());
+            operations.upsert(Query.query(Criteria.where("_id").is(id)), update);
+        }
+        try {
+            operations.execute();
+        } catch (BulkOperationException e) {
+            // Keep the counts of the failed updates for the next attempt. The others are applied already
+            e.getErrors().forEach(error -> restoreRollup(updates.get(error.getIndex())));
+            log.warn("Was not able to write " + e.getErrors().size() + " access log rollups");
+        } catch (RuntimeException e) {
+            updates.forEach(this::restoreRollup);
+            log.warn("Was not able to write the access log rollups", e);
+        }
+    }
+
+    private void restoreRollup(LogRollup update) {
+        LogRollup key = new LogRollup(null, update.getDay(), update.getClientId(), update.getAction(), update.getTarget(), 0);
+        rollups.computeIfAbsent(key, k -> new LongAdder()).add(update.getCount());
+    }
+}
@@ -10,6 +10,8 @@ import com.chillibits.particulatematterapi.model.db.main.Client;
 import com.chillibits.particulatematterapi.model.dto.ClientDto;
 import com.chillibits.particulatematterapi.model.dto.ClientInsertUpdateDto;
 import com.chillibits.particulatematterapi.repository.ClientRepository;
+import com.chillibits.particulatematterapi.shared.CachingPasswordEncoder;
+import com.chillibits.particulatematterapi.shared.ConstantUtils;
 import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -25,6 +27,10 @@ public class ClientService {
     private ClientRepository clientRepository;
     @Autowired
     private ModelMapper mapper;
+    @Autowired
+    private EntityCacheService entityCacheService;
+    @Autowired
+    private CachingPasswordEncoder passwordEncoder;
 
     public List<ClientDto> getAllClients() {
         return clientRepository.findAll().stream().map(this::convertToDto).collect(Collectors.toList());
@@ -38,20 +44,33 @@ public class ClientService {
 
     public ClientDto addClient(ClientInsertUpdateDto client) throws ClientDataException {
         validateClientObject(client);
-        return convertToDto(clientRepository.save(convertToDbo(client)));
+        ClientDto createdClient = convertToDto(clientRepository.save(convertToDbo(client)));
+        entityCacheService.evictQueryRegion(ConstantUtils.CACHE_REGION_CLIENT_BY_NAME);
+        return createdClient;
     }
 
     public Integer updateClient(ClientInsertUpdateDto client) throws ClientDataException {
         validateClientObject(client);
-        return clientRepository.updateClient(convertToDbo(client));
+        Client clientDbo = convertToDbo(client);
+        Integer result = clientRepository.updateClient(clientDbo);
+        evictClient(clientDbo.getId());
+        return result;
     }
 
     public void deleteClientById(Integer id) {
         clientRepository.deleteById(id);
+        evictClient(id);
     }
 
     // ---------------------------------------------- Utility functions ------------------------------------------------
 
+    private void evictClient(Integer id) {
+        entityCacheService.evict(Client.class, id);
+        entityCacheService.evictQueryRegion(ConstantUtils.CACHE_REGION_CLIENT_BY_NAME);
+        // Verify the secret of the changed client again
+        passwordEncoder.invalidateAll();
+    }
+
     public ClientDto convertToDto(Client client) {
         return mapper.map(client, ClientDto.class);
     }
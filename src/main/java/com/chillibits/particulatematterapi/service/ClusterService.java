@@ -0,0 +1,86 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.service;
+
+import com.chillibits.particulatematterapi.exception.ErrorCode;
+import com.chillibits.particulatematterapi.exception.exception.SensorDataException;
+import com.chillibits.particulatematterapi.model.dto.SensorClusterDto;
+import com.chillibits.particulatematterapi.shared.SharedUtils;
+import com.chillibits.particulatematterapi.shared.spatial.ClusterIndex;
+import com.chillibits.particulatematterapi.shared.spatial.GeoPoint;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+@Service
+public class ClusterService {
+
+    @Autowired
+    private SensorMapService sensorMapService;
+    @Autowired
+    private LatestValueService latestValueService;
+
+    private volatile CachedIndex allSensors;
+    private volatile CachedIndex publishedSensors;
+
+    public List<SensorClusterDto> getClusters(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude,
+                                              int zoom, String valueType, boolean onlyPublished) throws SensorDataException {
+        // Validate parameters
+        if(Math.abs(minLatitude) > 90 || Math.abs(maxLatitude) > 90 || minLatitude > maxLatitude ||
+                Math.abs(minLongitude) > 180 || Math.abs(maxLongitude) > 180) throw new SensorDataException(ErrorCode.INVALID_GPS_COORDINATES);
+        if(zoom < 0 || zoom > 22) throw new SensorDataException(ErrorCode.INVALID_ZOOM_LEVEL);
+
+        ClusterIndex index = getIndex(onlyPublished);
+        return index.getClusters(minLatitude, minLongitude, maxLatitude, maxLongitude, zoom).stream()
+                .map(cluster -> convertToDto(index, cluster, valueType))
+                .collect(Collectors.toList());
+    }
+
+    // ---------------------------------------------- Utility functions ------------------------------------------------
+
+    private ClusterIndex getIndex(boolean onlyPublished) {
+        // The index is built from the sensor map snapshot and replaced as soon as the snapshot changes
+        SensorMapService.Snapshot snapshot = sensorMapService.getSnapshot(onlyPublished);
+        CachedIndex cachedIndex = onlyPublished ? publishedSensors : allSensors;
+        if(cachedIndex != null && cachedIndex.snapshot == snapshot) return cachedIndex.index;
+
+        ClusterIndex index = new ClusterIndex(snapshot.getSensors().stream()
+                .map(sensor -> new GeoPoint(sensor.getChipId(), sensor.getGpsLatitude(), sensor.getGpsLongitude(), true))
+                .collect(Collectors.toList()));
+        if(onlyPublished) publishedSensors = new CachedIndex(snapshot, index); else allSensors = new CachedIndex(snapshot, index);
+        return index;
+    }
+
+    private SensorClusterDto convertToDto(ClusterIndex index, ClusterIndex.Cluster cluster, String valueType) {
+        SensorClusterDto dto = new SensorClusterDto(SharedUtils.round(cluster.getLatitude(), 6), SharedUtils.round(cluster.getLongitude(), 6),
+                cluster.getCount(), cluster.getCount() == 1 ? cluster.getId() : null, null, 0);
+        if(valueType == null) return dto;
+
+        // Average the latest values of the cluster members
+        double sum = 0;
+        int count = 0;
+        for(long chipId : index.getMemberIds(cluster)) {
+            double value = latestValueService.getLatestValue(chipId, valueType);
+            if(Double.isNaN(value)) continue;
+            sum += value;
+            count++;
+        }
+        if(count > 0) dto.setAverage(SharedUtils.round(sum / count, 2));
+        dto.setValueCount(count);
+        return dto;
+    }
+
+    private static class CachedIndex {
+        private final SensorMapService.Snapshot snapshot;
+        private final ClusterIndex index;
+
+        private CachedIndex(SensorMapService.Snapshot snapshot, ClusterIndex index) {
+            this.snapshot = snapshot;
+            this.index = index;
+        }
+    }
+}
@@ -11,7 +11,7 @@ import com.chillibits.particulatematterapi.model.dto.DataRecordCompressedDto;
 import com.chillibits.particulatematterapi.model.dto.DataRecordDto;
 import com.chillibits.particulatematterapi.repository.SensorRepository;
 import com.chillibits.particulatematterapi.shared.ConstantUtils;
-import com.chillibits.particulatematterapi.shared.SharedUtils;
+import com.chillibits.particulatematterapi.shared.ValueAggregator;
 import org.apache.commons.lang3.tuple.ImmutablePair;
 import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -19,14 +19,15 @@ import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
 import org.springframework.stereotype.Service;
 
-import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 
 @Service
@@ -38,6 +39,8 @@ public class DataService {
     private ModelMapper mapper;
     @Autowired
     private SensorRepository sensorRepository;
+    @Autowired
+    private RegionService regionService;
 
     // -------------------------------------------- Data for single sensor ---------------------------------------------
 
@@ -104,15 +107,23 @@ public class DataService {
 
     // --------------------------------------------- Chart data functions ----------------------------------------------
 
-    public List<DataRecordDto> getChartData(long chipId, long from, long to, int fieldIndex, int mergeCount) throws DataAccessException {
+    public List<DataRecordDto> getChartData(long chipId, long from, long to, int fieldIndex, String valueType, int mergeCount) throws DataAccessException {
         // Check input parameters
         if(fieldIndex < 0) throw new DataAccessException(ErrorCode.INVALID_FIELD_INDEX);
         if(mergeCount < 1) throw new DataAccessException(ErrorCode.INVALID_MERGE_COUNT);
-        // Get data records of this sensor
-        return getDataRecords(chipId, from, to);
+        // Only load the timestamp and the requested field of each record
+        Query query = getTimeRangeQuery(from, to);
+        includeChartField(query, fieldIndex, valueType);
+        List<DataRecordDto> records = findDataRecords(query, chipId).stream()
+                .map(record -> toChartRecord(convertToDto(record), valueType, 0))
+                .collect(Collectors.toList());
+        // The positional field index is out of range, if no record contains it
+        if(valueType == null && !records.isEmpty() && records.stream().allMatch(record -> record.getSensorDataValues().length == 0))
+            throw new DataAccessException(ErrorCode.INVALID_FIELD_INDEX);
+        return records;
     }
 
-    public ImmutablePair<List<DataRecordDto>, Integer> getChartDataCountry(String country, long from, long to, int fieldIndex, int granularity) throws DataAccessException {
+    public ImmutablePair<List<DataRecordDto>, Integer> getChartDataCountry(String country, long from, long to, int fieldIndex, String valueType, int granularity) throws DataAccessException {
         // Check input parameters
         validateAccessProperties(from, to, fieldIndex, granularity);
 
@@ -122,10 +133,16 @@ public class DataService {
 
         // Get chipIds of the sensors from the requested location
         List<Long> chipIds = sensorRepository.getChipIdsOfSensorFromCountry(country);
-        return new ImmutablePair<>(loopWithGranularity(granularity, toTimestamp, fromTimestamp, chipIds), chipIds.size());
+        // Read hourly region aggregates if possible, otherwise fall back to the raw sensor data
+        List<DataRecordDto> records = RegionService.supportsGranularity(granularity)
+                ? regionService.getChartDataCountry(country, fromTimestamp, toTimestamp, valueType, granularity)
+                : loopWithGranularity(granularity, toTimestamp, fromTimestamp, chipIds, fieldIndex, valueType);
+        // The raw sensor data only contains the requested field, so its position is 0
+        int chartFieldIndex = RegionService.supportsGranularity(granularity) ? fieldIndex : 0;
+        return new ImmutablePair<>(toChartRecords(records, chartFieldIndex, valueType), chipIds.size());
     }
 
-    public ImmutablePair<List<DataRecordDto>, Integer> getChartDataCity(String country, String city, long from, long to, int fieldIndex, int granularity) throws DataAccessException {
+    public ImmutablePair<List<DataRecordDto>, Integer> getChartDataCity(String country, String city, long from, long to, int fieldIndex, String valueType, int granularity) throws DataAccessException {
         // Check input parameters
         validateAccessProperties(from, to, fieldIndex, granularity);
 
@@ -135,66 +152,111 @@ public class DataService {
 
         // Get chipIds of the sensors from the requested location
         List<Long> chipIds = sensorRepository.getChipIdsOfSensorFromCity(country, city);
-        return new ImmutablePair<>(loopWithGranularity(granularity, toTimestamp, fromTimestamp, chipIds), chipIds.size());
+        // Read hourly region aggregates if possible, otherwise fall back to the raw sensor data
+        List<DataRecordDto> records = RegionService.supportsGranularity(granularity)
+                ? regionService.getChartDataCity(country, city, fromTimestamp, toTimestamp, valueType, granularity)
+                : loopWithGranularity(granularity, toTimestamp, fromTimestamp, chipIds, fieldIndex, valueType);
+        // The raw sensor data only contains the requested field, so its position is 0
+        int chartFieldIndex = RegionService.supportsGranularity(granularity) ? fieldIndex : 0;
+        return new ImmutablePair<>(toChartRecords(records, chartFieldIndex, valueType), chipIds.size());
     }
 
     // ----------------------------------------------- Utility functions -----------------------------------------------
 
     private DataRecordDto getAverageDataRecord(List<DataRecordDto> records) {
         if(records.size() == 0) return new DataRecordDto();
-        Map<String, Map.Entry<Double, Integer>> dataValues = new LinkedHashMap<>();
-        for(DataRecordDto record : records) {
-            for(DataRecordDto.SensorDataValue currValue : record.getSensorDataValues()) {
-                String valueType = currValue.getValueType();
-                if(dataValues.containsKey(valueType)) {
-                    // Update map entry
-                    Map.Entry<Double, Integer> currEntry = dataValues.get(valueType);
-                    double currEntryValue = Double.parseDouble(currEntry.getKey().toString());
-                    int currEntrySensorCount = Integer.parseInt(currEntry.getValue().toString()) +1;
-                    dataValues.put(
-                            valueType,
-                            new AbstractMap.SimpleEntry<>(currEntryValue + (currValue.getValue() - currEntryValue) / currEntrySensorCount, currEntrySensorCount)
-                    );
-                } else {
-                    // Add map entry
-                    dataValues.put(valueType, new AbstractMap.SimpleEntry<>(currValue.getValue(), 1));
-                }
-            }
-        }
-        // Shrinking map entries
-        ArrayList<DataRecordDto.SensorDataValue> avgDataValues = new ArrayList<>();
-        for (Map.Entry<String, Map.Entry<Double, Integer>> item : dataValues.entrySet()) {
-            double value = Double.parseDouble(item.getValue().getKey().toString());
-            avgDataValues.add(new DataRecordDto.SensorDataValue(item.getKey(), SharedUtils.round(value, 3)));
-        }
-        // Create averageRecord out of dataValues
+        ValueAggregator aggregator = new ValueAggregator();
+        for(DataRecordDto record : records) aggregator.add(record.getSensorDataValues());
+        // Create averageRecord out of the aggregated values
         DataRecordDto avgRecord = new DataRecordDto();
         avgRecord.setTimestamp(records.get(0).getTimestamp());
-        avgRecord.setSensorDataValues(avgDataValues.toArray(DataRecordDto.SensorDataValue[]::new));
+        avgRecord.setSensorDataValues(aggregator.toSensorDataValues(3));
         return avgRecord;
     }
 
     private List<DataRecord> getDataRecordsRaw(long chipId, long from, long to) throws DataAccessException {
+        return findDataRecords(getTimeRangeQuery(from, to), chipId);
+    }
+
+    private Query getTimeRangeQuery(long from, long to) throws DataAccessException {
         if((from < 0 || to < 0) || (from > to)) throw new DataAccessException(ErrorCode.INVALID_TIME_RANGE_DATA);
         long toTimestamp = to == 0 ? System.currentTimeMillis() : to;
         long fromTimestamp = from == 0 ? toTimestamp - ConstantUtils.DEFAULT_DATA_TIME_SPAN : from;
-        List<DataRecord> records = template.find(Query.query(Criteria.where("timestamp").gte(fromTimestamp).lte(toTimestamp)).cursorBatchSize(500), DataRecord.class, String.valueOf(chipId));
+        return Query.query(Criteria.where("timestamp").gte(fromTimestamp).lte(toTimestamp)).cursorBatchSize(500);
+    }
+
+    private List<DataRecord> findDataRecords(Query query, long chipId) {
+        List<DataRecord> records = template.find(query, DataRecord.class, String.valueOf(chipId));
         return records != null ? records : new ArrayList<>(); // Do not remove items != null
     }
 
-    private List<DataRecordDto> loopWithGranularity(int granularity, long toTimestamp, long fromTimestamp, List<Long> chipIds) throws DataAccessException {
-        // Loop periodically through the time span
-        long granularityInMillis = granularity * 60 * 1000;
-        long currFrom = fromTimestamp;
-        long currTo = fromTimestamp + granularityInMillis;
-        List<DataRecordDto> records = new ArrayList<>();
-        while (currTo <= toTimestamp) {
-            List<DataRecordDto> recordsInTimeSpan = new ArrayList<>();
-            for (long chipId : chipIds) recordsInTimeSpan.addAll(getDataRecords(chipId, currFrom, currTo));
-            records.add(getAverageDataRecord(recordsInTimeSpan));
-            currFrom += granularityInMillis;
-            currTo += granularityInMillis;
+    private List<DataRecordDto> toChartRecords(List<DataRecordDto> records, int fieldIndex, String valueType) throws DataAccessException {
+        // Resolve the positional field index to a value type, based on the first record with data
+        String field = valueType;
+        if(field == null) {
+            DataRecordDto firstRecord = records.stream().filter(record -> record.getSensorDataValues() != null).findFirst().orElse(null);
+            if(firstRecord == null) return records;
+            if(fieldIndex >= firstRecord.getSensorDataValues().length) throw new DataAccessException(ErrorCode.INVALID_FIELD_INDEX);
+            field = firstRecord.getSensorDataValues()[fieldIndex].getValueType();
         }
+        String chartField = field;
+        return records.stream().map(record -> toChartRecord(record, chartField, 0)).collect(Collectors.toList());
+    }
+
+    private DataRecordDto toChartRecord(DataRecordDto record, String valueType, int fieldIndex) {
+        // Reduce the record to the requested value (by name if available, otherwise by position)
+        DataRecordDto.SensorDataValue[] values = record.getSensorDataValues();
+        DataRecordDto.SensorDataValue value = null;
+        if(values != null) {
+            if(valueType != null) {
+                value = Arrays.stream(values).filter(v -> valueType.equals(v.getValueType())).findFirst().orElse(null);
+            } else if(fieldIndex < values.length) {
+                value = values[fieldIndex];
+            }
+        }
+        record.setSensorDataValues(value == null ? new DataRecordDto.SensorDataValue[0] : new DataRecordDto.SensorDataValue[] { value });
+        return record;
+    }
+
+    private void includeChartField(Query query, int fieldIndex, String valueType) {
+        query.fields().include("timestamp");
+        if(valueType != null) {
+            query.fields().elemMatch("sensorDataValues", Criteria.where("valueType").is(valueType));
+        } else {
+            query.fields().slice("sensorDataValues", fieldIndex, 1);
+        }
+    }
+
+    private List<DataRecordDto> loopWithGranularity(int granularity, long toTimestamp, long fromTimestamp, List<Long> chipIds, int fieldIndex, String valueType) throws DataAccessException {
+        long granularityInMillis = granularity * 60L * 1000;
+        int bucketCount = (int) ((toTimestamp - fromTimestamp) / granularityInMillis);
+        if(bucketCount <= 0) return new ArrayList<>();
+        long endTimestamp = fromTimestamp + bucketCount * granularityInMillis;
+
+        // Fill one aggregator per non-empty time bucket with a single query per sensor. The records are streamed, so
+        // that large time ranges are not materialized in memory
+        Map<Integer, ValueAggregator> buckets = new TreeMap<>();
+        // Only load the timestamp and the requested field of each record
+        Query query = getTimeRangeQuery(fromTimestamp, endTimestamp);
+        includeChartField(query, fieldIndex, valueType);
+        for(long chipId : chipIds) {
+            try(CloseableIterator<DataRecord> records = template.stream(query, DataRecord.class, String.valueOf(chipId))) {
+                while(records.hasNext()) {
+                    DataRecord record = records.next();
+                    long timestamp = record.getTimestamp();
+                    if(record.getSensorDataValues() == null || record.getSensorDataValues().length == 0 || timestamp < fromTimestamp || timestamp > endTimestamp) continue;
+                    int bucket = (int) Math.min((timestamp - fromTimestamp) / granularityInMillis, bucketCount - 1);
+                    ValueAggregator aggregator = buckets.computeIfAbsent(bucket, key -> new ValueAggregator());
+                    for(DataRecord.SensorDataValue value : record.getSensorDataValues())
+                        aggregator.add(value.getValueType(), value.getValue());
+                }
+            }
+        }
+
+        // Convert the non-empty buckets to averaged records
+        List<DataRecordDto> records = new ArrayList<>();
+        buckets.forEach((bucket, aggregator) -> records.add(new DataRecordDto(fromTimestamp + bucket * granularityInMillis, null,
+                aggregator.toSensorDataValues(3), ConstantUtils.BLANK_COLUMN)));
         return records;
     }
 
@@ -0,0 +1,31 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.service;
+
+import org.hibernate.SessionFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import javax.persistence.EntityManagerFactory;
+
+/**
+ * Evicts entries from the second level cache
+ *
+ * Bulk updates bypass the persistence context, so the services evict the changed entities explicitly after running them.
+ */
+@Service
+public class EntityCacheService {
+
+    @Autowired
+    private EntityManagerFactory entityManagerFactory;
+
+    public void evict(Class<?> entityClass, Object id) {
+        entityManagerFactory.getCache().evict(entityClass, id);
+    }
+
+    public void evictQueryRegion(String region) {
+        entityManagerFactory.unwrap(SessionFactory.class).getCache().evictQueryRegion(region);
+    }
+}
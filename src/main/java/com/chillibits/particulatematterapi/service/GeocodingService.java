@@ -0,0 +1,114 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.service;
+
+import com.chillibits.particulatematterapi.model.io.MapsPlaceResult;
+import com.chillibits.particulatematterapi.shared.ConstantUtils;
+import com.chillibits.particulatematterapi.shared.spatial.PlaceIndex;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Resolves gps coordinates to country and city
+ *
+ * Locations are resolved with the offline place index, which needs no network. The bundled dump only contains the
+ * major cities, a full GeoNames dump can be configured with PMAPI_GEOCODER_DATASET. The Google geocoding api is only
+ * called with GEOCODER_REMOTE_FALLBACK, if the index knows no place near the location. Stored sensors keep their city.
+ * Results are cached by rounded coordinates.
+ */
+@Slf4j
+@Service
+public class GeocodingService {
+
+    private static final PlaceIndex.Place UNKNOWN_PLACE = new PlaceIndex.Place(MapsPlaceResult.UNKNOWN_COUNTRY, MapsPlaceResult.UNKNOWN_CITY);
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final Map<Long, PlaceIndex.Place> cache = Collections.synchronizedMap(new LinkedHashMap<>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<Long, PlaceIndex.Place> eldest) {
+            return size() > ConstantUtils.GEOCODER_CACHE_SIZE;
+        }
+    });
+    private volatile PlaceIndex placeIndex;
+    private volatile boolean initialized = false;
+
+    public PlaceIndex.Place getPlace(double latitude, double longitude) {
+        long cellKey = getCellKey(latitude, longitude);
+        PlaceIndex.Place place = cache.get(cellKey);
+        if(place != null) return place;
+
+        place = getPlaceOffline(latitude, longitude);
+        if(place == null && ConstantUtils.GEOCODER_REMOTE_FALLBACK) place = getPlaceRemote(latitude, longitude);
+        // Do not cache failed lookups, so that they are retried later
+        if(place == null) return UNKNOWN_PLACE;
+        cache.put(cellKey, place);
+        return place;
+    }
+
+    // ---------------------------------------------- Utility functions ------------------------------------------------
+
+    private PlaceIndex.Place getPlaceOffline(double latitude, double longitude) {
+        ensureInitialized();
+        return placeIndex != null ? placeIndex.findPlace(latitude, longitude, ConstantUtils.GEOCODER_MAX_DISTANCE) : null;
+    }
+
+    private PlaceIndex.Place getPlaceRemote(double latitude, double longitude) {
+        if(ConstantUtils.GOOGLE_API_KEY == null) return null;
+        HttpURLConnection connection = null;
+        try {
+            URL url = new URL("https://maps.googleapis.com/maps/api/geocode/json?key=" + ConstantUtils.GOOGLE_API_KEY
+                    + "&latlng=" + latitude + "," + longitude + "&sensor=false&language=en");
+            connection = (HttpURLConnection) url.openConnection();
+            connection.setConnectTimeout(ConstantUtils.GEOCODER_REMOTE_TIMEOUT);
+            connection.setReadTimeout(ConstantUtils.GEOCODER_REMOTE_TIMEOUT);
+            try(InputStream in = connection.getInputStream()) {
+                MapsPlaceResult result = objectMapper.readValue(in, MapsPlaceResult.class);
+                return new PlaceIndex.Place(result.getCountry(), result.getCity());
+            }
+        } catch (Exception e) {
+            log.warn("Was not able to retrieve country and city of location " + latitude + ", " + longitude);
+            return null;
+        } finally {
+            if(connection != null) connection.disconnect();
+        }
+    }
+
+    private void ensureInitialized() {
+        if(initialized) return;
+        synchronized(this) {
+            if(initialized) return;
+            // Prefer the configured dump and use the bundled one otherwise
+            try(InputStream in = ConstantUtils.GEOCODER_DATASET != null ? new FileInputStream(ConstantUtils.GEOCODER_DATASET)
+                    : getClass().getClassLoader().getResourceAsStream(ConstantUtils.GEOCODER_DATASET_RESOURCE)) {
+                if(in != null) {
+                    placeIndex = new PlaceIndex(in);
+                    log.info("Loaded " + placeIndex.size() + " places for reverse geocoding.");
+                } else {
+                    log.warn("No places for reverse geocoding found.");
+                }
+            } catch (IOException | RuntimeException e) {
+                log.error("Was not able to load the places for reverse geocoding", e);
+            }
+            initialized = true;
+        }
+    }
+
+    private long getCellKey(double latitude, double longitude) {
+        double precision = ConstantUtils.GEOCODER_CACHE_PRECISION;
+        long row = Math.round((latitude + 90) / precision);
+        long column = Math.round((longitude + 180) / precision);
+        return row * (Math.round(360 / precision) + 1) + column;
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.service;
+
+import com.chillibits.particulatematterapi.model.db.data.DataRecord;
+import com.chillibits.particulatematterapi.shared.ConstantUtils;
+import lombok.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Keeps the latest pushed values of every sensor in memory
+ *
+ * The values are only known for sensors, which pushed data since the start of the application.
+ */
+@Service
+public class LatestValueService {
+
+    private final Map<Long, LatestRecord> latestRecords = new ConcurrentHashMap<>();
+
+    public void update(long chipId, long timestamp, DataRecord.SensorDataValue[] values) {
+        if(values == null) return;
+        latestRecords.merge(chipId, new LatestRecord(timestamp, values),
+                (oldRecord, newRecord) -> newRecord.getTimestamp() >= oldRecord.getTimestamp() ? newRecord : oldRecord);
+    }
+
+    public void remove(long chipId) {
+        latestRecords.remove(chipId);
+    }
+
+    public double getLatestValue(long chipId, String valueType) {
+        LatestRecord record = latestRecords.get(chipId);
+        // Outdated values are not representative anymore
+        if(record == null || record.getTimestamp() < System.currentTimeMillis() - ConstantUtils.LATEST_VALUE_MAX_AGE)
+            return Double.NaN;
+        for(DataRecord.SensorDataValue value : record.getValues())
+            if(valueType.equals(value.getValueType())) return value.getValue();
+        return Double.NaN;
+    }
+
+    @Value
+    private static class LatestRecord {
+        long timestamp;
+        DataRecord.SensorDataValue[] values;
+    }
+}
@@ -28,13 +28,15 @@ public class LinkService {
     private SensorRepository sensorRepository;
     @Autowired
     private ModelMapper mapper;
+    @Autowired
+    private EntityCacheService entityCacheService;
 
     public LinkDto addLink(LinkInsertUpdateDto link) throws LinkDataException {
         // Check for possible faulty data parameters
         validateLinkObject(link);
 
         // Add additional data
-        Sensor sensor = sensorRepository.getOne(link.getSensor().getChipId());
+        Sensor sensor = sensorRepository.findById(link.getSensor().getChipId()).orElseThrow(() -> new LinkDataException(ErrorCode.SENSOR_NOT_EXISTING));
         Link linkDbo = convertToDbo(link);
         linkDbo.setSensor(sensor);
         linkDbo.setCreationTimestamp(System.currentTimeMillis());
@@ -43,11 +45,15 @@ public class LinkService {
 
     public Integer updateLink(LinkInsertUpdateDto link) throws LinkDataException {
         validateLinkObject(link);
-        return linkRepository.updateLink(convertToDbo(link));
+        Link linkDbo = convertToDbo(link);
+        Integer result = linkRepository.updateLink(linkDbo);
+        entityCacheService.evict(Link.class, linkDbo.getId());
+        return result;
     }
 
     public void deleteLinkById(Integer id) {
         linkRepository.deleteById(id);
+        entityCacheService.evict(Link.class, id);
     }
 
     // ---------------------------------------------- Utility functions ------------------------------------------------
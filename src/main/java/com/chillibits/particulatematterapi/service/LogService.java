@@ -8,63 +8,140 @@ import com.chillibits.particulatematterapi.exception.ErrorCode;
 import com.chillibits.particulatematterapi.exception.exception.LogAccessException;
 import com.chillibits.particulatematterapi.model.db.data.LogItem;
 import com.chillibits.particulatematterapi.model.dto.LogItemDto;
+import com.chillibits.particulatematterapi.model.dto.LogPageDto;
 import com.chillibits.particulatematterapi.shared.ConstantUtils;
+import com.chillibits.particulatematterapi.shared.SharedUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import org.bson.types.ObjectId;
 import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
 import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
 
+import java.util.ArrayList;
 import java.util.List;
 import java.util.stream.Collectors;
 
 @Service
 public class LogService {
 
+    private static final char PREFIX_WILDCARD = '*';
+    private static final String CURSOR_SEPARATOR = "_";
+    private static final Sort PAGE_SORT = Sort.by(Sort.Direction.ASC, "timestamp", "_id");
+
     @Autowired
     private MongoTemplate template;
     @Autowired
     private ModelMapper mapper;
 
-    public List<LogItemDto> getAllLogs(long from, long to) throws LogAccessException {
-        return template.find(Query.query(getTimeCriteria(from, to)), LogItem.class).stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+    private final ObjectWriter writer = new ObjectMapper().writerFor(LogItemDto.class);
+
+    public LogPageDto getAllLogs(long from, long to, String cursor, int limit) throws LogAccessException {
+        long[] timeRange = getTimeRange(from, to);
+        return getLogs(timeRange, getTimeCriteria(timeRange), cursor, limit);
+    }
+
+    public LogPageDto getLogsByTarget(String target, long from, long to, String cursor, int limit) throws LogAccessException {
+        long[] timeRange = getTimeRange(from, to);
+        return getLogs(timeRange, getTextCriteria(getTimeCriteria(timeRange), "target", target), cursor, limit);
     }
 
-    public List<LogItemDto> getLogsByTarget(String target, long from, long to) throws LogAccessException {
-        return template.find(Query.query(getTimeCriteria(from, to).and("target").regex(target)), LogItem.class).stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+    public LogPageDto getLogsByUser(int userId, long from, long to, String cursor, int limit) throws LogAccessException {
+        long[] timeRange = getTimeRange(from, to);
+        return getLogs(timeRange, getTimeCriteria(timeRange).and("userId").is(userId), cursor, limit);
     }
 
-    public List<LogItemDto> getLogsByUser(int userId, long from, long to) throws LogAccessException {
-        return template.find(Query.query(getTimeCriteria(from, to).and("userId").is(userId)), LogItem.class).stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+    public LogPageDto getLogsByClient(int clientId, long from, long to, String cursor, int limit) throws LogAccessException {
+        long[] timeRange = getTimeRange(from, to);
+        return getLogs(timeRange, getTimeCriteria(timeRange).and("clientId").is(clientId), cursor, limit);
     }
 
-    public List<LogItemDto> getLogsByClient(int clientId, long from, long to) throws LogAccessException {
-        return template.find(Query.query(getTimeCriteria(from, to).and("clientId").is(clientId)), LogItem.class).stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+    public LogPageDto getLogsByAction(String action, long from, long to, String cursor, int limit) throws LogAccessException {
+        long[] timeRange = getTimeRange(from, to);
+        return getLogs(timeRange, getTextCriteria(getTimeCriteria(timeRange), "action", action), cursor, limit);
     }
 
-    public List<LogItemDto> getLogsByAction(String action, long from, long to) throws LogAccessException {
-        return template.find(Query.query(getTimeCriteria(from, to).and("action").regex(action)), LogItem.class).stream()
-                .map(this::convertToDto)
-                .collect(Collectors.toList());
+    public StreamingResponseBody exportLogs(Integer clientId, Integer userId, String target, String action, long from, long to) throws LogAccessException {
+        // Build the query before streaming, so that invalid requests are rejected with an error response
+        long[] timeRange = getTimeRange(from, to);
+        Criteria criteria = getTimeCriteria(timeRange);
+        if(clientId != null) criteria.and("clientId").is(clientId);
+        if(userId != null) criteria.and("userId").is(userId);
+        if(target != null) getTextCriteria(criteria, "target", target);
+        if(action != null) getTextCriteria(criteria, "action", action);
+        Query query = Query.query(criteria).with(PAGE_SORT).cursorBatchSize(500);
+        List<String> tableNames = SharedUtils.getLogTableNames(timeRange[0], timeRange[1]);
+        return out -> {
+            for(String tableName : tableNames) {
+                try(CloseableIterator<LogItem> items = template.stream(query, LogItem.class, tableName)) {
+                    while(items.hasNext()) {
+                        out.write(writer.writeValueAsBytes(convertToDto(items.next())));
+                        out.write('\n');
+                    }
+                }
+            }
+        };
     }
 
     // ---------------------------------------------- Utility functions ------------------------------------------------
 
-    private Criteria getTimeCriteria(long from, long to) throws LogAccessException {
+    private LogPageDto getLogs(long[] timeRange, Criteria criteria, String cursor, int limit) throws LogAccessException {
+        int pageSize = limit <= 0 ? ConstantUtils.LOG_PAGE_SIZE : Math.min(limit, ConstantUtils.LOG_MAX_PAGE_SIZE);
+        // The cursor consists of the timestamp and the id of the last item, so that the next page starts right behind it
+        long cursorTimestamp = 0;
+        if(cursor != null && !cursor.isEmpty()) {
+            String[] parts = cursor.split(CURSOR_SEPARATOR, 2);
+            if(parts.length != 2 || !ObjectId.isValid(parts[1])) throw new LogAccessException(ErrorCode.INVALID_LOG_CURSOR);
+            try {
+                cursorTimestamp = Long.parseLong(parts[0]);
+            } catch (NumberFormatException e) {
+                throw new LogAccessException(ErrorCode.INVALID_LOG_CURSOR);
+            }
+            criteria = new Criteria().andOperator(criteria, new Criteria().orOperator(
+                    Criteria.where("timestamp").gt(cursorTimestamp),
+                    Criteria.where("timestamp").is(cursorTimestamp).and("_id").gt(new ObjectId(parts[1]))
+            ));
+        }
+
+        // Fill the page from the monthly partitions in chronological order
+        List<LogItem> items = new ArrayList<>();
+        for(String tableName : SharedUtils.getLogTableNames(Math.max(timeRange[0], cursorTimestamp), timeRange[1])) {
+            Query query = Query.query(criteria).with(PAGE_SORT).limit(pageSize - items.size());
+            items.addAll(template.find(query, LogItem.class, tableName));
+            if(items.size() >= pageSize) break;
+        }
+
+        String nextCursor = null;
+        if(items.size() >= pageSize) {
+            LogItem lastItem = items.get(items.size() - 1);
+            nextCursor = lastItem.getTimestamp() + CURSOR_SEPARATOR + lastItem.getId();
+        }
+        return new LogPageDto(items.stream().map(this::convertToDto).collect(Collectors.toList()), nextCursor);
+    }
+
+    private long[] getTimeRange(long from, long to) throws LogAccessException {
         validateRequest(from, to);
 
         long toTimestamp = to == 0 ? System.currentTimeMillis() : to;
         long fromTimestamp = from == 0 ? toTimestamp - ConstantUtils.DEFAULT_DATA_TIME_SPAN : from;
-        return Criteria.where("timestamp").gte(fromTimestamp).lte(toTimestamp);
+        return new long[] { fromTimestamp, toTimestamp };
+    }
+
+    private Criteria getTimeCriteria(long[] timeRange) {
+        return Criteria.where("timestamp").gte(timeRange[0]).lte(timeRange[1]);
+    }
+
+    private Criteria getTextCriteria(Criteria criteria, String key, String value) {
+        // Exact match or anchored prefix match (e.g. s123*), so that the index can be used
+        if(value.isEmpty() || value.charAt(value.length() - 1) != PREFIX_WILDCARD) return criteria.and(key).is(value);
+        String prefix = value.substring(0, value.length() - 1);
+        return criteria.and(key).regex("^" + prefix.replaceAll("\\W", "\\\\$0"));
     }
 
     private LogItemDto convertToDto(LogItem logItem) {
@@ -74,4 +151,4 @@ public class LogService {
     private void validateRequest(long from, long to) throws LogAccessException {
         if (from < 0 || to < 0 || from > to) throw new LogAccessException(ErrorCode.INVALID_TIME_RANGE_LOG);
     }
-}
\ No newline at end of file
+}
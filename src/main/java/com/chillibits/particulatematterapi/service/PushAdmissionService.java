@@ -0,0 +1,58 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.service;
+
+import com.chillibits.particulatematterapi.exception.ErrorCode;
+import com.chillibits.particulatematterapi.exception.exception.PushDataException;
+import com.chillibits.particulatematterapi.model.dto.PushOffenderDto;
+import com.chillibits.particulatematterapi.shared.ConstantUtils;
+import com.chillibits.particulatematterapi.shared.PushAdmission;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Drops pushes of sensors, which send more often than the minimum interval
+ *
+ * Misconfigured sensors with short send intervals would otherwise multiply the storage and write load. Dropped pushes
+ * are counted per sensor, to find the offenders, and in total, which is logged periodically.
+ */
+@Slf4j
+@Service
+public class PushAdmissionService {
+
+    private final PushAdmission admission = new PushAdmission(ConstantUtils.PUSH_MIN_INTERVAL);
+    private final LongAdder droppedCounter = new LongAdder();
+
+    public boolean tryAdmit(long chipId) {
+        boolean admitted = admission.tryAdmit(chipId, System.currentTimeMillis());
+        if(!admitted) droppedCounter.increment();
+        return admitted;
+    }
+
+    public long getRetryAfter(long chipId) {
+        long wait = admission.getWait(chipId, System.currentTimeMillis());
+        return wait == 0 ? 0 : Math.max(1, TimeUnit.MILLISECONDS.toSeconds(wait + 999));
+    }
+
+    public List<PushOffenderDto> getOffenders(int items) throws PushDataException {
+        if(items < 1) throw new PushDataException(ErrorCode.INVALID_OFFENDERS_NUMBER);
+        return admission.getTopOffenders(items).stream()
+                .map(offender -> new PushOffenderDto(offender.getChipId(), offender.getRejected(), offender.getLastAccepted(), offender.getLastRejected()))
+                .collect(Collectors.toList());
+    }
+
+    @Scheduled(fixedRate = ConstantUtils.PUSH_ADMISSION_EXPIRY)
+    public void expire() {
+        admission.expire(System.currentTimeMillis() - ConstantUtils.PUSH_ADMISSION_EXPIRY);
+        long dropped = droppedCounter.sumThenReset();
+        if(dropped > 0) log.warn("Dropped " + dropped + " pushes of too frequently sending sensors");
+    }
+}
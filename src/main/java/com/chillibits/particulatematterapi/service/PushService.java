@@ -7,8 +7,13 @@ package com.chillibits.particulatematterapi.service;
 import com.chillibits.particulatematterapi.exception.ErrorCode;
 import com.chillibits.particulatematterapi.exception.exception.PushDataException;
 import com.chillibits.particulatematterapi.model.db.data.DataRecord;
+import com.chillibits.particulatematterapi.model.db.data.SensorChange;
+import com.chillibits.particulatematterapi.model.db.main.Sensor;
 import com.chillibits.particulatematterapi.model.dto.DataRecordInsertUpdateDto;
 import com.chillibits.particulatematterapi.repository.SensorRepository;
+import com.chillibits.particulatematterapi.shared.ConstantUtils;
+import com.chillibits.particulatematterapi.shared.SharedUtils;
+import lombok.extern.slf4j.Slf4j;
 import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.mongodb.core.MongoTemplate;
@@ -17,6 +22,7 @@ import org.springframework.stereotype.Service;
 import java.util.Arrays;
 import java.util.Optional;
 
+@Slf4j
 @Service
 public class PushService {
 
@@ -26,17 +32,42 @@ public class PushService {
     private MongoTemplate template;
     @Autowired
     private ModelMapper mapper;
+    @Autowired
+    private RegionService regionService;
+    @Autowired
+    private SpatialIndexService spatialIndexService;
+    @Autowired
+    private SensorMapService sensorMapService;
+    @Autowired
+    private LatestValueService latestValueService;
+    @Autowired
+    private SensorChangeService sensorChangeService;
+    @Autowired
+    private RankingService rankingService;
+    @Autowired
+    private StatsCounterService statsCounterService;
+    @Autowired
+    private PushAdmissionService pushAdmissionService;
 
     public boolean pushData(DataRecordInsertUpdateDto record) throws PushDataException {
         // Check if the record contains data values
         if(record.getSensorDataValues() == null || record.getSensorDataValues().length == 0)
             throw new PushDataException(ErrorCode.NO_DATA_VALUES);
+        Optional<Sensor> sensorOptional = sensorRepository.findById(record.getChipId());
+        // Drop the record, if the sensor pushes too frequently. Only known sensors are tracked, so that random chip ids
+        // cannot fill the admission state
+        if(sensorOptional.isPresent() && !pushAdmissionService.tryAdmit(record.getChipId())) {
+            log.debug("Dropped push of sensor " + record.getChipId() + ", because it pushes too frequently");
+            return false;
+        }
 
         long timestamp = System.currentTimeMillis();
         record.setTimestamp(timestamp);
+        DataRecord dataRecord = convertToDbo(record);
         // Update Sensor record, if exists
-        sensorRepository.findById(record.getChipId()).ifPresent(sensor -> {
+        sensorOptional.ifPresent(sensor -> {
             // Update live-properties
+            boolean wasInactive = sensor.getLastMeasurementTimestamp() <= timestamp - ConstantUtils.MINUTES_UNTIL_INACTIVITY * 60 * 1000L;
             sensor.setLastMeasurementTimestamp(timestamp);
             sensor.setFirmwareVersion(record.getFirmwareVersion());
             // Set gps coordinates, if they were passed and valid
@@ -46,16 +77,39 @@ public class PushService {
                     = Arrays.stream(record.getSensorDataValues()).filter(keyValuePair -> keyValuePair.getValueType().equals("GPS_lng")).findAny();
             Optional<DataRecordInsertUpdateDto.SensorDataValue> pairAlt
                     = Arrays.stream(record.getSensorDataValues()).filter(keyValuePair -> keyValuePair.getValueType().equals("GPS_height")).findAny();
+            boolean locationChanged = false;
             if(pairLat.isPresent() && pairLng.isPresent() && pairAlt.isPresent() && pairLat.get().getValue() != -200) {
-                sensor.setGpsLatitude(pairLat.get().getValue());
-                sensor.setGpsLongitude(pairLng.get().getValue());
+                // Compare with the stored accuracy, so that GPS jitter does not count as a movement
+                double latitude = SharedUtils.round(pairLat.get().getValue(), ConstantUtils.GPS_COORDINATE_ACCURACY);
+                double longitude = SharedUtils.round(pairLng.get().getValue(), ConstantUtils.GPS_COORDINATE_ACCURACY);
+                locationChanged = latitude != sensor.getGpsLatitude() || longitude != sensor.getGpsLongitude();
+                sensor.setGpsLatitude(latitude);
+                sensor.setGpsLongitude(longitude);
                 sensor.setGpsAltitude((int) Math.round(pairAlt.get().getValue()));
             }
             // Save to db
             sensorRepository.save(sensor);
+            if(locationChanged) {
+                spatialIndexService.updateSensor(sensor);
+                sensorChangeService.recordChange(sensor.getChipId(), SensorChange.TYPE_UPDATED);
+            }
+            // The sensor map only changes, if the sensor got active again or moved
+            if(wasInactive || locationChanged) sensorMapService.invalidate();
+        });
+        // Save record to data db first, so that it does not get lost, if one of the derived updates fails
+        template.save(dataRecord, String.valueOf(record.getChipId()));
+        statsCounterService.addRecord();
+        // Update latest values and aggregates of the sensor's region
+        sensorOptional.ifPresent(sensor -> {
+            latestValueService.update(sensor.getChipId(), timestamp, dataRecord.getSensorDataValues());
+            regionService.addRecord(sensor.getCountry(), sensor.getCity(), timestamp, dataRecord.getSensorDataValues());
+            try {
+                rankingService.addRecord(sensor.getChipId(), sensor.getCountry(), sensor.getCity(), timestamp, dataRecord.getSensorDataValues());
+            } catch (RuntimeException e) {
+                // The ranking is only a derived view, so the push itself succeeded anyway
+                log.warn("Was not able to update the pollution ranking with sensor " + sensor.getChipId(), e);
+            }
         });
-        // Save record to data db
-        template.save(convertToDbo(record), String.valueOf(record.getChipId()));
         return true;
     }
 
@@ -6,29 +6,58 @@ package com.chillibits.particulatematterapi.service;
 
 import com.chillibits.particulatematterapi.exception.ErrorCode;
 import com.chillibits.particulatematterapi.exception.exception.RankingDataException;
+import com.chillibits.particulatematterapi.model.db.data.DataRecord;
 import com.chillibits.particulatematterapi.model.dto.RankingItemCityCompressedDto;
 import com.chillibits.particulatematterapi.model.dto.RankingItemCityDto;
 import com.chillibits.particulatematterapi.model.dto.RankingItemCountryCompressedDto;
 import com.chillibits.particulatematterapi.model.dto.RankingItemCountryDto;
+import com.chillibits.particulatematterapi.model.dto.RankingItemPollutionDto;
 import com.chillibits.particulatematterapi.repository.SensorRepository;
+import com.chillibits.particulatematterapi.shared.ConstantUtils;
+import com.chillibits.particulatematterapi.shared.PollutionRanking;
+import com.chillibits.particulatematterapi.shared.RankingCounter;
+import com.chillibits.particulatematterapi.shared.SharedUtils;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
 import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
+import java.util.Comparator;
 import java.util.List;
+import java.util.Objects;
 import java.util.stream.Collectors;
 
+/**
+ * Ranks cities and countries by their number of sensors and by their current pollution
+ *
+ * The counters are loaded once from the database and updated, when sensors are added, relocated or deleted. They are
+ * rebuilt periodically to pick up changes, which did not go through the api. The pollution ranking averages the latest
+ * pushed values of the sensors in every region. Only regions with a min number of sensors are ranked by pollution.
+ */
+@Slf4j
 @Service
 public class RankingService {
 
+    private static final Comparator<String> NAME_ORDER = Comparator.nullsFirst(Comparator.naturalOrder());
+
     @Autowired
     private SensorRepository sensorRepository;
     @Autowired
     private ModelMapper mapper;
 
+    private final RankingCounter<City> cityRanking = new RankingCounter<>(Comparator.comparing(City::getCountry, NAME_ORDER).thenComparing(City::getCity, NAME_ORDER));
+    private final RankingCounter<String> countryRanking = new RankingCounter<>(NAME_ORDER);
+    private final PollutionRanking pollutionRanking = new PollutionRanking();
+    private volatile boolean initialized = false;
+
     public List<RankingItemCityDto> getRankingByCity(Integer items) throws RankingDataException {
         if(items < 1) throw new RankingDataException(ErrorCode.INVALID_ITEMS_NUMBER);
-        return sensorRepository.getRankingByCity(items);
+        ensureInitialized();
+        return cityRanking.getTop(items).stream()
+                .map(item -> new RankingItemCityDto(item.getKey().getCountry(), item.getKey().getCity(), item.getCount()))
+                .collect(Collectors.toList());
     }
 
     public List<RankingItemCityCompressedDto> getRankingByCityCompressed(Integer items) throws RankingDataException {
@@ -39,7 +68,10 @@ public class RankingService {
 
     public List<RankingItemCountryDto> getRankingByCountry(Integer items) throws RankingDataException {
         if(items < 1) throw new RankingDataException(ErrorCode.INVALID_ITEMS_NUMBER);
-        return sensorRepository.getRankingByCountry(items);
+        ensureInitialized();
+        return countryRanking.getTop(items).stream()
+                .map(item -> new RankingItemCountryDto(item.getKey(), item.getCount()))
+                .collect(Collectors.toList());
     }
 
     public List<RankingItemCountryCompressedDto> getRankingByCountryCompressed(Integer items) throws RankingDataException {
@@ -48,8 +80,71 @@ public class RankingService {
                 .collect(Collectors.toList());
     }
 
+    public List<RankingItemPollutionDto> getRankingByPollution(Integer items, String valueType, boolean countries, boolean ascending)
+            throws RankingDataException {
+        if(items < 1) throw new RankingDataException(ErrorCode.INVALID_ITEMS_NUMBER);
+        if(!ConstantUtils.POLLUTION_VALUE_TYPES.contains(valueType)) throw new RankingDataException(ErrorCode.INVALID_VALUE_TYPE);
+        return pollutionRanking.getTop(items, valueType, countries, ascending, ConstantUtils.POLLUTION_MIN_SENSORS).stream()
+                .map(item -> new RankingItemPollutionDto(item.getCountry(), item.getCity(), SharedUtils.round(item.getAverage(), 2), item.getSensorCount()))
+                .collect(Collectors.toList());
+    }
+
+    public void addRecord(long chipId, String country, String city, long timestamp, DataRecord.SensorDataValue[] values) {
+        if(country == null || city == null || values == null) return;
+        for(DataRecord.SensorDataValue value : values) {
+            if(ConstantUtils.POLLUTION_VALUE_TYPES.contains(value.getValueType()) && Double.isFinite(value.getValue()))
+                pollutionRanking.update(chipId, country, city, value.getValueType(), value.getValue(), timestamp);
+        }
+    }
+
+    @Scheduled(fixedRate = ConstantUtils.POLLUTION_PRUNE_INTERVAL)
+    public void pruneRecords() {
+        // Outdated values are not representative anymore
+        pollutionRanking.prune(System.currentTimeMillis() - ConstantUtils.LATEST_VALUE_MAX_AGE);
+    }
+
+    public synchronized void addSensor(String country, String city) {
+        // Changes before the initialization are contained in the initial load
+        if(!initialized) return;
+        cityRanking.add(new City(country, city), 1);
+        countryRanking.add(country, 1);
+    }
+
+    public synchronized void removeSensor(long chipId, String country, String city) {
+        pollutionRanking.remove(chipId);
+        if(!initialized) return;
+        cityRanking.add(new City(country, city), -1);
+        countryRanking.add(country, -1);
+    }
+
+    public synchronized void relocateSensor(String oldCountry, String oldCity, String newCountry, String newCity) {
+        if(Objects.equals(oldCountry, newCountry) && Objects.equals(oldCity, newCity)) return;
+        if(initialized) {
+            cityRanking.add(new City(oldCountry, oldCity), -1);
+            countryRanking.add(oldCountry, -1);
+        }
+        addSensor(newCountry, newCity);
+    }
+
+    @Scheduled(fixedRate = ConstantUtils.RANKING_REBUILD_INTERVAL, initialDelay = ConstantUtils.RANKING_REBUILD_INTERVAL)
+    public synchronized void rebuild() {
+        cityRanking.clear();
+        countryRanking.clear();
+        sensorRepository.getRankingByCity().forEach(item -> cityRanking.add(new City(item.getCountry(), item.getCity()), item.getCount()));
+        sensorRepository.getRankingByCountry().forEach(item -> countryRanking.add(item.getCountry(), item.getCount()));
+        initialized = true;
+        log.info("Built rankings of " + cityRanking.size() + " cities and " + countryRanking.size() + " countries.");
+    }
+
     // ---------------------------------------------- Utility functions ------------------------------------------------
 
+    private void ensureInitialized() {
+        if(initialized) return;
+        synchronized(this) {
+            if(!initialized) rebuild();
+        }
+    }
+
     private RankingItemCityCompressedDto convertToCityDto(RankingItemCityDto item) {
         return mapper.map(item, RankingItemCityCompressedDto.class);
     }
@@ -57,4 +152,10 @@ public class RankingService {
     private RankingItemCountryCompressedDto convertToCountryDto(RankingItemCountryDto item) {
         return mapper.map(item, RankingItemCountryCompressedDto.class);
     }
+
+    @Value
+    private static class City {
+        String country;
+        String city;
+    }
 }
\ No newline at end of file
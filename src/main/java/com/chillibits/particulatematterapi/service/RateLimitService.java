@@ -0,0 +1,85 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.service;
+
+import com.chillibits.particulatematterapi.shared.ConstantUtils;
+import com.chillibits.particulatematterapi.shared.RateLimiter;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.Collection;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Limits the request rate per endpoint group and client
+ *
+ * Authenticated clients are limited by their id, anonymous clients by their ip address. The limit of a group is
+ * multiplied with the factor of the client role. Clients with multiple roles get the highest limit. Failed
+ * authentications are limited separately per ip address, before the credentials are checked.
+ */
+@Service
+public class RateLimitService {
+
+    private static final String AUTH_FAILURE_GROUP = "auth";
+    private static final long AUTH_FAILURE_INTERVAL = TimeUnit.MINUTES.toNanos(1) / ConstantUtils.AUTH_FAILURE_LIMIT;
+
+    private final RateLimiter rateLimiter = new RateLimiter();
+
+    /**
+     * Returns 0, if the request is allowed, otherwise the number of seconds until the next request is allowed
+     */
+    public long tryAcquire(String path, String clientKey, Collection<String> roles) {
+        String group = getGroup(path);
+        if(group == null) return 0;
+        long limit = getLimit(group, roles);
+        if(limit == 0) return 0;
+
+        long interval = TimeUnit.MINUTES.toNanos(1) / limit;
+        int burst = (int) Math.max(1, limit * ConstantUtils.RATE_LIMIT_BURST_SPAN / TimeUnit.MINUTES.toMillis(1));
+        return toSeconds(rateLimiter.tryAcquire(group + "_" + clientKey, interval, burst, System.nanoTime()));
+    }
+
+    /**
+     * Returns 0, if the address may try to authenticate, otherwise the number of seconds until the next try is allowed
+     */
+    public long getAuthFailureWait(String address) {
+        return toSeconds(rateLimiter.getWait(AUTH_FAILURE_GROUP + "_" + address, AUTH_FAILURE_INTERVAL, ConstantUtils.AUTH_FAILURE_BURST, System.nanoTime()));
+    }
+
+    public void addAuthFailure(String address) {
+        // If the bucket is empty already, the address is rejected with the next try anyway
+        rateLimiter.tryAcquire(AUTH_FAILURE_GROUP + "_" + address, AUTH_FAILURE_INTERVAL, ConstantUtils.AUTH_FAILURE_BURST, System.nanoTime());
+    }
+
+    @Scheduled(fixedRate = ConstantUtils.RATE_LIMIT_EVICTION_INTERVAL)
+    public void evictIdleBuckets() {
+        rateLimiter.evictIdle(System.nanoTime());
+    }
+
+    // ---------------------------------------------- Utility functions ------------------------------------------------
+
+    private String getGroup(String path) {
+        // First path segment, e.g. data for /data/country/Germany
+        int end = path.indexOf('/', 1);
+        String group = end == -1 ? path.substring(1) : path.substring(1, end);
+        return ConstantUtils.RATE_LIMITS.containsKey(group) ? group : null;
+    }
+
+    private long toSeconds(long wait) {
+        return wait == 0 ? 0 : Math.max(1, TimeUnit.NANOSECONDS.toSeconds(wait + TimeUnit.SECONDS.toNanos(1) - 1));
+    }
+
+    private long getLimit(String group, Collection<String> roles) {
+        long limit = ConstantUtils.RATE_LIMITS.get(group);
+        if(roles.isEmpty()) return limit;
+        long factor = 1;
+        for(String role : roles) {
+            int roleFactor = ConstantUtils.RATE_LIMIT_ROLE_FACTORS.getOrDefault(role, 1);
+            if(roleFactor == 0) return 0;
+            factor = Math.max(factor, roleFactor);
+        }
+        return limit * factor;
+    }
+}
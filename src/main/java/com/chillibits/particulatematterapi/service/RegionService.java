@@ -0,0 +1,296 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.service;
+
+import com.chillibits.particulatematterapi.model.db.data.DataRecord;
+import com.chillibits.particulatematterapi.model.db.data.RegionAggregate;
+import com.chillibits.particulatematterapi.model.db.main.Sensor;
+import com.chillibits.particulatematterapi.model.dto.DataRecordDto;
+import com.chillibits.particulatematterapi.repository.SensorRepository;
+import com.chillibits.particulatematterapi.shared.ConstantUtils;
+import com.chillibits.particulatematterapi.shared.ValueAggregator;
+import lombok.extern.slf4j.Slf4j;
+import me.tongfei.progressbar.ProgressBar;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Hourly aggregates of the values per city and country
+ *
+ * Pushed values are collected in memory and written as a single bulk of upserts periodically, so that pushes do not
+ * pay for an additional database round trip. Failed upserts are kept for the next flush. The aggregates of closed hours
+ * can be rebuilt from the raw sensor data.
+ */
+@Slf4j
+@Service
+public class RegionService {
+
+    @Autowired
+    private MongoTemplate template;
+    @Autowired
+    private SensorRepository sensorRepository;
+
+    private final Map<String, PendingAggregate> pending = new ConcurrentHashMap<>();
+    private final ExecutorService rebuildExecutor = Executors.newSingleThreadExecutor();
+    private final AtomicBoolean rebuilding = new AtomicBoolean();
+
+    // ------------------------------------------------ Ingest functions -----------------------------------------------
+
+    public void addRecord(String country, String city, long timestamp, DataRecord.SensorDataValue[] values) {
+        if(country == null || city == null || values == null || values.length == 0) return;
+        long hour = getHour(timestamp);
+        for(int i = 0; i < values.length; i++) {
+            double value = values[i].getValue();
+            if(!Double.isFinite(value)) continue;
+            addPending(country, city, hour, values[i].getValueType(), i, value);
+            addPending(country, ConstantUtils.BLANK_COLUMN, hour, values[i].getValueType(), i, value);
+        }
+    }
+
+    @Scheduled(fixedDelay = ConstantUtils.REGION_FLUSH_INTERVAL)
+    public synchronized void flush() {
+        if(pending.isEmpty()) return;
+        BulkOperations bulkOps = template.bulkOps(BulkOperations.BulkMode.UNORDERED, ConstantUtils.REGION_TABLE_NAME);
+        List<PendingAggregate> updates = new ArrayList<>();
+        for(String id : pending.keySet()) {
+            // Values, which are added after the removal, go into a new entry for the next flush
+            PendingAggregate a = pending.remove(id);
+            if(a == null) continue;
+            addUpsert(bulkOps, a.country, a.city, a.hour, a.valueType, a.position, a.sum, a.sumSquares, a.count, a.min, a.max);
+            updates.add(a);
+        }
+        if(updates.isEmpty()) return;
+        try {
+            bulkOps.execute();
+        } catch (BulkOperationException e) {
+            // Keep the values of the failed upserts for the next flush. The others are applied already
+            e.getErrors().forEach(error -> restorePending(updates.get(error.getIndex())));
+            log.warn("Was not able to flush " + e.getErrors().size() + " region aggregates");
+        } catch (RuntimeException e) {
+            updates.forEach(this::restorePending);
+            log.warn("Was not able to flush " + updates.size() + " region aggregates", e);
+        }
+    }
+
+    /**
+     * Starts rebuilding the region aggregates of the passed time span in the background
+     *
+     * @return False, if a rebuild is already running
+     */
+    public boolean startRebuild(long from, long to) {
+        if(!rebuilding.compareAndSet(false, true)) return false;
+        try {
+            rebuildExecutor.execute(() -> {
+                try {
+                    rebuildAggregates(from, to);
+                } catch (RuntimeException e) {
+                    log.error("Was not able to rebuild region aggregates", e);
+                } finally {
+                    rebuilding.set(false);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            rebuilding.set(false);
+            return false;
+        }
+        return true;
+    }
+
+    public void rebuildAggregates(long from, long to) {
+        // Only hours, which are closed for longer than the slack, are rebuilt. All of their pushes are stored already and
+        // no new values for them can arrive, because pushes are stamped with the current time
+        long fromHour = getHour(Math.max(from, 0));
+        long toHour = Math.min(to == 0 ? Long.MAX_VALUE : getHour(to), getHour(System.currentTimeMillis() - ConstantUtils.REGION_REBUILD_SLACK));
+        if(fromHour >= toHour) return;
+        log.info("Rebuilding region aggregates ...");
+        // Values of these hours, which are still pending, are read from the raw data and would be counted twice otherwise
+        discardPending(fromHour, toHour);
+        template.remove(Query.query(Criteria.where("hour").gte(fromHour).lt(toHour)), ConstantUtils.REGION_TABLE_NAME);
+        for(Sensor sensor : ProgressBar.wrap(sensorRepository.findAll(), "Aggregating")) {
+            if(sensor.getCountry() == null || sensor.getCity() == null) continue;
+            // Pre-aggregate the records of this sensor to keep the number of upserts low
+            Map<Long, ValueAggregator> hours = new TreeMap<>();
+            Query query = Query.query(Criteria.where("timestamp").gte(fromHour).lt(toHour));
+            query.fields().include("timestamp").include("sensorDataValues");
+            try (CloseableIterator<DataRecord> records = template.stream(query, DataRecord.class, String.valueOf(sensor.getChipId()))) {
+                records.forEachRemaining(record -> {
+                    if(record.getSensorDataValues() == null) return;
+                    ValueAggregator aggregator = hours.computeIfAbsent(getHour(record.getTimestamp()), hour -> new ValueAggregator());
+                    for(DataRecord.SensorDataValue value : record.getSensorDataValues())
+                        if(Double.isFinite(value.getValue())) aggregator.add(value.getValueType(), value.getValue());
+                });
+            }
+            if(hours.isEmpty()) continue;
+            // Merge them into the city and the country aggregates
+            BulkOperations bulkOps = template.bulkOps(BulkOperations.BulkMode.UNORDERED, ConstantUtils.REGION_TABLE_NAME);
+            hours.forEach((hour, a) -> {
+                for(int slot = 0; slot < a.size(); slot++) {
+                    long count = a.getCount(slot);
+                    double sum = a.getMean(slot) * count;
+                    double sumSquares = a.getM2(slot) + sum * a.getMean(slot);
+                    addUpsert(bulkOps, sensor.getCountry(), sensor.getCity(), hour, a.getValueType(slot), slot, sum, sumSquares, count, a.getMin(slot), a.getMax(slot));
+                    addUpsert(bulkOps, sensor.getCountry(), ConstantUtils.BLANK_COLUMN, hour, a.getValueType(slot), slot, sum, sumSquares, count, a.getMin(slot), a.getMax(slot));
+                }
+            });
+            bulkOps.execute();
+        }
+        log.info("Finished rebuilding region aggregates.");
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        rebuildExecutor.shutdownNow();
+        flush();
+    }
+
+    // ------------------------------------------------- Read functions ------------------------------------------------
+
+    public List<DataRecordDto> getChartDataCountry(String country, long from, long to, String valueType, int granularity) {
+        return getChartData(country, ConstantUtils.BLANK_COLUMN, from, to, valueType, granularity);
+    }
+
+    public List<DataRecordDto> getChartDataCity(String country, String city, long from, long to, String valueType, int granularity) {
+        return getChartData(country, city, from, to, valueType, granularity);
+    }
+
+    public static boolean supportsGranularity(int granularity) {
+        long granularityInMillis = granularity * 60L * 1000;
+        return granularityInMillis % ConstantUtils.REGION_AGGREGATE_SPAN == 0;
+    }
+
+    // ---------------------------------------------- Utility functions ------------------------------------------------
+
+    private List<DataRecordDto> getChartData(String country, String city, long from, long to, String valueType, int granularity) {
+        // Use the same buckets as the charts, which are computed from the raw data
+        long granularityInMillis = granularity * 60L * 1000;
+        int bucketCount = (int) ((to - from) / granularityInMillis);
+        if(bucketCount <= 0) return new ArrayList<>();
+        long endTimestamp = from + bucketCount * granularityInMillis;
+        Criteria criteria = Criteria.where("country").is(country).and("city").is(city).and("hour").gte(getHour(from)).lt(endTimestamp);
+        if(valueType != null) criteria.and("valueType").is(valueType);
+        Query query = Query.query(criteria).with(Sort.by(Sort.Direction.ASC, "hour"));
+        List<RegionAggregate> aggregates = template.find(query, RegionAggregate.class, ConstantUtils.REGION_TABLE_NAME);
+        if(aggregates == null) return new ArrayList<>(); // Do not remove aggregates == null
+
+        // Merge the hourly aggregates into buckets of the requested granularity, keeping the usual field order
+        aggregates.sort(Comparator.comparingLong(RegionAggregate::getHour).thenComparingInt(RegionAggregate::getPosition));
+        Map<Long, ValueAggregator> buckets = new TreeMap<>();
+        for(RegionAggregate a : aggregates) {
+            if(a.getCount() == 0) continue;
+            // An hour, which begins before the time range, is counted to the first bucket
+            long bucketIndex = Math.max(0, Math.min(Math.floorDiv(a.getHour() - from, granularityInMillis), bucketCount - 1));
+            long bucket = from + bucketIndex * granularityInMillis;
+            double mean = a.getSum() / a.getCount();
+            double m2 = Math.max(a.getSumSquares() - a.getSum() * mean, 0);
+            buckets.computeIfAbsent(bucket, key -> new ValueAggregator()).merge(a.getValueType(), a.getCount(), mean, m2, a.getMin(), a.getMax());
+        }
+
+        // Convert every bucket to an averaged data record
+        List<DataRecordDto> records = new ArrayList<>();
+        buckets.forEach((bucket, aggregator) ->
+                records.add(new DataRecordDto(bucket, null, aggregator.toSensorDataValues(3), ConstantUtils.BLANK_COLUMN)));
+        return records;
+    }
+
+    private void addUpsert(BulkOperations bulkOps, String country, String city, long hour, String valueType, int position,
+                           double sum, double sumSquares, long count, double min, double max) {
+        String id = country + ":" + city + ":" + hour + ":" + valueType;
+        Update update = new Update()
+                .setOnInsert("country", country)
+                .setOnInsert("city", city)
+                .setOnInsert("hour", hour)
+                .setOnInsert("valueType", valueType)
+                .setOnInsert("position", position)
+                .inc("sum", sum)
+                .inc("sumSquares", sumSquares)
+                .inc("count", count)
+                .min("min", min)
+                .max("max", max);
+        bulkOps.upsert(Query.query(Criteria.where("_id").is(id)), update);
+    }
+
+    private void addPending(String country, String city, long hour, String valueType, int position, double value) {
+        // Compute runs atomically per key, so that flush cannot remove an entry while it is updated
+        pending.compute(country + ":" + city + ":" + hour + ":" + valueType, (id, a) -> {
+            if(a == null) a = new PendingAggregate(country, city, hour, valueType, position);
+            a.add(value);
+            return a;
+        });
+    }
+
+    private void restorePending(PendingAggregate a) {
+        pending.merge(a.country + ":" + a.city + ":" + a.hour + ":" + a.valueType, a, (current, restored) -> {
+            current.merge(restored);
+            return current;
+        });
+    }
+
+    private synchronized void discardPending(long fromHour, long toHour) {
+        // Runs under the flush lock, so that no flush of these hours is in progress
+        pending.values().removeIf(a -> a.hour >= fromHour && a.hour < toHour);
+    }
+
+    private long getHour(long timestamp) {
+        return timestamp - Math.floorMod(timestamp, ConstantUtils.REGION_AGGREGATE_SPAN);
+    }
+
+    private static class PendingAggregate {
+        private final String country;
+        private final String city;
+        private final long hour;
+        private final String valueType;
+        private final int position;
+        private double sum;
+        private double sumSquares;
+        private long count;
+        private double min = Double.POSITIVE_INFINITY;
+        private double max = Double.NEGATIVE_INFINITY;
+
+        private PendingAggregate(String country, String city, long hour, String valueType, int position) {
+            this.country = country;
+            this.city = city;
+            this.hour = hour;
+            this.valueType = valueType;
+            this.position = position;
+        }
+
+        private void add(double value) {
+            sum += value;
+            sumSquares += value * value;
+            count++;
+            min = Math.min(min, value);
+            max = Math.max(max, value);
+        }
+
+        private void merge(PendingAggregate other) {
+            sum += other.sum;
+            sumSquares += other.sumSquares;
+            count += other.count;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+        }
+    }
+}
\ No newline at end of file
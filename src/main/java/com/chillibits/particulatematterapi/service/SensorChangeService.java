@@ -0,0 +1,107 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.service;
+
+import com.chillibits.particulatematterapi.model.db.data.SensorChange;
+import com.chillibits.particulatematterapi.model.db.data.StatsCounter;
+import com.chillibits.particulatematterapi.shared.ConstantUtils;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Change log of the sensor metadata
+ *
+ * Every change gets the next version number from an atomic counter. Concurrent changes may be written out of order,
+ * so readers only advance up to the first missing version, unless the gap is too old to be filled anymore.
+ */
+@Slf4j
+@Service
+public class SensorChangeService {
+
+    private static final String VERSION_COUNTER = "sensor_change_version";
+
+    @Autowired
+    private MongoTemplate template;
+
+    public void recordChange(long chipId, String type) {
+        Query counterQuery = Query.query(Criteria.where("_id").is(VERSION_COUNTER));
+        try {
+            try {
+                insertChange(counterQuery, chipId, type);
+            } catch (DuplicateKeyException e) {
+                // The counter is behind the log (e.g. it did not exist yet), so move it to the latest version and try again
+                template.upsert(counterQuery, new Update().max("count", getCurrentVersion()), ConstantUtils.COUNTER_TABLE_NAME);
+                insertChange(counterQuery, chipId, type);
+            }
+        } catch (RuntimeException e) {
+            log.error("Could not record change of sensor " + chipId, e);
+        }
+    }
+
+    public Changes getChanges(long since) {
+        long version = getCurrentVersion();
+        // The change with the passed version is included to check, whether the log still reaches back that far
+        Query query = Query.query(Criteria.where("_id").gte(since).lte(version)).with(Sort.by(Sort.Direction.ASC, "_id"));
+        List<SensorChange> changes = template.find(query, SensorChange.class, ConstantUtils.SENSOR_CHANGE_TABLE_NAME);
+        boolean complete = since > 0 && (since == version || (!changes.isEmpty() && changes.get(0).getVersion() == since));
+        if(!complete || changes.size() > ConstantUtils.MAX_SENSOR_CHANGES) return new Changes(version, true, new LinkedHashMap<>());
+
+        // Only the last change of each sensor is relevant. Stop before versions, which are allocated, but not written yet
+        Map<Long, String> changedSensors = new LinkedHashMap<>();
+        long syncedVersion = since;
+        long minGapTimestamp = System.currentTimeMillis() - ConstantUtils.SENSOR_CHANGE_WRITE_TIMEOUT;
+        for(SensorChange change : changes) {
+            if(change.getVersion() <= since) continue;
+            if(change.getVersion() != syncedVersion + 1 && change.getTimestamp() > minGapTimestamp) break;
+            changedSensors.put(change.getChipId(), change.getType());
+            syncedVersion = change.getVersion();
+        }
+        return new Changes(syncedVersion, false, changedSensors);
+    }
+
+    @Scheduled(cron = "0 30 4 * * ?") // Every day at 4:30
+    public void pruneChanges() {
+        long minTimestamp = System.currentTimeMillis() - ConstantUtils.SENSOR_CHANGE_RETENTION;
+        // Always keep the latest change, so that the current version is not lost
+        Query query = Query.query(Criteria.where("timestamp").lt(minTimestamp).and("_id").lt(getCurrentVersion()));
+        template.remove(query, ConstantUtils.SENSOR_CHANGE_TABLE_NAME);
+    }
+
+    // ---------------------------------------------- Utility functions ------------------------------------------------
+
+    private void insertChange(Query counterQuery, long chipId, String type) {
+        StatsCounter counter = template.findAndModify(counterQuery, new Update().inc("count", 1),
+                FindAndModifyOptions.options().upsert(true).returnNew(true), StatsCounter.class, ConstantUtils.COUNTER_TABLE_NAME);
+        if(counter == null) throw new IllegalStateException("No version allocated");
+        template.insert(new SensorChange(counter.getCount(), chipId, type, System.currentTimeMillis()), ConstantUtils.SENSOR_CHANGE_TABLE_NAME);
+    }
+
+    private long getCurrentVersion() {
+        Query query = new Query().with(Sort.by(Sort.Direction.DESC, "_id")).limit(1);
+        SensorChange latestChange = template.findOne(query, SensorChange.class, ConstantUtils.SENSOR_CHANGE_TABLE_NAME);
+        return latestChange != null ? latestChange.getVersion() : 0;
+    }
+
+    @Value
+    public static class Changes {
+        long version;
+        boolean fullSync;
+        Map<Long, String> changedSensors; // Chip id to type of the last change
+    }
+}
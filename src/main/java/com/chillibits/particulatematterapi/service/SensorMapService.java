@@ -0,0 +1,123 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.service;
+
+import com.chillibits.particulatematterapi.model.db.main.Sensor;
+import com.chillibits.particulatematterapi.model.dto.SensorCompressedDto;
+import com.chillibits.particulatematterapi.repository.SensorRepository;
+import com.chillibits.particulatematterapi.shared.ConstantUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import lombok.Value;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+import org.springframework.util.DigestUtils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Keeps a precomputed snapshot of the compressed sensor map
+ *
+ * The snapshot contains the sensors, their serialized JSON form and a gzip compressed copy of it. It is rebuilt in a
+ * fixed interval, because the active flag of the sensors changes over time, and on the next request after a change.
+ */
+@Slf4j
+@Service
+public class SensorMapService {
+
+    @Autowired
+    private SensorRepository sensorRepository;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final AtomicLong generation = new AtomicLong();
+    private volatile Snapshot allSensors;
+    private volatile Snapshot publishedSensors;
+
+    public Snapshot getSnapshot(boolean onlyPublished) {
+        Snapshot snapshot = onlyPublished ? publishedSensors : allSensors;
+        if(snapshot != null) return snapshot;
+        synchronized(this) {
+            snapshot = onlyPublished ? publishedSensors : allSensors;
+            return snapshot != null ? snapshot : rebuild(onlyPublished);
+        }
+    }
+
+    public void invalidate() {
+        generation.incrementAndGet();
+        allSensors = null;
+        publishedSensors = null;
+    }
+
+    @Scheduled(fixedRate = ConstantUtils.SENSOR_MAP_REFRESH_INTERVAL)
+    public synchronized void refresh() {
+        rebuild(true);
+        rebuild(false);
+    }
+
+    // ---------------------------------------------- Utility functions ------------------------------------------------
+
+    private Snapshot rebuild(boolean onlyPublished) {
+        long currentGeneration = generation.get();
+        List<Sensor> sensors = onlyPublished ? sensorRepository.findAllPublished() : sensorRepository.findAll();
+        long minLastMeasurement = System.currentTimeMillis() - ConstantUtils.MINUTES_UNTIL_INACTIVITY * 60 * 1000L;
+        SensorCompressedDto[] sensorArray = new SensorCompressedDto[sensors.size()];
+        for(int i = 0; i < sensorArray.length; i++) {
+            Sensor sensor = sensors.get(i);
+            sensorArray[i] = new SensorCompressedDto(sensor.getChipId(), sensor.getGpsLatitude(), sensor.getGpsLongitude(),
+                    sensor.getLastMeasurementTimestamp() > minLastMeasurement);
+        }
+        Snapshot snapshot = new Snapshot(sensorArray, serialize(sensorArray));
+
+        // Only keep the snapshot, if no sensor was changed in the meantime
+        if(generation.get() == currentGeneration) {
+            if(onlyPublished) publishedSensors = snapshot; else allSensors = snapshot;
+        }
+        return snapshot;
+    }
+
+    private byte[] serialize(SensorCompressedDto[] sensors) {
+        try {
+            return objectMapper.writeValueAsBytes(sensors);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream(data.length / 4);
+        try(GZIPOutputStream gzipOut = new GZIPOutputStream(out) {{ def.setLevel(Deflater.BEST_COMPRESSION); }}) {
+            gzipOut.write(data);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return out.toByteArray();
+    }
+
+    @Value
+    public static class Snapshot {
+        List<SensorCompressedDto> sensors;
+        byte[] json;
+        byte[] gzip;
+        String eTag;
+        long timestamp;
+
+        private Snapshot(SensorCompressedDto[] sensors, byte[] json) {
+            this.sensors = Collections.unmodifiableList(Arrays.asList(sensors));
+            this.json = json;
+            this.gzip = gzip(json);
+            this.eTag = "\"" + DigestUtils.md5DigestAsHex(json) + "\"";
+            this.timestamp = System.currentTimeMillis();
+        }
+    }
+}
@@ -6,29 +6,34 @@ package com.chillibits.particulatematterapi.service;
 
 import com.chillibits.particulatematterapi.exception.ErrorCode;
 import com.chillibits.particulatematterapi.exception.exception.SensorDataException;
+import com.chillibits.particulatematterapi.model.db.data.SensorChange;
 import com.chillibits.particulatematterapi.model.db.main.Link;
 import com.chillibits.particulatematterapi.model.db.main.Sensor;
 import com.chillibits.particulatematterapi.model.db.main.User;
 import com.chillibits.particulatematterapi.model.dto.LinkInsertUpdateDto;
+import com.chillibits.particulatematterapi.model.dto.SensorChangesDto;
 import com.chillibits.particulatematterapi.model.dto.SensorCompressedDto;
 import com.chillibits.particulatematterapi.model.dto.SensorDto;
 import com.chillibits.particulatematterapi.model.dto.SensorInsertUpdateDto;
-import com.chillibits.particulatematterapi.model.io.MapsPlaceResult;
 import com.chillibits.particulatematterapi.repository.LinkRepository;
 import com.chillibits.particulatematterapi.repository.SensorRepository;
 import com.chillibits.particulatematterapi.repository.UserRepository;
 import com.chillibits.particulatematterapi.shared.ConstantUtils;
 import com.chillibits.particulatematterapi.shared.SharedUtils;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.chillibits.particulatematterapi.shared.spatial.BoundingBox;
+import com.chillibits.particulatematterapi.shared.spatial.GeoPolygon;
+import com.chillibits.particulatematterapi.shared.spatial.PlaceIndex;
 import lombok.extern.slf4j.Slf4j;
 import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.stereotype.Service;
 
-import java.net.URL;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 import java.util.stream.Collectors;
 
 @Slf4j
@@ -45,19 +50,86 @@ public class SensorService {
     private MongoTemplate mongoTemplate;
     @Autowired
     private ModelMapper mapper;
+    @Autowired
+    private SpatialIndexService spatialIndexService;
+    @Autowired
+    private SensorMapService sensorMapService;
+    @Autowired
+    private LatestValueService latestValueService;
+    @Autowired
+    private SensorChangeService sensorChangeService;
+    @Autowired
+    private GeocodingService geocodingService;
+    @Autowired
+    private EntityCacheService entityCacheService;
+    @Autowired
+    private RankingService rankingService;
 
-    public List<SensorDto> getAllSensors(double latitude, double longitude, int radius, boolean onlyPublished) throws SensorDataException {
-        return getSensors(latitude, longitude, radius, onlyPublished).stream()
+    public List<SensorDto> getAllSensors(double latitude, double longitude, int radius, String bbox, boolean onlyPublished) throws SensorDataException {
+        return getSensors(latitude, longitude, radius, bbox, onlyPublished).stream()
                 .map(this::convertToDto)
                 .collect(Collectors.toList());
     }
 
-    public List<SensorCompressedDto> getAllSensorsCompressed(double latitude, double longitude, int radius, boolean onlyPublished) throws SensorDataException {
-        return getSensors(latitude, longitude, radius, onlyPublished).stream()
+    public List<SensorCompressedDto> getAllSensorsCompressed(double latitude, double longitude, int radius, String bbox, boolean onlyPublished) throws SensorDataException {
+        // The whole map is served from the precomputed snapshot
+        if (radius == 0 && bbox == null) return sensorMapService.getSnapshot(onlyPublished).getSensors();
+        return getSensors(latitude, longitude, radius, bbox, onlyPublished).stream()
                 .map(this::convertToCompressedDto)
                 .collect(Collectors.toList());
     }
 
+    public List<SensorDto> getSensorsInPolygon(String polygon, boolean onlyPublished) throws SensorDataException {
+        return getSensorsInArea(null, parsePolygon(polygon), onlyPublished).stream()
+                .map(this::convertToDto)
+                .collect(Collectors.toList());
+    }
+
+    public List<SensorCompressedDto> getSensorsInPolygonCompressed(String polygon, boolean onlyPublished) throws SensorDataException {
+        return getSensorsInArea(null, parsePolygon(polygon), onlyPublished).stream()
+                .map(this::convertToCompressedDto)
+                .collect(Collectors.toList());
+    }
+
+    public List<SensorDto> getNearestSensors(double latitude, double longitude, int count, boolean onlyPublished) throws SensorDataException {
+        // Validate parameters
+        if(Math.abs(latitude) > 90 || Math.abs(longitude) > 180) throw new SensorDataException(ErrorCode.INVALID_GPS_COORDINATES);
+        if(count < 1 || count > ConstantUtils.MAX_NEAREST_SENSORS) throw new SensorDataException(ErrorCode.INVALID_SENSOR_COUNT);
+
+        List<Sensor> sensors = getSensorsByChipIds(spatialIndexService.findNearest(latitude, longitude, count, onlyPublished));
+        setActiveFlags(sensors);
+        return sensors.stream().map(this::convertToDto).collect(Collectors.toList());
+    }
+
+    public SensorChangesDto getSensorChanges(long since, boolean onlyPublished) throws SensorDataException {
+        // Validate parameters
+        if(since < 0) throw new SensorDataException(ErrorCode.INVALID_CHANGE_VERSION);
+
+        SensorChangeService.Changes changes = sensorChangeService.getChanges(since);
+        List<SensorDto> sensors = new ArrayList<>();
+        List<Long> deleted = new ArrayList<>();
+        if(!changes.isFullSync()) {
+            List<Long> chipIds = changes.getChangedSensors().entrySet().stream()
+                    .filter(change -> !change.getValue().equals(SensorChange.TYPE_DELETED))
+                    .map(Map.Entry::getKey)
+                    .collect(Collectors.toList());
+            List<Sensor> changedSensors = getSensorsByChipIds(chipIds);
+            setActiveFlags(changedSensors);
+            Map<Long, Sensor> sensorMap = new HashMap<>();
+            changedSensors.forEach(sensor -> sensorMap.put(sensor.getChipId(), sensor));
+            // Sensors, which are not visible for the client anymore, count as deleted
+            changes.getChangedSensors().keySet().forEach(chipId -> {
+                Sensor sensor = sensorMap.get(chipId);
+                if(sensor == null || (onlyPublished && !sensor.isPublished())) {
+                    deleted.add(chipId);
+                } else {
+                    sensors.add(convertToDto(sensor));
+                }
+            });
+        }
+        return new SensorChangesDto(changes.getVersion(), changes.isFullSync(), sensors, deleted);
+    }
+
     public SensorDto getSingleSensor(long chipId) {
         return sensorRepository.findById(chipId).map(this::convertToDto).orElse(null);
     }
@@ -83,6 +155,10 @@ public class SensorService {
 
         // Save sensor to database
         Sensor createdSensor = sensorRepository.save(sensorDbo);
+        spatialIndexService.updateSensor(createdSensor);
+        sensorMapService.invalidate();
+        sensorChangeService.recordChange(createdSensor.getChipId(), SensorChange.TYPE_ADDED);
+        rankingService.addSensor(createdSensor.getCountry(), createdSensor.getCity());
 
         // Save UserSensorLink to the database
         Link link = new Link();
@@ -98,61 +174,112 @@ public class SensorService {
         // Check for possible faulty data parameters
         if(!sensorRepository.existsById(sensor.getChipId())) throw new SensorDataException(ErrorCode.SENSOR_NOT_EXISTING);
         validateSensorObject(sensor);
+        Sensor oldSensor = sensorRepository.findById(sensor.getChipId()).orElse(null);
 
         Sensor sensorDbo = convertToDbo(sensor);
-        retrieveCountryCityFromCoordinates(sensorDbo); // Update city and country in case that the coordinates were updated
-        return sensorRepository.updateSensor(sensorDbo);
+        // Update city and country only if the coordinates were updated, so that a changed geocoder does not move the sensor
+        if(oldSensor == null || isMoved(oldSensor, sensorDbo)) {
+            retrieveCountryCityFromCoordinates(sensorDbo);
+        } else {
+            sensorDbo.setCountry(oldSensor.getCountry());
+            sensorDbo.setCity(oldSensor.getCity());
+        }
+        Integer result = sensorRepository.updateSensor(sensorDbo);
+        entityCacheService.evict(Sensor.class, sensorDbo.getChipId());
+        if(oldSensor != null) rankingService.relocateSensor(oldSensor.getCountry(), oldSensor.getCity(), sensorDbo.getCountry(), sensorDbo.getCity());
+        spatialIndexService.updateSensor(sensorDbo);
+        sensorMapService.invalidate();
+        sensorChangeService.recordChange(sensorDbo.getChipId(), SensorChange.TYPE_UPDATED);
+        return result;
     }
 
     public void deleteSensorByChipId(long chipId) {
+        Sensor sensor = sensorRepository.findById(chipId).orElse(null);
         sensorRepository.deleteById(chipId);
+        entityCacheService.evict(Sensor.class, chipId);
+        if(sensor != null) rankingService.removeSensor(chipId, sensor.getCountry(), sensor.getCity());
+        spatialIndexService.removeSensor(chipId);
+        latestValueService.remove(chipId);
+        sensorMapService.invalidate();
+        sensorChangeService.recordChange(chipId, SensorChange.TYPE_DELETED);
     }
 
     // ---------------------------------------------- Utility functions ------------------------------------------------
 
-    private List<Sensor> getSensors(double latitude, double longitude, int radius, boolean onlyPublished) throws SensorDataException {
+    private List<Sensor> getSensors(double latitude, double longitude, int radius, String bbox, boolean onlyPublished) throws SensorDataException {
         // Validate parameters
         if (radius < 0) throw new SensorDataException(ErrorCode.INVALID_RADIUS);
 
+        if (bbox != null) {
+            // The bounding box filter takes precedence over the radius filter
+            try {
+                return getSensorsInArea(BoundingBox.parse(bbox), null, onlyPublished);
+            } catch (IllegalArgumentException e) {
+                throw new SensorDataException(ErrorCode.INVALID_BOUNDING_BOX);
+            }
+        }
         List<Sensor> sensors;
-        if (onlyPublished) {
-            if (radius == 0) sensors = sensorRepository.findAllPublished();
-            else sensors = sensorRepository.findAllPublishedInRadius(latitude, longitude, radius);
+        if (radius == 0) {
+            sensors = onlyPublished ? sensorRepository.findAllPublished() : sensorRepository.findAll();
         } else {
-            if (radius == 0) sensors = sensorRepository.findAll();
-            else sensors = sensorRepository.findAllInRadius(latitude, longitude, radius);
+            // Look up the sensors in range with the spatial index, instead of calculating the distance for every row
+            sensors = getSensorsByChipIds(spatialIndexService.findInRadius(latitude, longitude, radius, onlyPublished));
         }
+        setActiveFlags(sensors);
+        return sensors;
+    }
+
+    private List<Sensor> getSensorsInArea(BoundingBox box, GeoPolygon area, boolean onlyPublished) {
+        List<Sensor> sensors = getSensorsByChipIds(spatialIndexService.findInArea(box, area, onlyPublished));
+        setActiveFlags(sensors);
+        return sensors;
+    }
 
+    private GeoPolygon parsePolygon(String polygon) throws SensorDataException {
+        try {
+            return GeoPolygon.parse(polygon, ConstantUtils.MAX_POLYGON_VERTICES);
+        } catch (IllegalArgumentException e) {
+            throw new SensorDataException(ErrorCode.INVALID_POLYGON);
+        }
+    }
+
+    private List<Sensor> getSensorsByChipIds(List<Long> chipIds) {
+        if(chipIds.isEmpty()) return new ArrayList<>();
+        // Restore the order of the passed chip ids (e.g. by distance)
+        Map<Long, Sensor> sensors = new HashMap<>();
+        sensorRepository.findAllById(chipIds).forEach(sensor -> sensors.put(sensor.getChipId(), sensor));
+        return chipIds.stream().map(sensors::get).filter(Objects::nonNull).collect(Collectors.toList());
+    }
+
+    private void setActiveFlags(List<Sensor> sensors) {
         // Set active flag, if data was received within the last few days
         sensors.forEach(sensor ->
                 sensor.setActive(sensor.getLastMeasurementTimestamp() > System.currentTimeMillis() -
                         ConstantUtils.MINUTES_UNTIL_INACTIVITY * 60 * 1000)
         );
+    }
 
-        return sensors;
+    private boolean isMoved(Sensor oldSensor, Sensor newSensor) {
+        int accuracy = ConstantUtils.GPS_COORDINATE_ACCURACY;
+        return SharedUtils.round(oldSensor.getGpsLatitude(), accuracy) != SharedUtils.round(newSensor.getGpsLatitude(), accuracy) ||
+                SharedUtils.round(oldSensor.getGpsLongitude(), accuracy) != SharedUtils.round(newSensor.getGpsLongitude(), accuracy);
     }
 
     private void retrieveCountryCityFromCoordinates(Sensor sensor) {
         // Retrieve country and city from latitude and longitude
-        try {
-            String url = "https://maps.googleapis.com/maps/api/geocode/json?key=" + ConstantUtils.GOOGLE_API_KEY
-                    + "&latlng=" + sensor.getGpsLatitude() + "," + sensor.getGpsLongitude() + "&sensor=false&language=en";
-            MapsPlaceResult place = new ObjectMapper().readValue(new URL(url), MapsPlaceResult.class);
-            sensor.setCountry(place.getCountry());
-            sensor.setCity(place.getCity());
-        } catch (Exception e) {
-            log.warn("Was not able to retrieve country and city of sensor " + sensor.getChipId());
-            sensor.setCountry(MapsPlaceResult.UNKNOWN_COUNTRY);
-            sensor.setCity(MapsPlaceResult.UNKNOWN_COUNTRY);
-        }
+        PlaceIndex.Place place = geocodingService.getPlace(sensor.getGpsLatitude(), sensor.getGpsLongitude());
+        sensor.setCountry(place.getCountry());
+        sensor.setCity(place.getCity());
     }
 
     private SensorDto convertToDto(Sensor sensor) {
-        return mapper.map(sensor, SensorDto.class);
+        // Map the columns explicitly, so that the lazy user links are never touched
+        return new SensorDto(sensor.getChipId(), sensor.getFirmwareVersion(), sensor.getCreationTimestamp(), sensor.getGpsLatitude(),
+                sensor.getGpsLongitude(), sensor.getGpsAltitude(), sensor.getCountry(), sensor.getCity(), sensor.isIndoor(), sensor.isPublished());
     }
 
     private SensorCompressedDto convertToCompressedDto(Sensor sensor) {
-        return mapper.map(sensor, SensorCompressedDto.class);
+        return new SensorCompressedDto(sensor.getChipId(), sensor.getGpsLatitude(), sensor.getGpsLongitude(), sensor.isActive());
     }
 
     private Sensor convertToDbo(SensorInsertUpdateDto sensor) {
@@ -0,0 +1,258 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.service;
+
+import com.chillibits.particulatematterapi.exception.ErrorCode;
+import com.chillibits.particulatematterapi.exception.exception.DataAccessException;
+import com.chillibits.particulatematterapi.model.db.data.DataRecord;
+import com.chillibits.particulatematterapi.model.db.data.DataSketch;
+import com.chillibits.particulatematterapi.model.dto.DataStatsDto;
+import com.chillibits.particulatematterapi.repository.SensorRepository;
+import com.chillibits.particulatematterapi.shared.ConstantUtils;
+import com.chillibits.particulatematterapi.shared.QuantileSketch;
+import com.chillibits.particulatematterapi.shared.SharedUtils;
+import com.chillibits.particulatematterapi.shared.ValueAggregator;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+@Slf4j
+@Service
+public class SketchService {
+
+    @Autowired
+    private MongoTemplate template;
+    @Autowired
+    private SensorRepository sensorRepository;
+
+    public DataStatsDto getStatsSensor(long chipId, long from, long to, String valueType, double[] percentiles) throws DataAccessException {
+        return getStats(Collections.singletonList(chipId), from, to, valueType, percentiles);
+    }
+
+    public DataStatsDto getStatsCountry(String country, long from, long to, String valueType, double[] percentiles) throws DataAccessException {
+        return getStats(sensorRepository.getChipIdsOfSensorFromCountry(country), from, to, valueType, percentiles);
+    }
+
+    public DataStatsDto getStatsCity(String country, String city, long from, long to, String valueType, double[] percentiles) throws DataAccessException {
+        return getStats(sensorRepository.getChipIdsOfSensorFromCity(country, city), from, to, valueType, percentiles);
+    }
+
+    @Scheduled(cron = "0 15 0 * * ?") // Every day at 0:15
+    public void buildSketches() {
+        // Requests only merge the stored sketches, so the sketches of all days, which are over, are built here
+        long lastDayEnd = Math.floorDiv(System.currentTimeMillis(), ConstantUtils.SKETCH_SPAN) * ConstantUtils.SKETCH_SPAN;
+        for(long chipId : sensorRepository.getChipIdsOfAllSensors()) {
+            try {
+                buildSketches(chipId, lastDayEnd);
+            } catch (RuntimeException e) {
+                log.warn("Could not build the sketches of sensor " + chipId, e);
+            }
+        }
+    }
+
+    // ---------------------------------------------- Utility functions ------------------------------------------------
+
+    private DataStatsDto getStats(List<Long> chipIds, long from, long to, String valueType, double[] percentiles) throws DataAccessException {
+        // Check input parameters
+        if((from < 0 || to < 0) || (from > to)) throw new DataAccessException(ErrorCode.INVALID_TIME_RANGE_DATA);
+        for(double percentile : percentiles)
+            if(percentile < 0 || percentile > 100) throw new DataAccessException(ErrorCode.INVALID_PERCENTILE);
+
+        // Replace default values, with better ones
+        long now = System.currentTimeMillis();
+        long toTimestamp = to == 0 ? now : to;
+        long fromTimestamp = from == 0 ? toTimestamp - ConstantUtils.DEFAULT_DATA_TIME_SPAN : from;
+
+        // Split the time range into whole days, which are already over, and the partial rest
+        long span = ConstantUtils.SKETCH_SPAN;
+        long firstDay = Math.floorDiv(fromTimestamp + span - 1, span) * span;
+        long lastDayEnd = Math.floorDiv(Math.min(toTimestamp, now), span) * span;
+
+        StatsAccumulator stats = new StatsAccumulator();
+        if(firstDay >= lastDayEnd) {
+            for(long chipId : chipIds) addRawData(stats, chipId, fromTimestamp, toTimestamp, valueType);
+            return new DataStatsDto(fromTimestamp, toTimestamp, chipIds.size(), stats.toFieldStats(percentiles));
+        }
+
+        // The sketches of the last day may not be built yet, so this day is read from the raw data for sensors without one
+        long lastDay = lastDayEnd - span;
+        Set<Long> sensorsWithLastDay = addDaySketches(stats, chipIds, firstDay, lastDayEnd, lastDay, valueType);
+        for(long chipId : chipIds) {
+            addRawData(stats, chipId, fromTimestamp, firstDay, valueType);
+            addRawData(stats, chipId, sensorsWithLastDay.contains(chipId) ? lastDayEnd : lastDay, toTimestamp, valueType);
+        }
+        return new DataStatsDto(fromTimestamp, toTimestamp, chipIds.size(), stats.toFieldStats(percentiles));
+    }
+
+    private void addRawData(StatsAccumulator stats, long chipId, long from, long to, String valueType) {
+        if(from >= to) return;
+        Query query = Query.query(Criteria.where("timestamp").gte(from).lt(to)).cursorBatchSize(500);
+        query.fields().include("timestamp");
+        if(valueType != null) {
+            query.fields().elemMatch("sensorDataValues", Criteria.where("valueType").is(valueType));
+        } else {
+            query.fields().include("sensorDataValues");
+        }
+        try(CloseableIterator<DataRecord> records = template.stream(query, DataRecord.class, String.valueOf(chipId))) {
+            while(records.hasNext()) {
+                DataRecord record = records.next();
+                if(record.getSensorDataValues() == null) continue;
+                for(DataRecord.SensorDataValue value : record.getSensorDataValues()) {
+                    if(valueType == null || valueType.equals(value.getValueType())) stats.add(value.getValueType(), value.getValue());
+                }
+            }
+        }
+    }
+
+    private Set<Long> addDaySketches(StatsAccumulator stats, List<Long> chipIds, long firstDay, long lastDayEnd, long lastDay, String valueType) {
+        // Merge the stored day sketches of all sensors with a single query
+        Set<Long> sensorsWithLastDay = new HashSet<>();
+        Query query = Query.query(Criteria.where("chipId").in(chipIds).and("day").gte(firstDay).lt(lastDayEnd)).cursorBatchSize(500);
+        try(CloseableIterator<DataSketch> sketches = template.stream(query, DataSketch.class, ConstantUtils.SKETCH_TABLE_NAME)) {
+            while(sketches.hasNext()) {
+                DataSketch sketch = sketches.next();
+                if(sketch.getDay() == lastDay) sensorsWithLastDay.add(sketch.getChipId());
+                for(DataSketch.ValueSketch valueSketch : sketch.getValues()) {
+                    if(valueType == null || valueType.equals(valueSketch.getValueType())) stats.merge(valueSketch);
+                }
+            }
+        }
+        return sensorsWithLastDay;
+    }
+
+    private void buildSketches(long chipId, long lastDayEnd) {
+        // Continue after the latest sketch or start with the day of the first record
+        Query latestQuery = Query.query(Criteria.where("chipId").is(chipId)).with(Sort.by(Sort.Direction.DESC, "day")).limit(1);
+        DataSketch latestSketch = template.findOne(latestQuery, DataSketch.class, ConstantUtils.SKETCH_TABLE_NAME);
+        long firstDay;
+        if(latestSketch != null) {
+            firstDay = latestSketch.getDay() + ConstantUtils.SKETCH_SPAN;
+        } else {
+            Long firstRecord = getFirstRecordTimestamp(chipId);
+            if(firstRecord == null) return;
+            firstDay = Math.floorDiv(firstRecord, ConstantUtils.SKETCH_SPAN) * ConstantUtils.SKETCH_SPAN;
+        }
+        if(firstDay >= lastDayEnd) return;
+
+        // The records are sorted, so each day is complete, as soon as a record of the next day shows up
+        Query query = Query.query(Criteria.where("timestamp").gte(firstDay).lt(lastDayEnd))
+                .with(Sort.by(Sort.Direction.ASC, "timestamp")).cursorBatchSize(500);
+        query.fields().include("timestamp").include("sensorDataValues");
+        List<DataSketch> sketches = new ArrayList<>();
+        long day = -1;
+        StatsAccumulator stats = null;
+        try(CloseableIterator<DataRecord> records = template.stream(query, DataRecord.class, String.valueOf(chipId))) {
+            while(records.hasNext()) {
+                DataRecord record = records.next();
+                if(record.getSensorDataValues() == null) continue;
+                long recordDay = Math.floorDiv(record.getTimestamp(), ConstantUtils.SKETCH_SPAN) * ConstantUtils.SKETCH_SPAN;
+                if(recordDay != day) {
+                    // Only days with data get a sketch, so that empty days do not fill the sketch store
+                    if(stats != null) sketches.add(new DataSketch(chipId + ":" + day, chipId, day, stats.toValueSketches()));
+                    if(sketches.size() >= ConstantUtils.SKETCH_BUILD_BATCH_SIZE) {
+                        saveSketches(sketches);
+                        sketches = new ArrayList<>();
+                    }
+                    day = recordDay;
+                    stats = new StatsAccumulator();
+                }
+                for(DataRecord.SensorDataValue value : record.getSensorDataValues()) stats.add(value.getValueType(), value.getValue());
+            }
+        }
+        if(stats != null) sketches.add(new DataSketch(chipId + ":" + day, chipId, day, stats.toValueSketches()));
+        saveSketches(sketches);
+    }
+
+    private Long getFirstRecordTimestamp(long chipId) {
+        Query query = new Query().with(Sort.by(Sort.Direction.ASC, "timestamp")).limit(1);
+        query.fields().include("timestamp");
+        DataRecord record = template.findOne(query, DataRecord.class, String.valueOf(chipId));
+        return record != null ? record.getTimestamp() : null;
+    }
+
+    private void saveSketches(List<DataSketch> sketches) {
+        if(sketches.isEmpty()) return;
+        try {
+            template.bulkOps(BulkOperations.BulkMode.UNORDERED, DataSketch.class, ConstantUtils.SKETCH_TABLE_NAME).insert(sketches).execute();
+        } catch (BulkOperationException e) {
+            // Sketches of an interrupted run may exist already, which is fine
+            log.debug("Skipped " + e.getErrors().size() + " existing sketches");
+        }
+    }
+
+    private static class StatsAccumulator {
+        private final ValueAggregator moments = new ValueAggregator();
+        private final List<QuantileSketch> sketches = new ArrayList<>();
+
+        private int slot(String valueType) {
+            int slot = moments.slot(valueType);
+            while(sketches.size() <= slot) sketches.add(new QuantileSketch());
+            return slot;
+        }
+
+        private void add(String valueType, double value) {
+            if(!Double.isFinite(value)) return;
+            int slot = slot(valueType);
+            moments.add(slot, value);
+            sketches.get(slot).add(value);
+        }
+
+        private void merge(DataSketch.ValueSketch valueSketch) {
+            int slot = slot(valueSketch.getValueType());
+            moments.merge(slot, valueSketch.getCount(), valueSketch.getMean(), valueSketch.getM2(), valueSketch.getMin(), valueSketch.getMax());
+            sketches.get(slot).merge(QuantileSketch.fromState(valueSketch.getZeroCount(), valueSketch.getPositiveOffset(),
+                    valueSketch.getPositiveCounts(), valueSketch.getNegativeOffset(), valueSketch.getNegativeCounts()));
+        }
+
+        private DataSketch.ValueSketch[] toValueSketches() {
+            DataSketch.ValueSketch[] valueSketches = new DataSketch.ValueSketch[moments.size()];
+            for(int slot = 0; slot < moments.size(); slot++) {
+                QuantileSketch sketch = sketches.get(slot);
+                valueSketches[slot] = new DataSketch.ValueSketch(moments.getValueType(slot), moments.getCount(slot),
+                        moments.getMean(slot), moments.getM2(slot), moments.getMin(slot), moments.getMax(slot),
+                        sketch.getZeroCount(), sketch.getPositiveOffset(), sketch.getPositiveCounts(),
+                        sketch.getNegativeOffset(), sketch.getNegativeCounts());
+            }
+            return valueSketches;
+        }
+
+        private DataStatsDto.FieldStats[] toFieldStats(double[] percentiles) {
+            List<DataStatsDto.FieldStats> fields = new ArrayList<>();
+            for(int slot = 0; slot < moments.size(); slot++) {
+                if(moments.getCount(slot) == 0) continue;
+                double min = moments.getMin(slot);
+                double max = moments.getMax(slot);
+                Map<String, Double> quantiles = new LinkedHashMap<>();
+                for(double percentile : percentiles) {
+                    // The sketch value is only accurate to 1%, so use the exact bounds where possible
+                    double quantile = percentile == 0 ? min : percentile == 100 ? max
+                            : Math.max(min, Math.min(max, sketches.get(slot).getQuantile(percentile / 100)));
+                    quantiles.put("p" + BigDecimal.valueOf(percentile).stripTrailingZeros().toPlainString(), SharedUtils.round(quantile, 3));
+                }
+                fields.add(new DataStatsDto.FieldStats(moments.getValueType(slot), moments.getCount(slot),
+                        SharedUtils.round(moments.getMean(slot), 3), min, max,
+                        SharedUtils.round(moments.getStandardDeviation(slot), 3), quantiles));
+            }
+            return fields.toArray(DataStatsDto.FieldStats[]::new);
+        }
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.service;
+
+import com.chillibits.particulatematterapi.model.db.main.Sensor;
+import com.chillibits.particulatematterapi.repository.SensorRepository;
+import com.chillibits.particulatematterapi.shared.ConstantUtils;
+import com.chillibits.particulatematterapi.shared.spatial.BoundingBox;
+import com.chillibits.particulatematterapi.shared.spatial.GeoPoint;
+import com.chillibits.particulatematterapi.shared.spatial.GeoPolygon;
+import com.chillibits.particulatematterapi.shared.spatial.SpatialGrid;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import java.util.List;
+import java.util.stream.Collectors;
+
+@Slf4j
+@Service
+public class SpatialIndexService {
+
+    @Autowired
+    private SensorRepository sensorRepository;
+
+    private final SpatialGrid grid = new SpatialGrid(ConstantUtils.SPATIAL_GRID_CELL_SIZE);
+    private volatile boolean initialized = false;
+
+    public List<Long> findInRadius(double latitude, double longitude, int radius, boolean onlyPublished) {
+        ensureInitialized();
+        return grid.findInRadius(latitude, longitude, radius, onlyPublished).stream()
+                .map(GeoPoint::getId)
+                .collect(Collectors.toList());
+    }
+
+    public List<Long> findInArea(BoundingBox box, GeoPolygon polygon, boolean onlyPublished) {
+        ensureInitialized();
+        // Look up the candidates in the bounding box and refine them with the polygon
+        return grid.findInBoundingBox(box != null ? box : polygon.getBounds(), onlyPublished).stream()
+                .filter(point -> polygon == null || polygon.contains(point.getLatitude(), point.getLongitude()))
+                .map(GeoPoint::getId)
+                .collect(Collectors.toList());
+    }
+
+    public List<Long> findNearest(double latitude, double longitude, int count, boolean onlyPublished) {
+        ensureInitialized();
+        return grid.findNearest(latitude, longitude, count, onlyPublished).stream()
+                .map(GeoPoint::getId)
+                .collect(Collectors.toList());
+    }
+
+    public boolean containsSensor(long chipId) {
+        ensureInitialized();
+        return grid.get(chipId) != null;
+    }
+
+    public synchronized void updateSensor(long chipId, double latitude, double longitude, boolean published) {
+        // Changes before the initialization are contained in the initial load
+        if(!initialized) return;
+        if(isValidLocation(latitude, longitude)) {
+            grid.put(new GeoPoint(chipId, latitude, longitude, published));
+        } else {
+            grid.remove(chipId);
+        }
+    }
+
+    public void updateSensor(Sensor sensor) {
+        updateSensor(sensor.getChipId(), sensor.getGpsLatitude(), sensor.getGpsLongitude(), sensor.isPublished());
+    }
+
+    public synchronized void removeSensor(long chipId) {
+        if(initialized) grid.remove(chipId);
+    }
+
+    public synchronized void rebuild() {
+        log.info("Building spatial index ...");
+        grid.clear();
+        for(Sensor sensor : sensorRepository.findAll()) {
+            if(isValidLocation(sensor.getGpsLatitude(), sensor.getGpsLongitude()))
+                grid.put(new GeoPoint(sensor.getChipId(), sensor.getGpsLatitude(), sensor.getGpsLongitude(), sensor.isPublished()));
+        }
+        initialized = true;
+        log.info("Finished building spatial index with " + grid.size() + " sensors.");
+    }
+
+    // ---------------------------------------------- Utility functions ------------------------------------------------
+
+    private void ensureInitialized() {
+        if(initialized) return;
+        synchronized(this) {
+            if(!initialized) rebuild();
+        }
+    }
+
+    private boolean isValidLocation(double latitude, double longitude) {
+        return Math.abs(latitude) <= 90 && Math.abs(longitude) <= 180;
+    }
+}
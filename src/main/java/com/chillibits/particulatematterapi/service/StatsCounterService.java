@@ -0,0 +1,105 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.service;
+
+import com.chillibits.particulatematterapi.model.db.data.StatsCounter;
+import com.chillibits.particulatematterapi.shared.ConstantUtils;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Counts data records in real time
+ *
+ * The counters are kept in memory and flushed to the counter table periodically. Every counter belongs to a single day
+ * or month, so the counts of the current periods can be read without scanning the data. Server requests are counted by
+ * the access log rollups.
+ */
+@Slf4j
+@Service
+public class StatsCounterService {
+
+    private static final String RECORDS_DAY = "records_day_";
+    private static final String RECORDS_MONTH = "records_month_";
+
+    @Autowired
+    private MongoTemplate template;
+
+    private final Map<String, Counter> counters = new ConcurrentHashMap<>();
+
+    public void addRecord() {
+        getCounter(RECORDS_DAY + LocalDate.now()).pending.increment();
+        getCounter(RECORDS_MONTH + YearMonth.now()).pending.increment();
+    }
+
+    public long getRecordsToday() {
+        return getCount(RECORDS_DAY + LocalDate.now());
+    }
+
+    public long getRecordsThisMonth() {
+        return getCount(RECORDS_MONTH + YearMonth.now());
+    }
+
+    public void correctRecordsThisMonth(long minCount) {
+        // Counts of the time before the counter existed are only known by the stats calculation
+        String name = RECORDS_MONTH + YearMonth.now();
+        StatsCounter counter = template.findAndModify(Query.query(Criteria.where("_id").is(name)), new Update().max("count", minCount),
+                FindAndModifyOptions.options().upsert(true).returnNew(true), StatsCounter.class, ConstantUtils.COUNTER_TABLE_NAME);
+        if(counter != null) getCounter(name).persisted = counter.getCount();
+    }
+
+    @Scheduled(fixedRate = ConstantUtils.STATS_FLUSH_INTERVAL)
+    public void flush() {
+        // Make sure, that the counters of the current periods are loaded, even if nothing was counted yet
+        getCounter(RECORDS_DAY + LocalDate.now());
+        getCounter(RECORDS_MONTH + YearMonth.now());
+
+        String today = LocalDate.now().toString();
+        String thisMonth = YearMonth.now().toString();
+        counters.forEach((name, counter) -> {
+            long delta = counter.pending.sumThenReset();
+            try {
+                StatsCounter storedCounter = template.findAndModify(Query.query(Criteria.where("_id").is(name)), new Update().inc("count", delta),
+                        FindAndModifyOptions.options().upsert(true).returnNew(true), StatsCounter.class, ConstantUtils.COUNTER_TABLE_NAME);
+                if(storedCounter != null) counter.persisted = storedCounter.getCount();
+            } catch (RuntimeException e) {
+                // Keep the counts for the next attempt
+                counter.pending.add(delta);
+                log.warn("Was not able to flush stats counter " + name, e);
+                return;
+            }
+            // Counters of past periods are final now
+            if(!name.contains(today) && !name.contains(thisMonth) && counter.pending.sum() == 0) counters.remove(name, counter);
+        });
+    }
+
+    // ---------------------------------------------- Utility functions ------------------------------------------------
+
+    private Counter getCounter(String name) {
+        return counters.computeIfAbsent(name, key -> new Counter());
+    }
+
+    private long getCount(String name) {
+        Counter counter = counters.get(name);
+        return counter != null ? counter.persisted + counter.pending.sum() : 0;
+    }
+
+    private static class Counter {
+        private final LongAdder pending = new LongAdder(); // Not flushed yet
+        private volatile long persisted; // Count in the counter table after the last flush
+    }
+}
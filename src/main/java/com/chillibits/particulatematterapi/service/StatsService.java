@@ -6,25 +6,45 @@ package com.chillibits.particulatematterapi.service;
 
 import com.chillibits.particulatematterapi.exception.ErrorCode;
 import com.chillibits.particulatematterapi.exception.exception.StatsDataException;
+import com.chillibits.particulatematterapi.model.db.data.CollectionStats;
+import com.chillibits.particulatematterapi.model.db.data.LogItem;
 import com.chillibits.particulatematterapi.model.db.data.StatsItem;
 import com.chillibits.particulatematterapi.model.dto.StatsItemDto;
 import com.chillibits.particulatematterapi.repository.SensorRepository;
 import com.chillibits.particulatematterapi.shared.ConstantUtils;
+import com.chillibits.particulatematterapi.shared.StaleWhileRevalidateCache;
 import lombok.extern.slf4j.Slf4j;
 import me.tongfei.progressbar.ProgressBar;
+import org.bson.Document;
 import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.index.Index;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 
 import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
 import java.util.Calendar;
 import java.util.GregorianCalendar;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 @Slf4j
 @Service
@@ -36,37 +56,48 @@ public class StatsService {
     private MongoTemplate template;
     @Autowired
     private ModelMapper mapper;
+    @Autowired
+    private StatsCounterService statsCounterService;
+
+    private final ExecutorService refreshExecutor = Executors.newFixedThreadPool(ConstantUtils.STATS_CACHE_THREAD_COUNT);
+    private final StaleWhileRevalidateCache<Long, StatsItemDto> cache = new StaleWhileRevalidateCache<>(ConstantUtils.STATS_CACHE_FRESHNESS, refreshExecutor);
 
     public StatsItemDto getAllStats() {
+        return cache.get(0L, chipId -> calculateAllStats());
+    }
+
+    public StatsItemDto getStatsBySensor(long chipId) throws StatsDataException {
+        return cache.get(chipId, this::calculateStatsBySensor);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        refreshExecutor.shutdownNow();
+    }
+
+    // ---------------------------------------------- Utility functions ------------------------------------------------
+
+    private StatsItemDto calculateAllStats() {
         // Initialization
         long currentTime = System.currentTimeMillis();
         long[] timestamps = calculateTimestamps(currentTime);
-        // Load already calculated item from cache table
+        // Load the stats of the closed periods from cache table
         List<StatsItem> items = template.find(Query.query(Criteria.where("chipId").is(0)).limit(1), StatsItem.class, ConstantUtils.STATS_TABLE_NAME);
-        StatsItem newItem = items == null? new StatsItem() : items.get(0); // Do not remove items == null
-        // Retrieve newItem
+        StatsItem newItem = items == null || items.isEmpty() ? new StatsItem() : items.get(0); // Do not remove items == null
         newItem.setTimestamp(currentTime);
-        Set<String> collectionNames = getDataCollections();
-        // Data records
-        long dataRecordsToday = 0;
-        for(String collectionName : collectionNames)
-            dataRecordsToday += getRecordCountFromTimestamp(collectionName, timestamps[1], currentTime);
-        newItem.setDataRecordsToday(dataRecordsToday);
         // Sensor count
-        applySensorStats(newItem, collectionNames, timestamps[0]);
-        // Server request count
-        newItem.setServerRequestsTodayApp(getServerRequestsCountFromTimestamp(ConstantUtils.CLIENT_ID_PMAPP, timestamps[1], currentTime));
-        newItem.setServerRequestsTodayWebApp(getServerRequestsCountFromTimestamp(ConstantUtils.CLIENT_ID_PMAPP_WEB, timestamps[1], currentTime));
-        newItem.setServerRequestsTodayGoogleActions(getServerRequestsCountFromTimestamp(ConstantUtils.CLIENT_ID_PMAPP_GA, timestamps[1], currentTime));
-
-        // Save calculated values to caching table
-        template.remove(Query.query(Criteria.where("chipId").is(0)).limit(1), StatsItem.class, ConstantUtils.STATS_TABLE_NAME);
-        template.save(newItem, ConstantUtils.STATS_TABLE_NAME);
-
+        applySensorStats(newItem, getDataCollections(), timestamps[0]);
+        // Counts of the current periods. Requests are counted by the access log rollups only, like the closed periods
+        LocalDate today = toDate(currentTime);
+        newItem.setDataRecordsToday(statsCounterService.getRecordsToday());
+        newItem.setDataRecordsThisMonth(statsCounterService.getRecordsThisMonth());
+        newItem.setServerRequestsTodayApp(getServerRequestsCount(ConstantUtils.CLIENT_ID_PMAPP, today));
+        newItem.setServerRequestsTodayWebApp(getServerRequestsCount(ConstantUtils.CLIENT_ID_PMAPP_WEB, today));
+        newItem.setServerRequestsTodayGoogleActions(getServerRequestsCount(ConstantUtils.CLIENT_ID_PMAPP_GA, today));
         return convertToDto(newItem);
     }
 
-    public StatsItemDto getStatsBySensor(long chipId) throws StatsDataException {
+    private StatsItemDto calculateStatsBySensor(long chipId) throws StatsDataException {
         // Check if sensor is existing
         Set<String> collectionNames = getDataCollections();
         String collectionName = String.valueOf(chipId);
@@ -77,26 +108,40 @@ public class StatsService {
         // Load already calculated item from cache table
         List<StatsItem> items = template.find(Query.query(Criteria.where("chipId").is(chipId)).limit(1), StatsItem.class, ConstantUtils.STATS_TABLE_NAME);
         StatsItem newItem = items.isEmpty() ? new StatsItem() : items.get(0);
-        long fromTime = newItem.getChipId() != 0L ? newItem.getTimestamp() : 0;
         newItem.setChipId(chipId);
         newItem.setTimestamp(currentTime);
 
         // Sensor count
         applySensorStats(newItem, collectionNames, timestamps[0]);
         // Records count
-        newItem.setDataRecordsTotal(getRecordCountFromTimestamp(collectionName, 0, currentTime));
-        newItem.setDataRecordsToday(getRecordCountFromTimestamp(collectionName, timestamps[1], currentTime));
-        newItem.setDataRecordsYesterday(getRecordCountFromTimestamp(collectionName, timestamps[2], timestamps[1]));
-        newItem.setDataRecordsThisMonth(getRecordCountFromTimestamp(collectionName, timestamps[3], currentTime));
-        newItem.setDataRecordsPrevMonth(getRecordCountFromTimestamp(collectionName, timestamps[4], timestamps[3]));
+        CollectionStats collectionStats = template.findById(collectionName, CollectionStats.class, ConstantUtils.COLLECTION_STATS_TABLE_NAME);
+        if(collectionStats != null && collectionStats.getCountedUntil() == timestamps[1]) {
+            // The closed periods were counted by the nightly stats calculation already
+            LocalDate today = toDate(currentTime);
+            YearMonth thisMonth = YearMonth.from(today);
+            long recordsToday = getRecordCountBetween(collectionName, timestamps[1], currentTime);
+            newItem.setDataRecordsTotal(collectionStats.getRecordsTotal() + recordsToday);
+            newItem.setDataRecordsToday(recordsToday);
+            newItem.setDataRecordsYesterday(collectionStats.getRecordsPerDay().getOrDefault(today.minusDays(1).toString(), 0L));
+            newItem.setDataRecordsThisMonth(collectionStats.getRecordsPerMonth().getOrDefault(thisMonth.toString(), 0L) + recordsToday);
+            newItem.setDataRecordsPrevMonth(collectionStats.getRecordsPerMonth().getOrDefault(thisMonth.minusMonths(1).toString(), 0L));
+        } else {
+            newItem.setDataRecordsTotal(getRecordCountFromTimestamp(collectionName, 0, currentTime));
+            newItem.setDataRecordsToday(getRecordCountFromTimestamp(collectionName, timestamps[1], currentTime));
+            newItem.setDataRecordsYesterday(getRecordCountFromTimestamp(collectionName, timestamps[2], timestamps[1]));
+            newItem.setDataRecordsThisMonth(getRecordCountFromTimestamp(collectionName, timestamps[3], currentTime));
+            newItem.setDataRecordsPrevMonth(getRecordCountFromTimestamp(collectionName, timestamps[4], timestamps[3]));
+        }
         // Server request count
-        newItem.setServerRequestsTotal(getServerRequestsCountFromTimestampSingleTotal(chipId, fromTime, currentTime));
-        newItem.setServerRequestsTodayApp(getServerRequestsCountFromTimestampSingle(ConstantUtils.CLIENT_ID_PMAPP, chipId, timestamps[1], currentTime));
-        newItem.setServerRequestsTodayWebApp(getServerRequestsCountFromTimestampSingle(ConstantUtils.CLIENT_ID_PMAPP_WEB, chipId, timestamps[1], currentTime));
-        newItem.setServerRequestsTodayGoogleActions(getServerRequestsCountFromTimestampSingle(ConstantUtils.CLIENT_ID_PMAPP_GA, chipId, timestamps[1], currentTime));
-        newItem.setServerRequestsYesterdayApp(getServerRequestsCountFromTimestampSingle(ConstantUtils.CLIENT_ID_PMAPP, chipId, timestamps[2], timestamps[1]));
-        newItem.setServerRequestsYesterdayWebApp(getServerRequestsCountFromTimestampSingle(ConstantUtils.CLIENT_ID_PMAPP_WEB, chipId, timestamps[2], timestamps[1]));
-        newItem.setServerRequestsYesterdayGoogleActions(getServerRequestsCountFromTimestampSingle(ConstantUtils.CLIENT_ID_PMAPP_GA, chipId, timestamps[2], timestamps[1]));
+        LocalDate today = toDate(currentTime);
+        LocalDate yesterday = today.minusDays(1);
+        newItem.setServerRequestsTotal(getServerRequestsCountSingleTotal(chipId));
+        newItem.setServerRequestsTodayApp(getServerRequestsCountSingle(ConstantUtils.CLIENT_ID_PMAPP, chipId, today));
+        newItem.setServerRequestsTodayWebApp(getServerRequestsCountSingle(ConstantUtils.CLIENT_ID_PMAPP_WEB, chipId, today));
+        newItem.setServerRequestsTodayGoogleActions(getServerRequestsCountSingle(ConstantUtils.CLIENT_ID_PMAPP_GA, chipId, today));
+        newItem.setServerRequestsYesterdayApp(getServerRequestsCountSingle(ConstantUtils.CLIENT_ID_PMAPP, chipId, yesterday));
+        newItem.setServerRequestsYesterdayWebApp(getServerRequestsCountSingle(ConstantUtils.CLIENT_ID_PMAPP_WEB, chipId, yesterday));
+        newItem.setServerRequestsYesterdayGoogleActions(getServerRequestsCountSingle(ConstantUtils.CLIENT_ID_PMAPP_GA, chipId, yesterday));
 
         // Save calculated values to caching table
         template.remove(Query.query(Criteria.where("chipId").is(chipId)).limit(1), StatsItem.class, ConstantUtils.STATS_TABLE_NAME);
@@ -105,26 +150,39 @@ public class StatsService {
         return convertToDto(newItem);
     }
 
-    // ---------------------------------------------- Utility functions ------------------------------------------------
-
     private long getRecordCountFromTimestamp(String collectionName, long from, long to) {
         return template.count(Query.query(Criteria.where("timestamp").gte(from).lte(to)).cursorBatchSize(500), collectionName);
     }
 
-    private long getServerRequestsCountFromTimestamp(int clientId, long from, long to) {
-        return template.count(Query.query(Criteria.where("timestamp").gte(from).lte(to).and("clientId").is(clientId)).cursorBatchSize(500), ConstantUtils.LOG_TABLE_NAME);
+    private long getRecordCountBetween(String collectionName, long from, long to) {
+        // Range on the indexed timestamp only, so that the count is answered from the index without loading documents
+        return template.count(Query.query(Criteria.where("timestamp").gte(from).lt(to)), collectionName);
+    }
+
+    private long getServerRequestsCount(int clientId, LocalDate day) {
+        return getRollupSum(Criteria.where("day").is(day.toString()).and("clientId").is(clientId).and("action").ne(null));
+    }
+
+    private long getServerRequestsCountTotal(LocalDate fromDay, LocalDate toDay) {
+        // Days, which are not closed yet, are counted by the next run
+        Criteria criteria = Criteria.where("day").lt(toDay.toString()).and("action").ne(null);
+        if(fromDay != null) criteria = new Criteria().andOperator(criteria, Criteria.where("day").gte(fromDay.toString()));
+        return getRollupSum(criteria);
     }
 
-    private long getServerRequestsCountFromTimestampTotal(long from) {
-        return template.count(new Query(Criteria.where("timestamp").gte(from)).cursorBatchSize(500), ConstantUtils.LOG_TABLE_NAME);
+    private long getServerRequestsCountSingle(int clientId, long chipId, LocalDate day) {
+        return getRollupSum(Criteria.where("target").is(LogItem.TARGET_SENSOR + chipId).and("day").is(day.toString()).and("clientId").is(clientId));
     }
 
-    private long getServerRequestsCountFromTimestampSingle(int clientId, long chipId, long from, long to) {
-        return template.count(Query.query(Criteria.where("timestamp").gte(from).lte(to).and("target").is(chipId).and("clientId").is(clientId)).cursorBatchSize(100), ConstantUtils.LOG_TABLE_NAME);
+    private long getServerRequestsCountSingleTotal(long chipId) {
+        return getRollupSum(Criteria.where("target").is(LogItem.TARGET_SENSOR + chipId));
     }
 
-    private long getServerRequestsCountFromTimestampSingleTotal(long chipId, long from, long to) {
-        return template.count(Query.query(Criteria.where("timestamp").gte(from).lte(to).and("target").is(chipId).and("clientId")).cursorBatchSize(500), ConstantUtils.LOG_TABLE_NAME);
+    private long getRollupSum(Criteria criteria) {
+        // The access log itself is never scanned, the rollups are counted when the requests are logged
+        Aggregation aggregation = Aggregation.newAggregation(Aggregation.match(criteria), Aggregation.group().sum("count").as("count"));
+        Document result = template.aggregate(aggregation, ConstantUtils.LOG_ROLLUP_TABLE_NAME, Document.class).getUniqueMappedResult();
+        return result != null ? ((Number) result.get("count")).longValue() : 0;
     }
 
     private void applySensorStats(StatsItem newItem, Set<String> collectionNames, long timestamp) {
@@ -152,10 +210,17 @@ public class StatsService {
         return timestamps;
     }
 
+    private LocalDate toDate(long timestamp) {
+        return Instant.ofEpochMilli(timestamp).atZone(ZoneId.systemDefault()).toLocalDate();
+    }
+
+    private long toTimestamp(LocalDate date) {
+        return date.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
     private Set<String> getDataCollections() {
         Set<String> collectionNames = template.getCollectionNames();
-        collectionNames.remove(ConstantUtils.LOG_TABLE_NAME);
-        collectionNames.remove(ConstantUtils.STATS_TABLE_NAME);
+        collectionNames.removeIf(name -> name.startsWith(ConstantUtils.META_TABLE_PREFIX));
         return collectionNames;
     }
 
@@ -177,37 +242,56 @@ public class StatsService {
         long fromTime = 0;
         long currentTime = System.currentTimeMillis();
         long[] timestamps = calculateTimestamps(currentTime);
-        long recordsTotal, recordsYesterday, recordsThisMonth, recordsPrevMonth;
-        recordsTotal = recordsYesterday = recordsThisMonth = recordsPrevMonth = 0;
         // Load already calculated item from cache table
         List<StatsItem> items = template.find(Query.query(Criteria.where("chipId").is(0)).limit(1), StatsItem.class, ConstantUtils.STATS_TABLE_NAME);
         StatsItem newItem = new StatsItem();
         if(!items.isEmpty()) {
             newItem = items.get(0);
             fromTime = newItem.getTimestamp();
-            recordsTotal = newItem.getDataRecordsTotal();
-            recordsThisMonth = newItem.getDataRecordsThisMonth();
-            recordsPrevMonth = newItem.getDataRecordsPrevMonth();
         }
+        Map<String, CollectionStats> collectionStats = new HashMap<>();
+        template.findAll(CollectionStats.class, ConstantUtils.COLLECTION_STATS_TABLE_NAME)
+                .forEach(stats -> collectionStats.put(stats.getCollectionName(), stats));
         log.info("Finished reading old stats");
 
-        // Calculate new stats
+        // Count the records of all collections in parallel
         Set<String> collectionNames = getDataCollections();
-        // Calculate total records
-        for(String collectionName : ProgressBar.wrap(collectionNames, "Calculating Stats")) {
-            recordsTotal += getRecordCountFromTimestamp(collectionName, fromTime, currentTime);
-            recordsYesterday += getRecordCountFromTimestamp(collectionName, timestamps[2], timestamps[1]);
-            recordsThisMonth += getRecordCountFromTimestamp(collectionName, timestamps[3], currentTime);
-            recordsPrevMonth += getRecordCountFromTimestamp(collectionName, timestamps[4], timestamps[3]);
+        long[] records = new long[4]; // Total, yesterday, this month, previous month
+        ExecutorService executor = Executors.newFixedThreadPool(ConstantUtils.STATS_THREAD_COUNT);
+        try(ProgressBar progressBar = new ProgressBar("Calculating Stats", collectionNames.size())) {
+            List<Callable<long[]>> tasks = new ArrayList<>(collectionNames.size());
+            for(String collectionName : collectionNames) {
+                tasks.add(() -> {
+                    long[] result = countCollectionRecords(collectionName, collectionStats.get(collectionName), currentTime);
+                    progressBar.step();
+                    return result;
+                });
+            }
+            for(Future<long[]> future : executor.invokeAll(tasks)) {
+                long[] result = future.get();
+                for(int i = 0; i < records.length; i++) records[i] += result[i];
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.error("Calculating stats was interrupted");
+            return;
+        } catch (ExecutionException e) {
+            log.error("Was not able to calculate stats", e.getCause());
+            return;
+        } finally {
+            executor.shutdownNow();
         }
-        newItem.setDataRecordsTotal(recordsTotal);
-        newItem.setDataRecordsYesterday(recordsYesterday);
-        newItem.setDataRecordsThisMonth(recordsThisMonth);
-        newItem.setDataRecordsPrevMonth(recordsPrevMonth);
-        newItem.setServerRequestsTotal(newItem.getServerRequestsTotal() + getServerRequestsCountFromTimestampTotal(fromTime));
-        newItem.setServerRequestsYesterdayApp(getServerRequestsCountFromTimestamp(ConstantUtils.CLIENT_ID_PMAPP, timestamps[2], timestamps[1]));
-        newItem.setServerRequestsYesterdayWebApp(getServerRequestsCountFromTimestamp(ConstantUtils.CLIENT_ID_PMAPP_WEB, timestamps[2], timestamps[1]));
-        newItem.setServerRequestsYesterdayGoogleActions(getServerRequestsCountFromTimestamp(ConstantUtils.CLIENT_ID_PMAPP_GA, timestamps[2], timestamps[1]));
+        newItem.setDataRecordsTotal(records[0]);
+        newItem.setDataRecordsYesterday(records[1]);
+        newItem.setDataRecordsThisMonth(records[2]);
+        newItem.setDataRecordsPrevMonth(records[3]);
+        statsCounterService.correctRecordsThisMonth(records[2]);
+        LocalDate today = toDate(currentTime);
+        LocalDate yesterday = today.minusDays(1);
+        newItem.setServerRequestsTotal(newItem.getServerRequestsTotal() + getServerRequestsCountTotal(fromTime != 0 ? toDate(fromTime) : null, today));
+        newItem.setServerRequestsYesterdayApp(getServerRequestsCount(ConstantUtils.CLIENT_ID_PMAPP, yesterday));
+        newItem.setServerRequestsYesterdayWebApp(getServerRequestsCount(ConstantUtils.CLIENT_ID_PMAPP_WEB, yesterday));
+        newItem.setServerRequestsYesterdayGoogleActions(getServerRequestsCount(ConstantUtils.CLIENT_ID_PMAPP_GA, yesterday));
 
         // Save calculated values to caching table
         log.info("Saving them to the cache table ...");
@@ -216,4 +300,59 @@ public class StatsService {
 
         log.info("Finished.");
     }
-}
\ No newline at end of file
+
+    /**
+     * Counts the records of a single collection
+     *
+     * Closed days and months are counted once and stored in the metadata of the collection, so that later runs only
+     * have to count the records since the last run. Returns total, yesterday, this month and previous month.
+     */
+    private long[] countCollectionRecords(String collectionName, CollectionStats stats, long currentTime) {
+        LocalDate today = toDate(currentTime);
+        LocalDate yesterday = today.minusDays(1);
+        YearMonth thisMonth = YearMonth.from(today);
+        YearMonth prevMonth = thisMonth.minusMonths(1);
+        if(stats == null) {
+            // New collection: make sure, that the counts can be answered from the timestamp index
+            template.indexOps(collectionName).ensureIndex(new Index().on("timestamp", Sort.Direction.ASC));
+            // Records before the previous month only matter for the total
+            long prevMonthStart = toTimestamp(prevMonth.atDay(1));
+            stats = new CollectionStats();
+            stats.setCollectionName(collectionName);
+            stats.setRecordsTotal(getRecordCountBetween(collectionName, 0, prevMonthStart));
+            stats.setCountedUntil(prevMonthStart);
+        }
+
+        // Count the closed periods since the last run. Segments end at month starts and at the start of yesterday, so
+        // that every segment belongs to a single month and yesterday is counted separately
+        long todayStart = toTimestamp(today);
+        long from = stats.getCountedUntil();
+        while(from < todayStart) {
+            LocalDate fromDate = toDate(from);
+            LocalDate toDate = fromDate.withDayOfMonth(1).plusMonths(1);
+            if(fromDate.isBefore(yesterday) && toDate.isAfter(yesterday)) toDate = yesterday;
+            if(toDate.isAfter(today)) toDate = today;
+            long to = toTimestamp(toDate);
+
+            long count = getRecordCountBetween(collectionName, from, to);
+            stats.setRecordsTotal(stats.getRecordsTotal() + count);
+            stats.getRecordsPerMonth().merge(YearMonth.from(fromDate).toString(), count, Long::sum);
+            if(fromDate.equals(yesterday)) stats.getRecordsPerDay().merge(fromDate.toString(), count, Long::sum);
+            from = to;
+        }
+        stats.setCountedUntil(todayStart);
+        // Periods before the previous month and days before yesterday are not needed anymore
+        stats.getRecordsPerMonth().keySet().retainAll(List.of(thisMonth.toString(), prevMonth.toString()));
+        stats.getRecordsPerDay().keySet().retainAll(List.of(yesterday.toString()));
+        template.save(stats, ConstantUtils.COLLECTION_STATS_TABLE_NAME);
+
+        // Today is not closed yet and therefore not stored
+        long recordsToday = getRecordCountBetween(collectionName, todayStart, currentTime);
+        return new long[] {
+                stats.getRecordsTotal() + recordsToday,
+                stats.getRecordsPerDay().getOrDefault(yesterday.toString(), 0L),
+                stats.getRecordsPerMonth().getOrDefault(thisMonth.toString(), 0L) + recordsToday,
+                stats.getRecordsPerMonth().getOrDefault(prevMonth.toString(), 0L)
+        };
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.service;
+
+import com.chillibits.particulatematterapi.exception.ErrorCode;
+import com.chillibits.particulatematterapi.exception.exception.DataAccessException;
+import com.chillibits.particulatematterapi.model.db.data.DataRecord;
+import com.chillibits.particulatematterapi.model.db.data.DataTile;
+import com.chillibits.particulatematterapi.model.dto.DataTileDto;
+import com.chillibits.particulatematterapi.repository.SensorRepository;
+import com.chillibits.particulatematterapi.shared.ConstantUtils;
+import com.chillibits.particulatematterapi.shared.SharedUtils;
+import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.Caffeine;
+import org.modelmapper.ModelMapper;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.stereotype.Service;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+@Service
+public class TileService {
+
+    @Autowired
+    private MongoTemplate template;
+    @Autowired
+    private ModelMapper mapper;
+    @Autowired
+    private SensorRepository sensorRepository;
+
+    // Open tiles still change, so they are only cached for a short time
+    private final Cache<String, DataTile> openTiles = Caffeine.newBuilder()
+            .maximumSize(ConstantUtils.TILE_OPEN_CACHE_SIZE)
+            .expireAfterWrite(ConstantUtils.TILE_OPEN_CACHE_TTL, TimeUnit.MILLISECONDS)
+            .build();
+
+    public DataTileDto getTileSensor(long chipId, int level, long index) throws DataAccessException {
+        return getTile(String.valueOf(chipId), () -> sensorRepository.findById(chipId).isPresent() ? Collections.singletonList(chipId) : Collections.emptyList(), level, index);
+    }
+
+    public DataTileDto getTileCountry(String country, int level, long index) throws DataAccessException {
+        return getTile("country/" + country, () -> sensorRepository.getChipIdsOfSensorFromCountry(country), level, index);
+    }
+
+    public DataTileDto getTileCity(String country, String city, int level, long index) throws DataAccessException {
+        return getTile("city/" + country + "/" + city, () -> sensorRepository.getChipIdsOfSensorFromCity(country, city), level, index);
+    }
+
+    public static long getTileSpan(int level) {
+        long span = ConstantUtils.TILE_BASE_SPAN;
+        for(int i = 0; i < level; i++) span *= ConstantUtils.TILE_LEVEL_FACTOR;
+        return span;
+    }
+
+    // ---------------------------------------------- Utility functions ------------------------------------------------
+
+    private DataTileDto getTile(String source, Supplier<List<Long>> chipIds, int level, long index) throws DataAccessException {
+        // Check input parameters
+        if(level < 0 || level >= ConstantUtils.TILE_LEVELS) throw new DataAccessException(ErrorCode.INVALID_TILE_LEVEL);
+        long span = getTileSpan(level);
+        long now = System.currentTimeMillis();
+        // Tiles in the future are rejected, which also prevents index * span from overflowing. The next tile is
+        // allowed, because the clocks of the clients may run ahead
+        if(index < 0 || index > now / span + 1) throw new DataAccessException(ErrorCode.INVALID_TILE_INDEX);
+
+        long from = index * span;
+        long to = from + span;
+        // Pushes, which arrive shortly after the end of the tile, may still belong to it
+        boolean closed = to + ConstantUtils.TILE_CLOSE_DELAY <= now;
+        String id = source + ":" + level + ":" + index;
+
+        DataTile tile;
+        if(closed) {
+            // Closed tiles can never change anymore, so they only have to be computed once
+            tile = template.findById(id, DataTile.class, ConstantUtils.TILE_TABLE_NAME);
+            if(tile == null) {
+                tile = computeTile(id, source, chipIds, level, index, from, to);
+                // Only tiles with data are stored, so that requests for arbitrary tiles cannot fill the tile store
+                if(tile.getSeries().length > 0) template.save(tile, ConstantUtils.TILE_TABLE_NAME);
+            }
+        } else {
+            // Concurrent requests for the same open tile share a single computation
+            tile = openTiles.get(id, key -> computeTile(id, source, chipIds, level, index, from, to));
+        }
+
+        DataTileDto tileDto = mapper.map(tile, DataTileDto.class);
+        tileDto.setClosed(closed);
+        return tileDto;
+    }
+
+    private DataTile computeTile(String id, String source, Supplier<List<Long>> chipIds, int level, long index, long from, long to) {
+        // Unknown sensors and regions do not have any data
+        List<Long> ids = chipIds.get();
+        return ids.isEmpty() ? new DataTile(id, source, level, index, from, to, 0, new DataTile.TileSeries[0])
+                : buildTile(id, source, ids, level, index, from, to);
+    }
+
+    private DataTile buildTile(String id, String source, List<Long> chipIds, int level, long index, long from, long to) {
+        long bucketSpan = (to - from) / ConstantUtils.TILE_RESOLUTION;
+        Map<String, TileAccumulator> accumulators = new LinkedHashMap<>();
+
+        // Only load the fields, which are needed to fill the buckets
+        Query query = Query.query(Criteria.where("timestamp").gte(from).lt(to)).cursorBatchSize(500);
+        query.fields().include("timestamp").include("sensorDataValues");
+        for(long chipId : chipIds) {
+            try(CloseableIterator<DataRecord> records = template.stream(query, DataRecord.class, String.valueOf(chipId))) {
+                while(records.hasNext()) {
+                    DataRecord record = records.next();
+                    if(record.getSensorDataValues() == null) continue;
+                    int bucket = (int) Math.min((record.getTimestamp() - from) / bucketSpan, ConstantUtils.TILE_RESOLUTION - 1);
+                    for(DataRecord.SensorDataValue value : record.getSensorDataValues())
+                        accumulators.computeIfAbsent(value.getValueType(), valueType -> new TileAccumulator()).add(bucket, value.getValue());
+                }
+            }
+        }
+
+        DataTile.TileSeries[] series = accumulators.entrySet().stream()
+                .map(entry -> entry.getValue().toSeries(entry.getKey(), from, bucketSpan))
+                .toArray(DataTile.TileSeries[]::new);
+        return new DataTile(id, source, level, index, from, to, chipIds.size(), series);
+    }
+
+    private static class TileAccumulator {
+        private final double[] min = new double[ConstantUtils.TILE_RESOLUTION];
+        private final double[] max = new double[ConstantUtils.TILE_RESOLUTION];
+        private final double[] sum = new double[ConstantUtils.TILE_RESOLUTION];
+        private final int[] count = new int[ConstantUtils.TILE_RESOLUTION];
+
+        private TileAccumulator() {
+            Arrays.fill(min, Double.POSITIVE_INFINITY);
+            Arrays.fill(max, Double.NEGATIVE_INFINITY);
+        }
+
+        private void add(int bucket, double value) {
+            if(value < min[bucket]) min[bucket] = value;
+            if(value > max[bucket]) max[bucket] = value;
+            sum[bucket] += value;
+            count[bucket]++;
+        }
+
+        private DataTile.TileSeries toSeries(String valueType, long from, long bucketSpan) {
+            // Empty buckets are left out
+            int size = (int) Arrays.stream(count).filter(c -> c > 0).count();
+            DataTile.TileSeries series = new DataTile.TileSeries(valueType, new long[size], new double[size],
+                    new double[size], new double[size], new int[size]);
+            for(int bucket = 0, i = 0; bucket < count.length; bucket++) {
+                if(count[bucket] == 0) continue;
+                series.getTimestamps()[i] = from + bucket * bucketSpan;
+                series.getMin()[i] = min[bucket];
+                series.getAvg()[i] = SharedUtils.round(sum[bucket] / count[bucket], 3);
+                series.getMax()[i] = max[bucket];
+                series.getCount()[i] = count[bucket];
+                i++;
+            }
+            return series;
+        }
+    }
+}
@@ -30,6 +30,8 @@ public class UserService {
     private ModelMapper mapper;
     @Autowired
     private JavaMailSender mailer;
+    @Autowired
+    private EntityCacheService entityCacheService;
 
     public List<UserDto> getAllUsers() {
         return userRepository.findAll().stream()
@@ -83,6 +85,7 @@ public class UserService {
         // Found. Update its status
         user.setStatus(User.ACTIVE);
         userRepository.updateUser(user);
+        entityCacheService.evict(User.class, user.getId());
         return true;
     }
 
@@ -90,11 +93,15 @@ public class UserService {
         // Validity checks
         validateUserObject(user);
         if(userRepository.findByEmail(user.getEmail()) == null) throw new UserDataException(ErrorCode.USER_NOT_EXISTING);
-        return userRepository.updateUser(convertToDbo(user));
+        User userDbo = convertToDbo(user);
+        Integer result = userRepository.updateUser(userDbo);
+        entityCacheService.evict(User.class, userDbo.getId());
+        return result;
     }
 
     public void deleteUserById(Integer id) {
         userRepository.deleteById(id);
+        entityCacheService.evict(User.class, id);
     }
 
     // ---------------------------------------------- Utility functions ------------------------------------------------
@@ -0,0 +1,67 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.shared;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Limits the number of concurrent executions
+ *
+ * Callers, which do not get a permit immediately, wait for a short time in a bounded queue. If the queue is full or
+ * the wait times out, the caller is rejected instead of occupying a thread any longer.
+ */
+public class Bulkhead {
+
+    private final Semaphore permits;
+    private final int maxWaiting;
+    private final long maxWait;
+    private final AtomicInteger waiting = new AtomicInteger();
+    private final LongAdder rejected = new LongAdder();
+
+    public Bulkhead(int maxConcurrent, int maxWaiting, long maxWait) {
+        this.permits = new Semaphore(maxConcurrent);
+        this.maxWaiting = maxWaiting;
+        this.maxWait = maxWait;
+    }
+
+    /**
+     * Tries to get a permit. Every successful call has to be followed by a call of release
+     */
+    public boolean tryAcquire() {
+        if(permits.tryAcquire()) return true;
+        try {
+            if(waiting.incrementAndGet() > maxWaiting) return reject();
+            if(permits.tryAcquire(maxWait, TimeUnit.MILLISECONDS)) return true;
+            return reject();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return reject();
+        } finally {
+            waiting.decrementAndGet();
+        }
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public int getAvailable() {
+        return permits.availablePermits();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    // ---------------------------------------------- Utility functions ------------------------------------------------
+
+    private boolean reject() {
+        rejected.increment();
+        return false;
+    }
+}
@@ -0,0 +1,91 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.shared;
+
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import javax.crypto.KeyGenerator;
+import javax.crypto.Mac;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.Key;
+import java.util.Base64;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Password encoder, which remembers successful verifications for a short time
+ *
+ * Verifying a BCrypt hash costs tens of milliseconds of cpu time, which would be spent on every request with HTTP Basic
+ * authentication. Successful verifications are cached by an HMAC of the stored hash and the raw secret. The stored hash
+ * is salted and therefore unique per client, so changing the secret automatically invalidates the old entries. The
+ * HMAC key is generated on startup and never leaves the process, so the cache does not contain the secrets.
+ */
+public class CachingPasswordEncoder implements PasswordEncoder {
+
+    private static final String HMAC_ALGORITHM = "HmacSHA256";
+
+    private final PasswordEncoder delegate;
+    private final long ttl;
+    private final int maxSize;
+    private final Key key;
+    private final Map<String, Long> verifications = new ConcurrentHashMap<>(); // Expiration timestamps
+
+    public CachingPasswordEncoder(PasswordEncoder delegate, long ttl, int maxSize) {
+        this.delegate = delegate;
+        this.ttl = ttl;
+        this.maxSize = maxSize;
+        try {
+            key = KeyGenerator.getInstance(HMAC_ALGORITHM).generateKey();
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    @Override
+    public String encode(CharSequence rawPassword) {
+        return delegate.encode(rawPassword);
+    }
+
+    @Override
+    public boolean matches(CharSequence rawPassword, String encodedPassword) {
+        if(rawPassword == null || encodedPassword == null) return delegate.matches(rawPassword, encodedPassword);
+        String cacheKey = getCacheKey(rawPassword, encodedPassword);
+        long currentTime = System.currentTimeMillis();
+        Long expiration = verifications.get(cacheKey);
+        if(expiration != null && expiration > currentTime) return true;
+
+        if(!delegate.matches(rawPassword, encodedPassword)) return false;
+        if(verifications.size() >= maxSize) verifications.values().removeIf(timestamp -> timestamp <= currentTime);
+        if(verifications.size() >= maxSize) verifications.clear();
+        verifications.put(cacheKey, currentTime + ttl);
+        return true;
+    }
+
+    @Override
+    public boolean upgradeEncoding(String encodedPassword) {
+        return delegate.upgradeEncoding(encodedPassword);
+    }
+
+    public void invalidateAll() {
+        verifications.clear();
+    }
+
+    // ---------------------------------------------- Utility functions ------------------------------------------------
+
+    private String getCacheKey(CharSequence rawPassword, String encodedPassword) {
+        try {
+            // Mac instances are not thread safe and cheap to create
+            Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+            mac.init(key);
+            mac.update(encodedPassword.getBytes(StandardCharsets.UTF_8));
+            mac.update((byte) 0);
+            mac.update(rawPassword.toString().getBytes(StandardCharsets.UTF_8));
+            return Base64.getEncoder().encodeToString(mac.doFinal());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -4,6 +4,9 @@
 
 package com.chillibits.particulatematterapi.shared;
 
+import java.util.List;
+import java.util.Map;
+
 public class ConstantUtils {
     public static final String EMPTY_COLUMN = "-";
     public static final String BLANK_COLUMN = "";
@@ -12,14 +15,86 @@ public class ConstantUtils {
     public static final int MINUTES_UNTIL_INACTIVITY = 4320; // 3 days in minutes
     public static final int UNKNOWN_USER_ID = 1;
     public static final int UNKNOWN_CLIENT_ID = 1;
-    public static final String LOG_TABLE_NAME = "0_AccessLog";
+    public static final String LOG_TABLE_NAME = "0_AccessLog"; // Prefix of the monthly partitions, e.g. 0_AccessLog_2021-05
+    public static final String LOG_ROLLUP_TABLE_NAME = "0_AccessLogRollup";
     public static final String STATS_TABLE_NAME = "0_StatsStore";
+    public static final String TILE_TABLE_NAME = "0_TileStore";
+    public static final String REGION_TABLE_NAME = "0_RegionStore";
+    public static final String SKETCH_TABLE_NAME = "0_SketchStore";
+    public static final String SENSOR_CHANGE_TABLE_NAME = "0_SensorChangeLog";
+    public static final String COUNTER_TABLE_NAME = "0_CounterStore";
+    public static final String COLLECTION_STATS_TABLE_NAME = "0_CollectionStatsStore";
+    public static final String META_TABLE_PREFIX = "0_"; // Collections with this prefix do not contain sensor data
     public static final boolean IMPORT_SENSORS_IF_TABLE_IS_EMPTY = true;
     public static final boolean INDEX_DB_ON_STARTUP = false;
     public static final boolean CALC_STATS_ON_STARTUP = false;
+    public static final boolean BUILD_REGION_AGGREGATES_ON_STARTUP = false;
     public static final long ROLLBACK_TIMESTAMP = 0; // Set to 0 to disable rollback
     public static final int CLIENT_ID_PMAPP = 1; // Official Particulate Matter App
     public static final int CLIENT_ID_PMAPP_WEB = 2; // Official Particulate Matter App Web
     public static final int CLIENT_ID_PMAPP_GA = 3; // Official Google Actions Client
+    public static final long TILE_BASE_SPAN = 6 * 60 * 60 * 1000; // Span of a level 0 tile (6 hours in milliseconds)
+    public static final int TILE_LEVEL_FACTOR = 4; // Each level covers four tiles of the level below
+    public static final int TILE_LEVELS = 6; // Level 0 (6 hours) up to level 5 (256 days)
+    public static final int TILE_RESOLUTION = 120; // Number of buckets per tile
+    public static final long TILE_CLOSE_DELAY = 5 * 60 * 1000; // Time span after the end of a tile, until it is closed, so that all of its pushes are stored (5 minutes in milliseconds)
+    public static final long TILE_OPEN_CACHE_TTL = 60 * 1000; // Time span, open tiles are cached for (1 minute in milliseconds)
+    public static final int TILE_OPEN_CACHE_SIZE = 1000; // Max number of cached open tiles
+    public static final long REGION_AGGREGATE_SPAN = 60 * 60 * 1000; // Span of a region aggregate (1 hour in milliseconds)
+    public static final long REGION_FLUSH_INTERVAL = 10 * 1000; // Interval for writing the pending region aggregates (10 seconds in milliseconds)
+    public static final long REGION_REBUILD_SLACK = 5 * 60 * 1000; // Time span after the end of an hour, until its aggregates may be rebuilt (5 minutes in milliseconds)
+    public static final long SKETCH_SPAN = 24 * 60 * 60 * 1000; // Span of a precomputed sketch (1 day in milliseconds)
+    public static final double SKETCH_RELATIVE_ACCURACY = 0.01; // Max relative error of percentiles
+    public static final int SKETCH_BUILD_BATCH_SIZE = 100; // Max number of day sketches, which are inserted at once by the build job
+    public static final double SPATIAL_GRID_CELL_SIZE = 0.1; // Cell size of the spatial sensor index in degrees (~11 km)
+    public static final int MAX_NEAREST_SENSORS = 100;
+    public static final int MAX_POLYGON_VERTICES = 10000;
+    public static final long SENSOR_CHANGE_RETENTION = 30L * 24 * 60 * 60 * 1000; // 30 days in milliseconds
+    public static final int MAX_SENSOR_CHANGES = 10000; // Clients with more changes have to reload all sensors
+    public static final long SENSOR_CHANGE_WRITE_TIMEOUT = 10 * 1000; // Time until a missing change version is skipped (10 seconds in milliseconds)
+    public static final long LATEST_VALUE_MAX_AGE = 60 * 60 * 1000; // Max age of a latest value (1 hour in milliseconds)
+    public static final List<String> POLLUTION_VALUE_TYPES = List.of("SDS_P1", "SDS_P2"); // Value types of the pollution ranking (PM10, PM2.5)
+    public static final int POLLUTION_MIN_SENSORS = 3; // Min number of sensors of a region to appear in the pollution ranking
+    public static final long POLLUTION_PRUNE_INTERVAL = 5 * 60 * 1000; // Interval for dropping outdated values from the pollution ranking (5 minutes in milliseconds)
+    public static final int STATS_THREAD_COUNT = 8; // Number of collections, which are counted in parallel by the nightly stats calculation
+    public static final long STATS_CACHE_FRESHNESS = 60 * 1000; // Time span, in which cached stats are served without refreshing them (1 minute in milliseconds)
+    public static final int STATS_CACHE_THREAD_COUNT = 2; // Number of threads for refreshing stale stats in the background
+    public static final long STATS_FLUSH_INTERVAL = 60 * 1000; // Interval for writing the stats counters to the db (1 minute in milliseconds)
+    public static final int ACCESS_LOG_BUFFER_SIZE = 65536; // Max number of access log entries, which wait for being written (power of two)
+    public static final int ACCESS_LOG_BATCH_SIZE = 1000; // Max number of access log entries per bulk insert
+    public static final long ACCESS_LOG_FLUSH_INTERVAL = 1000; // Interval for writing the access log to the db (1 second in milliseconds)
+    public static final int LOG_RETENTION_MONTHS = 12; // Monthly access log partitions, which are older, are dropped
+    public static final String MEDIA_TYPE_NDJSON = "application/x-ndjson";
+    public static final int LOG_PAGE_SIZE = 1000; // Default number of log items per page
+    public static final int LOG_MAX_PAGE_SIZE = 10000;
+    public static final double ACCESS_LOG_SAMPLE_THRESHOLD = 0.75; // Buffer fill level, from which only a sample of the requests is logged
+    public static final int ACCESS_LOG_SAMPLE_RATE = 10; // Every n-th request is logged while sampling
+    public static final long RANKING_REBUILD_INTERVAL = 60 * 60 * 1000; // Interval for reloading the rankings from the db (1 hour in milliseconds)
+    public static final long SENSOR_MAP_REFRESH_INTERVAL = 60 * 1000; // Max age of the sensor map snapshot (1 minute in milliseconds)
+    public static final String GEOCODER_DATASET = System.getenv("PMAPI_GEOCODER_DATASET"); // Path to a GeoNames cities dump
+    public static final String GEOCODER_DATASET_RESOURCE = "geo/cities.txt"; // Bundled dump with the major cities, if no path is set
+    public static final boolean GEOCODER_REMOTE_FALLBACK = Boolean.parseBoolean(System.getenv("PMAPI_GEOCODER_REMOTE_FALLBACK")); // Ask the remote geocoder, if the place index knows no place near the location
+    public static final double GEOCODER_MAX_DISTANCE = 30000; // Max distance to the nearest place in meters
+    public static final double GEOCODER_CACHE_PRECISION = 0.01; // Cell size of the geocoder cache in degrees (~1 km)
+    public static final int GEOCODER_CACHE_SIZE = 10000;
+    public static final int GEOCODER_REMOTE_TIMEOUT = 3000; // Timeout of the remote geocoder in milliseconds
     public static final String GOOGLE_API_KEY = System.getenv("PMAPI_GOOGLE_API_KEY");
+    public static final long AUTH_CACHE_TTL = 5 * 60 * 1000; // Time span, in which a verified client secret is not checked again (5 minutes in milliseconds)
+    public static final int AUTH_CACHE_SIZE = 10000;
+    public static final Map<String, Integer> RATE_LIMITS = Map.of("push", 60, "data", 120, "chart", 120, "stats", 60); // Requests per minute for anonymous clients per endpoint group
+    public static final Map<String, Integer> RATE_LIMIT_ROLE_FACTORS = Map.of("A", 10, "CBA", 50, "AA", 0); // Limit factors per client role, 0 for no limit
+    public static final long RATE_LIMIT_BURST_SPAN = 10 * 1000; // Requests of this time span can be sent at once (10 seconds in milliseconds)
+    public static final int AUTH_FAILURE_LIMIT = 10; // Failed authentications per minute and ip address
+    public static final int AUTH_FAILURE_BURST = 5; // Failed authentications per ip address, which are allowed at once
+    public static final long RATE_LIMIT_EVICTION_INTERVAL = 60 * 1000; // Interval for dropping idle rate limit buckets (1 minute in milliseconds)
+    public static final Map<String, Integer> BULKHEAD_LIMITS = Map.of("ingest", 80, "latest", 40, "analytics", 40, "default", 60); // Concurrent requests per endpoint class. Analytics and default stay below the server thread count
+    public static final Map<String, Integer> BULKHEAD_QUEUE_SIZES = Map.of("ingest", 100, "latest", 40, "analytics", 10, "default", 20); // Waiting requests per endpoint class
+    public static final long BULKHEAD_MAX_WAIT = 100; // Maximum wait time for a free slot in milliseconds
+    public static final long PUSH_MIN_INTERVAL = 30 * 1000; // Minimum time span between two stored pushes of a sensor (30 seconds in milliseconds)
+    public static final long PUSH_ADMISSION_EXPIRY = 60 * 60 * 1000; // Sensors without pushes for this time span are dropped from the admission state (1 hour in milliseconds)
+    public static final String CACHE_REGION_SENSOR = "sensor"; // Second level cache regions, sizes are configured in application.conf
+    public static final String CACHE_REGION_USER = "user";
+    public static final String CACHE_REGION_LINK = "link";
+    public static final String CACHE_REGION_CLIENT = "client";
+    public static final String CACHE_REGION_CLIENT_BY_NAME = "client-by-name";
 }
@@ -0,0 +1,145 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.shared;
+
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Current average of a value type per city and country
+ *
+ * Every region averages the latest values of its sensors. Values are replaced, when a sensor pushes again, and dropped
+ * by prune, when they got too old. The top n regions are selected with a heap of size n.
+ * Updates only lock the regions they touch, so pushes of sensors in different regions do not block each other.
+ */
+public class PollutionRanking {
+
+    private final Map<Region, RegionValues> regions = new ConcurrentHashMap<>();
+    private final Map<Long, Region> sensorCities = new ConcurrentHashMap<>();
+
+    public void update(long chipId, String country, String city, String valueType, double value, long timestamp) {
+        Region cityRegion = new Region(valueType, country, city);
+        // Sensors, which moved to another city, only count for the new one
+        Region oldCity = sensorCities.put(chipId, new Region(null, country, city));
+        if(oldCity != null && (!Objects.equals(oldCity.getCountry(), country) || !Objects.equals(oldCity.getCity(), city)))
+            removeValues(chipId, oldCity);
+
+        putValue(cityRegion, chipId, value, timestamp);
+        putValue(new Region(valueType, country, null), chipId, value, timestamp);
+    }
+
+    public void remove(long chipId) {
+        Region city = sensorCities.remove(chipId);
+        if(city != null) removeValues(chipId, city);
+    }
+
+    public void prune(long minTimestamp) {
+        for(Region region : regions.keySet()) {
+            regions.computeIfPresent(region, (key, values) -> {
+                values.prune(minTimestamp);
+                return values.getCount() > 0 ? values : null;
+            });
+        }
+    }
+
+    public List<Item> getTop(int n, String valueType, boolean countries, boolean ascending, int minSensors) {
+        Comparator<Item> order = Comparator.comparingDouble(Item::getAverage);
+        if(!ascending) order = order.reversed();
+        // The heap holds the best n items so far, with the worst of them on top
+        PriorityQueue<Item> heap = new PriorityQueue<>(order.reversed());
+        regions.forEach((region, values) -> {
+            if(!region.getValueType().equals(valueType) || (region.getCity() == null) != countries) return;
+            // Regions with only a few sensors are not representative
+            Item item = values.toItem(region);
+            if(item.getSensorCount() < minSensors) return;
+            heap.add(item);
+            if(heap.size() > n) heap.poll();
+        });
+        List<Item> result = new ArrayList<>(heap.size());
+        while(!heap.isEmpty()) result.add(heap.poll());
+        Collections.reverse(result);
+        return result;
+    }
+
+    // ---------------------------------------------- Utility functions ------------------------------------------------
+
+    private void putValue(Region region, long chipId, double value, long timestamp) {
+        regions.compute(region, (key, values) -> {
+            if(values == null) values = new RegionValues();
+            values.put(chipId, value, timestamp);
+            return values;
+        });
+    }
+
+    private void removeValues(long chipId, Region city) {
+        for(Region region : regions.keySet()) {
+            if(!Objects.equals(region.getCountry(), city.getCountry())) continue;
+            if(region.getCity() != null && !region.getCity().equals(city.getCity())) continue;
+            regions.computeIfPresent(region, (key, values) -> {
+                values.remove(chipId);
+                return values.getCount() > 0 ? values : null;
+            });
+        }
+    }
+
+    @Value
+    private static class Region {
+        String valueType;
+        String country;
+        String city; // Null for the country itself
+    }
+
+    private static class RegionValues {
+        private final Map<Long, SensorValue> values = new HashMap<>();
+        private double sum;
+
+        private synchronized void put(long chipId, double value, long timestamp) {
+            SensorValue oldValue = values.put(chipId, new SensorValue(value, timestamp));
+            sum += value - (oldValue != null ? oldValue.getValue() : 0);
+        }
+
+        private synchronized void remove(long chipId) {
+            SensorValue oldValue = values.remove(chipId);
+            if(oldValue != null) sum -= oldValue.getValue();
+        }
+
+        private synchronized void prune(long minTimestamp) {
+            values.values().removeIf(value -> value.getTimestamp() < minTimestamp);
+            // Recalculate the sum to get rid of accumulated rounding errors
+            sum = values.values().stream().mapToDouble(SensorValue::getValue).sum();
+        }
+
+        private synchronized int getCount() {
+            return values.size();
+        }
+
+        private synchronized Item toItem(Region region) {
+            return new Item(region.getCountry(), region.getCity(), sum / values.size(), values.size());
+        }
+    }
+
+    @Value
+    private static class SensorValue {
+        double value;
+        long timestamp;
+    }
+
+    @Value
+    public static class Item {
+        String country;
+        String city;
+        double average;
+        int sensorCount;
+    }
+}
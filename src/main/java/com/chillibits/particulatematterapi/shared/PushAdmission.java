@@ -0,0 +1,121 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.shared;
+
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Admits at most one push per sensor within the minimum interval
+ *
+ * The state is kept in an open addressing hash map with primitive arrays, so that every sensor only takes a few bytes
+ * instead of boxed keys and entry objects. Sensors, which did not push for the expiry time span, are dropped by expire.
+ */
+public class PushAdmission {
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final long minInterval;
+    private long[] chipIds;
+    private long[] lastAccepted; // 0 for free slots
+    private long[] lastRejected;
+    private int[] rejected;
+    private int size;
+
+    public PushAdmission(long minInterval) {
+        this.minInterval = minInterval;
+        allocate(INITIAL_CAPACITY);
+    }
+
+    public synchronized boolean tryAdmit(long chipId, long now) {
+        int slot = findSlot(chipId);
+        if(lastAccepted[slot] == 0) {
+            chipIds[slot] = chipId;
+            lastAccepted[slot] = now;
+            if(++size * 2 > chipIds.length) resize(chipIds.length * 2);
+            return true;
+        }
+        if(now - lastAccepted[slot] >= minInterval) {
+            lastAccepted[slot] = now;
+            return true;
+        }
+        rejected[slot]++;
+        lastRejected[slot] = now;
+        return false;
+    }
+
+    public synchronized long getWait(long chipId, long now) {
+        int slot = findSlot(chipId);
+        return lastAccepted[slot] == 0 ? 0 : Math.max(0, lastAccepted[slot] + minInterval - now);
+    }
+
+    public synchronized void expire(long minTimestamp) {
+        int count = 0;
+        for(long timestamp : lastAccepted) if(timestamp >= minTimestamp) count++;
+        rebuild(Math.max(INITIAL_CAPACITY, Integer.highestOneBit(Math.max(1, count)) * 4), minTimestamp);
+    }
+
+    public synchronized List<Offender> getTopOffenders(int n) {
+        List<Offender> offenders = new ArrayList<>();
+        for(int i = 0; i < chipIds.length; i++) {
+            if(lastAccepted[i] != 0 && rejected[i] > 0) offenders.add(new Offender(chipIds[i], rejected[i], lastAccepted[i], lastRejected[i]));
+        }
+        offenders.sort(Comparator.comparingInt(Offender::getRejected).reversed().thenComparingLong(Offender::getChipId));
+        return offenders.size() > n ? new ArrayList<>(offenders.subList(0, n)) : offenders;
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    // ---------------------------------------------- Utility functions ------------------------------------------------
+
+    private int findSlot(long chipId) {
+        int mask = chipIds.length - 1;
+        int slot = (int) ((chipId * 0x9E3779B97F4A7C15L) >>> 32) & mask;
+        while(lastAccepted[slot] != 0 && chipIds[slot] != chipId) slot = (slot + 1) & mask;
+        return slot;
+    }
+
+    private void resize(int capacity) {
+        rebuild(capacity, Long.MIN_VALUE);
+    }
+
+    private void rebuild(int capacity, long minTimestamp) {
+        long[] oldChipIds = chipIds;
+        long[] oldLastAccepted = lastAccepted;
+        long[] oldLastRejected = lastRejected;
+        int[] oldRejected = rejected;
+        allocate(capacity);
+        for(int i = 0; i < oldChipIds.length; i++) {
+            if(oldLastAccepted[i] == 0 || oldLastAccepted[i] < minTimestamp) continue;
+            int slot = findSlot(oldChipIds[i]);
+            chipIds[slot] = oldChipIds[i];
+            lastAccepted[slot] = oldLastAccepted[i];
+            lastRejected[slot] = oldLastRejected[i];
+            rejected[slot] = oldRejected[i];
+            size++;
+        }
+    }
+
+    private void allocate(int capacity) {
+        chipIds = new long[capacity];
+        lastAccepted = new long[capacity];
+        lastRejected = new long[capacity];
+        rejected = new int[capacity];
+        size = 0;
+    }
+
+    @Value
+    public static class Offender {
+        long chipId;
+        int rejected;
+        long lastAccepted;
+        long lastRejected;
+    }
+}
@@ -0,0 +1,141 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.shared;
+
+import java.util.Arrays;
+
+/**
+ * Mergeable sketch for approximate quantiles with a guaranteed relative accuracy (DDSketch)
+ *
+ * Values are counted in logarithmically sized buckets. Every bucket covers values, which differ at most by the
+ * relative accuracy from the bucket value. Positive and negative values are stored separately, values with a very
+ * small magnitude are counted as zero.
+ */
+public class QuantileSketch {
+
+    private static final double MIN_INDEXABLE_VALUE = 1e-9;
+
+    private final double gamma;
+    private final double logGamma;
+    private final Store positive = new Store();
+    private final Store negative = new Store();
+    private long zeroCount;
+
+    public QuantileSketch() {
+        this(ConstantUtils.SKETCH_RELATIVE_ACCURACY);
+    }
+
+    public QuantileSketch(double relativeAccuracy) {
+        if(relativeAccuracy <= 0 || relativeAccuracy >= 1) throw new IllegalArgumentException();
+        gamma = (1 + relativeAccuracy) / (1 - relativeAccuracy);
+        logGamma = Math.log(gamma);
+    }
+
+    public static QuantileSketch fromState(long zeroCount, int positiveOffset, long[] positiveCounts, int negativeOffset, long[] negativeCounts) {
+        QuantileSketch sketch = new QuantileSketch();
+        sketch.zeroCount = zeroCount;
+        sketch.positive.addAll(positiveOffset, positiveCounts);
+        sketch.negative.addAll(negativeOffset, negativeCounts);
+        return sketch;
+    }
+
+    public void add(double value) {
+        if(value > MIN_INDEXABLE_VALUE) {
+            positive.add(index(value), 1);
+        } else if(value < -MIN_INDEXABLE_VALUE) {
+            negative.add(index(-value), 1);
+        } else {
+            zeroCount++;
+        }
+    }
+
+    public void merge(QuantileSketch other) {
+        if(other.gamma != gamma) throw new IllegalArgumentException();
+        zeroCount += other.zeroCount;
+        positive.addAll(other.positive.offset, other.positive.counts);
+        negative.addAll(other.negative.offset, other.negative.counts);
+    }
+
+    public long getCount() {
+        return zeroCount + positive.total + negative.total;
+    }
+
+    public double getQuantile(double quantile) {
+        if(quantile < 0 || quantile > 1) throw new IllegalArgumentException();
+        long count = getCount();
+        if(count == 0) return Double.NaN;
+        long rank = (long) (quantile * (count - 1));
+        // Walk through the buckets in ascending value order
+        long seen = 0;
+        for(int i = negative.counts.length - 1; i >= 0; i--) {
+            seen += negative.counts[i];
+            if(seen > rank) return -value(negative.offset + i);
+        }
+        seen += zeroCount;
+        if(seen > rank) return 0;
+        for(int i = 0; i < positive.counts.length; i++) {
+            seen += positive.counts[i];
+            if(seen > rank) return value(positive.offset + i);
+        }
+        return value(positive.offset + positive.counts.length - 1);
+    }
+
+    public long getZeroCount() {
+        return zeroCount;
+    }
+
+    public int getPositiveOffset() {
+        return positive.offset;
+    }
+
+    public long[] getPositiveCounts() {
+        return positive.counts.clone();
+    }
+
+    public int getNegativeOffset() {
+        return negative.offset;
+    }
+
+    public long[] getNegativeCounts() {
+        return negative.counts.clone();
+    }
+
+    // ---------------------------------------------- Utility functions ------------------------------------------------
+
+    private int index(double value) {
+        return (int) Math.ceil(Math.log(value) / logGamma);
+    }
+
+    private double value(int index) {
+        return 2 * Math.pow(gamma, index) / (gamma + 1);
+    }
+
+    private static class Store {
+        private int offset;
+        private long[] counts = new long[0];
+        private long total;
+
+        private void add(int index, long count) {
+            if(counts.length == 0) {
+                offset = index;
+                counts = new long[1];
+            } else if(index < offset) {
+                long[] newCounts = new long[counts.length + offset - index];
+                System.arraycopy(counts, 0, newCounts, offset - index, counts.length);
+                counts = newCounts;
+                offset = index;
+            } else if(index >= offset + counts.length) {
+                counts = Arrays.copyOf(counts, index - offset + 1);
+            }
+            counts[index - offset] += count;
+            total += count;
+        }
+
+        private void addAll(int otherOffset, long[] otherCounts) {
+            if(otherCounts == null) return;
+            for(int i = 0; i < otherCounts.length; i++) if(otherCounts[i] > 0) add(otherOffset + i, otherCounts[i]);
+        }
+    }
+}
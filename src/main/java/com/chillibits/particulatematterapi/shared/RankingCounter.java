@@ -0,0 +1,66 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.shared;
+
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeSet;
+
+/**
+ * Counter per key, which keeps the keys sorted by their count
+ *
+ * Updates take O(log n), the top n items can be read in O(n). Keys with the same count are ordered by the passed
+ * comparator. Keys, whose count drops to zero, are removed.
+ */
+public class RankingCounter<K> {
+
+    private final Map<K, Long> counts = new HashMap<>();
+    private final TreeSet<Item<K>> ranking;
+
+    public RankingCounter(Comparator<? super K> keyOrder) {
+        ranking = new TreeSet<>(Comparator.<Item<K>>comparingLong(Item::getCount).reversed().thenComparing(Item::getKey, keyOrder));
+    }
+
+    public synchronized void add(K key, long delta) {
+        Long count = counts.remove(key);
+        if(count != null) ranking.remove(new Item<>(key, count));
+        long newCount = (count != null ? count : 0) + delta;
+        if(newCount <= 0) return;
+        counts.put(key, newCount);
+        ranking.add(new Item<>(key, newCount));
+    }
+
+    public synchronized long getCount(K key) {
+        return counts.getOrDefault(key, 0L);
+    }
+
+    public synchronized List<Item<K>> getTop(int n) {
+        List<Item<K>> result = new ArrayList<>(Math.min(n, ranking.size()));
+        Iterator<Item<K>> iterator = ranking.iterator();
+        while(result.size() < n && iterator.hasNext()) result.add(iterator.next());
+        return result;
+    }
+
+    public synchronized void clear() {
+        counts.clear();
+        ranking.clear();
+    }
+
+    public synchronized int size() {
+        return counts.size();
+    }
+
+    @Value
+    public static class Item<K> {
+        K key;
+        long count;
+    }
+}
@@ -0,0 +1,67 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.shared;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Lock-free token buckets per key
+ *
+ * The buckets are implemented with the generic cell rate algorithm. Instead of a token count and a refill timestamp,
+ * every bucket only stores the theoretical arrival time of the next request, which fits into a single atomic long.
+ * A bucket with an arrival time in the past is full and can be evicted without losing state.
+ */
+public class RateLimiter {
+
+    private final Map<String, AtomicLong> buckets = new ConcurrentHashMap<>(); // Theoretical arrival times in nanoseconds
+
+    /**
+     * Takes a token from the bucket of the passed key
+     *
+     * @param key Key of the bucket
+     * @param interval Time span, in which a single token is refilled, in nanoseconds
+     * @param burst Capacity of the bucket
+     * @param now Current time in nanoseconds
+     * @return 0, if a token was taken, otherwise the time span until the next token is available, in nanoseconds
+     */
+    public long tryAcquire(String key, long interval, int burst, long now) {
+        AtomicLong arrivalTime = buckets.computeIfAbsent(key, k -> new AtomicLong(now));
+        long tolerance = interval * burst;
+        while(true) {
+            long current = arrivalTime.get();
+            long next = Math.max(current, now) + interval;
+            long allowedAt = next - tolerance;
+            if(now < allowedAt) return allowedAt - now;
+            if(arrivalTime.compareAndSet(current, next)) return 0;
+        }
+    }
+
+    /**
+     * Returns the time span until the next token of the bucket of the passed key is available, without taking it
+     *
+     * @param key Key of the bucket
+     * @param interval Time span, in which a single token is refilled, in nanoseconds
+     * @param burst Capacity of the bucket
+     * @param now Current time in nanoseconds
+     * @return 0, if a token is available, otherwise the time span until the next token is available, in nanoseconds
+     */
+    public long getWait(String key, long interval, int burst, long now) {
+        AtomicLong arrivalTime = buckets.get(key);
+        if(arrivalTime == null) return 0;
+        long allowedAt = Math.max(arrivalTime.get(), now) + interval - interval * burst;
+        return Math.max(0, allowedAt - now);
+    }
+
+    public void evictIdle(long now) {
+        // Racing requests on an evicted bucket may get one additional token, which is acceptable
+        buckets.values().removeIf(arrivalTime -> arrivalTime.get() <= now);
+    }
+
+    public int size() {
+        return buckets.size();
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.shared;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Bounded lock-free queue for many producers and consumers
+ *
+ * Every slot carries a sequence number, which tells producers and consumers, whether the slot is free or filled for
+ * their current round. Offering to a full buffer fails immediately instead of blocking the caller.
+ */
+public class RingBuffer<T> {
+
+    private final int capacity;
+    private final int mask;
+    private final AtomicReferenceArray<T> items;
+    private final AtomicLongArray sequences;
+    private final AtomicLong head = new AtomicLong(); // Next position to read
+    private final AtomicLong tail = new AtomicLong(); // Next position to write
+
+    public RingBuffer(int capacity) {
+        if(capacity < 2 || Integer.bitCount(capacity) != 1) throw new IllegalArgumentException("Capacity has to be a power of two");
+        this.capacity = capacity;
+        this.mask = capacity - 1;
+        this.items = new AtomicReferenceArray<>(capacity);
+        this.sequences = new AtomicLongArray(capacity);
+        for(int i = 0; i < capacity; i++) sequences.set(i, i);
+    }
+
+    public boolean offer(T item) {
+        while(true) {
+            long position = tail.get();
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - position;
+            if(difference < 0) return false; // Full
+            if(difference == 0 && tail.compareAndSet(position, position + 1)) {
+                items.set(index, item);
+                sequences.set(index, position + 1);
+                return true;
+            }
+        }
+    }
+
+    public T poll() {
+        while(true) {
+            long position = head.get();
+            int index = (int) (position & mask);
+            long difference = sequences.get(index) - (position + 1);
+            if(difference < 0) return null; // Empty
+            if(difference == 0 && head.compareAndSet(position, position + 1)) {
+                T item = items.getAndSet(index, null);
+                sequences.set(index, position + capacity);
+                return item;
+            }
+        }
+    }
+
+    public int drainTo(List<? super T> target, int maxItems) {
+        int count = 0;
+        T item;
+        while(count < maxItems && (item = poll()) != null) {
+            target.add(item);
+            count++;
+        }
+        return count;
+    }
+
+    public int size() {
+        long size = tail.get() - head.get();
+        return (int) Math.max(0, Math.min(size, capacity));
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+}
@@ -4,6 +4,11 @@
 
 package com.chillibits.particulatematterapi.shared;
 
+import java.time.Instant;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Random;
 
 public class SharedUtils {
@@ -27,4 +32,26 @@ public class SharedUtils {
                 .collect(StringBuilder::new, StringBuilder::appendCodePoint, StringBuilder::append)
                 .toString();
     }
-}
\ No newline at end of file
+
+    public static String getLogTableName(long timestamp) {
+        return getLogTableName(YearMonth.from(Instant.ofEpochMilli(timestamp).atZone(ZoneId.systemDefault())));
+    }
+
+    public static String getLogTableName(YearMonth month) {
+        return ConstantUtils.LOG_TABLE_NAME + "_" + month;
+    }
+
+    public static List<String> getLogTableNames(long from, long to) {
+        // Monthly partitions of the access log, which overlap with the time range, in chronological order
+        // Clamped to the retention window, because there are no partitions outside of it
+        List<String> tableNames = new ArrayList<>();
+        YearMonth currentMonth = YearMonth.now();
+        YearMonth fromMonth = YearMonth.from(Instant.ofEpochMilli(from).atZone(ZoneId.systemDefault()));
+        YearMonth toMonth = YearMonth.from(Instant.ofEpochMilli(to).atZone(ZoneId.systemDefault()));
+        if(fromMonth.isBefore(currentMonth.minusMonths(ConstantUtils.LOG_RETENTION_MONTHS))) fromMonth = currentMonth.minusMonths(ConstantUtils.LOG_RETENTION_MONTHS);
+        if(toMonth.isAfter(currentMonth)) toMonth = currentMonth;
+        for(YearMonth month = fromMonth; !month.isAfter(toMonth); month = month.plusMonths(1))
+            tableNames.add(getLogTableName(month));
+        return tableNames;
+    }
+}
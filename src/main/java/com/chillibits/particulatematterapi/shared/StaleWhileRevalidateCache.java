@@ -0,0 +1,120 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.shared;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+
+/**
+ * Cache, which serves stale values while they are recomputed in the background
+ *
+ * Values are fresh for the passed time span. After that, the stale value is still returned and a single background
+ * refresh per key is started. Callers without any value wait for the first computation, concurrent callers share it.
+ * Failed computations are not cached.
+ */
+@Slf4j
+public class StaleWhileRevalidateCache<K, V> {
+
+    private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+    private final long freshness;
+    private final Executor executor;
+
+    public StaleWhileRevalidateCache(long freshness, Executor executor) {
+        this.freshness = freshness;
+        this.executor = executor;
+    }
+
+    public V get(K key, Function<? super K, ? extends V> loader) {
+        Entry<V> entry = entries.computeIfAbsent(key, k -> new Entry<>());
+        Value<V> value = entry.value;
+        if(value == null) return join(load(key, entry, loader, false));
+        if(System.currentTimeMillis() - value.loadedAt > freshness) load(key, entry, loader, true);
+        return value.value;
+    }
+
+    public void invalidate(K key) {
+        entries.remove(key);
+    }
+
+    public void clear() {
+        entries.clear();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    // ---------------------------------------------- Utility functions ------------------------------------------------
+
+    private CompletableFuture<V> load(K key, Entry<V> entry, Function<? super K, ? extends V> loader, boolean async) {
+        CompletableFuture<V> future;
+        synchronized(entry) {
+            // Join a computation, which is already running
+            if(entry.loading != null) return entry.loading;
+            future = new CompletableFuture<>();
+            entry.loading = future;
+        }
+        Runnable computation = () -> {
+            try {
+                V result = loader.apply(key);
+                entry.value = new Value<>(result, System.currentTimeMillis());
+                future.complete(result);
+            } catch (RuntimeException e) {
+                // Without a value, the entry is dropped, so that failing keys do not pile up
+                if(entry.value == null) entries.remove(key, entry);
+                if(async) log.warn("Was not able to refresh cached value for " + key, e);
+                future.completeExceptionally(e);
+            } finally {
+                synchronized(entry) {
+                    entry.loading = null;
+                }
+            }
+        };
+        if(async) {
+            try {
+                executor.execute(computation);
+            } catch (RejectedExecutionException e) {
+                synchronized(entry) {
+                    entry.loading = null;
+                }
+                future.completeExceptionally(e);
+            }
+        } else {
+            computation.run();
+        }
+        return future;
+    }
+
+    private V join(CompletableFuture<V> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if(e.getCause() instanceof RuntimeException) throw (RuntimeException) e.getCause();
+            throw e;
+        }
+    }
+
+    private static class Entry<V> {
+        private volatile Value<V> value;
+        private CompletableFuture<V> loading; // Guarded by the entry itself
+    }
+
+    private static class Value<V> {
+        private final V value;
+        private final long loadedAt;
+
+        private Value(V value, long loadedAt) {
+            this.value = value;
+            this.loadedAt = loadedAt;
+        }
+    }
+}
@@ -0,0 +1,170 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.shared;
+
+import com.chillibits.particulatematterapi.model.dto.DataRecordDto;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Aggregates sensor data values per value type
+ *
+ * Every value type gets a slot in primitive arrays, which hold count, mean, sum of squared deviations (Welford),
+ * min and max. Slots are assigned in the order the value types are seen first. Partial states of multiple
+ * aggregators can be merged, e.g. after aggregating in parallel.
+ */
+public class ValueAggregator {
+
+    private final Map<String, Integer> slots = new HashMap<>();
+    private String[] valueTypes;
+    private long[] count;
+    private double[] mean;
+    private double[] m2;
+    private double[] min;
+    private double[] max;
+    private int size;
+
+    public ValueAggregator() {
+        this(8);
+    }
+
+    public ValueAggregator(int initialCapacity) {
+        int capacity = Math.max(initialCapacity, 1);
+        valueTypes = new String[capacity];
+        count = new long[capacity];
+        mean = new double[capacity];
+        m2 = new double[capacity];
+        min = new double[capacity];
+        max = new double[capacity];
+    }
+
+    public int slot(String valueType) {
+        Integer slot = slots.get(valueType);
+        if(slot != null) return slot;
+        if(size == valueTypes.length) grow();
+        valueTypes[size] = valueType;
+        resetSlot(size);
+        slots.put(valueType, size);
+        return size++;
+    }
+
+    public void add(String valueType, double value) {
+        add(slot(valueType), value);
+    }
+
+    public void add(int slot, double value) {
+        long n = ++count[slot];
+        double delta = value - mean[slot];
+        mean[slot] += delta / n;
+        m2[slot] += delta * (value - mean[slot]);
+        if(value < min[slot]) min[slot] = value;
+        if(value > max[slot]) max[slot] = value;
+    }
+
+    public void add(DataRecordDto.SensorDataValue[] values) {
+        if(values == null) return;
+        for(DataRecordDto.SensorDataValue value : values) add(value.getValueType(), value.getValue());
+    }
+
+    public void merge(String valueType, long otherCount, double otherMean, double otherM2, double otherMin, double otherMax) {
+        merge(slot(valueType), otherCount, otherMean, otherM2, otherMin, otherMax);
+    }
+
+    public void merge(int slot, long otherCount, double otherMean, double otherM2, double otherMin, double otherMax) {
+        if(otherCount == 0) return;
+        // Combine the partial states (Chan et al.)
+        long n = count[slot] + otherCount;
+        double delta = otherMean - mean[slot];
+        mean[slot] += delta * otherCount / n;
+        m2[slot] += otherM2 + delta * delta * count[slot] * otherCount / n;
+        count[slot] = n;
+        if(otherMin < min[slot]) min[slot] = otherMin;
+        if(otherMax > max[slot]) max[slot] = otherMax;
+    }
+
+    public void merge(ValueAggregator other) {
+        for(int i = 0; i < other.size; i++)
+            merge(other.valueTypes[i], other.count[i], other.mean[i], other.m2[i], other.min[i], other.max[i]);
+    }
+
+    public void reset() {
+        // Keeps the slots and arrays for reuse
+        for(int i = 0; i < size; i++) resetSlot(i);
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        for(int i = 0; i < size; i++) if(count[i] > 0) return false;
+        return true;
+    }
+
+    public String getValueType(int slot) {
+        return valueTypes[slot];
+    }
+
+    public long getCount(int slot) {
+        return count[slot];
+    }
+
+    public double getMean(int slot) {
+        return mean[slot];
+    }
+
+    public double getMin(int slot) {
+        return min[slot];
+    }
+
+    public double getMax(int slot) {
+        return max[slot];
+    }
+
+    public double getM2(int slot) {
+        return m2[slot];
+    }
+
+    public double getVariance(int slot) {
+        return count[slot] > 1 ? m2[slot] / (count[slot] - 1) : 0;
+    }
+
+    public double getStandardDeviation(int slot) {
+        return Math.sqrt(getVariance(slot));
+    }
+
+    public DataRecordDto.SensorDataValue[] toSensorDataValues(int places) {
+        // Value types without values are left out
+        int nonEmpty = 0;
+        for(int i = 0; i < size; i++) if(count[i] > 0) nonEmpty++;
+        DataRecordDto.SensorDataValue[] values = new DataRecordDto.SensorDataValue[nonEmpty];
+        for(int i = 0, j = 0; i < size; i++) {
+            if(count[i] > 0) values[j++] = new DataRecordDto.SensorDataValue(valueTypes[i], SharedUtils.round(mean[i], places));
+        }
+        return values;
+    }
+
+    // ---------------------------------------------- Utility functions ------------------------------------------------
+
+    private void resetSlot(int slot) {
+        count[slot] = 0;
+        mean[slot] = 0;
+        m2[slot] = 0;
+        min[slot] = Double.POSITIVE_INFINITY;
+        max[slot] = Double.NEGATIVE_INFINITY;
+    }
+
+    private void grow() {
+        int capacity = valueTypes.length * 2;
+        valueTypes = Arrays.copyOf(valueTypes, capacity);
+        count = Arrays.copyOf(count, capacity);
+        mean = Arrays.copyOf(mean, capacity);
+        m2 = Arrays.copyOf(m2, capacity);
+        min = Arrays.copyOf(min, capacity);
+        max = Arrays.copyOf(max, capacity);
+    }
+}
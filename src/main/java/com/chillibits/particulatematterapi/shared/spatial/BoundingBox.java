@@ -0,0 +1,41 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.shared.spatial;
+
+import lombok.Value;
+
+/**
+ * Latitude / longitude bounding box
+ *
+ * If the box crosses the antimeridian, minLongitude is greater than maxLongitude.
+ */
+@Value
+public class BoundingBox {
+    double minLatitude;
+    double minLongitude;
+    double maxLatitude;
+    double maxLongitude;
+
+    /**
+     * Parses a bounding box in GeoJSON order (minLongitude,minLatitude,maxLongitude,maxLatitude)
+     */
+    public static BoundingBox parse(String bbox) {
+        String[] parts = bbox.split(",");
+        if(parts.length != 4) throw new IllegalArgumentException("A bounding box consists of four coordinates");
+        double[] values = new double[4];
+        for(int i = 0; i < 4; i++) values[i] = Double.parseDouble(parts[i].trim());
+        BoundingBox box = new BoundingBox(values[1], values[0], values[3], values[2]);
+        if(Math.abs(box.minLatitude) > 90 || Math.abs(box.maxLatitude) > 90 || box.minLatitude > box.maxLatitude ||
+                Math.abs(box.minLongitude) > 180 || Math.abs(box.maxLongitude) > 180)
+            throw new IllegalArgumentException("Invalid bounding box coordinates");
+        return box;
+    }
+
+    public boolean contains(double latitude, double longitude) {
+        if(latitude < minLatitude || latitude > maxLatitude) return false;
+        return minLongitude <= maxLongitude ? longitude >= minLongitude && longitude <= maxLongitude
+                : longitude >= minLongitude || longitude <= maxLongitude;
+    }
+}
@@ -0,0 +1,196 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.shared.spatial;
+
+import lombok.Value;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Hierarchical grid index for marker clustering on web mercator maps
+ *
+ * The points are sorted by the Z-order code of their cell on the finest level. Because every cell of a coarser level
+ * covers a prefix of these codes, the members of any cell form a contiguous range of the sorted points. The cells of
+ * a zoom level are computed on first use and cached afterwards. The index is immutable apart from this cache.
+ */
+public class ClusterIndex {
+
+    public static final int MAX_ZOOM = 16;
+    public static final int CELL_BITS = 2; // Each map tile is split into 4x4 cells (64px at 256px tiles)
+    private static final int MAX_BITS = MAX_ZOOM + CELL_BITS;
+    private static final double MAX_LATITUDE = 85.0511287798; // Web mercator bounds
+
+    private final long[] codes;
+    private final long[] ids;
+    private final double[] latitudes;
+    private final double[] longitudes;
+    private final Level[] levels = new Level[MAX_ZOOM + 1];
+
+    public ClusterIndex(List<GeoPoint> points) {
+        int size = points.size();
+        long[] pointCodes = new long[size];
+        Integer[] order = new Integer[size];
+        for(int i = 0; i < size; i++) {
+            GeoPoint point = points.get(i);
+            pointCodes[i] = interleave(getX(point.getLongitude(), MAX_BITS), getY(point.getLatitude(), MAX_BITS));
+            order[i] = i;
+        }
+        Arrays.sort(order, Comparator.comparingLong(i -> pointCodes[i]));
+
+        codes = new long[size];
+        ids = new long[size];
+        latitudes = new double[size];
+        longitudes = new double[size];
+        for(int i = 0; i < size; i++) {
+            GeoPoint point = points.get(order[i]);
+            codes[i] = pointCodes[order[i]];
+            ids[i] = point.getId();
+            latitudes[i] = point.getLatitude();
+            longitudes[i] = point.getLongitude();
+        }
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public List<Cluster> getClusters(double minLatitude, double minLongitude, double maxLatitude, double maxLongitude, int zoom) {
+        Level level = getLevel(Math.min(zoom, MAX_ZOOM));
+        int bits = level.bits;
+        int minX = getX(minLongitude, bits);
+        int maxX = getX(maxLongitude, bits);
+        int minY = getY(maxLatitude, bits); // The y axis points to the south
+        int maxY = getY(minLatitude, bits);
+        // A viewport across the antimeridian wraps around
+        long columnCount = minX <= maxX ? maxX - minX + 1 : (1L << bits) - minX + maxX + 1;
+
+        List<Cluster> clusters = new ArrayList<>();
+        if(columnCount * (maxY - minY + 1) > level.size()) {
+            // Less cells than cells in the viewport, so it is cheaper to check all of them
+            for(int cell = 0; cell < level.size(); cell++) {
+                int x = deinterleave(level.codes[cell]);
+                int y = deinterleave(level.codes[cell] >>> 1);
+                boolean inColumns = minX <= maxX ? x >= minX && x <= maxX : x >= minX || x <= maxX;
+                if(inColumns && y >= minY && y <= maxY) clusters.add(level.getCluster(cell));
+            }
+        } else {
+            for(int y = minY; y <= maxY; y++) {
+                for(long i = 0; i < columnCount; i++) {
+                    int x = (int) ((minX + i) & ((1L << bits) - 1));
+                    int cell = Arrays.binarySearch(level.codes, interleave(x, y));
+                    if(cell >= 0) clusters.add(level.getCluster(cell));
+                }
+            }
+        }
+        return clusters;
+    }
+
+    public long[] getMemberIds(Cluster cluster) {
+        return Arrays.copyOfRange(ids, cluster.getFirstMember(), cluster.getFirstMember() + cluster.getCount());
+    }
+
+    // ---------------------------------------------- Utility functions ------------------------------------------------
+
+    private synchronized Level getLevel(int zoom) {
+        if(levels[zoom] == null) levels[zoom] = new Level(zoom + CELL_BITS);
+        return levels[zoom];
+    }
+
+    private static int getX(double longitude, int bits) {
+        double x = (longitude + 180) / 360;
+        return (int) Math.max(0, Math.min((1L << bits) - 1, (long) Math.floor(x * (1L << bits))));
+    }
+
+    private static int getY(double latitude, int bits) {
+        double sin = Math.sin(Math.toRadians(Math.max(-MAX_LATITUDE, Math.min(MAX_LATITUDE, latitude))));
+        double y = 0.5 - Math.log((1 + sin) / (1 - sin)) / (4 * Math.PI);
+        return (int) Math.max(0, Math.min((1L << bits) - 1, (long) Math.floor(y * (1L << bits))));
+    }
+
+    private static long interleave(int x, int y) {
+        return spread(x) | (spread(y) << 1);
+    }
+
+    private static long spread(int value) {
+        // Moves the bits of the value to the even positions
+        long v = value & 0xFFFFFFFFL;
+        v = (v | (v << 16)) & 0x0000FFFF0000FFFFL;
+        v = (v | (v << 8)) & 0x00FF00FF00FF00FFL;
+        v = (v | (v << 4)) & 0x0F0F0F0F0F0F0F0FL;
+        v = (v | (v << 2)) & 0x3333333333333333L;
+        v = (v | (v << 1)) & 0x5555555555555555L;
+        return v;
+    }
+
+    private static int deinterleave(long code) {
+        // Collects the bits at the even positions
+        long v = code & 0x5555555555555555L;
+        v = (v | (v >>> 1)) & 0x3333333333333333L;
+        v = (v | (v >>> 2)) & 0x0F0F0F0F0F0F0F0FL;
+        v = (v | (v >>> 4)) & 0x00FF00FF00FF00FFL;
+        v = (v | (v >>> 8)) & 0x0000FFFF0000FFFFL;
+        v = (v | (v >>> 16)) & 0x00000000FFFFFFFFL;
+        return (int) v;
+    }
+
+    private class Level {
+        private final int bits;
+        private final long[] codes;
+        private final int[] firstMembers;
+        private final double[] latitudes;
+        private final double[] longitudes;
+
+        private Level(int bits) {
+            this.bits = bits;
+            int shift = 2 * (MAX_BITS - bits);
+            int cellCount = 0;
+            for(int i = 0; i < ids.length; i++)
+                if(i == 0 || ClusterIndex.this.codes[i] >>> shift != ClusterIndex.this.codes[i - 1] >>> shift) cellCount++;
+
+            codes = new long[cellCount];
+            firstMembers = new int[cellCount + 1];
+            latitudes = new double[cellCount];
+            longitudes = new double[cellCount];
+            int cell = -1;
+            for(int i = 0; i < ids.length; i++) {
+                long code = ClusterIndex.this.codes[i] >>> shift;
+                if(cell < 0 || code != codes[cell]) {
+                    codes[++cell] = code;
+                    firstMembers[cell] = i;
+                }
+                latitudes[cell] += ClusterIndex.this.latitudes[i];
+                longitudes[cell] += ClusterIndex.this.longitudes[i];
+            }
+            firstMembers[cellCount] = ids.length;
+            // Turn the sums into centroids
+            for(cell = 0; cell < cellCount; cell++) {
+                int count = firstMembers[cell + 1] - firstMembers[cell];
+                latitudes[cell] /= count;
+                longitudes[cell] /= count;
+            }
+        }
+
+        private int size() {
+            return codes.length;
+        }
+
+        private Cluster getCluster(int cell) {
+            int count = firstMembers[cell + 1] - firstMembers[cell];
+            return new Cluster(latitudes[cell], longitudes[cell], count, firstMembers[cell], count == 1 ? ids[firstMembers[cell]] : 0);
+        }
+    }
+
+    @Value
+    public static class Cluster {
+        double latitude;
+        double longitude;
+        int count;
+        int firstMember;
+        long id; // Id of the point, if the cluster contains only one
+    }
+}
@@ -0,0 +1,17 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.shared.spatial;
+
+import lombok.AllArgsConstructor;
+import lombok.Value;
+
+@Value
+@AllArgsConstructor
+public class GeoPoint {
+    long id;
+    double latitude;
+    double longitude;
+    boolean published;
+}
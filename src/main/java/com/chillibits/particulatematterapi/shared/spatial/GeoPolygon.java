@@ -0,0 +1,126 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.shared.spatial;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Polygon or multi polygon, parsed from GeoJSON
+ *
+ * Holes are supported by the even-odd rule over all rings of a polygon. Polygons, which cross the antimeridian, are
+ * not supported.
+ */
+public class GeoPolygon {
+
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final List<double[][]> polygons; // Per polygon: flat latitude and longitude arrays per ring
+    private final List<int[]> ringEnds;
+    private final BoundingBox bounds;
+
+    private GeoPolygon(List<double[][]> polygons, List<int[]> ringEnds) {
+        this.polygons = polygons;
+        this.ringEnds = ringEnds;
+        double minLatitude = 90, minLongitude = 180, maxLatitude = -90, maxLongitude = -180;
+        for(double[][] polygon : polygons) {
+            for(double latitude : polygon[0]) {
+                minLatitude = Math.min(minLatitude, latitude);
+                maxLatitude = Math.max(maxLatitude, latitude);
+            }
+            for(double longitude : polygon[1]) {
+                minLongitude = Math.min(minLongitude, longitude);
+                maxLongitude = Math.max(maxLongitude, longitude);
+            }
+        }
+        bounds = new BoundingBox(minLatitude, minLongitude, maxLatitude, maxLongitude);
+    }
+
+    /**
+     * Parses a GeoJSON Polygon or MultiPolygon. The geometry may also be wrapped into a Feature
+     */
+    public static GeoPolygon parse(String geoJson, int maxVertices) {
+        JsonNode geometry;
+        try {
+            geometry = MAPPER.readTree(geoJson);
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("Invalid GeoJSON", e);
+        }
+        if(geometry == null) throw new IllegalArgumentException("Invalid GeoJSON");
+        if("Feature".equals(geometry.path("type").asText())) geometry = geometry.path("geometry");
+
+        JsonNode coordinates = geometry.path("coordinates");
+        List<JsonNode> polygonNodes = new ArrayList<>();
+        switch(geometry.path("type").asText()) {
+            case "Polygon":
+                polygonNodes.add(coordinates);
+                break;
+            case "MultiPolygon":
+                coordinates.forEach(polygonNodes::add);
+                break;
+            default:
+                throw new IllegalArgumentException("Only Polygon and MultiPolygon geometries are supported");
+        }
+
+        List<double[][]> polygons = new ArrayList<>();
+        List<int[]> ringEnds = new ArrayList<>();
+        int vertexCount = 0;
+        for(JsonNode polygonNode : polygonNodes) {
+            if(!polygonNode.isArray() || polygonNode.size() == 0) throw new IllegalArgumentException("Empty polygon");
+            int size = 0;
+            for(JsonNode ring : polygonNode) size += ring.size();
+            vertexCount += size;
+            if(vertexCount > maxVertices) throw new IllegalArgumentException("Too many vertices");
+
+            double[][] polygon = new double[2][size];
+            int[] ends = new int[polygonNode.size()];
+            int i = 0;
+            for(int r = 0; r < polygonNode.size(); r++) {
+                JsonNode ring = polygonNode.get(r);
+                if(ring.size() < 4) throw new IllegalArgumentException("A ring needs at least four positions");
+                for(JsonNode position : ring) {
+                    if(position.size() < 2 || !position.get(0).isNumber() || !position.get(1).isNumber())
+                        throw new IllegalArgumentException("Invalid position");
+                    polygon[1][i] = position.get(0).asDouble(); // GeoJSON positions are ordered longitude, latitude
+                    polygon[0][i] = position.get(1).asDouble();
+                    if(Math.abs(polygon[0][i]) > 90 || Math.abs(polygon[1][i]) > 180) throw new IllegalArgumentException("Invalid position");
+                    i++;
+                }
+                ends[r] = i;
+            }
+            polygons.add(polygon);
+            ringEnds.add(ends);
+        }
+        return new GeoPolygon(polygons, ringEnds);
+    }
+
+    public BoundingBox getBounds() {
+        return bounds;
+    }
+
+    public boolean contains(double latitude, double longitude) {
+        if(!bounds.contains(latitude, longitude)) return false;
+        for(int p = 0; p < polygons.size(); p++) {
+            double[] latitudes = polygons.get(p)[0];
+            double[] longitudes = polygons.get(p)[1];
+            boolean inside = false;
+            int start = 0;
+            for(int end : ringEnds.get(p)) {
+                // Ray casting towards the east, every crossed edge toggles the state
+                for(int i = start, j = end - 1; i < end; j = i++) {
+                    if((latitudes[i] > latitude) != (latitudes[j] > latitude) && longitude < (longitudes[j] - longitudes[i])
+                            * (latitude - latitudes[i]) / (latitudes[j] - latitudes[i]) + longitudes[i]) inside = !inside;
+                }
+                start = end;
+            }
+            if(inside) return true;
+        }
+        return false;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.shared.spatial;
+
+import lombok.Value;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Offline reverse geocoder, based on the places of a GeoNames cities dump (e.g. cities15000.txt)
+ *
+ * A location is resolved to the nearest populated place within a max distance. Sections of places and places, which
+ * do not exist anymore, are skipped. The dump may be gzip compressed. Places are named by their ascii name, which uses
+ * the international spelling (e.g. Munich instead of München) like the remote geocoder and the stored sensors.
+ */
+public class PlaceIndex {
+
+    private static final double CELL_SIZE = 0.5; // in degrees
+    // Sections of places, historical, abandoned and destroyed places
+    private static final Set<String> EXCLUDED_FEATURE_CODES = Set.of("PPLX", "PPLH", "PPLQ", "PPLW");
+
+    private final SpatialGrid grid = new SpatialGrid(CELL_SIZE);
+    private final List<Place> places = new ArrayList<>();
+
+    public PlaceIndex(InputStream in) throws IOException {
+        InputStream stream = new BufferedInputStream(in);
+        // Detect gzip compressed dumps by their magic number
+        stream.mark(2);
+        boolean gzip = stream.read() == 0x1f && stream.read() == 0x8b;
+        stream.reset();
+        if(gzip) stream = new GZIPInputStream(stream);
+
+        Map<String, String> countryNames = new HashMap<>();
+        try(BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
+            String line;
+            while((line = reader.readLine()) != null) {
+                // Columns: id, name, ascii name, alternate names, latitude, longitude, feature class, feature code, country code, ...
+                String[] columns = line.split("\t", 10);
+                if(columns.length < 9 || !"P".equals(columns[6]) || EXCLUDED_FEATURE_CODES.contains(columns[7])) continue;
+                String country = countryNames.computeIfAbsent(columns[8], code -> new Locale("", code).getDisplayCountry(Locale.ENGLISH));
+                int id = places.size();
+                places.add(new Place(country, columns[2].isEmpty() ? columns[1] : columns[2]));
+                grid.put(new GeoPoint(id, Double.parseDouble(columns[4]), Double.parseDouble(columns[5]), true));
+            }
+        }
+    }
+
+    public int size() {
+        return places.size();
+    }
+
+    /**
+     * Returns the nearest place within the passed distance (in meters) or null, if there is none
+     */
+    public Place findPlace(double latitude, double longitude, double maxDistance) {
+        List<GeoPoint> nearest = grid.findNearest(latitude, longitude, 1, false);
+        if(nearest.isEmpty()) return null;
+        GeoPoint point = nearest.get(0);
+        if(SpatialGrid.getDistance(latitude, longitude, point.getLatitude(), point.getLongitude()) > maxDistance) return null;
+        return places.get((int) point.getId());
+    }
+
+    @Value
+    public static class Place {
+        String country;
+        String city;
+    }
+}
@@ -0,0 +1,228 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.shared.spatial;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory spatial index for geo points
+ *
+ * Points are stored in cells of a regular latitude / longitude grid. Radius and nearest neighbour queries only
+ * visit the cells around the requested location. The grid is safe for concurrent reads and updates.
+ */
+public class SpatialGrid {
+
+    public static final double EARTH_RADIUS = 6371000; // in meters
+    private static final double METERS_PER_DEGREE = Math.PI * EARTH_RADIUS / 180;
+
+    private final double cellSize; // in degrees
+    private final int rows;
+    private final int columns;
+    private final Map<Long, GeoPoint> points = new ConcurrentHashMap<>();
+    private final Map<Long, Map<Long, GeoPoint>> cells = new ConcurrentHashMap<>();
+
+    public SpatialGrid(double cellSize) {
+        this.cellSize = cellSize;
+        rows = (int) Math.ceil(180 / cellSize);
+        columns = (int) Math.ceil(360 / cellSize);
+    }
+
+    public synchronized void put(GeoPoint point) {
+        remove(point.getId());
+        points.put(point.getId(), point);
+        cells.computeIfAbsent(getCellKey(getRow(point.getLatitude()), getColumn(point.getLongitude())), key -> new ConcurrentHashMap<>())
+                .put(point.getId(), point);
+    }
+
+    public synchronized void remove(long id) {
+        GeoPoint point = points.remove(id);
+        if(point == null) return;
+        long cellKey = getCellKey(getRow(point.getLatitude()), getColumn(point.getLongitude()));
+        Map<Long, GeoPoint> cell = cells.get(cellKey);
+        if(cell == null) return;
+        cell.remove(id);
+        if(cell.isEmpty()) cells.remove(cellKey);
+    }
+
+    public synchronized void clear() {
+        points.clear();
+        cells.clear();
+    }
+
+    public GeoPoint get(long id) {
+        return points.get(id);
+    }
+
+    public int size() {
+        return points.size();
+    }
+
+    public List<GeoPoint> findInRadius(double latitude, double longitude, double radius, boolean onlyPublished) {
+        List<Neighbour> result = new ArrayList<>();
+        double latitudeDelta = Math.toDegrees(radius / EARTH_RADIUS);
+        int minRow = getRow(Math.max(latitude - latitudeDelta, -90));
+        int maxRow = getRow(Math.min(latitude + latitudeDelta, 90));
+        // Longitude degrees get shorter towards the poles
+        double maxLatitude = Math.min(Math.abs(latitude) + latitudeDelta, 90);
+        double longitudeDelta = maxLatitude >= 90 ? 180 : latitudeDelta / Math.cos(Math.toRadians(maxLatitude));
+        int columnCount = longitudeDelta >= 180 ? columns : getColumn(longitude + longitudeDelta) - getColumn(longitude - longitudeDelta) + 1;
+        if(columnCount <= 0) columnCount += columns;
+        columnCount = Math.min(columnCount, columns);
+
+        if((long) (maxRow - minRow + 1) * columnCount > cells.size()) {
+            // Less occupied cells than cells in the range, so it is cheaper to check all of them
+            cells.values().forEach(cell -> addInRadius(result, cell, latitude, longitude, radius, onlyPublished));
+        } else {
+            int firstColumn = getColumn(longitude - Math.min(longitudeDelta, 180));
+            for(int row = minRow; row <= maxRow; row++) {
+                for(int i = 0; i < columnCount; i++) {
+                    Map<Long, GeoPoint> cell = cells.get(getCellKey(row, (firstColumn + i) % columns));
+                    if(cell != null) addInRadius(result, cell, latitude, longitude, radius, onlyPublished);
+                }
+            }
+        }
+
+        result.sort(Comparator.comparingDouble(Neighbour::getDistance));
+        List<GeoPoint> points = new ArrayList<>(result.size());
+        result.forEach(neighbour -> points.add(neighbour.getPoint()));
+        return points;
+    }
+
+    public List<GeoPoint> findInBoundingBox(BoundingBox box, boolean onlyPublished) {
+        List<GeoPoint> result = new ArrayList<>();
+        int minRow = getRow(box.getMinLatitude());
+        int maxRow = getRow(box.getMaxLatitude());
+        int firstColumn = getColumn(box.getMinLongitude());
+        int columnCount = getColumn(box.getMaxLongitude()) - firstColumn + 1;
+        // A box across the antimeridian wraps around
+        if(columnCount <= 0 || box.getMinLongitude() > box.getMaxLongitude()) columnCount += columns;
+        columnCount = Math.min(columnCount, columns);
+
+        if((long) (maxRow - minRow + 1) * columnCount > cells.size()) {
+            // Less occupied cells than cells in the range, so it is cheaper to check all of them
+            cells.values().forEach(cell -> addInBoundingBox(result, cell, box, onlyPublished));
+        } else {
+            for(int row = minRow; row <= maxRow; row++) {
+                for(int i = 0; i < columnCount; i++) {
+                    Map<Long, GeoPoint> cell = cells.get(getCellKey(row, (firstColumn + i) % columns));
+                    if(cell != null) addInBoundingBox(result, cell, box, onlyPublished);
+                }
+            }
+        }
+        return result;
+    }
+
+    public List<GeoPoint> findNearest(double latitude, double longitude, int count, boolean onlyPublished) {
+        // Max heap, which holds the nearest points found so far
+        PriorityQueue<Neighbour> nearest = new PriorityQueue<>(Comparator.comparingDouble(Neighbour::getDistance).reversed());
+        int centerRow = getRow(latitude);
+        int centerColumn = getColumn(longitude);
+        int maxRing = Math.max(rows, columns / 2);
+        for(int ring = 0; ring <= maxRing; ring++) {
+            if((long) (2 * ring + 1) * (2 * ring + 1) > 4L * cells.size()) {
+                // The rings got larger than the occupied area, so check all remaining cells at once
+                nearest.clear();
+                cells.values().forEach(cell -> addNearest(nearest, cell, latitude, longitude, count, onlyPublished));
+                break;
+            }
+            // Visit all cells on the border of the current ring
+            for(int row = centerRow - ring; row <= centerRow + ring; row++) {
+                if(row < 0 || row >= rows) continue;
+                boolean borderRow = row == centerRow - ring || row == centerRow + ring;
+                int step = borderRow ? 1 : 2 * ring;
+                for(int column = centerColumn - ring; column <= centerColumn + ring; column += Math.max(step, 1)) {
+                    Map<Long, GeoPoint> cell = cells.get(getCellKey(row, Math.floorMod(column, columns)));
+                    if(cell != null) addNearest(nearest, cell, latitude, longitude, count, onlyPublished);
+                }
+            }
+            // Stop, if no point in the next ring can be closer than the farthest point found so far
+            if(nearest.size() == count) {
+                double ringLatitude = Math.min(Math.abs(latitude) + (ring + 1) * cellSize, 90);
+                double minDistance = ring * cellSize * METERS_PER_DEGREE * Math.cos(Math.toRadians(ringLatitude));
+                if(minDistance > nearest.peek().getDistance()) break;
+            }
+        }
+
+        List<Neighbour> result = new ArrayList<>(nearest);
+        result.sort(Comparator.comparingDouble(Neighbour::getDistance));
+        List<GeoPoint> points = new ArrayList<>(result.size());
+        result.forEach(neighbour -> points.add(neighbour.getPoint()));
+        return points;
+    }
+
+    public static double getDistance(double latitude1, double longitude1, double latitude2, double longitude2) {
+        // Haversine formula
+        double latitudeDelta = Math.toRadians(latitude2 - latitude1);
+        double longitudeDelta = Math.toRadians(longitude2 - longitude1);
+        double a = Math.sin(latitudeDelta / 2) * Math.sin(latitudeDelta / 2) + Math.cos(Math.toRadians(latitude1))
+                * Math.cos(Math.toRadians(latitude2)) * Math.sin(longitudeDelta / 2) * Math.sin(longitudeDelta / 2);
+        return 2 * EARTH_RADIUS * Math.asin(Math.min(1, Math.sqrt(a)));
+    }
+
+    // ---------------------------------------------- Utility functions ------------------------------------------------
+
+    private void addInRadius(List<Neighbour> result, Map<Long, GeoPoint> cell, double latitude, double longitude, double radius, boolean onlyPublished) {
+        for(GeoPoint point : cell.values()) {
+            if(onlyPublished && !point.isPublished()) continue;
+            double distance = getDistance(latitude, longitude, point.getLatitude(), point.getLongitude());
+            if(distance <= radius) result.add(new Neighbour(point, distance));
+        }
+    }
+
+    private void addInBoundingBox(List<GeoPoint> result, Map<Long, GeoPoint> cell, BoundingBox box, boolean onlyPublished) {
+        for(GeoPoint point : cell.values()) {
+            if(onlyPublished && !point.isPublished()) continue;
+            if(box.contains(point.getLatitude(), point.getLongitude())) result.add(point);
+        }
+    }
+
+    private void addNearest(PriorityQueue<Neighbour> nearest, Map<Long, GeoPoint> cell, double latitude, double longitude, int count, boolean onlyPublished) {
+        for(GeoPoint point : cell.values()) {
+            if(onlyPublished && !point.isPublished()) continue;
+            double distance = getDistance(latitude, longitude, point.getLatitude(), point.getLongitude());
+            if(nearest.size() < count) {
+                nearest.add(new Neighbour(point, distance));
+            } else if(distance < nearest.peek().getDistance()) {
+                nearest.poll();
+                nearest.add(new Neighbour(point, distance));
+            }
+        }
+    }
+
+    private int getRow(double latitude) {
+        return Math.max(0, Math.min(rows - 1, (int) Math.floor((latitude + 90) / cellSize)));
+    }
+
+    private int getColumn(double longitude) {
+        return Math.floorMod((int) Math.floor((longitude + 180) / cellSize), columns);
+    }
+
+    private long getCellKey(int row, int column) {
+        return (long) row * columns + column;
+    }
+
+    private static class Neighbour {
+        private final GeoPoint point;
+        private final double distance;
+
+        private Neighbour(GeoPoint point, double distance) {
+            this.point = point;
+            this.distance = distance;
+        }
+
+        private GeoPoint getPoint() {
+            return point;
+        }
+
+        private double getDistance() {
+            return distance;
+        }
+    }
+}
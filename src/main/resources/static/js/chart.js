@@ -2,7 +2,7 @@
  * Copyright © Marc Auberer 2019 - 2020. All rights reserved
  */
 
-function drawLineChart(label, series, responseTime, chipId, width, height, type, chartType) {
+function drawLineChart(label, series, responseTime, chipId, width, height, type, chartType, tileUrl) {
     let config = {
         chart: {
             type: "line",
@@ -40,6 +40,7 @@ function drawLineChart(label, series, responseTime, chipId, width, height, type,
         }
     };
     if(chartType === "stock") {
+        applyTileNavigation(config, series, tileUrl, label);
         Highcharts.stockChart("container", config);
     } else {
         Highcharts.chart("container", config);
@@ -58,12 +59,22 @@ let type = params.type ? params.type : "line";
 let chartType = params.chartType ? params.chartType : "chart";
 
 // Execute request for data
-$.ajax({
-    url: "data/chart?" + urlSuffix,
-    success: (result) => {
-        var field = JSON.parse(result).field;
-        var values = JSON.parse(result).values;
-        var responseTime = JSON.parse(result).responseTime;
-        drawLineChart(field, values, responseTime, chipId, width, height, type, chartType);
-    }
-});
\ No newline at end of file
+if(chartType === "stock") {
+    // Stock charts load precomputed tiles, which are reloaded on zooming and panning
+    let tileUrl = "data/" + chipId + "/tile";
+    let [from, to] = getTimeRange(params);
+    let startTimestamp = Date.now();
+    loadTileData(tileUrl, from, to, params.valueType, params.fieldIndex ? Number(params.fieldIndex) : 0, (field, values) => {
+        drawLineChart(field, values, Date.now() - startTimestamp, chipId, width, height, type, chartType, tileUrl);
+    }, showTileError);
+} else {
+    $.ajax({
+        url: "data/chart?" + urlSuffix,
+        success: (result) => {
+            var field = JSON.parse(result).field;
+            var values = JSON.parse(result).values;
+            var responseTime = JSON.parse(result).responseTime;
+            drawLineChart(field, values, responseTime, chipId, width, height, type, chartType);
+        }
+    });
+}
\ No newline at end of file
@@ -41,4 +41,82 @@ function encodeQueryData(data) {
    const ret = [];
    for (let d in data) ret.push(encodeURIComponent(d) + "=" + encodeURIComponent(data[d]));
    return ret.join("&");
-}
\ No newline at end of file
+}
+
+// ------------------------------------------------ Tile functions -----------------------------------------------------
+
+// Have to match the tile constants of the backend (ConstantUtils)
+const TILE_BASE_SPAN = 6 * 60 * 60 * 1000;
+const TILE_LEVEL_FACTOR = 4;
+const TILE_LEVELS = 6;
+const TILE_RESOLUTION = 120;
+const TILE_MAX_POINTS = 1000;
+
+function getTileSpan(level) {
+    return TILE_BASE_SPAN * Math.pow(TILE_LEVEL_FACTOR, level);
+}
+
+function getTileLevel(min, max) {
+    // Pick the most detailed level, which does not exceed the max number of points
+    for (let level = 0; level < TILE_LEVELS; level++) {
+        if ((max - min) / (getTileSpan(level) / TILE_RESOLUTION) <= TILE_MAX_POINTS) return level;
+    }
+    return TILE_LEVELS - 1;
+}
+
+function loadTileData(tileUrl, min, max, valueType, fieldIndex, callback, errorCallback) {
+    let level = getTileLevel(min, max);
+    let span = getTileSpan(level);
+    let requests = [];
+    for (let index = Math.floor(min / span); index <= Math.floor(max / span); index++)
+        requests.push($.getJSON(tileUrl + "?level=" + level + "&index=" + index));
+
+    Promise.all(requests).then(tiles => {
+        let field = valueType;
+        let values = [];
+        let sensorCount = 0;
+        tiles.forEach(tile => {
+            sensorCount = Math.max(sensorCount, tile.sensorCount);
+            if (!field && tile.series.length > fieldIndex) field = tile.series[fieldIndex].valueType;
+            let series = tile.series.find(s => s.valueType === field);
+            if (!series) return;
+            for (let i = 0; i < series.timestamps.length; i++) {
+                if (series.timestamps[i] >= min && series.timestamps[i] <= max) values.push([series.timestamps[i], series.avg[i]]);
+            }
+        });
+        callback(field, values, sensorCount);
+    }).catch(() => {
+        // A single failing tile fails the whole range, so the chart does not show a gap silently
+        errorCallback();
+    });
+}
+
+function applyTileNavigation(config, series, tileUrl, label) {
+    config.navigator = {
+        adaptToUpdatedData: false,
+        series: {
+            data: series
+        }
+    };
+    config.xAxis.events = {
+        afterSetExtremes: function (e) {
+            // Reload the visible range in the appropriate level of detail
+            let chart = this.chart;
+            chart.showLoading("Loading data ...");
+            loadTileData(tileUrl, Math.round(e.min), Math.round(e.max), label, 0, (field, values) => {
+                chart.series[0].setData(values);
+                chart.hideLoading();
+            }, () => chart.showLoading("Could not load data"));
+        }
+    };
+}
+
+function showTileError() {
+    $("#container").text("Could not load data. Please try again later.");
+}
+
+function getTimeRange(params) {
+    let to = params.to && params.to !== "0" ? Number(params.to) : Date.now();
+    let from = params.from && params.from !== "0" ? Number(params.from) : to - 24 * 60 * 60 * 1000;
+    return [from, to];
+}
@@ -11,6 +11,8 @@ import com.chillibits.particulatematterapi.model.dto.ClientDto;
 import com.chillibits.particulatematterapi.model.dto.ClientInsertUpdateDto;
 import com.chillibits.particulatematterapi.repository.ClientRepository;
 import com.chillibits.particulatematterapi.service.ClientService;
+import com.chillibits.particulatematterapi.service.EntityCacheService;
+import com.chillibits.particulatematterapi.shared.CachingPasswordEncoder;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.jupiter.api.DisplayName;
@@ -46,6 +48,10 @@ public class ClientControllerTests {
     private ClientController clientController;
     @MockBean
     private ClientRepository clientRepository;
+    @MockBean
+    private EntityCacheService entityCacheService;
+    @MockBean
+    private CachingPasswordEncoder passwordEncoder;
 
     private final List<Client> testData = getTestData();
     private final List<ClientInsertUpdateDto> insertUpdateTestData = getTestInsertUpdateData();
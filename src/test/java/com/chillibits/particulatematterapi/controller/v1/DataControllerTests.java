@@ -8,33 +8,59 @@ import com.chillibits.particulatematterapi.exception.ErrorCode;
 import com.chillibits.particulatematterapi.exception.exception.DataAccessException;
 import com.chillibits.particulatematterapi.model.db.data.DataRecord;
 import com.chillibits.particulatematterapi.model.dto.DataRecordCompressedDto;
+import com.chillibits.particulatematterapi.model.db.data.DataSketch;
+import com.chillibits.particulatematterapi.model.db.data.DataTile;
+import com.chillibits.particulatematterapi.model.db.data.RegionAggregate;
+import com.chillibits.particulatematterapi.model.db.main.Sensor;
 import com.chillibits.particulatematterapi.model.dto.DataRecordDto;
+import com.chillibits.particulatematterapi.model.dto.DataStatsDto;
+import com.chillibits.particulatematterapi.model.dto.DataTileDto;
 import com.chillibits.particulatematterapi.repository.SensorRepository;
 import com.chillibits.particulatematterapi.service.DataService;
+import com.chillibits.particulatematterapi.service.RegionService;
+import com.chillibits.particulatematterapi.service.SketchService;
+import com.chillibits.particulatematterapi.service.TileService;
+import com.chillibits.particulatematterapi.shared.ConstantUtils;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.jupiter.api.DisplayName;
+import org.bson.Document;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Bean;
+import org.springframework.data.mongodb.core.BulkOperations;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
+import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringRunner;
 
 import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Optional;
 import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(SpringRunner.class)
@@ -48,12 +74,18 @@ public class DataControllerTests {
     private MongoTemplate template;
     @MockBean
     private SensorRepository sensorRepository;
+    @Autowired
+    private RegionService regionService;
+    @Autowired
+    private SketchService sketchService;
 
     private final long time = System.currentTimeMillis();
     private final long timestampOffset = 15000; // 2,5 minutes in milliseconds
+    private final long regionHour = 1599998400000L; // Begin of an hour
     private final List<DataRecord> testData = getTestDataForChipId12345678();
     private final List<DataRecordDto> assertData = getAssertDataForChipId12345678();
     private final List<DataRecordCompressedDto> assertDataCompressed = getAssertDataForChipId12345678Compressed();
+    private final BulkOperations sketchBulkOps = mock(BulkOperations.class, RETURNS_SELF);
 
     @TestConfiguration
     static class DataControllerImplTestContextConfiguration {
@@ -68,6 +100,21 @@ public class DataControllerTests {
             return new DataService();
         }
 
+        @Bean
+        public RegionService regionService() {
+            return new RegionService();
+        }
+
+        @Bean
+        public SketchService sketchService() {
+            return new SketchService();
+        }
+
+        @Bean
+        public TileService tileService() {
+            return new TileService();
+        }
+
         @Bean
         public ModelMapper mapper() {
             return new ModelMapper();
@@ -87,6 +134,26 @@ public class DataControllerTests {
                 .thenReturn(testData);
         when(sensorRepository.getChipIdsOfSensorFromCountry("Germany")).thenReturn(Arrays.asList(12345L, 12345678L, 123456L));
         when(sensorRepository.getChipIdsOfSensorFromCity("Germany", "Berlin")).thenReturn(Arrays.asList(12345L, 123456L));
+        when(template.find(any(Query.class), eq(RegionAggregate.class), eq(ConstantUtils.REGION_TABLE_NAME)))
+                .thenReturn(getTestDataForRegionAggregates());
+        when(template.stream(any(Query.class), eq(DataRecord.class), eq("12345")))
+                .thenAnswer(invocation -> toCloseableIterator(getTestDataForChipId12345()));
+        when(template.stream(any(Query.class), eq(DataRecord.class), eq("123456")))
+                .thenAnswer(invocation -> toCloseableIterator(getTestDataForChipId123456()));
+        when(template.stream(any(Query.class), eq(DataRecord.class), eq("12345678")))
+                .thenAnswer(invocation -> toCloseableIterator(testData));
+        when(template.stream(any(Query.class), eq(DataRecord.class), eq("4711")))
+                .thenAnswer(invocation -> toCloseableIterator(getTestDataForTile()));
+        when(template.stream(any(Query.class), eq(DataRecord.class), eq("4712")))
+                .thenAnswer(invocation -> toCloseableIterator(Collections.emptyList()));
+        when(sensorRepository.findById(4711L)).thenReturn(Optional.of(new Sensor()));
+        when(sensorRepository.findById(4712L)).thenReturn(Optional.of(new Sensor()));
+        when(template.findOne(any(Query.class), eq(DataRecord.class), eq("4711")))
+                .thenReturn(getTestDataForTile().get(0));
+        when(template.bulkOps(any(BulkOperations.BulkMode.class), eq(DataSketch.class), eq(ConstantUtils.SKETCH_TABLE_NAME)))
+                .thenReturn(sketchBulkOps);
+        when(template.stream(any(Query.class), eq(DataSketch.class), eq(ConstantUtils.SKETCH_TABLE_NAME)))
+                .thenAnswer(invocation -> toCloseableIterator(Collections.emptyList()));
     }
 
     // -------------------------------------------- Data for single sensor ---------------------------------------------
@@ -250,7 +317,7 @@ public class DataControllerTests {
     @Test
     @DisplayName("Test for getting json data for a chart for a single sensor for a certain timespan - successful")
     public void testGetChartDataSuccessful() {
-        String result = dataController.getChartData(12345678L, time - 4 * timestampOffset, time, 0, 1);
+        String result = dataController.getChartData(12345678L, time - 4 * timestampOffset, time, 0, null, 1);
 
         // Replace responseTime, cause it's not the same every time
         int indexStart = result.indexOf("responseTime") + 14;
@@ -260,10 +327,31 @@ public class DataControllerTests {
         assertEquals(getChartDataAssertString(), result);
     }
 
+    @Test
+    @DisplayName("Test for getting json data for a chart for a single sensor for a certain timespan by value type - successful")
+    public void testGetChartDataByValueTypeSuccessful() {
+        String result = dataController.getChartData(12345678L, time - 4 * timestampOffset, time, 0, "BME280_temperature", 1);
+
+        // Replace responseTime, cause it's not the same every time
+        int indexStart = result.indexOf("responseTime") + 14;
+        String value = result.substring(indexStart, result.indexOf(",", indexStart));
+        result = result.replace("responseTime\":" + value, "responseTime\":0");
+
+        assertEquals(getChartDataValueTypeAssertString(), result);
+
+        // Check if only the requested field was queried
+        ArgumentCaptor<Query> queryCaptor = ArgumentCaptor.forClass(Query.class);
+        verify(template).find(queryCaptor.capture(), eq(DataRecord.class), eq("12345678"));
+        Document fields = queryCaptor.getValue().getFieldsObject();
+        assertEquals(1, fields.get("timestamp"));
+        assertTrue(fields.containsKey("sensorDataValues"));
+        assertFalse(fields.containsKey("note"));
+    }
+
     @Test
     @DisplayName("Test for getting json data for a chart for a single sensor for a certain timespan - failure")
     public void testGetChartDataFailure() {
-        String result = dataController.getChartData(123456789L, time - 4 * timestampOffset, time, 0, 1);
+        String result = dataController.getChartData(123456789L, time - 4 * timestampOffset, time, 0, null, 1);
 
         // Replace responseTime, cause it's not the same every time
         int indexStart = result.indexOf("responseTime") + 14;
@@ -277,7 +365,7 @@ public class DataControllerTests {
     @DisplayName("Test for getting json data for a chart for a single sensor for a certain timespan - failure")
     public void testGetChartDataInvalidInputData() {
         // Try it with a fieldIndex out of range
-        String result1 = dataController.getChartData(123456789L, time - 4 * timestampOffset, time, 10, 1);
+        String result1 = dataController.getChartData(123456789L, time - 4 * timestampOffset, time, 10, null, 1);
 
         // Replace responseTime, cause it's not the same every time
         int indexStart = result1.indexOf("responseTime") + 14;
@@ -288,7 +376,7 @@ public class DataControllerTests {
 
         // Try with a negative fieldIndex
         Exception exception = assertThrows(DataAccessException.class, () ->
-                dataController.getChartData(123456789L, time - 4 * timestampOffset, time, -2, 1)
+                dataController.getChartData(123456789L, time - 4 * timestampOffset, time, -2, null, 1)
         );
 
         String expectedMessage = new DataAccessException(ErrorCode.INVALID_FIELD_INDEX).getMessage();
@@ -296,7 +384,7 @@ public class DataControllerTests {
 
         // Try with a negative mergeCount
         exception = assertThrows(DataAccessException.class, () ->
-                dataController.getChartData(123456789L, time - 4 * timestampOffset, time, 0, -1)
+                dataController.getChartData(123456789L, time - 4 * timestampOffset, time, 0, null, -1)
         );
 
         expectedMessage = new DataAccessException(ErrorCode.INVALID_MERGE_COUNT).getMessage();
@@ -306,7 +394,7 @@ public class DataControllerTests {
     @Test
     @DisplayName("Test for getting json data for a chart for sensors from a country for a certain timespan - successful")
     public void testGetChartDataCountrySuccessful() {
-        String result = dataController.getChartDataCountry("Germany", time - 4 * timestampOffset, time, 0, 1);
+        String result = dataController.getChartDataCountry("Germany", time - 4 * timestampOffset, time, 0, null, 1);
 
         // Replace responseTime, cause it's not the same every time
         int indexStart = result.indexOf("responseTime") + 14;
@@ -319,7 +407,7 @@ public class DataControllerTests {
     @Test
     @DisplayName("Test for getting json data for a chart for sensors from a country for a certain timespan - failure")
     public void testGetChartDataCountryFailure() {
-        String result = dataController.getChartDataCountry("Germany", time - 4 * timestampOffset, time, 0, 1);
+        String result = dataController.getChartDataCountry("Germany", time - 4 * timestampOffset, time, 0, null, 1);
 
         // Replace responseTime, cause it's not the same every time
         int indexStart = result.indexOf("responseTime") + 14;
@@ -332,7 +420,7 @@ public class DataControllerTests {
     @Test
     @DisplayName("Test for getting json data for a chart for sensors from a city for a certain timespan - successful")
     public void testGetChartDataCitySuccessful() {
-        String result = dataController.getChartDataCity("Germany", "Berlin", time - 4 * timestampOffset, time, 0, 1);
+        String result = dataController.getChartDataCity("Germany", "Berlin", time - 4 * timestampOffset, time, 0, null, 1);
 
         // Replace responseTime, cause it's not the same every time
         int indexStart = result.indexOf("responseTime") + 14;
@@ -340,12 +428,41 @@ public class DataControllerTests {
         result = result.replace("responseTime\":" + value, "responseTime\":0");
 
         assertEquals(getChartDataCityAssertString(), result);
+
+        // Check if only the requested field was queried
+        ArgumentCaptor<Query> queryCaptor = ArgumentCaptor.forClass(Query.class);
+        verify(template).stream(queryCaptor.capture(), eq(DataRecord.class), eq("12345"));
+        Document fields = queryCaptor.getValue().getFieldsObject();
+        assertEquals(1, fields.get("timestamp"));
+        assertTrue(fields.containsKey("sensorDataValues"));
+        assertFalse(fields.containsKey("note"));
+    }
+
+    @Test
+    @DisplayName("Test for getting json data for a chart for sensors from a city from the region aggregates - successful")
+    public void testGetChartDataCityAggregatesSuccessful() {
+        String result = dataController.getChartDataCity("Germany", "Berlin", regionHour, regionHour + 3 * ConstantUtils.REGION_AGGREGATE_SPAN, 0, null, 120);
+
+        // Replace responseTime, cause it's not the same every time
+        int indexStart = result.indexOf("responseTime") + 14;
+        String value = result.substring(indexStart, result.indexOf(",", indexStart));
+        result = result.replace("responseTime\":" + value, "responseTime\":0");
+
+        assertEquals(getChartDataCityAggregatesAssertString(), result);
+
+        // The buckets begin with the requested time range, like the ones computed from the raw data
+        long from = regionHour + ConstantUtils.REGION_AGGREGATE_SPAN / 2;
+        result = dataController.getChartDataCity("Germany", "Berlin", from, from + 2 * ConstantUtils.REGION_AGGREGATE_SPAN, 0, null, 60);
+        indexStart = result.indexOf("responseTime") + 14;
+        value = result.substring(indexStart, result.indexOf(",", indexStart));
+        result = result.replace("responseTime\":" + value, "responseTime\":0");
+        assertEquals("{\"sensorCount\":2,\"field\":\"SDS_P1\",\"responseTime\":0,\"values\":[[" + from + ",2.714]]}", result);
     }
 
     @Test
     @DisplayName("Test for getting json data for a chart for sensors from a city for a certain timespan - failure")
     public void testGetChartDataCityFailure() {
-        String result = dataController.getChartDataCity("Germany", "Berlin", time - 4 * timestampOffset, time, 0, 1);
+        String result = dataController.getChartDataCity("Germany", "Berlin", time - 4 * timestampOffset, time, 0, null, 1);
 
         // Replace responseTime, cause it's not the same every time
         int indexStart = result.indexOf("responseTime") + 14;
@@ -355,8 +472,259 @@ public class DataControllerTests {
         assertEquals(getChartDataCityAssertStringNoData(), result);
     }
 
+    // ----------------------------------------------- Stats functions -------------------------------------------------
+
+    @Test
+    @DisplayName("Test for getting statistics of a single sensor for a certain timespan - successful")
+    public void testGetStatsSuccessful() {
+        DataStatsDto result = dataController.getStats(4711, tileFrom, tileFrom + ConstantUtils.TILE_BASE_SPAN, null, new double[] { 50, 100 });
+
+        assertEquals(1, result.getSensorCount());
+        assertEquals(2, result.getFields().length);
+        DataStatsDto.FieldStats field = result.getFields()[0];
+        assertEquals("SDS_P1", field.getValueType());
+        assertEquals(3, field.getCount());
+        assertEquals(2.567, field.getMean(), 0);
+        assertEquals(1.3, field.getMin(), 0);
+        assertEquals(3.3, field.getMax(), 0);
+        assertEquals(1.102, field.getStdDev(), 0);
+        assertEquals(3.1, field.getPercentiles().get("p50"), 3.1 * ConstantUtils.SKETCH_RELATIVE_ACCURACY);
+        assertEquals(3.3, field.getPercentiles().get("p100"), 0);
+        // Partial days are not persisted
+        verify(template, never()).save(any(DataSketch.class), eq(ConstantUtils.SKETCH_TABLE_NAME));
+    }
+
+    @Test
+    @DisplayName("Test for getting statistics of a single sensor for whole days - successful")
+    public void testGetStatsDaySketchesSuccessful() {
+        DataSketch sketch = buildTestSketch();
+        when(template.stream(any(Query.class), eq(DataSketch.class), eq(ConstantUtils.SKETCH_TABLE_NAME)))
+                .thenAnswer(invocation -> toCloseableIterator(Collections.singletonList(sketch)));
+        DataStatsDto result = dataController.getStats(4711, tileFrom, tileFrom + ConstantUtils.SKETCH_SPAN, "SDS_P2", new double[] { 50 });
+
+        assertEquals(1, result.getFields().length);
+        DataStatsDto.FieldStats field = result.getFields()[0];
+        assertEquals("SDS_P2", field.getValueType());
+        assertEquals(3, field.getCount());
+        assertEquals(2.033, field.getMean(), 0);
+        assertEquals(1.4, field.getPercentiles().get("p50"), 1.4 * ConstantUtils.SKETCH_RELATIVE_ACCURACY);
+        // Days with a stored sketch are not read from the raw data again and requests never persist sketches
+        verify(template, times(1)).stream(any(Query.class), eq(DataRecord.class), eq("4711"));
+        verify(sketchBulkOps, times(1)).insert(any(List.class));
+    }
+
+    @Test
+    @DisplayName("Test for getting statistics of a single sensor for days without sketches - successful")
+    public void testGetStatsDaySketchesMissing() {
+        // The last day is read from the raw data, as long as its sketch is not built yet
+        DataStatsDto result = dataController.getStats(4711, tileFrom - ConstantUtils.SKETCH_SPAN, tileFrom + ConstantUtils.SKETCH_SPAN, "SDS_P2", new double[] { 50 });
+        assertEquals(3, result.getFields()[0].getCount());
+        verify(template).stream(any(Query.class), eq(DataRecord.class), eq("4711"));
+        verify(template, never()).findOne(any(Query.class), eq(DataRecord.class), eq("4711"));
+        verify(sketchBulkOps, never()).insert(any(List.class));
+    }
+
+    @Test
+    @DisplayName("Test for building the sketches of days, which are over - successful")
+    public void testBuildSketches() {
+        DataSketch sketch = buildTestSketch();
+
+        // Only the day with data gets a sketch
+        assertEquals(4711 + ":" + tileFrom, sketch.getId());
+        assertEquals(tileFrom, sketch.getDay());
+        assertEquals(2, sketch.getValues().length);
+        assertEquals(3, sketch.getValues()[1].getCount());
+
+        // Sensors without any data do not get sketches at all
+        verify(template, never()).stream(any(Query.class), eq(DataRecord.class), eq("4712"));
+        verify(sketchBulkOps).execute();
+    }
+
+    @Test
+    @DisplayName("Test for getting statistics of a single sensor for a certain timespan - failure")
+    public void testGetStatsFailure() {
+        // Try with invalid percentile
+        Exception exception = assertThrows(DataAccessException.class, () ->
+                dataController.getStats(4711, tileFrom, tileFrom + ConstantUtils.TILE_BASE_SPAN, null, new double[] { 50, 101 })
+        );
+
+        String expectedMessage = new DataAccessException(ErrorCode.INVALID_PERCENTILE).getMessage();
+        assertEquals(expectedMessage, exception.getMessage());
+
+        // Try with invalid time range
+        exception = assertThrows(DataAccessException.class, () ->
+                dataController.getStats(4711, tileFrom, tileFrom - 1, null, new double[] { 50 })
+        );
+
+        expectedMessage = new DataAccessException(ErrorCode.INVALID_TIME_RANGE_DATA).getMessage();
+        assertEquals(expectedMessage, exception.getMessage());
+    }
+
+    // ---------------------------------------------- Aggregate functions ----------------------------------------------
+
+    @Test
+    @DisplayName("Test for rebuilding the region aggregates of closed hours - successful")
+    public void testRebuildAggregates() {
+        when(sensorRepository.findAll()).thenReturn(Collections.singletonList(
+                new Sensor(4712, null, "2020-01", 0, "", 0, 0, 0, 0, 0, "Germany", "Berlin", false, true, true)));
+        regionService.rebuildAggregates(regionHour, regionHour + 2 * ConstantUtils.REGION_AGGREGATE_SPAN);
+
+        // Only the aggregates of the requested hours are replaced
+        ArgumentCaptor<Query> queryCaptor = ArgumentCaptor.forClass(Query.class);
+        verify(template).remove(queryCaptor.capture(), eq(ConstantUtils.REGION_TABLE_NAME));
+        Document hour = (Document) queryCaptor.getValue().getQueryObject().get("hour");
+        assertEquals(regionHour, hour.get("$gte"));
+        assertEquals(regionHour + 2 * ConstantUtils.REGION_AGGREGATE_SPAN, hour.get("$lt"));
+        verify(template).stream(any(Query.class), eq(DataRecord.class), eq("4712"));
+
+        // The current hour must not be rebuilt
+        regionService.rebuildAggregates(System.currentTimeMillis(), 0);
+        verify(template).remove(any(Query.class), eq(ConstantUtils.REGION_TABLE_NAME));
+    }
+
+    // ------------------------------------------------ Tile functions -------------------------------------------------
+
+    @Test
+    @DisplayName("Test for getting a closed tile of a single sensor - successful")
+    public void testGetTileSuccessful() {
+        ResponseEntity<DataTileDto> result = dataController.getTile(4711, 0, tileIndex);
+        DataTileDto tile = result.getBody();
+
+        assertTrue(tile.isClosed());
+        assertEquals(tileIndex * ConstantUtils.TILE_BASE_SPAN, tile.getFrom());
+        assertEquals(2, tile.getSeries().length);
+        DataTileDto.TileSeries series = tile.getSeries()[0];
+        assertEquals("SDS_P1", series.getValueType());
+        assertArrayEquals(new long[] { tileFrom, tileFrom + 2 * tileBucketSpan }, series.getTimestamps());
+        assertArrayEquals(new double[] { 3.1, 1.3 }, series.getMin(), 0);
+        assertArrayEquals(new double[] { 3.2, 1.3 }, series.getAvg(), 0);
+        assertArrayEquals(new double[] { 3.3, 1.3 }, series.getMax(), 0);
+        assertArrayEquals(new int[] { 2, 1 }, series.getCount());
+        assertTrue(result.getHeaders().getCacheControl().contains("immutable"));
+        // Closed tiles have to be persisted
+        verify(template).save(any(DataTile.class), eq(ConstantUtils.TILE_TABLE_NAME));
+    }
+
+    @Test
+    @DisplayName("Test for getting an open tile of a single sensor - successful")
+    public void testGetTileOpen() {
+        long openIndex = System.currentTimeMillis() / ConstantUtils.TILE_BASE_SPAN;
+        ResponseEntity<DataTileDto> result = dataController.getTile(4712, 0, openIndex);
+
+        assertFalse(result.getBody().isClosed());
+        assertEquals(0, result.getBody().getSeries().length);
+        assertFalse(result.getHeaders().getCacheControl().contains("immutable"));
+    }
+
+    @Test
+    @DisplayName("Test for getting an open tile of a single sensor repeatedly - successful")
+    public void testGetTileOpenCached() {
+        long nextIndex = System.currentTimeMillis() / ConstantUtils.TILE_BASE_SPAN + 1;
+        assertFalse(dataController.getTile(4712, 0, nextIndex).getBody().isClosed());
+        assertFalse(dataController.getTile(4712, 0, nextIndex).getBody().isClosed());
+
+        // Open tiles are computed only once within a short time span, but never persisted
+        verify(template, times(1)).stream(any(Query.class), eq(DataRecord.class), eq("4712"));
+        verify(template, never()).save(any(DataTile.class), eq(ConstantUtils.TILE_TABLE_NAME));
+    }
+
+    @Test
+    @DisplayName("Test for getting empty tiles of a single sensor - successful")
+    public void testGetTileEmpty() {
+        // Closed tiles without data and tiles of unknown sensors must not be persisted
+        assertEquals(0, dataController.getTile(4712, 0, tileIndex).getBody().getSeries().length);
+        assertEquals(0, dataController.getTile(4713, 0, tileIndex).getBody().getSeries().length);
+        verify(template, never()).save(any(DataTile.class), eq(ConstantUtils.TILE_TABLE_NAME));
+        verify(template, never()).stream(any(Query.class), eq(DataRecord.class), eq("4713"));
+    }
+
+    @Test
+    @DisplayName("Test for getting a tile of a single sensor - failure")
+    public void testGetTileFailure() {
+        // Try with invalid level
+        Exception exception = assertThrows(DataAccessException.class, () ->
+                dataController.getTile(4711, ConstantUtils.TILE_LEVELS, 0)
+        );
+
+        String expectedMessage = new DataAccessException(ErrorCode.INVALID_TILE_LEVEL).getMessage();
+        assertEquals(expectedMessage, exception.getMessage());
+
+        // Try with invalid index
+        exception = assertThrows(DataAccessException.class, () ->
+                dataController.getTile(4711, 0, -1)
+        );
+
+        expectedMessage = new DataAccessException(ErrorCode.INVALID_TILE_INDEX).getMessage();
+        assertEquals(expectedMessage, exception.getMessage());
+
+        // Try with an index in the future, which would also overflow
+        exception = assertThrows(DataAccessException.class, () ->
+                dataController.getTile(4711, ConstantUtils.TILE_LEVELS - 1, Long.MAX_VALUE / 1000)
+        );
+        assertEquals(expectedMessage, exception.getMessage());
+    }
+
     // -------------------------------------------------- Test data ----------------------------------------------------
 
+    private final long tileIndex = 70000; // Closed tile in 2017
+    private final long tileFrom = tileIndex * ConstantUtils.TILE_BASE_SPAN;
+    private final long tileBucketSpan = ConstantUtils.TILE_BASE_SPAN / ConstantUtils.TILE_RESOLUTION;
+
+    private List<DataRecord> getTestDataForTile() {
+        DataRecord.SensorDataValue[] sdv1 = new DataRecord.SensorDataValue[] {
+                new DataRecord.SensorDataValue("SDS_P1", 3.3),
+                new DataRecord.SensorDataValue("SDS_P2", 1.4)
+        };
+        DataRecord.SensorDataValue[] sdv2 = new DataRecord.SensorDataValue[] {
+                new DataRecord.SensorDataValue("SDS_P1", 3.1),
+                new DataRecord.SensorDataValue("SDS_P2", 4.1)
+        };
+        DataRecord.SensorDataValue[] sdv3 = new DataRecord.SensorDataValue[] {
+                new DataRecord.SensorDataValue("SDS_P1", 1.3),
+                new DataRecord.SensorDataValue("SDS_P2", 0.6)
+        };
+
+        DataRecord r1 = new DataRecord(4711, tileFrom, null, sdv1, "");
+        DataRecord r2 = new DataRecord(4711, tileFrom + tileBucketSpan - 1, null, sdv2, "");
+        DataRecord r3 = new DataRecord(4711, tileFrom + 2 * tileBucketSpan + 1, null, sdv3, "");
+        return Arrays.asList(r1, r2, r3);
+    }
+
+    private DataSketch buildTestSketch() {
+        when(sensorRepository.getChipIdsOfAllSensors()).thenReturn(Arrays.asList(4711L, 4712L));
+        sketchService.buildSketches();
+        ArgumentCaptor<List<DataSketch>> sketchCaptor = ArgumentCaptor.forClass(List.class);
+        verify(sketchBulkOps).insert(sketchCaptor.capture());
+        assertEquals(1, sketchCaptor.getValue().size());
+        return sketchCaptor.getValue().get(0);
+    }
+
+    private <T> CloseableIterator<T> toCloseableIterator(List<T> records) {
+        Iterator<T> iterator = records.iterator();
+        return new CloseableIterator<>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public T next() {
+                return iterator.next();
+            }
+
+            @Override
+            public void close() {}
+        };
+    }
+
+    private List<RegionAggregate> getTestDataForRegionAggregates() {
+        long nextHour = regionHour + ConstantUtils.REGION_AGGREGATE_SPAN;
+        RegionAggregate a1 = new RegionAggregate(null, "Germany", "Berlin", regionHour, "SDS_P2", 1, 4.0, 4.5, 4, 0.5, 1.5);
+        RegionAggregate a2 = new RegionAggregate(null, "Germany", "Berlin", regionHour, "SDS_P1", 0, 10.0, 30.0, 4, 1.0, 4.0);
+        RegionAggregate a3 = new RegionAggregate(null, "Germany", "Berlin", nextHour, "SDS_P1", 0, 9.0, 29.0, 3, 2.0, 4.0);
+        return Arrays.asList(a1, a2, a3);
+    }
+
     private List<DataRecord> getTestDataForChipId12345678() {
         DataRecord.SensorDataValue[] sdv1 = new DataRecord.SensorDataValue[] {
                 new DataRecord.SensorDataValue("SDS_P1", 3.3),
@@ -513,6 +881,11 @@ public class DataControllerTests {
                 (time - timestampOffset) + ",3.1],[" + time + ",1.3]]}";
     }
 
+    private String getChartDataValueTypeAssertString() {
+        return "{\"sensorCount\":1,\"field\":\"BME280_temperature\",\"responseTime\":0,\"values\":[[" +
+                (time - 3 * timestampOffset) + ",25.1],[" + (time - 2 * timestampOffset) + ",26.1]]}";
+    }
+
     private String getChartDataAssertStringNoData() {
         return "{\"sensorCount\":1,\"responseTime\":0}";
     }
@@ -529,6 +902,10 @@ public class DataControllerTests {
         return "{\"sensorCount\":2,\"field\":\"SDS_P1\",\"responseTime\":0,\"values\":[[" + (time - 4 * timestampOffset) + ",2.239]]}";
     }
 
+    private String getChartDataCityAggregatesAssertString() {
+        return "{\"sensorCount\":2,\"field\":\"SDS_P1\",\"responseTime\":0,\"values\":[[" + regionHour + ",2.714]]}";
+    }
+
     private String getChartDataCityAssertStringNoData() {
         return "{\"sensorCount\":2,\"field\":\"SDS_P1\",\"responseTime\":0}";
     }
@@ -16,6 +16,7 @@ import com.chillibits.particulatematterapi.model.dto.UserDto;
 import com.chillibits.particulatematterapi.repository.LinkRepository;
 import com.chillibits.particulatematterapi.repository.SensorRepository;
 import com.chillibits.particulatematterapi.repository.UserRepository;
+import com.chillibits.particulatematterapi.service.EntityCacheService;
 import com.chillibits.particulatematterapi.service.LinkService;
 import org.junit.Assert;
 import org.junit.Before;
@@ -56,6 +57,8 @@ public class LinkControllerTests {
     private UserRepository userRepository;
     @MockBean
     private SensorRepository sensorRepository;
+    @MockBean
+    private EntityCacheService entityCacheService;
 
     private final long time = System.currentTimeMillis();
     private final List<LinkInsertUpdateDto> testData = getInsertUpdateTestData();
@@ -8,12 +8,15 @@ import com.chillibits.particulatematterapi.exception.ErrorCode;
 import com.chillibits.particulatematterapi.exception.exception.LogAccessException;
 import com.chillibits.particulatematterapi.model.db.data.LogItem;
 import com.chillibits.particulatematterapi.model.dto.LogItemDto;
+import com.chillibits.particulatematterapi.model.dto.LogPageDto;
 import com.chillibits.particulatematterapi.service.LogService;
 import com.chillibits.particulatematterapi.shared.ConstantUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.TestConfiguration;
@@ -23,17 +26,29 @@ import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.test.context.ActiveProfiles;
+import org.springframework.data.util.CloseableIterator;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.YearMonth;
+import java.time.ZoneId;
 import java.util.Arrays;
+import java.util.Iterator;
 import java.util.List;
 import java.util.stream.Collectors;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.atLeastOnce;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(SpringRunner.class)
@@ -46,7 +61,8 @@ public class LogControllerTests {
     @MockBean
     private MongoTemplate template;
 
-    private final long time = System.currentTimeMillis();
+    // Middle of the previous month, far from a month boundary and within the retention of the access log partitions
+    private final long time = YearMonth.now().minusMonths(1).atDay(15).atTime(15, 55, 49).atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
     private final List<LogItem> testData = getTestData();
     private final List<LogItemDto> assertData = getAssertData();
 
@@ -71,7 +87,7 @@ public class LogControllerTests {
 
     @Before
     public void init() {
-        when(template.find(any(Query.class), eq(LogItem.class)))
+        when(template.find(any(Query.class), eq(LogItem.class), anyString()))
                 .thenReturn(testData)
                 .thenReturn(testData.stream().filter(item -> item.getTarget().equals("User 2")).collect(Collectors.toList()))
                 .thenReturn(testData.stream().filter(item -> item.getClientId() == ConstantUtils.CLIENT_ID_PMAPP).collect(Collectors.toList()))
@@ -83,7 +99,7 @@ public class LogControllerTests {
 
     @Test
     public void testGetAllLogsSuccessfully() throws LogAccessException {
-        List<LogItemDto> result = logController.getAllLogs(time - 20000, time + 20000);
+        List<LogItemDto> result = logController.getAllLogs(time - 20000, time + 20000, null, 0).getItems();
         assertThat(result).containsExactlyInAnyOrder(assertData.toArray(LogItemDto[]::new));
     }
 
@@ -91,7 +107,7 @@ public class LogControllerTests {
     public void testGetAllLogsInvalidTimeRangeException() {
         // Try with invalid input
         Exception exception = assertThrows(LogAccessException.class, () ->
-                logController.getAllLogs(-1, -5)
+                logController.getAllLogs(-1, -5, null, 0)
         );
 
         String expectedMessage = new LogAccessException(ErrorCode.INVALID_TIME_RANGE_LOG).getMessage();
@@ -101,9 +117,9 @@ public class LogControllerTests {
     @Test
     public void testGetAllLogsByTargetSuccessfully() throws LogAccessException {
         // Execute 1 time to skip 1 x thenReturn for fake function
-        template.find(Query.query(Criteria.where("timestamp").gte(0)), LogItem.class);
+        template.find(Query.query(Criteria.where("timestamp").gte(0)), LogItem.class, ConstantUtils.LOG_TABLE_NAME);
 
-        List<LogItemDto> result = logController.getLogsByTarget("User 2", time - 20000, time + 20000);
+        List<LogItemDto> result = logController.getLogsByTarget("User 2", time - 20000, time + 20000, null, 0).getItems();
         List<LogItemDto> expected = assertData.stream().filter(item -> item.getTarget().equals("User 2")).collect(Collectors.toList());
         assertThat(result).containsExactlyInAnyOrder(expected.toArray(LogItemDto[]::new));
     }
@@ -112,7 +128,7 @@ public class LogControllerTests {
     public void testGetAllLogsByTargetInvalidTimeRangeException() {
         // Try with invalid input
         Exception exception = assertThrows(LogAccessException.class, () ->
-                logController.getLogsByTarget("User 2", time + 20000, time - 20000)
+                logController.getLogsByTarget("User 2", time + 20000, time - 20000, null, 0)
         );
 
         String expectedMessage = new LogAccessException(ErrorCode.INVALID_TIME_RANGE_LOG).getMessage();
@@ -122,9 +138,9 @@ public class LogControllerTests {
     @Test
     public void testGetAllLogsByClientSuccessfully() throws LogAccessException {
         // Execute 2 times to skip 2 x thenReturn for fake function
-        for(int i = 0; i < 2; i++) template.find(Query.query(Criteria.where("timestamp").gte(0)), LogItem.class);
+        for(int i = 0; i < 2; i++) template.find(Query.query(Criteria.where("timestamp").gte(0)), LogItem.class, ConstantUtils.LOG_TABLE_NAME);
 
-        List<LogItemDto> result = logController.getLogsByClient(ConstantUtils.CLIENT_ID_PMAPP, time - 20000, time + 20000);
+        List<LogItemDto> result = logController.getLogsByClient(ConstantUtils.CLIENT_ID_PMAPP, time - 20000, time + 20000, null, 0).getItems();
         List<LogItemDto> expected = assertData.stream().filter(item -> item.getClientId() == ConstantUtils.CLIENT_ID_PMAPP).collect(Collectors.toList());
         assertThat(result).containsExactlyInAnyOrder(expected.toArray(LogItemDto[]::new));
     }
@@ -133,7 +149,7 @@ public class LogControllerTests {
     public void testGetAllLogsByClientInvalidTimeRangeException() {
         // Try with invalid input
         Exception exception = assertThrows(LogAccessException.class, () ->
-                logController.getLogsByClient(ConstantUtils.CLIENT_ID_PMAPP, time + 20000, time - 20000)
+                logController.getLogsByClient(ConstantUtils.CLIENT_ID_PMAPP, time + 20000, time - 20000, null, 0)
         );
 
         String expectedMessage = new LogAccessException(ErrorCode.INVALID_TIME_RANGE_LOG).getMessage();
@@ -143,9 +159,9 @@ public class LogControllerTests {
     @Test
     public void testGetAllLogsByUserSuccessfully() throws LogAccessException {
         // Execute 3 times to skip 3 x thenReturn for fake function
-        for(int i = 0; i < 3; i++) template.find(Query.query(Criteria.where("timestamp").gte(0)), LogItem.class);
+        for(int i = 0; i < 3; i++) template.find(Query.query(Criteria.where("timestamp").gte(0)), LogItem.class, ConstantUtils.LOG_TABLE_NAME);
 
-        List<LogItemDto> result = logController.getLogsByUser(2, time - 20000, time + 20000);
+        List<LogItemDto> result = logController.getLogsByUser(2, time - 20000, time + 20000, null, 0).getItems();
         List<LogItemDto> expected = assertData.stream().filter(item -> item.getUserId() == 2).collect(Collectors.toList());
         assertThat(result).containsExactlyInAnyOrder(expected.toArray(LogItemDto[]::new));
     }
@@ -154,7 +170,7 @@ public class LogControllerTests {
     public void testGetAllLogsByUserInvalidTimeRangeException() {
         // Try with invalid input
         Exception exception = assertThrows(LogAccessException.class, () ->
-                logController.getLogsByUser(2, time + 20000, time - 20000)
+                logController.getLogsByUser(2, time + 20000, time - 20000, null, 0)
         );
 
         String expectedMessage = new LogAccessException(ErrorCode.INVALID_TIME_RANGE_LOG).getMessage();
@@ -164,9 +180,9 @@ public class LogControllerTests {
     @Test
     public void testGetAllLogsByActionSuccessfully() throws LogAccessException {
         // Execute 4 times to skip 4 x thenReturn for fake function
-        for(int i = 0; i < 4; i++) template.find(Query.query(Criteria.where("timestamp").gte(0)), LogItem.class);
+        for(int i = 0; i < 4; i++) template.find(Query.query(Criteria.where("timestamp").gte(0)), LogItem.class, ConstantUtils.LOG_TABLE_NAME);
 
-        List<LogItemDto> result = logController.getLogsByAction("Get data", time - 20000, time + 20000);
+        List<LogItemDto> result = logController.getLogsByAction("Get data", time - 20000, time + 20000, null, 0).getItems();
         List<LogItemDto> expected = assertData.stream().filter(item -> item.getAction().equals("Get data")).collect(Collectors.toList());
         assertThat(result).containsExactlyInAnyOrder(expected.toArray(LogItemDto[]::new));
     }
@@ -175,30 +191,103 @@ public class LogControllerTests {
     public void testGetAllLogsByActionInvalidTimeRangeException() {
         // Try with invalid input
         Exception exception = assertThrows(LogAccessException.class, () ->
-                logController.getLogsByAction("Get data", time + 20000, time - 20000)
+                logController.getLogsByAction("Get data", time + 20000, time - 20000, null, 0)
         );
 
         String expectedMessage = new LogAccessException(ErrorCode.INVALID_TIME_RANGE_LOG).getMessage();
         assertEquals(expectedMessage, exception.getMessage());
     }
 
+    // ------------------------------------------------- Pagination ----------------------------------------------------
+
+    @Test
+    public void testGetAllLogsNextCursor() throws LogAccessException {
+        when(template.find(any(Query.class), eq(LogItem.class), anyString())).thenReturn(testData);
+
+        // Full page with items of the same timestamp
+        LogPageDto result = logController.getAllLogs(time - 20000, time + 20000, null, 10);
+        assertEquals(time + "_" + getId(10), result.getNextCursor());
+
+        // Continue right behind the last item of the previous page
+        when(template.find(any(Query.class), eq(LogItem.class), anyString())).thenReturn(testData.subList(5, 10));
+        result = logController.getAllLogs(time - 20000, time + 20000, time + "_" + getId(5), 5);
+        assertEquals(time + "_" + getId(10), result.getNextCursor());
+        ArgumentCaptor<Query> captor = ArgumentCaptor.forClass(Query.class);
+        verify(template, atLeastOnce()).find(captor.capture(), eq(LogItem.class), anyString());
+        assertTrue(captor.getValue().getQueryObject().toJson().contains(getId(5)));
+    }
+
+    @Test
+    public void testGetAllLogsLastPage() throws LogAccessException {
+        LogPageDto result = logController.getAllLogs(time - 20000, time + 20000, null, 20);
+        assertNull(result.getNextCursor());
+    }
+
+    @Test
+    public void testGetAllLogsInvalidCursorException() {
+        // Try with invalid input
+        Exception exception = assertThrows(LogAccessException.class, () ->
+                logController.getAllLogs(time - 20000, time + 20000, "invalid", 0)
+        );
+
+        String expectedMessage = new LogAccessException(ErrorCode.INVALID_LOG_CURSOR).getMessage();
+        assertEquals(expectedMessage, exception.getMessage());
+
+        // Try with a cursor without a valid id
+        exception = assertThrows(LogAccessException.class, () ->
+                logController.getAllLogs(time - 20000, time + 20000, time + "_10", 0)
+        );
+        assertEquals(expectedMessage, exception.getMessage());
+    }
+
+    // --------------------------------------------------- Export ------------------------------------------------------
+
+    @Test
+    public void testExportLogs() throws IOException {
+        Iterator<LogItem> iterator = testData.iterator();
+        when(template.stream(any(Query.class), eq(LogItem.class), anyString())).thenReturn(new CloseableIterator<>() {
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public LogItem next() {
+                return iterator.next();
+            }
+
+            @Override
+            public void close() {}
+        });
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        logController.exportLogs(ConstantUtils.CLIENT_ID_PMAPP, null, "s123*", null, time - 20000, time + 20000).writeTo(out);
+        String[] lines = out.toString(StandardCharsets.UTF_8).split("\n");
+        assertEquals(testData.size(), lines.length);
+        assertEquals(assertData.get(0), new ObjectMapper().readValue(lines[0], LogItemDto.class));
+    }
+
     // -------------------------------------------------- Test data ----------------------------------------------------
 
     private List<LogItem> getTestData() {
-        LogItem i1 = new LogItem(time, ConstantUtils.UNKNOWN_CLIENT_ID, 1, "Get data", "Sensor 112345");
-        LogItem i2 = new LogItem(time, ConstantUtils.CLIENT_ID_PMAPP, 2, "Get data", "Sensor 123245");
-        LogItem i3 = new LogItem(time, ConstantUtils.CLIENT_ID_PMAPP, 3, "Change user data", "User 3");
-        LogItem i4 = new LogItem(time, ConstantUtils.CLIENT_ID_PMAPP, 1, "Get data", "Sensor 12345");
-        LogItem i5 = new LogItem(time, ConstantUtils.CLIENT_ID_PMAPP_GA, 2, "Get sensors", "User 2");
-        LogItem i6 = new LogItem(time, ConstantUtils.CLIENT_ID_PMAPP, 3, "Add sensor", "Sensor 5498");
-        LogItem i7 = new LogItem(time, ConstantUtils.CLIENT_ID_PMAPP_GA, 1, "Get data", "Sensor 1233445");
-        LogItem i8 = new LogItem(time, ConstantUtils.CLIENT_ID_PMAPP_WEB, 2, "Get stats", "User 2");
-        LogItem i9 = new LogItem(time, ConstantUtils.CLIENT_ID_PMAPP_WEB, 3, "Get data", "Sensor 1234345");
-        LogItem i10 = new LogItem(time, ConstantUtils.CLIENT_ID_PMAPP, 4, "Get data", "Sensor 123445");
+        LogItem i1 = new LogItem(getId(1), time, ConstantUtils.UNKNOWN_CLIENT_ID, 1, "Get data", "Sensor 112345");
+        LogItem i2 = new LogItem(getId(2), time, ConstantUtils.CLIENT_ID_PMAPP, 2, "Get data", "Sensor 123245");
+        LogItem i3 = new LogItem(getId(3), time, ConstantUtils.CLIENT_ID_PMAPP, 3, "Change user data", "User 3");
+        LogItem i4 = new LogItem(getId(4), time, ConstantUtils.CLIENT_ID_PMAPP, 1, "Get data", "Sensor 12345");
+        LogItem i5 = new LogItem(getId(5), time, ConstantUtils.CLIENT_ID_PMAPP_GA, 2, "Get sensors", "User 2");
+        LogItem i6 = new LogItem(getId(6), time, ConstantUtils.CLIENT_ID_PMAPP, 3, "Add sensor", "Sensor 5498");
+        LogItem i7 = new LogItem(getId(7), time, ConstantUtils.CLIENT_ID_PMAPP_GA, 1, "Get data", "Sensor 1233445");
+        LogItem i8 = new LogItem(getId(8), time, ConstantUtils.CLIENT_ID_PMAPP_WEB, 2, "Get stats", "User 2");
+        LogItem i9 = new LogItem(getId(9), time, ConstantUtils.CLIENT_ID_PMAPP_WEB, 3, "Get data", "Sensor 1234345");
+        LogItem i10 = new LogItem(getId(10), time, ConstantUtils.CLIENT_ID_PMAPP, 4, "Get data", "Sensor 123445");
 
         return Arrays.asList(i1, i2, i3, i4, i5, i6, i7, i8, i9, i10);
     }
 
+    private String getId(int index) {
+        return String.format("%024x", index);
+    }
+
     private List<LogItemDto> getAssertData() {
         LogItemDto i1 = new LogItemDto(time, ConstantUtils.UNKNOWN_CLIENT_ID, 1, "Get data", "Sensor 112345");
         LogItemDto i2 = new LogItemDto(time, ConstantUtils.CLIENT_ID_PMAPP, 2, "Get data", "Sensor 123245");
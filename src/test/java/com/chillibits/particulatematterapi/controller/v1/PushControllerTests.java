@@ -6,10 +6,21 @@ package com.chillibits.particulatematterapi.controller.v1;
 
 import com.chillibits.particulatematterapi.exception.ErrorCode;
 import com.chillibits.particulatematterapi.exception.exception.PushDataException;
+import com.chillibits.particulatematterapi.model.db.data.SensorChange;
+import com.chillibits.particulatematterapi.model.db.data.StatsCounter;
 import com.chillibits.particulatematterapi.model.db.main.Sensor;
 import com.chillibits.particulatematterapi.model.dto.DataRecordInsertUpdateDto;
 import com.chillibits.particulatematterapi.repository.SensorRepository;
+import com.chillibits.particulatematterapi.service.LatestValueService;
+import com.chillibits.particulatematterapi.service.PushAdmissionService;
 import com.chillibits.particulatematterapi.service.PushService;
+import com.chillibits.particulatematterapi.service.RankingService;
+import com.chillibits.particulatematterapi.service.RegionService;
+import com.chillibits.particulatematterapi.service.SensorChangeService;
+import com.chillibits.particulatematterapi.service.SensorMapService;
+import com.chillibits.particulatematterapi.service.SpatialIndexService;
+import com.chillibits.particulatematterapi.service.StatsCounterService;
+import com.chillibits.particulatematterapi.shared.ConstantUtils;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.jupiter.api.DisplayName;
@@ -19,7 +30,14 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Bean;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringRunner;
 
@@ -30,6 +48,14 @@ import java.util.Optional;
 import static org.junit.Assert.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.RETURNS_SELF;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(SpringRunner.class)
@@ -41,7 +67,14 @@ public class PushControllerTests {
     private PushController pushController;
     @MockBean
     private SensorRepository sensorRepository;
+    @MockBean
+    private PushAdmissionService pushAdmissionService;
+    @Autowired
+    private MongoTemplate template;
+    @Autowired
+    private RegionService regionService;
 
+    private final BulkOperations bulkOps = mock(BulkOperations.class, RETURNS_SELF);
     private final List<DataRecordInsertUpdateDto> testData = getTestData();
     private final List<Sensor> testSensors = getTestSensors();
 
@@ -61,6 +94,41 @@ public class PushControllerTests {
             return new PushService();
         }
 
+        @Bean
+        public RegionService regionService() {
+            return new RegionService();
+        }
+
+        @Bean
+        public SpatialIndexService spatialIndexService() {
+            return new SpatialIndexService();
+        }
+
+        @Bean
+        public SensorMapService sensorMapService() {
+            return new SensorMapService();
+        }
+
+        @Bean
+        public LatestValueService latestValueService() {
+            return new LatestValueService();
+        }
+
+        @Bean
+        public SensorChangeService sensorChangeService() {
+            return new SensorChangeService();
+        }
+
+        @Bean
+        public RankingService rankingService() {
+            return new RankingService();
+        }
+
+        @Bean
+        public StatsCounterService statsCounterService() {
+            return new StatsCounterService();
+        }
+
         @Bean
         public ModelMapper mapper() {
             return new ModelMapper();
@@ -72,6 +140,8 @@ public class PushControllerTests {
         // Setup fake method calls
         when(sensorRepository.findById(testSensors.get(0).getChipId())).thenReturn(Optional.of(testSensors.get(0)));
         when(sensorRepository.save(any(Sensor.class))).thenReturn(null);
+        when(template.bulkOps(BulkOperations.BulkMode.UNORDERED, ConstantUtils.REGION_TABLE_NAME)).thenReturn(bulkOps);
+        when(pushAdmissionService.tryAdmit(anyLong())).thenReturn(true);
     }
 
     // -------------------------------------------------- Push data ----------------------------------------------------
@@ -79,22 +149,85 @@ public class PushControllerTests {
     @Test
     @DisplayName("Test pushing a data records successfully (X-Header)")
     public void testPushDataXHeader() {
-        String result = pushController.pushData(testData.get(0), "esp8266-1234567", "");
-        assertEquals("ok", result);
+        ResponseEntity<String> result = pushController.pushData(testData.get(0), "esp8266-1234567", "");
+        assertEquals("ok", result.getBody());
     }
 
     @Test
     @DisplayName("Test pushing a data records successfully (Header)")
     public void testPushDataHeader() {
-        String result = pushController.pushData(testData.get(0), "", "esp8266-1234567");
-        assertEquals("ok", result);
+        ResponseEntity<String> result = pushController.pushData(testData.get(0), "", "esp8266-1234567");
+        assertEquals("ok", result.getBody());
     }
 
     @Test
     @DisplayName("Test pushing a data records successfully (new sensor)")
     public void testPushDataNewSensor() {
-        String result = pushController.pushData(testData.get(1), String.valueOf(testData.get(1).getChipId()), "0");
-        assertEquals("ok", result);
+        ResponseEntity<String> result = pushController.pushData(testData.get(1), String.valueOf(testData.get(1).getChipId()), "0");
+        assertEquals("ok", result.getBody());
+        // Unknown sensors are not tracked by the admission
+        verify(pushAdmissionService, never()).tryAdmit(anyLong());
+    }
+
+    @Test
+    @DisplayName("Test pushing a data records successfully (region aggregates)")
+    public void testPushDataRegionAggregates() {
+        ResponseEntity<String> result = pushController.pushData(testData.get(0), "esp8266-1234567", "");
+        assertEquals("ok", result.getBody());
+        // Nothing is written before the flush
+        verify(bulkOps, never()).execute();
+        regionService.flush();
+        // Every value has to be added to the city and to the country aggregates
+        verify(bulkOps, times(10)).upsert(any(Query.class), any(Update.class));
+        verify(bulkOps).execute();
+    }
+
+    @Test
+    @DisplayName("Test pushing a data records successfully (region aggregates, failed flush)")
+    public void testPushDataRegionAggregatesFlushFailure() {
+        when(bulkOps.execute()).thenThrow(new RuntimeException("Connection lost")).thenReturn(null);
+        pushController.pushData(testData.get(0), "esp8266-1234567", "");
+        regionService.flush();
+        // The values of the failed flush are written with the next one
+        regionService.flush();
+        verify(bulkOps, times(20)).upsert(any(Query.class), any(Update.class));
+        verify(bulkOps, times(2)).execute();
+        regionService.flush();
+        verify(bulkOps, times(2)).execute();
+    }
+
+    @Test
+    @DisplayName("Test pushing a data records with GPS jitter")
+    public void testPushDataGpsJitter() {
+        Sensor sensor = testSensors.get(0);
+        sensor.setGpsLatitude(37.422);
+        sensor.setGpsLongitude(-122.0846);
+        // The pushed coordinates only differ below the stored accuracy
+        ResponseEntity<String> result = pushController.pushData(testData.get(0), "esp8266-1234567", "");
+        assertEquals("ok", result.getBody());
+        verify(template, never()).insert(any(SensorChange.class), anyString());
+
+        // A real movement is recorded
+        when(template.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(StatsCounter.class), eq(ConstantUtils.COUNTER_TABLE_NAME)))
+                .thenReturn(new StatsCounter("sensor_change_version", 1));
+        sensor.setGpsLatitude(37.5);
+        pushController.pushData(testData.get(0), "esp8266-1234567", "");
+        assertEquals(37.422, sensor.getGpsLatitude(), 0);
+        verify(template).insert(any(SensorChange.class), anyString());
+    }
+
+    @Test
+    @DisplayName("Test pushing a data records too frequently")
+    public void testPushDataTooFrequently() {
+        when(pushAdmissionService.tryAdmit(1234567)).thenReturn(false);
+        when(pushAdmissionService.getRetryAfter(1234567)).thenReturn(12L);
+        // The sensor is told, that the record is dropped and when to retry
+        ResponseEntity<String> result = pushController.pushData(testData.get(0), "esp8266-1234567", "");
+        assertEquals(HttpStatus.TOO_MANY_REQUESTS, result.getStatusCode());
+        assertEquals("12", result.getHeaders().getFirst(HttpHeaders.RETRY_AFTER));
+        assertEquals(new PushDataException(ErrorCode.PUSH_TOO_FREQUENT).getMessage(), result.getBody());
+        verify(template, never()).save(any(), anyString());
+        verify(sensorRepository, never()).save(any(Sensor.class));
     }
 
     @Test
@@ -6,10 +6,12 @@ package com.chillibits.particulatematterapi.controller.v1;
 
 import com.chillibits.particulatematterapi.exception.ErrorCode;
 import com.chillibits.particulatematterapi.exception.exception.RankingDataException;
+import com.chillibits.particulatematterapi.model.db.data.DataRecord;
 import com.chillibits.particulatematterapi.model.dto.RankingItemCityCompressedDto;
 import com.chillibits.particulatematterapi.model.dto.RankingItemCityDto;
 import com.chillibits.particulatematterapi.model.dto.RankingItemCountryCompressedDto;
 import com.chillibits.particulatematterapi.model.dto.RankingItemCountryDto;
+import com.chillibits.particulatematterapi.model.dto.RankingItemPollutionDto;
 import com.chillibits.particulatematterapi.repository.SensorRepository;
 import com.chillibits.particulatematterapi.service.RankingService;
 import org.junit.Before;
@@ -30,7 +32,6 @@ import java.util.List;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
-import static org.mockito.ArgumentMatchers.anyInt;
 import static org.mockito.Mockito.when;
 
 @RunWith(SpringRunner.class)
@@ -40,6 +41,8 @@ public class RankingControllerTests {
 
     @Autowired
     private RankingController rankingController;
+    @Autowired
+    private RankingService rankingService;
     @MockBean
     private SensorRepository sensorRepository;
 
@@ -70,8 +73,8 @@ public class RankingControllerTests {
     @Before
     public void init() {
         // Setup fake method calls
-        when(sensorRepository.getRankingByCity(anyInt())).thenReturn(testDataCity);
-        when(sensorRepository.getRankingByCountry(anyInt())).thenReturn(testDataCountry);
+        when(sensorRepository.getRankingByCity()).thenReturn(testDataCity);
+        when(sensorRepository.getRankingByCountry()).thenReturn(testDataCountry);
     }
 
     // ----------------------------------------------- Get city ranking ------------------------------------------------
@@ -82,6 +85,12 @@ public class RankingControllerTests {
         assertThat(result).containsExactlyInAnyOrder(testDataCity.toArray(RankingItemCityDto[]::new));
     }
 
+    @Test
+    public void getCityRankingLimitedItems() throws RankingDataException {
+        List<RankingItemCityDto> result = rankingController.getRankingByCity(3);
+        assertThat(result).containsExactly(testDataCity.subList(0, 3).toArray(RankingItemCityDto[]::new));
+    }
+
     @Test
     public void getCityRankingInvalidItemsNumber() {
         // Try with invalid input
@@ -118,6 +127,12 @@ public class RankingControllerTests {
         assertThat(result).containsExactlyInAnyOrder(testDataCountry.toArray(RankingItemCountryDto[]::new));
     }
 
+    @Test
+    public void getCountryRankingLimitedItems() throws RankingDataException {
+        List<RankingItemCountryDto> result = rankingController.getRankingByCountry(2);
+        assertThat(result).containsExactly(testDataCountry.subList(0, 2).toArray(RankingItemCountryDto[]::new));
+    }
+
     @Test
     public void getCountryRankingInvalidItemsNumber() {
         // Try with invalid input
@@ -146,6 +161,38 @@ public class RankingControllerTests {
         assertEquals(expectedMessage, exception.getMessage());
     }
 
+    // -------------------------------------------- Get pollution ranking ----------------------------------------------
+
+    @Test
+    public void getPollutionRankingSuccessfully() throws RankingDataException {
+        long timestamp = System.currentTimeMillis();
+        rankingService.addRecord(1, "Germany", "Stuttgart", timestamp, new DataRecord.SensorDataValue[] {
+                new DataRecord.SensorDataValue("SDS_P1", 30.0), new DataRecord.SensorDataValue("SDS_P2", 10.0) });
+        rankingService.addRecord(2, "Germany", "Berlin", timestamp, new DataRecord.SensorDataValue[] {
+                new DataRecord.SensorDataValue("SDS_P1", 20.0) });
+        rankingService.addRecord(3, "Germany", "Berlin", timestamp, new DataRecord.SensorDataValue[] {
+                new DataRecord.SensorDataValue("SDS_P1", 15.0) });
+        rankingService.addRecord(4, "Germany", "Berlin", timestamp, new DataRecord.SensorDataValue[] {
+                new DataRecord.SensorDataValue("SDS_P1", 16.0) });
+
+        // Stuttgart has too few sensors to be ranked
+        List<RankingItemPollutionDto> result = rankingController.getRankingByPollution(10, "SDS_P1", false, false);
+        assertThat(result).containsExactly(new RankingItemPollutionDto("Germany", "Berlin", 17.0, 3));
+        result = rankingController.getRankingByPollution(1, "SDS_P1", true, true);
+        assertThat(result).containsExactly(new RankingItemPollutionDto("Germany", null, 20.25, 4));
+    }
+
+    @Test
+    public void getPollutionRankingInvalidValueType() {
+        // Try with invalid input
+        Exception exception = assertThrows(RankingDataException.class, () ->
+                rankingController.getRankingByPollution(10, "GPS_lat", false, false)
+        );
+
+        String expectedMessage = new RankingDataException(ErrorCode.INVALID_VALUE_TYPE).getMessage();
+        assertEquals(expectedMessage, exception.getMessage());
+    }
+
     // -------------------------------------------------- Test data ----------------------------------------------------
 
     private List<RankingItemCityDto> getTestDataCity() {
@@ -6,6 +6,7 @@ package com.chillibits.particulatematterapi.controller.v1;
 
 import com.chillibits.particulatematterapi.model.db.main.User;
 import com.chillibits.particulatematterapi.repository.UserRepository;
+import com.chillibits.particulatematterapi.service.EntityCacheService;
 import com.chillibits.particulatematterapi.service.UserService;
 import org.junit.Before;
 import org.junit.Test;
@@ -58,6 +59,8 @@ public class RoutingControllerTests {
 
         @MockBean
         private JavaMailSender mailSender;
+        @MockBean
+        private EntityCacheService entityCacheService;
     }
 
     @Before
@@ -9,7 +9,12 @@ import com.chillibits.particulatematterapi.exception.exception.SensorDataExcepti
 import com.chillibits.particulatematterapi.model.db.main.Link;
 import com.chillibits.particulatematterapi.model.db.main.Sensor;
 import com.chillibits.particulatematterapi.model.db.main.User;
+import com.chillibits.particulatematterapi.model.db.data.DataRecord;
+import com.chillibits.particulatematterapi.model.db.data.SensorChange;
+import com.chillibits.particulatematterapi.model.db.data.StatsCounter;
 import com.chillibits.particulatematterapi.model.dto.LinkInsertUpdateDto;
+import com.chillibits.particulatematterapi.model.dto.SensorChangesDto;
+import com.chillibits.particulatematterapi.model.dto.SensorClusterDto;
 import com.chillibits.particulatematterapi.model.dto.SensorCompressedDto;
 import com.chillibits.particulatematterapi.model.dto.SensorDto;
 import com.chillibits.particulatematterapi.model.dto.SensorInsertUpdateDto;
@@ -18,8 +23,17 @@ import com.chillibits.particulatematterapi.model.io.MapsPlaceResult;
 import com.chillibits.particulatematterapi.repository.LinkRepository;
 import com.chillibits.particulatematterapi.repository.SensorRepository;
 import com.chillibits.particulatematterapi.repository.UserRepository;
+import com.chillibits.particulatematterapi.service.ClusterService;
+import com.chillibits.particulatematterapi.service.EntityCacheService;
+import com.chillibits.particulatematterapi.service.GeocodingService;
+import com.chillibits.particulatematterapi.service.LatestValueService;
+import com.chillibits.particulatematterapi.service.RankingService;
+import com.chillibits.particulatematterapi.service.SensorChangeService;
+import com.chillibits.particulatematterapi.service.SensorMapService;
 import com.chillibits.particulatematterapi.service.SensorService;
+import com.chillibits.particulatematterapi.service.SpatialIndexService;
 import com.chillibits.particulatematterapi.shared.ConstantUtils;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.jupiter.api.DisplayName;
@@ -29,26 +43,44 @@ import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Bean;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.zip.GZIPInputStream;
 
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.mockito.AdditionalAnswers.returnsFirstArg;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.ArgumentMatchers.anyIterable;
 import static org.mockito.ArgumentMatchers.anyLong;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.ArgumentMatchers.eq;
 import static org.mockito.Mockito.doNothing;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(SpringRunner.class)
@@ -58,6 +90,12 @@ public class SensorControllerTests {
 
     @Autowired
     private SensorController sensorController;
+    @Autowired
+    private SpatialIndexService spatialIndexService;
+    @Autowired
+    private SensorMapService sensorMapService;
+    @Autowired
+    private LatestValueService latestValueService;
     @MockBean
     private SensorRepository sensorRepository;
     @MockBean
@@ -75,6 +113,8 @@ public class SensorControllerTests {
 
         @MockBean
         private LinkRepository linkRepository;
+        @MockBean
+        private EntityCacheService entityCacheService;
 
         @Bean
         public SensorController sensorController() {
@@ -86,6 +126,41 @@ public class SensorControllerTests {
             return new SensorService();
         }
 
+        @Bean
+        public SpatialIndexService spatialIndexService() {
+            return new SpatialIndexService();
+        }
+
+        @Bean
+        public SensorMapService sensorMapService() {
+            return new SensorMapService();
+        }
+
+        @Bean
+        public LatestValueService latestValueService() {
+            return new LatestValueService();
+        }
+
+        @Bean
+        public SensorChangeService sensorChangeService() {
+            return new SensorChangeService();
+        }
+
+        @Bean
+        public GeocodingService geocodingService() {
+            return new GeocodingService();
+        }
+
+        @Bean
+        public ClusterService clusterService() {
+            return new ClusterService();
+        }
+
+        @Bean
+        public RankingService rankingService() {
+            return new RankingService();
+        }
+
         @Bean
         public ModelMapper modelMapper() {
             return new ModelMapper();
@@ -96,9 +171,12 @@ public class SensorControllerTests {
     public void init() {
         // Setup fake method calls
         when(sensorRepository.findAll()).thenReturn(testData);
-        when(sensorRepository.findAllInRadius(0, 0, 100)).thenReturn(Arrays.asList(testData.get(1), testData.get(3), testData.get(4)));
         when(sensorRepository.findAllPublished()).thenReturn(Arrays.asList(testData.get(0), testData.get(2), testData.get(4)));
-        when(sensorRepository.findAllPublishedInRadius(0, 0, 100)).thenReturn(Collections.singletonList(testData.get(4)));
+        when(sensorRepository.findAllById(anyIterable())).then(invocation -> {
+            List<Long> chipIds = new ArrayList<>();
+            invocation.<Iterable<Long>>getArgument(0).forEach(chipIds::add);
+            return testData.stream().filter(sensor -> chipIds.contains(sensor.getChipId())).collect(Collectors.toList());
+        });
         when(sensorRepository.findById(testInsertUpdateData.get(0).getChipId())).thenReturn(Optional.ofNullable(testData.get(0)));
         when(sensorRepository.save(any(Sensor.class))).then(returnsFirstArg());
         when(sensorRepository.existsById(anyLong())).thenReturn(false);
@@ -107,6 +185,8 @@ public class SensorControllerTests {
         when(sensorRepository.existsById(testInsertUpdateData.get(7).getChipId())).thenReturn(true);
         when(sensorRepository.updateSensor(any(Sensor.class))).thenReturn(1);
         doNothing().when(sensorRepository).deleteById(anyLong());
+        spatialIndexService.rebuild();
+        sensorMapService.invalidate();
         // MongoTemplate
         when(mongoTemplate.getCollectionNames())
                 .thenReturn(new HashSet<>(Arrays.asList(
@@ -129,7 +209,7 @@ public class SensorControllerTests {
     @DisplayName("Test for getting all sensors successfully")
     public void testGetAllSensors() throws SensorDataException {
         // Get all sensors
-        List<SensorDto> result = sensorController.getAllSensors(0, 0, 0, false);
+        List<SensorDto> result = sensorController.getAllSensors(0, 0, 0, null, false);
         assertThat(result).containsExactlyInAnyOrder(assertData.toArray(SensorDto[]::new));
     }
 
@@ -137,7 +217,7 @@ public class SensorControllerTests {
     @DisplayName("Test for getting all published sensors successfully")
     public void testGetOnlyPublishedSensors() throws SensorDataException {
         // Get only published sensors
-        List<SensorDto> result = sensorController.getAllSensors(0, 0, 0, true);
+        List<SensorDto> result = sensorController.getAllSensors(0, 0, 0, null, true);
         assertThat(result).containsExactlyInAnyOrder(assertData.get(0), assertData.get(2), assertData.get(4));
     }
 
@@ -145,16 +225,16 @@ public class SensorControllerTests {
     @DisplayName("Test for getting all sensors in a specific radius successfully")
     public void testGetAllSensorsInRadius() throws SensorDataException {
         // Get sensors within radius
-        List<SensorDto> result = sensorController.getAllSensors(0, 0, 100, false);
-        assertThat(result).containsExactlyInAnyOrder(assertData.get(1), assertData.get(3), assertData.get(4));
+        List<SensorDto> result = sensorController.getAllSensors(-1, 0, 100, null, false);
+        assertThat(result).containsExactlyInAnyOrder(assertData.get(5), assertData.get(6), assertData.get(7));
     }
 
     @Test
     @DisplayName("Test for getting all published sensors in a specific radius successfully")
     public void testGetOnlyPublishedSensorsInRadius() throws SensorDataException {
         // Get only published sensors within radius
-        List<SensorDto> result = sensorController.getAllSensors(0, 0, 100, true);
-        assertThat(result).containsExactly(assertData.get(4));
+        List<SensorDto> result = sensorController.getAllSensors(20, 90, 100, null, true);
+        assertThat(result).containsExactly(assertData.get(2));
     }
 
     @Test
@@ -162,20 +242,66 @@ public class SensorControllerTests {
     public void testGetAllSensorsInvalidRadius() {
         // Try with invalid input
         Exception exception = assertThrows(SensorDataException.class, () ->
-                sensorController.getAllSensors(10, 10, -100, false)
+                sensorController.getAllSensors(10, 10, -100, null, false)
         );
 
         String expectedMessage = new SensorDataException(ErrorCode.INVALID_RADIUS).getMessage();
         assertEquals(expectedMessage, exception.getMessage());
     }
 
+    @Test
+    @DisplayName("Test for getting all sensors in a bounding box successfully")
+    public void testGetAllSensorsInBoundingBox() throws SensorDataException {
+        // Get sensors within the bounding box
+        List<SensorDto> result = sensorController.getAllSensors(0, 0, 0, "-5,-5,35,15", false);
+        assertThat(result).containsExactlyInAnyOrder(assertData.get(0), assertData.get(1), assertData.get(5), assertData.get(6), assertData.get(7));
+        // Get only published sensors within the bounding box
+        result = sensorController.getAllSensors(0, 0, 0, "-5,-5,35,15", true);
+        assertThat(result).containsExactlyInAnyOrder(assertData.get(0), assertData.get(5), assertData.get(6), assertData.get(7));
+    }
+
+    @Test
+    @DisplayName("Test for getting all sensors in a polygon with a hole successfully")
+    public void testGetAllSensorsInPolygon() throws SensorDataException {
+        String polygon = "{\"type\":\"Polygon\",\"coordinates\":[[[60,15],[95,15],[95,45],[60,45],[60,15]],[[65,25],[75,25],[75,35],[65,35],[65,25]]]}";
+        List<SensorDto> result = sensorController.getSensorsInPolygon(polygon, false);
+        assertThat(result).containsExactlyInAnyOrder(assertData.get(2), assertData.get(4));
+        // The compressed variant returns the same sensors
+        List<SensorCompressedDto> resultCompressed = sensorController.getSensorsInPolygonCompressed(polygon, false);
+        assertEquals(2, resultCompressed.size());
+    }
+
+    @Test
+    @DisplayName("Test for getting all sensors with an invalid bounding box, triggering a InvalidBoundingBox exception")
+    public void testGetAllSensorsInvalidBoundingBox() {
+        // Try with invalid input
+        Exception exception = assertThrows(SensorDataException.class, () ->
+                sensorController.getAllSensors(0, 0, 0, "10,20,30", false)
+        );
+
+        String expectedMessage = new SensorDataException(ErrorCode.INVALID_BOUNDING_BOX).getMessage();
+        assertEquals(expectedMessage, exception.getMessage());
+    }
+
+    @Test
+    @DisplayName("Test for getting all sensors with an invalid polygon, triggering a InvalidPolygon exception")
+    public void testGetAllSensorsInvalidPolygon() {
+        // Try with invalid input
+        Exception exception = assertThrows(SensorDataException.class, () ->
+                sensorController.getSensorsInPolygon("{\"type\":\"Point\",\"coordinates\":[10,20]}", false)
+        );
+
+        String expectedMessage = new SensorDataException(ErrorCode.INVALID_POLYGON).getMessage();
+        assertEquals(expectedMessage, exception.getMessage());
+    }
+
     // ---------------------------------------- Get sensor compressed --------------------------------------------------
 
     @Test
     @DisplayName("Test for getting all sensors successfully in a compressed form")
     public void testGetAllSensorsCompressed() throws SensorDataException {
         // Get all sensors
-        List<SensorCompressedDto> result = sensorController.getAllSensorsCompressed(0, 0, 0, false);
+        List<SensorCompressedDto> result = sensorController.getAllSensorsCompressed(0, 0, 0, null, false);
         assertThat(result).containsExactlyInAnyOrder(compAssData.get(0), compAssData.get(1), compAssData.get(2),
                 compAssData.get(3), compAssData.get(4), compAssData.get(5), compAssData.get(6), compAssData.get(7));
     }
@@ -184,7 +310,7 @@ public class SensorControllerTests {
     @DisplayName("Test for getting all published sensors successfully in a compressed form")
     public void testGetOnlyPublishedSensorsCompressed() throws SensorDataException {
         // Get only published sensors
-        List<SensorCompressedDto> result = sensorController.getAllSensorsCompressed(0, 0, 0, true);
+        List<SensorCompressedDto> result = sensorController.getAllSensorsCompressed(0, 0, 0, null, true);
         assertThat(result).containsExactlyInAnyOrder(compAssData.get(0), compAssData.get(2), compAssData.get(4));
     }
 
@@ -192,16 +318,24 @@ public class SensorControllerTests {
     @DisplayName("Test for getting all sensors in a specific radius successfully in a compressed form")
     public void testGetAllSensorsInRadiusCompressed() throws SensorDataException {
         // Get sensors within radius
-        List<SensorCompressedDto> result = sensorController.getAllSensorsCompressed(0, 0, 100, false);
-        assertThat(result).containsExactlyInAnyOrder(compAssData.get(1), compAssData.get(3), compAssData.get(4));
+        List<SensorCompressedDto> result = sensorController.getAllSensorsCompressed(-1, 0, 100, null, false);
+        assertThat(result).containsExactlyInAnyOrder(compAssData.get(5), compAssData.get(6), compAssData.get(7));
     }
 
     @Test
     @DisplayName("Test for getting all published sensors in a specific radius successfully in a compressed form")
     public void testGetOnlyPublishedSensorsInRadiusCompressed() throws SensorDataException {
         // Get only published sensors within radius
-        List<SensorCompressedDto> result = sensorController.getAllSensorsCompressed(0, 0, 100, true);
-        assertThat(result).containsExactly(compAssData.get(4));
+        List<SensorCompressedDto> result = sensorController.getAllSensorsCompressed(20, 90, 100, null, true);
+        assertThat(result).containsExactly(compAssData.get(2));
+    }
+
+    @Test
+    @DisplayName("Test for getting all sensors in a bounding box successfully in a compressed form")
+    public void testGetAllSensorsInBoundingBoxCompressed() throws SensorDataException {
+        // The bounding box crosses the antimeridian, so it covers everything except the sensors around lng 0
+        List<SensorCompressedDto> result = sensorController.getAllSensorsCompressed(0, 0, 0, "20,0,-20,50", false);
+        assertThat(result).containsExactlyInAnyOrder(compAssData.get(1), compAssData.get(2), compAssData.get(3), compAssData.get(4));
     }
 
     @Test
@@ -209,13 +343,194 @@ public class SensorControllerTests {
     public void testGetAllSensorsInvalidRadiusCompressed() {
         // Try with invalid input
         Exception exception = assertThrows(SensorDataException.class, () ->
-                sensorController.getAllSensorsCompressed(10, 10, -100, false)
+                sensorController.getAllSensorsCompressed(10, 10, -100, null, false)
         );
 
         String expectedMessage = new SensorDataException(ErrorCode.INVALID_RADIUS).getMessage();
         assertEquals(expectedMessage, exception.getMessage());
     }
 
+    // --------------------------------------------- Sensor map --------------------------------------------------------
+
+    @Test
+    @DisplayName("Test for getting the precomputed sensor map successfully")
+    public void testGetSensorMapCompressed() throws IOException {
+        ResponseEntity<byte[]> result = sensorController.getSensorMapCompressed(true, null, null);
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        assertNull(result.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        SensorCompressedDto[] sensors = new ObjectMapper().readValue(result.getBody(), SensorCompressedDto[].class);
+        assertThat(sensors).containsExactlyInAnyOrder(compAssData.get(0), compAssData.get(2), compAssData.get(4));
+    }
+
+    @Test
+    @DisplayName("Test for getting the precomputed sensor map successfully in gzip form")
+    public void testGetSensorMapCompressedGzip() throws IOException {
+        ResponseEntity<byte[]> result = sensorController.getSensorMapCompressed(false, "br, gzip;q=0.8, deflate", null);
+        assertEquals("gzip", result.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+        try(GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(result.getBody()))) {
+            SensorCompressedDto[] sensors = new ObjectMapper().readValue(in, SensorCompressedDto[].class);
+            assertThat(sensors).containsExactlyInAnyOrder(compAssData.toArray(SensorCompressedDto[]::new));
+        }
+        // Explicitly refused gzip
+        result = sensorController.getSensorMapCompressed(false, "gzip;q=0", null);
+        assertNull(result.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+    }
+
+    @Test
+    @DisplayName("Test for revalidating the precomputed sensor map with its ETag")
+    public void testGetSensorMapCompressedNotModified() {
+        String eTag = sensorController.getSensorMapCompressed(true, null, null).getHeaders().getETag();
+        ResponseEntity<byte[]> result = sensorController.getSensorMapCompressed(true, "gzip", eTag);
+        assertEquals(HttpStatus.NOT_MODIFIED, result.getStatusCode());
+        assertNull(result.getBody());
+
+        // Changed sensors lead to a new ETag
+        when(sensorRepository.findAllPublished()).thenReturn(Arrays.asList(testData.get(0), testData.get(2)));
+        sensorController.deleteSensor(testData.get(4).getChipId());
+        result = sensorController.getSensorMapCompressed(true, null, eTag);
+        assertEquals(HttpStatus.OK, result.getStatusCode());
+        assertNotEquals(eTag, result.getHeaders().getETag());
+    }
+
+    // ---------------------------------------------- Clusters ---------------------------------------------------------
+
+    @Test
+    @DisplayName("Test for getting the sensor clusters of the whole world successfully")
+    public void testGetSensorClusters() {
+        List<SensorClusterDto> result = sensorController.getSensorClusters(-90, -180, 90, 180, 0, null, false);
+        SensorClusterDto c1 = new SensorClusterDto(-0.75, 0, 4, null, null, 0);
+        SensorClusterDto c2 = new SensorClusterDto(26.666667, 60, 3, null, null, 0);
+        SensorClusterDto c3 = new SensorClusterDto(20, 90, 1, testData.get(2).getChipId(), null, 0);
+        assertThat(result).containsExactlyInAnyOrder(c1, c2, c3);
+    }
+
+    @Test
+    @DisplayName("Test for getting the sensor clusters of a viewport with averages successfully")
+    public void testGetSensorClustersWithAverage() {
+        DataRecord.SensorDataValue[] values1 = { new DataRecord.SensorDataValue("SDS_P1", 10), new DataRecord.SensorDataValue("SDS_P2", 5) };
+        DataRecord.SensorDataValue[] values2 = { new DataRecord.SensorDataValue("SDS_P1", 15) };
+        latestValueService.update(testData.get(5).getChipId(), System.currentTimeMillis(), values1);
+        latestValueService.update(testData.get(6).getChipId(), System.currentTimeMillis(), values2);
+
+        List<SensorClusterDto> result = sensorController.getSensorClusters(-2, -1, -0.5, 1, 12, "SDS_P1", false);
+        assertThat(result).containsExactly(new SensorClusterDto(-1, 0, 3, null, 12.5, 2));
+    }
+
+    @Test
+    @DisplayName("Test for getting the sensor clusters with an invalid zoom level, triggering a InvalidZoomLevel exception")
+    public void testGetSensorClustersInvalidZoom() {
+        // Try with invalid input
+        Exception exception = assertThrows(SensorDataException.class, () ->
+                sensorController.getSensorClusters(-90, -180, 90, 180, 23, null, false)
+        );
+
+        String expectedMessage = new SensorDataException(ErrorCode.INVALID_ZOOM_LEVEL).getMessage();
+        assertEquals(expectedMessage, exception.getMessage());
+    }
+
+    // ------------------------------------------- Sensor changes ------------------------------------------------------
+
+    @Test
+    @DisplayName("Test for getting the sensor changes since a version successfully")
+    public void testGetSensorChanges() {
+        long time = System.currentTimeMillis();
+        List<SensorChange> changes = Arrays.asList(
+                new SensorChange(5, testData.get(0).getChipId(), SensorChange.TYPE_ADDED, time),
+                new SensorChange(6, testData.get(0).getChipId(), SensorChange.TYPE_UPDATED, time),
+                new SensorChange(7, testData.get(1).getChipId(), SensorChange.TYPE_ADDED, time),
+                new SensorChange(8, testData.get(3).getChipId(), SensorChange.TYPE_DELETED, time),
+                new SensorChange(9, testData.get(2).getChipId(), SensorChange.TYPE_UPDATED, time)
+        );
+        when(mongoTemplate.findOne(any(Query.class), eq(SensorChange.class), eq(ConstantUtils.SENSOR_CHANGE_TABLE_NAME))).thenReturn(changes.get(4));
+        when(mongoTemplate.find(any(Query.class), eq(SensorChange.class), eq(ConstantUtils.SENSOR_CHANGE_TABLE_NAME))).thenReturn(changes);
+
+        // Sensor 2 is not published, so it counts as deleted
+        SensorChangesDto result = sensorController.getSensorChanges(5, true);
+        assertEquals(9, result.getVersion());
+        assertFalse(result.isFullSync());
+        assertThat(result.getSensors()).containsExactly(assertData.get(0), assertData.get(2));
+        assertThat(result.getDeleted()).containsExactly(testData.get(1).getChipId(), testData.get(3).getChipId());
+    }
+
+    @Test
+    @DisplayName("Test for getting the sensor changes with a version, which is not written yet")
+    public void testGetSensorChangesGap() {
+        long time = System.currentTimeMillis();
+        List<SensorChange> changes = Arrays.asList(
+                new SensorChange(5, testData.get(0).getChipId(), SensorChange.TYPE_ADDED, time - 60000),
+                new SensorChange(7, testData.get(0).getChipId(), SensorChange.TYPE_UPDATED, time - 60000),
+                new SensorChange(8, testData.get(2).getChipId(), SensorChange.TYPE_UPDATED, time),
+                new SensorChange(10, testData.get(1).getChipId(), SensorChange.TYPE_ADDED, time)
+        );
+        when(mongoTemplate.findOne(any(Query.class), eq(SensorChange.class), eq(ConstantUtils.SENSOR_CHANGE_TABLE_NAME))).thenReturn(changes.get(3));
+        when(mongoTemplate.find(any(Query.class), eq(SensorChange.class), eq(ConstantUtils.SENSOR_CHANGE_TABLE_NAME))).thenReturn(changes);
+
+        // Version 6 was never written and is skipped. Version 9 may still be written, so the sync stops there
+        SensorChangesDto result = sensorController.getSensorChanges(5, true);
+        assertEquals(8, result.getVersion());
+        assertFalse(result.isFullSync());
+        assertThat(result.getSensors()).containsExactly(assertData.get(0), assertData.get(2));
+    }
+
+    @Test
+    @DisplayName("Test for getting the sensor changes, which are not available anymore")
+    public void testGetSensorChangesFullSync() {
+        SensorChange latestChange = new SensorChange(20, testData.get(0).getChipId(), SensorChange.TYPE_UPDATED, System.currentTimeMillis());
+        when(mongoTemplate.findOne(any(Query.class), eq(SensorChange.class), eq(ConstantUtils.SENSOR_CHANGE_TABLE_NAME))).thenReturn(latestChange);
+        when(mongoTemplate.find(any(Query.class), eq(SensorChange.class), eq(ConstantUtils.SENSOR_CHANGE_TABLE_NAME)))
+                .thenReturn(Collections.singletonList(latestChange));
+
+        // The change with version 3 was already pruned
+        SensorChangesDto result = sensorController.getSensorChanges(3, true);
+        assertEquals(20, result.getVersion());
+        assertTrue(result.isFullSync());
+        assertTrue(result.getSensors().isEmpty());
+        // First sync
+        assertTrue(sensorController.getSensorChanges(0, true).isFullSync());
+    }
+
+    @Test
+    @DisplayName("Test for recording a change, when a sensor is added")
+    public void testAddSensorRecordsChange() throws SensorDataException {
+        when(mongoTemplate.findAndModify(any(Query.class), any(Update.class), any(FindAndModifyOptions.class), eq(StatsCounter.class), eq(ConstantUtils.COUNTER_TABLE_NAME)))
+                .thenReturn(new StatsCounter("sensor_change_version", 1));
+        sensorController.addSensor(testInsertUpdateData.get(1));
+        verify(mongoTemplate).insert(argThat((SensorChange change) -> change.getVersion() == 1 &&
+                change.getChipId() == testInsertUpdateData.get(1).getChipId() && change.getType().equals(SensorChange.TYPE_ADDED)),
+                eq(ConstantUtils.SENSOR_CHANGE_TABLE_NAME));
+    }
+
+    // ------------------------------------------- Nearest sensors -----------------------------------------------------
+
+    @Test
+    @DisplayName("Test for getting the nearest sensors successfully")
+    public void testGetNearestSensors() throws SensorDataException {
+        // Get the four nearest sensors, ordered by distance
+        List<SensorDto> result = sensorController.getNearestSensors(0.1, 0, 4, false);
+        assertEquals(assertData.get(0), result.get(0));
+        assertThat(result.subList(1, 4)).containsExactlyInAnyOrder(assertData.get(5), assertData.get(6), assertData.get(7));
+    }
+
+    @Test
+    @DisplayName("Test for getting the nearest published sensors successfully")
+    public void testGetNearestPublishedSensors() throws SensorDataException {
+        // Sensor 2 is nearer, but not published
+        List<SensorDto> result = sensorController.getNearestSensors(12, 32, 1, true);
+        assertThat(result).containsExactly(assertData.get(0));
+    }
+
+    @Test
+    @DisplayName("Test for getting the nearest sensors with an invalid count, triggering a InvalidSensorCount exception")
+    public void testGetNearestSensorsInvalidCount() {
+        // Try with invalid input
+        Exception exception = assertThrows(SensorDataException.class, () ->
+                sensorController.getNearestSensors(0, 0, 0, false)
+        );
+
+        String expectedMessage = new SensorDataException(ErrorCode.INVALID_SENSOR_COUNT).getMessage();
+        assertEquals(expectedMessage, exception.getMessage());
+    }
+
     // -------------------------------------------- Single sensor ------------------------------------------------------
 
     @Test
@@ -329,6 +644,12 @@ public class SensorControllerTests {
     @DisplayName("Test for deleting a sensor successfully")
     public void testDeleteSensor() throws SensorDataException {
         assertDoesNotThrow(() -> sensorController.deleteSensor(testInsertUpdateData.get(7).getChipId()));
+
+        // Deleted sensors are not known anymore, e.g. as access log targets
+        long chipId = testData.get(0).getChipId();
+        assertTrue(spatialIndexService.containsSensor(chipId));
+        sensorController.deleteSensor(chipId);
+        assertFalse(spatialIndexService.containsSensor(chipId));
     }
 
     // -------------------------------------------------- Test data ----------------------------------------------------
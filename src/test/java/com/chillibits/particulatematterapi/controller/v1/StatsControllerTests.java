@@ -10,7 +10,9 @@ import com.chillibits.particulatematterapi.model.db.data.StatsItem;
 import com.chillibits.particulatematterapi.model.dto.StatsItemDto;
 import com.chillibits.particulatematterapi.repository.SensorRepository;
 import com.chillibits.particulatematterapi.service.StatsService;
+import com.chillibits.particulatematterapi.service.StatsCounterService;
 import com.chillibits.particulatematterapi.shared.ConstantUtils;
+import org.bson.Document;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.jupiter.api.DisplayName;
@@ -21,6 +23,8 @@ import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.test.context.ActiveProfiles;
@@ -29,6 +33,7 @@ import org.springframework.test.context.junit4.SpringRunner;
 import java.util.Collections;
 import java.util.Date;
 import java.util.HashSet;
+import java.util.List;
 import java.util.TimeZone;
 
 import static org.junit.Assert.assertEquals;
@@ -47,6 +52,8 @@ public class StatsControllerTests {
     private StatsController statsController;
     @Autowired
     private StatsService statsService;
+    @Autowired
+    private StatsCounterService statsCounterService;
     @MockBean
     private MongoTemplate template;
     @MockBean
@@ -65,6 +72,11 @@ public class StatsControllerTests {
             return new StatsService();
         }
 
+        @Bean
+        public StatsCounterService statsCounterService() {
+            return new StatsCounterService();
+        }
+
         @Bean
         public ModelMapper mapper() {
             return new ModelMapper();
@@ -85,9 +97,9 @@ public class StatsControllerTests {
         }});
         when(template.count(any(Query.class), eq("87654321"))).thenReturn(1L);
         when(template.count(any(Query.class), eq("123345"))).thenReturn(1L);
-        when(template.count(any(Query.class), eq(ConstantUtils.LOG_TABLE_NAME)))
-                .thenReturn(999L).thenReturn(16L).thenReturn(0L)
-                .thenReturn(1000100000L).thenReturn(1000L).thenReturn(17L).thenReturn(1L).thenReturn(1476L).thenReturn(25L).thenReturn(1L);
+        when(template.aggregate(any(Aggregation.class), eq(ConstantUtils.LOG_ROLLUP_TABLE_NAME), eq(Document.class)))
+                .thenReturn(getRollupSum(1000100000L)).thenReturn(getRollupSum(1000L)).thenReturn(getRollupSum(17L)).thenReturn(getRollupSum(1L))
+                .thenReturn(getRollupSum(1476L)).thenReturn(getRollupSum(25L)).thenReturn(getRollupSum(1L));
         when(sensorRepository.getSensorsMapTotal()).thenReturn(1928);
         when(sensorRepository.getSensorsMapActive(anyLong())).thenReturn(1323);
         when(template.find(Query.query(Criteria.where("chipId").is(12345678)).limit(1), StatsItem.class, ConstantUtils.STATS_TABLE_NAME))
@@ -116,6 +128,11 @@ public class StatsControllerTests {
     @Test
     @DisplayName("Test for getting the global stats")
     public void testGetStats() {
+        // Count records of the current day, the requests of the current day are summed up from the rollups
+        for(int i = 0; i < 3; i++) statsCounterService.addRecord();
+        when(template.aggregate(any(Aggregation.class), eq(ConstantUtils.LOG_ROLLUP_TABLE_NAME), eq(Document.class)))
+                .thenReturn(getRollupSum(2L)).thenReturn(getRollupSum(1L)).thenReturn(getRollupSum(null));
+
         StatsItemDto result = statsController.getStats();
         result.setTimestamp(0);
         assertEquals(getAssertItemGlobal(), result);
@@ -126,10 +143,6 @@ public class StatsControllerTests {
     @Test
     @DisplayName("Test for getting the stats of a single sensor - successful")
     public void testGetStatsOfSensorSuccess() {
-        // Execute 3 times to skip 3 x thenReturn for fake function
-        for(int i = 0; i < 3; i++)
-            template.count(Query.query(Criteria.where("timestamp").gte(0).lte(1)).cursorBatchSize(500), ConstantUtils.LOG_TABLE_NAME);
-
         StatsItemDto result = statsController.getStatsOfSensor(12345678);
         result.setTimestamp(0);
         assertEquals(getAssertItemSingle(), result);
@@ -157,8 +170,14 @@ public class StatsControllerTests {
         return new StatsItem(12345678, 1599256800000L, 0L, 0L, 0L, 1000000L, 12L, 1L, 0L, 20L, 16L, 1L, 271234L, 17555L, 21342L, 1243L, 1432L);
     }
 
+    private AggregationResults<Document> getRollupSum(Long count) {
+        // No result document, if there are no matching rollups
+        List<Document> mappedResults = count != null ? List.of(new Document("count", count)) : Collections.emptyList();
+        return new AggregationResults<>(mappedResults, new Document());
+    }
+
     private StatsItemDto getAssertItemGlobal() {
-        return new StatsItemDto(0, 0, 3L, 1928L, 1323L, 1000000000L, 999L, 16L, 0L, 1475L, 24L, 0L, 536319408L, 7520469L, 37553200L, 271237L, 1367779L);
+        return new StatsItemDto(0, 0, 3L, 1928L, 1323L, 1000000000L, 2L, 1L, 0L, 1475L, 24L, 0L, 536319408L, 3L, 37553200L, 3L, 1367779L);
     }
 
     private StatsItemDto getAssertItemSingle() {
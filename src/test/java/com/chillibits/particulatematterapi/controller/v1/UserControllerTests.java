@@ -10,6 +10,7 @@ import com.chillibits.particulatematterapi.model.db.main.User;
 import com.chillibits.particulatematterapi.model.dto.UserDto;
 import com.chillibits.particulatematterapi.model.dto.UserInsertUpdateDto;
 import com.chillibits.particulatematterapi.repository.UserRepository;
+import com.chillibits.particulatematterapi.service.EntityCacheService;
 import com.chillibits.particulatematterapi.service.UserService;
 import org.junit.Before;
 import org.junit.Test;
@@ -49,6 +50,8 @@ public class UserControllerTests {
     private UserRepository userRepository;
     @MockBean
     public JavaMailSender mailSender;
+    @MockBean
+    private EntityCacheService entityCacheService;
 
     private final List<User> testData = getTestData();
     private final List<UserInsertUpdateDto> insertUpdateTestData = getInsertUpdateTestData();
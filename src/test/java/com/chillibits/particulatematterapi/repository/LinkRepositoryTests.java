@@ -0,0 +1,91 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.repository;
+
+import com.chillibits.particulatematterapi.model.db.main.Link;
+import com.chillibits.particulatematterapi.model.db.main.Sensor;
+import com.chillibits.particulatematterapi.model.db.main.User;
+import com.chillibits.particulatematterapi.service.RegionService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(SpringRunner.class)
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.globally_quoted_identifiers=true"
+})
+@DisplayName("Link Repository")
+public class LinkRepositoryTests {
+
+    @Autowired
+    private LinkRepository linkRepository;
+    @Autowired
+    private TestEntityManager entityManager;
+    @MockBean
+    private MongoTemplate template;
+    @MockBean
+    private RegionService regionService;
+
+    private final List<Integer> userIds = new ArrayList<>();
+    private Statistics statistics;
+
+    @Before
+    public void init() {
+        // Two users with three linked sensors each
+        for(int i = 1; i <= 2; i++) {
+            User user = entityManager.persistAndFlush(new User(0, "First " + i, "Last " + i, "user" + i + "@example.com", "", "",
+                    Collections.emptySet(), User.USER, User.ACTIVE, 0, 0));
+            userIds.add(user.getId());
+            for(int j = 1; j <= 3; j++) {
+                Sensor sensor = entityManager.persistAndFlush(new Sensor(i * 10 + j, Collections.emptySet(), "2020-01", 0, "", 0, 0,
+                        48.7, 9.1, 0, "Germany", "Stuttgart", false, true, true));
+                insertLink(user.getId(), sensor.getChipId(), "Sensor " + j);
+            }
+        }
+        entityManager.clear();
+
+        statistics = entityManager.getEntityManager().getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    @DisplayName("Test for loading the links of a user with their sensors in a single query")
+    public void testGetLinksByUserIdQueryCount() {
+        int userId = userIds.get(1);
+        List<Link> links = linkRepository.getLinksByUserId(userId);
+        links.forEach(link -> link.getSensor().getCity());
+
+        assertEquals(3, links.size());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    // ---------------------------------------------- Utility functions ------------------------------------------------
+
+    private void insertLink(int userId, long chipId, String name) {
+        // The join columns of links are derived from the ids (@MapsId), so they are inserted directly
+        entityManager.getEntityManager()
+                .createNativeQuery("INSERT INTO \"link\" (\"user_id\", \"sensor_id\", \"owner\", \"name\", \"color\", \"creation_timestamp\") VALUES (?, ?, TRUE, ?, 0, 0)")
+                .setParameter(1, userId)
+                .setParameter(2, chipId)
+                .setParameter(3, name)
+                .executeUpdate();
+    }
+}
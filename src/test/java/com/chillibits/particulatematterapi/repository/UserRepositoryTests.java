@@ -0,0 +1,96 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.repository;
+
+import com.chillibits.particulatematterapi.model.db.main.Sensor;
+import com.chillibits.particulatematterapi.model.db.main.User;
+import com.chillibits.particulatematterapi.service.RegionService;
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.orm.jpa.DataJpaTest;
+import org.springframework.boot.test.autoconfigure.orm.jpa.TestEntityManager;
+import org.springframework.boot.test.mock.mockito.MockBean;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(SpringRunner.class)
+@DataJpaTest(properties = {
+        "spring.jpa.properties.hibernate.dialect=org.hibernate.dialect.H2Dialect",
+        "spring.jpa.properties.hibernate.globally_quoted_identifiers=true"
+})
+@DisplayName("User Repository")
+public class UserRepositoryTests {
+
+    @Autowired
+    private UserRepository userRepository;
+    @Autowired
+    private TestEntityManager entityManager;
+    @MockBean
+    private MongoTemplate template;
+    @MockBean
+    private RegionService regionService;
+
+    private Statistics statistics;
+
+    @Before
+    public void init() {
+        // Three users with two linked sensors each
+        for(int i = 1; i <= 3; i++) {
+            User user = entityManager.persistAndFlush(new User(0, "First " + i, "Last " + i, "user" + i + "@example.com", "", "",
+                    Collections.emptySet(), User.USER, User.ACTIVE, 0, 0));
+            for(int j = 1; j <= 2; j++) {
+                Sensor sensor = entityManager.persistAndFlush(new Sensor(i * 10 + j, Collections.emptySet(), "2020-01", 0, "", 0, 0,
+                        48.7, 9.1, 0, "Germany", "Stuttgart", false, true, true));
+                insertLink(user.getId(), sensor.getChipId(), "Sensor " + j);
+            }
+        }
+        entityManager.clear();
+
+        statistics = entityManager.getEntityManager().getEntityManagerFactory().unwrap(SessionFactory.class).getStatistics();
+        statistics.clear();
+    }
+
+    @Test
+    @DisplayName("Test for loading all users with their links and sensors in a single query")
+    public void testFindAllQueryCount() {
+        List<User> users = userRepository.findAll();
+        users.forEach(user -> user.getSensorLinks().forEach(link -> link.getSensor().getCity()));
+
+        assertEquals(3, users.stream().filter(user -> user.getSensorLinks().size() == 2).count());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    @Test
+    @DisplayName("Test for loading a user by email with the links and sensors in a single query")
+    public void testFindByEmailQueryCount() {
+        User user = userRepository.findByEmail("user2@example.com");
+        user.getSensorLinks().forEach(link -> link.getSensor().getCity());
+
+        assertEquals(2, user.getSensorLinks().size());
+        assertEquals(1, statistics.getPrepareStatementCount());
+    }
+
+    // ---------------------------------------------- Utility functions ------------------------------------------------
+
+    private void insertLink(int userId, long chipId, String name) {
+        // The join columns of links are derived from the ids (@MapsId), so they are inserted directly
+        entityManager.getEntityManager()
+                .createNativeQuery("INSERT INTO \"link\" (\"user_id\", \"sensor_id\", \"owner\", \"name\", \"color\", \"creation_timestamp\") VALUES (?, ?, TRUE, ?, 0, 0)")
+                .setParameter(1, userId)
+                .setParameter(2, chipId)
+                .setParameter(3, name)
+                .executeUpdate();
+    }
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.service;
+
+import com.chillibits.particulatematterapi.model.io.MapsPlaceResult;
+import com.chillibits.particulatematterapi.shared.ConstantUtils;
+import com.chillibits.particulatematterapi.shared.spatial.PlaceIndex;
+import org.junit.Test;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.TestConfiguration;
+import org.springframework.context.annotation.Bean;
+import org.springframework.test.context.ActiveProfiles;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+@RunWith(SpringRunner.class)
+@ActiveProfiles("logging")
+@DisplayName("Geocoding Service")
+public class GeocodingServiceTests {
+
+    @Autowired
+    private GeocodingService geocodingService;
+
+    @TestConfiguration
+    static class GeocodingServiceImplTestContextConfiguration {
+
+        @Bean
+        public GeocodingService geocodingService() {
+            return new GeocodingService();
+        }
+    }
+
+    @Test
+    @DisplayName("Test for resolving a location to the nearest place successfully")
+    public void testGetPlace() {
+        assertEquals(new PlaceIndex.Place("Germany", "Stuttgart"), geocodingService.getPlace(48.7, 9.1));
+        assertEquals(new PlaceIndex.Place("France", "Strasbourg"), geocodingService.getPlace(48.6, 7.7));
+        assertEquals(new PlaceIndex.Place("India", "Agra"), geocodingService.getPlace(27.2, 78.0));
+        // Nearby locations are served from the cache
+        assertSame(geocodingService.getPlace(52.5201, 13.4001), geocodingService.getPlace(52.5199, 13.3999));
+    }
+
+    @Test
+    @DisplayName("Test for resolving a location without a place nearby")
+    public void testGetPlaceUnknown() {
+        PlaceIndex.Place place = geocodingService.getPlace(0, -30);
+        assertEquals(MapsPlaceResult.UNKNOWN_COUNTRY, place.getCountry());
+        assertEquals(MapsPlaceResult.UNKNOWN_CITY, place.getCity());
+    }
+
+    @Test
+    @DisplayName("Test for loading the bundled place dump")
+    public void testPlaceIndexBundled() throws IOException {
+        try(InputStream in = new FileInputStream("src/main/resources/" + ConstantUtils.GEOCODER_DATASET_RESOURCE)) {
+            PlaceIndex index = new PlaceIndex(in);
+            assertTrue(index.size() > 500);
+            // Places are named like the remote geocoder names them
+            assertEquals(new PlaceIndex.Place("Germany", "Munich"), index.findPlace(48.15, 11.6, 30000));
+            assertEquals(new PlaceIndex.Place("Germany", "Cologne"), index.findPlace(50.94, 6.96, 30000));
+            assertEquals(new PlaceIndex.Place("Austria", "Vienna"), index.findPlace(48.2, 16.4, 30000));
+        }
+    }
+
+    @Test
+    @DisplayName("Test for loading a gzip compressed place dump")
+    public void testPlaceIndexGzip() throws IOException {
+        String dump = "2950159\tBerlin\tBerlin\t\t52.52437\t13.41053\tP\tPPLC\tDE\t\t16\t00\t11000\t11000\t3426354\t\t74\tEurope/Berlin\t2021-01-01\n" +
+                "2867714\tMünchen\tMunich\t\t48.13743\t11.57549\tP\tPPLA\tDE\t\t02\t091\t09162\t09162000\t1260391\t\t524\tEurope/Berlin\t2021-01-01\n" +
+                "6255148\tEurope\tEurope\t\t48.69096\t9.14062\tL\tCONT\t\t\t00\t\t\t\t741000000\t\t\tEurope/Vaduz\t2021-01-01\n" +
+                "2950096\tBerlin Mitte\tBerlin Mitte\t\t52.52\t13.4\tP\tPPLX\tDE\t\t16\t00\t11000\t11000\t0\t\t74\tEurope/Berlin\t2021-01-01\n";
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try(GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(dump.getBytes(StandardCharsets.UTF_8));
+        }
+
+        PlaceIndex index = new PlaceIndex(new ByteArrayInputStream(out.toByteArray()));
+        // Only populated places are indexed, without sections of places
+        assertEquals(2, index.size());
+        assertEquals(new PlaceIndex.Place("Germany", "Berlin"), index.findPlace(52.4, 13.3, 30000));
+        // Places are named by their ascii name
+        assertEquals(new PlaceIndex.Place("Germany", "Munich"), index.findPlace(48.1, 11.5, 30000));
+        assertNull(index.findPlace(48.69, 9.14, 30000));
+    }
+}
@@ -4,29 +4,46 @@
 
 package com.chillibits.particulatematterapi.service;
 
+import com.chillibits.particulatematterapi.model.db.data.CollectionStats;
 import com.chillibits.particulatematterapi.model.db.data.StatsItem;
 import com.chillibits.particulatematterapi.repository.SensorRepository;
 import com.chillibits.particulatematterapi.shared.ConstantUtils;
+import org.bson.Document;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.runner.RunWith;
+import org.mockito.ArgumentCaptor;
 import org.modelmapper.ModelMapper;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.test.context.TestConfiguration;
 import org.springframework.boot.test.mock.mockito.MockBean;
 import org.springframework.context.annotation.Bean;
 import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.index.IndexOperations;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.junit4.SpringRunner;
 
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
 import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 @RunWith(SpringRunner.class)
@@ -50,6 +67,11 @@ public class StatsServiceTests {
             return new StatsService();
         }
 
+        @Bean
+        public StatsCounterService statsCounterService() {
+            return new StatsCounterService();
+        }
+
         @Bean
         public ModelMapper mapper() {
             return new ModelMapper();
@@ -66,6 +88,9 @@ public class StatsServiceTests {
             add(ConstantUtils.STATS_TABLE_NAME);
             add("123345");
         }});
+        when(template.indexOps(anyString())).thenReturn(mock(IndexOperations.class));
+        when(template.aggregate(any(Aggregation.class), eq(ConstantUtils.LOG_ROLLUP_TABLE_NAME), eq(Document.class)))
+                .thenReturn(new AggregationResults<>(Collections.emptyList(), new Document()));
         when(template.find(any(Query.class), eq(StatsItem.class), eq(ConstantUtils.STATS_TABLE_NAME)))
                 .thenReturn(new ArrayList<>())
                 .thenReturn(Collections.singletonList(getCachedGlobalItem()));
@@ -79,6 +104,33 @@ public class StatsServiceTests {
         statsService.calculateStats();
     }
 
+    @Test
+    public void testCalculateStatsReusesClosedPeriods() {
+        LocalDate today = LocalDate.now();
+        long todayStart = today.atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        CollectionStats stats = new CollectionStats("12345678", todayStart, 1000, new HashMap<>() {{
+            put(YearMonth.from(today).toString(), 100L);
+            put(YearMonth.from(today).minusMonths(1).toString(), 200L);
+        }}, new HashMap<>() {{
+            put(today.minusDays(1).toString(), 10L);
+        }});
+        when(template.getCollectionNames()).thenReturn(new HashSet<>(Set.of("12345678", ConstantUtils.LOG_TABLE_NAME)));
+        when(template.findAll(CollectionStats.class, ConstantUtils.COLLECTION_STATS_TABLE_NAME)).thenReturn(List.of(stats));
+        when(template.count(any(Query.class), eq("12345678"))).thenReturn(5L);
+
+        statsService.calculateStats();
+
+        // Only the records of today are counted
+        verify(template, times(1)).count(any(Query.class), eq("12345678"));
+        ArgumentCaptor<Object> captor = ArgumentCaptor.forClass(Object.class);
+        verify(template).save(captor.capture(), eq(ConstantUtils.STATS_TABLE_NAME));
+        StatsItem result = (StatsItem) captor.getValue();
+        assertEquals(1005, result.getDataRecordsTotal());
+        assertEquals(10, result.getDataRecordsYesterday());
+        assertEquals(105, result.getDataRecordsThisMonth());
+        assertEquals(200, result.getDataRecordsPrevMonth());
+    }
+
     // -------------------------------------------------- Test data ----------------------------------------------------
 
     private StatsItem getCachedGlobalItem() {
@@ -0,0 +1,39 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.shared;
+
+import org.junit.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+public class BulkheadTests {
+
+    @Test
+    public void testAcquireAndRelease() {
+        Bulkhead bulkhead = new Bulkhead(2, 1, 10);
+        assertTrue(bulkhead.tryAcquire());
+        assertTrue(bulkhead.tryAcquire());
+        // The third caller waits for the timeout and is rejected
+        assertFalse(bulkhead.tryAcquire());
+        assertEquals(1, bulkhead.getRejected());
+
+        bulkhead.release();
+        assertEquals(1, bulkhead.getAvailable());
+        assertTrue(bulkhead.tryAcquire());
+    }
+
+    @Test
+    public void testFullQueue() {
+        // Without queue slots, callers are rejected immediately
+        Bulkhead bulkhead = new Bulkhead(1, 0, 60000);
+        assertTrue(bulkhead.tryAcquire());
+        assertFalse(bulkhead.tryAcquire());
+        assertEquals(1, bulkhead.getRejected());
+    }
+}
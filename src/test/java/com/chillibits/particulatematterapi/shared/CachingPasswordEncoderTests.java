@@ -0,0 +1,50 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.shared;
+
+import org.junit.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.security.crypto.password.PasswordEncoder;
+
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+@SpringBootTest
+public class CachingPasswordEncoderTests {
+
+    @Test
+    public void testCachedVerification() {
+        PasswordEncoder delegate = mock(PasswordEncoder.class);
+        when(delegate.matches("secret", "hash")).thenReturn(true);
+        CachingPasswordEncoder encoder = new CachingPasswordEncoder(delegate, 60000, 100);
+
+        assertTrue(encoder.matches("secret", "hash"));
+        assertTrue(encoder.matches("secret", "hash"));
+        verify(delegate, times(1)).matches("secret", "hash");
+
+        // Verifications are repeated after invalidation
+        encoder.invalidateAll();
+        assertTrue(encoder.matches("secret", "hash"));
+        verify(delegate, times(2)).matches("secret", "hash");
+    }
+
+    @Test
+    public void testFailedVerificationNotCached() {
+        PasswordEncoder delegate = mock(PasswordEncoder.class);
+        when(delegate.matches("secret", "hash")).thenReturn(true);
+        CachingPasswordEncoder encoder = new CachingPasswordEncoder(delegate, 60000, 100);
+
+        assertFalse(encoder.matches("wrong", "hash"));
+        assertFalse(encoder.matches("wrong", "hash"));
+        verify(delegate, times(2)).matches("wrong", "hash");
+        // Another stored hash, e.g. after changing the secret, is verified again
+        assertTrue(encoder.matches("secret", "hash"));
+        assertFalse(encoder.matches("secret", "otherHash"));
+    }
+}
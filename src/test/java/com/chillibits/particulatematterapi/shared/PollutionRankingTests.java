@@ -0,0 +1,81 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.shared;
+
+import org.junit.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+public class PollutionRankingTests {
+
+    @Test
+    public void testCityRanking() {
+        PollutionRanking ranking = getTestRanking();
+
+        List<PollutionRanking.Item> result = ranking.getTop(2, "SDS_P1", false, false, 1);
+        assertEquals(2, result.size());
+        assertEquals("Stuttgart", result.get(0).getCity());
+        assertEquals(30.0, result.get(0).getAverage(), 1e-9);
+        assertEquals(2, result.get(0).getSensorCount());
+        assertEquals("Paris", result.get(1).getCity());
+
+        result = ranking.getTop(1, "SDS_P1", false, true, 1);
+        assertEquals("Berlin", result.get(0).getCity());
+    }
+
+    @Test
+    public void testCountryRanking() {
+        List<PollutionRanking.Item> result = getTestRanking().getTop(10, "SDS_P1", true, false, 1);
+        assertEquals(2, result.size());
+        assertEquals("France", result.get(0).getCountry());
+        assertNull(result.get(0).getCity());
+        assertEquals("Germany", result.get(1).getCountry());
+        assertEquals(70.0 / 3, result.get(1).getAverage(), 1e-9);
+
+        // Regions with too few sensors are skipped
+        result = getTestRanking().getTop(10, "SDS_P1", true, false, 2);
+        assertEquals(1, result.size());
+        assertEquals("Germany", result.get(0).getCountry());
+    }
+
+    @Test
+    public void testUpdates() {
+        PollutionRanking ranking = getTestRanking();
+        // Replace the value of a sensor and move another one to Berlin
+        ranking.update(1, "Germany", "Stuttgart", "SDS_P1", 10, 2000);
+        ranking.update(2, "Germany", "Berlin", "SDS_P1", 20, 2000);
+
+        List<PollutionRanking.Item> result = ranking.getTop(10, "SDS_P1", false, false, 1);
+        assertEquals("Paris", result.get(0).getCity());
+        assertEquals("Berlin", result.get(1).getCity());
+        assertEquals(15.0, result.get(1).getAverage(), 1e-9);
+        assertEquals("Stuttgart", result.get(2).getCity());
+        assertEquals(10.0, result.get(2).getAverage(), 1e-9);
+
+        // Outdated and removed values are dropped
+        ranking.prune(1500);
+        ranking.remove(2);
+        result = ranking.getTop(10, "SDS_P1", false, false, 1);
+        assertEquals(1, result.size());
+        assertEquals("Stuttgart", result.get(0).getCity());
+        assertTrue(ranking.getTop(10, "SDS_P2", false, false, 1).isEmpty());
+    }
+
+    private PollutionRanking getTestRanking() {
+        PollutionRanking ranking = new PollutionRanking();
+        ranking.update(1, "Germany", "Stuttgart", "SDS_P1", 20, 1000);
+        ranking.update(2, "Germany", "Stuttgart", "SDS_P1", 40, 1000);
+        ranking.update(3, "Germany", "Berlin", "SDS_P1", 10, 1000);
+        ranking.update(4, "France", "Paris", "SDS_P1", 25, 1000);
+        ranking.update(4, "France", "Paris", "SDS_P2", 12, 1000);
+        return ranking;
+    }
+}
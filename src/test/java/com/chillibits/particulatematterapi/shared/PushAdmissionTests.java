@@ -0,0 +1,61 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.shared;
+
+import org.junit.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+public class PushAdmissionTests {
+
+    @Test
+    public void testMinInterval() {
+        PushAdmission admission = new PushAdmission(1000);
+        assertTrue(admission.tryAdmit(1234567, 10000));
+        assertFalse(admission.tryAdmit(1234567, 10500));
+        assertTrue(admission.tryAdmit(12345678, 10500));
+        assertEquals(300, admission.getWait(1234567, 10700));
+        assertTrue(admission.tryAdmit(1234567, 11000));
+        assertEquals(0, admission.getWait(1234567, 12000));
+        assertEquals(0, admission.getWait(123, 12000));
+        assertEquals(2, admission.size());
+    }
+
+    @Test
+    public void testTopOffenders() {
+        PushAdmission admission = new PushAdmission(1000);
+        admission.tryAdmit(1, 10000);
+        admission.tryAdmit(2, 10000);
+        admission.tryAdmit(3, 10000);
+        for(int i = 1; i <= 3; i++) admission.tryAdmit(2, 10000 + i);
+        admission.tryAdmit(3, 10100);
+
+        List<PushAdmission.Offender> offenders = admission.getTopOffenders(5);
+        assertEquals(2, offenders.size());
+        assertEquals(new PushAdmission.Offender(2, 3, 10000, 10003), offenders.get(0));
+        assertEquals(3, offenders.get(1).getChipId());
+        assertEquals(1, admission.getTopOffenders(1).size());
+    }
+
+    @Test
+    public void testGrowAndExpire() {
+        PushAdmission admission = new PushAdmission(1000);
+        // Grow beyond the initial capacity
+        for(int i = 0; i < 5000; i++) admission.tryAdmit(i, i < 100 ? 20000 : 10000);
+        assertEquals(5000, admission.size());
+        assertFalse(admission.tryAdmit(4999, 10001));
+
+        admission.expire(15000);
+        assertEquals(100, admission.size());
+        assertFalse(admission.tryAdmit(50, 20001));
+        assertTrue(admission.tryAdmit(4999, 20001));
+    }
+}
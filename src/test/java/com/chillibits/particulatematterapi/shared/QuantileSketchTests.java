@@ -0,0 +1,66 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.shared;
+
+import org.junit.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+public class QuantileSketchTests {
+
+    @Test
+    public void testQuantiles() {
+        QuantileSketch sketch = new QuantileSketch();
+        for(int i = 1; i <= 10000; i++) sketch.add(i);
+
+        assertEquals(10000, sketch.getCount());
+        assertEquals(5000, sketch.getQuantile(0.5), 5000 * ConstantUtils.SKETCH_RELATIVE_ACCURACY);
+        assertEquals(9500, sketch.getQuantile(0.95), 9500 * ConstantUtils.SKETCH_RELATIVE_ACCURACY);
+        assertEquals(1, sketch.getQuantile(0), ConstantUtils.SKETCH_RELATIVE_ACCURACY);
+    }
+
+    @Test
+    public void testQuantilesNegativeAndZero() {
+        QuantileSketch sketch = new QuantileSketch();
+        sketch.add(-20);
+        sketch.add(-10);
+        sketch.add(0);
+        sketch.add(10);
+        sketch.add(20);
+
+        assertEquals(-20, sketch.getQuantile(0), 20 * ConstantUtils.SKETCH_RELATIVE_ACCURACY);
+        assertEquals(0, sketch.getQuantile(0.5));
+        assertEquals(20, sketch.getQuantile(1), 20 * ConstantUtils.SKETCH_RELATIVE_ACCURACY);
+    }
+
+    @Test
+    public void testMerge() {
+        QuantileSketch first = new QuantileSketch();
+        QuantileSketch second = new QuantileSketch();
+        for(int i = 1; i <= 1000; i++) (i % 2 == 0 ? first : second).add(i * 0.1);
+
+        // Merge a copy of the second sketch, restored from its persisted state
+        first.merge(QuantileSketch.fromState(second.getZeroCount(), second.getPositiveOffset(), second.getPositiveCounts(),
+                second.getNegativeOffset(), second.getNegativeCounts()));
+
+        assertEquals(1000, first.getCount());
+        assertEquals(90, first.getQuantile(0.9), 90 * ConstantUtils.SKETCH_RELATIVE_ACCURACY);
+        assertTrue(Double.isNaN(new QuantileSketch().getQuantile(0.5)));
+    }
+
+    @Test
+    public void testInvalidQuantile() {
+        Exception exception = assertThrows(IllegalArgumentException.class, () ->
+                new QuantileSketch().getQuantile(1.5)
+        );
+
+        String expectedMessage = new IllegalArgumentException().getMessage();
+        assertEquals(expectedMessage, exception.getMessage());
+    }
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.shared;
+
+import org.junit.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest
+public class RankingCounterTests {
+
+    @Test
+    public void testTopItems() {
+        RankingCounter<String> counter = new RankingCounter<>(Comparator.naturalOrder());
+        counter.add("Berlin", 3);
+        counter.add("Stuttgart", 5);
+        counter.add("Munich", 3);
+        counter.add("Hamburg", 1);
+
+        assertEquals(List.of("Stuttgart", "Berlin", "Munich"), getKeys(counter.getTop(3)));
+        assertEquals(4, counter.getTop(10).size());
+        assertEquals(5, counter.getCount("Stuttgart"));
+    }
+
+    @Test
+    public void testUpdates() {
+        RankingCounter<String> counter = new RankingCounter<>(Comparator.naturalOrder());
+        counter.add("Berlin", 2);
+        counter.add("Stuttgart", 1);
+        counter.add("Stuttgart", 2);
+        assertEquals(List.of("Stuttgart", "Berlin"), getKeys(counter.getTop(2)));
+
+        // Keys without count are dropped
+        counter.add("Stuttgart", -3);
+        assertEquals(List.of("Berlin"), getKeys(counter.getTop(2)));
+        assertEquals(0, counter.getCount("Stuttgart"));
+        assertEquals(1, counter.size());
+    }
+
+    private List<String> getKeys(List<RankingCounter.Item<String>> items) {
+        return items.stream().map(RankingCounter.Item::getKey).collect(Collectors.toList());
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.shared;
+
+import org.junit.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+@SpringBootTest
+public class RateLimiterTests {
+
+    @Test
+    public void testBurstAndRefill() {
+        RateLimiter rateLimiter = new RateLimiter();
+        // Three requests at once are allowed, the fourth has to wait for a single interval
+        for(int i = 0; i < 3; i++) assertEquals(0, rateLimiter.tryAcquire("key", 100, 3, 1000));
+        assertEquals(100, rateLimiter.tryAcquire("key", 100, 3, 1000));
+        assertEquals(0, rateLimiter.tryAcquire("key", 100, 3, 1100));
+        assertEquals(100, rateLimiter.tryAcquire("key", 100, 3, 1100));
+        // Other keys have their own buckets
+        assertEquals(0, rateLimiter.tryAcquire("other", 100, 3, 1100));
+    }
+
+    @Test
+    public void testGetWait() {
+        RateLimiter rateLimiter = new RateLimiter();
+        // Looking at a bucket does not take a token
+        assertEquals(0, rateLimiter.getWait("key", 100, 2, 1000));
+        rateLimiter.tryAcquire("key", 100, 2, 1000);
+        assertEquals(0, rateLimiter.getWait("key", 100, 2, 1000));
+        rateLimiter.tryAcquire("key", 100, 2, 1000);
+        assertEquals(100, rateLimiter.getWait("key", 100, 2, 1000));
+        assertEquals(100, rateLimiter.getWait("key", 100, 2, 1000));
+        assertEquals(0, rateLimiter.getWait("key", 100, 2, 1100));
+    }
+
+    @Test
+    public void testEvictIdle() {
+        RateLimiter rateLimiter = new RateLimiter();
+        rateLimiter.tryAcquire("idle", 100, 3, 1000);
+        rateLimiter.tryAcquire("busy", 100, 3, 1000);
+        rateLimiter.tryAcquire("busy", 100, 3, 1000);
+        rateLimiter.evictIdle(1150);
+        assertEquals(1, rateLimiter.size());
+        rateLimiter.evictIdle(1200);
+        assertEquals(0, rateLimiter.size());
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.shared;
+
+import org.junit.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+public class RingBufferTests {
+
+    @Test
+    public void testOfferAndPoll() {
+        RingBuffer<Integer> buffer = new RingBuffer<>(4);
+        for(int i = 0; i < 4; i++) assertTrue(buffer.offer(i));
+        // Full buffers reject new items instead of blocking
+        assertFalse(buffer.offer(4));
+        assertEquals(4, buffer.size());
+
+        assertEquals(0, buffer.poll());
+        assertTrue(buffer.offer(4));
+        List<Integer> items = new ArrayList<>();
+        assertEquals(4, buffer.drainTo(items, 10));
+        assertEquals(List.of(1, 2, 3, 4), items);
+        assertNull(buffer.poll());
+    }
+
+    @Test
+    public void testConcurrentProducers() throws InterruptedException {
+        RingBuffer<Integer> buffer = new RingBuffer<>(1024);
+        List<Thread> threads = new ArrayList<>();
+        for(int t = 0; t < 4; t++) {
+            Thread thread = new Thread(() -> {
+                for(int i = 0; i < 200; i++) buffer.offer(i);
+            });
+            threads.add(thread);
+            thread.start();
+        }
+        for(Thread thread : threads) thread.join();
+        assertEquals(800, buffer.drainTo(new ArrayList<>(), 1000));
+    }
+
+    @Test
+    public void testInvalidCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new RingBuffer<>(1000));
+    }
+}
@@ -7,6 +7,11 @@ package com.chillibits.particulatematterapi.shared;
 import org.junit.Test;
 import org.springframework.boot.test.context.SpringBootTest;
 
+import java.time.LocalDate;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.util.List;
+
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
@@ -47,4 +52,22 @@ public class SharedUtilsTests {
         assertEquals(10000, result.length());
         assertTrue(result.matches("^[a-zA-Z0-9]+$"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testGetLogTableNames() {
+        YearMonth currentMonth = YearMonth.now();
+        long from = currentMonth.minusMonths(2).atDay(15).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        long to = currentMonth.atDay(3).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        List<String> expected = List.of(SharedUtils.getLogTableName(currentMonth.minusMonths(2)),
+                SharedUtils.getLogTableName(currentMonth.minusMonths(1)), SharedUtils.getLogTableName(currentMonth));
+        assertEquals(expected, SharedUtils.getLogTableNames(from, to));
+        assertEquals(List.of(SharedUtils.getLogTableName(currentMonth.minusMonths(2))), SharedUtils.getLogTableNames(from, from));
+
+        // Clamped to the retention window and the current month
+        long longAgo = LocalDate.of(2000, 1, 1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        long future = currentMonth.plusMonths(5).atDay(1).atStartOfDay(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        List<String> tableNames = SharedUtils.getLogTableNames(longAgo, future);
+        assertEquals(ConstantUtils.LOG_RETENTION_MONTHS + 1, tableNames.size());
+        assertEquals(SharedUtils.getLogTableName(currentMonth), tableNames.get(tableNames.size() - 1));
+    }
+}
@@ -0,0 +1,54 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.shared;
+
+import org.junit.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+@SpringBootTest
+public class StaleWhileRevalidateCacheTests {
+
+    @Test
+    public void testFreshValue() {
+        AtomicInteger loads = new AtomicInteger();
+        StaleWhileRevalidateCache<String, Integer> cache = new StaleWhileRevalidateCache<>(60000, Runnable::run);
+        assertEquals(1, cache.get("key", key -> loads.incrementAndGet()));
+        assertEquals(1, cache.get("key", key -> loads.incrementAndGet()));
+        assertEquals(1, loads.get());
+    }
+
+    @Test
+    public void testStaleValue() {
+        AtomicInteger loads = new AtomicInteger();
+        List<Runnable> refreshes = new ArrayList<>();
+        StaleWhileRevalidateCache<String, Integer> cache = new StaleWhileRevalidateCache<>(-1, refreshes::add);
+        assertEquals(1, cache.get("key", key -> loads.incrementAndGet()));
+
+        // The stale value is served, while only a single refresh is queued
+        assertEquals(1, cache.get("key", key -> loads.incrementAndGet()));
+        assertEquals(1, cache.get("key", key -> loads.incrementAndGet()));
+        assertEquals(1, refreshes.size());
+
+        refreshes.get(0).run();
+        assertEquals(2, cache.get("key", key -> loads.incrementAndGet()));
+    }
+
+    @Test
+    public void testFailureIsNotCached() {
+        StaleWhileRevalidateCache<String, Integer> cache = new StaleWhileRevalidateCache<>(60000, Runnable::run);
+        assertThrows(IllegalStateException.class, () -> cache.get("key", key -> {
+            throw new IllegalStateException();
+        }));
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.get("key", key -> 1));
+    }
+}
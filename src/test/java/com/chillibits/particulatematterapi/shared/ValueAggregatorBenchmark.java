@@ -0,0 +1,99 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.shared;
+
+import com.chillibits.particulatematterapi.model.dto.DataRecordDto;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares the ValueAggregator with the former map based averaging of data records
+ *
+ * Run with: mvn -P benchmark test-compile exec:exec -Dbenchmark=ValueAggregatorBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ValueAggregatorBenchmark {
+
+    private static final String[] VALUE_TYPES = { "SDS_P1", "SDS_P2", "BME280_temperature", "BME280_humidity", "BME280_pressure" };
+
+    @Param({ "100", "10000" })
+    private int recordCount;
+    private List<DataRecordDto> records;
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(ValueAggregatorBenchmark.class.getSimpleName()).addProfiler("gc").build()).run();
+    }
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        records = new ArrayList<>();
+        for(int i = 0; i < recordCount; i++) {
+            DataRecordDto.SensorDataValue[] values = new DataRecordDto.SensorDataValue[VALUE_TYPES.length];
+            for(int j = 0; j < values.length; j++) values[j] = new DataRecordDto.SensorDataValue(VALUE_TYPES[j], random.nextDouble() * 100);
+            records.add(new DataRecordDto(i, null, values, ConstantUtils.BLANK_COLUMN));
+        }
+    }
+
+    @Benchmark
+    public DataRecordDto.SensorDataValue[] valueAggregator() {
+        ValueAggregator aggregator = new ValueAggregator();
+        for(DataRecordDto record : records) aggregator.add(record.getSensorDataValues());
+        return aggregator.toSensorDataValues(3);
+    }
+
+    @Benchmark
+    public DataRecordDto.SensorDataValue[] mapAggregation() {
+        // Former implementation of DataService.getAverageDataRecord
+        Map<String, Map.Entry<Double, Integer>> dataValues = new LinkedHashMap<>();
+        for(DataRecordDto record : records) {
+            for(DataRecordDto.SensorDataValue currValue : record.getSensorDataValues()) {
+                String valueType = currValue.getValueType();
+                if(dataValues.containsKey(valueType)) {
+                    Map.Entry<Double, Integer> currEntry = dataValues.get(valueType);
+                    double currEntryValue = Double.parseDouble(currEntry.getKey().toString());
+                    int currEntrySensorCount = Integer.parseInt(currEntry.getValue().toString()) +1;
+                    dataValues.put(
+                            valueType,
+                            new AbstractMap.SimpleEntry<>(currEntryValue + (currValue.getValue() - currEntryValue) / currEntrySensorCount, currEntrySensorCount)
+                    );
+                } else {
+                    dataValues.put(valueType, new AbstractMap.SimpleEntry<>(currValue.getValue(), 1));
+                }
+            }
+        }
+        ArrayList<DataRecordDto.SensorDataValue> avgDataValues = new ArrayList<>();
+        for (Map.Entry<String, Map.Entry<Double, Integer>> item : dataValues.entrySet()) {
+            double value = Double.parseDouble(item.getValue().getKey().toString());
+            avgDataValues.add(new DataRecordDto.SensorDataValue(item.getKey(), SharedUtils.round(value, 3)));
+        }
+        return avgDataValues.toArray(DataRecordDto.SensorDataValue[]::new);
+    }
+}
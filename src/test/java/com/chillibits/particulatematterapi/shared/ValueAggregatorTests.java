@@ -0,0 +1,70 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.shared;
+
+import com.chillibits.particulatematterapi.model.dto.DataRecordDto;
+import org.junit.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+public class ValueAggregatorTests {
+
+    @Test
+    public void testAggregate() {
+        ValueAggregator aggregator = new ValueAggregator(1);
+        aggregator.add("SDS_P1", 2.0);
+        aggregator.add("SDS_P2", 1.0);
+        aggregator.add("SDS_P1", 4.0);
+        aggregator.add("SDS_P1", 9.0);
+
+        assertEquals(2, aggregator.size());
+        int slot = aggregator.slot("SDS_P1");
+        assertEquals(0, slot);
+        assertEquals(3, aggregator.getCount(slot));
+        assertEquals(5.0, aggregator.getMean(slot), 1e-9);
+        assertEquals(2.0, aggregator.getMin(slot));
+        assertEquals(9.0, aggregator.getMax(slot));
+        assertEquals(13.0, aggregator.getVariance(slot), 1e-9);
+    }
+
+    @Test
+    public void testMerge() {
+        ValueAggregator first = new ValueAggregator();
+        ValueAggregator second = new ValueAggregator();
+        ValueAggregator all = new ValueAggregator();
+        for(int i = 0; i < 100; i++) {
+            double value = Math.sin(i) * 10;
+            (i % 3 == 0 ? first : second).add("SDS_P1", value);
+            all.add("SDS_P1", value);
+        }
+        first.merge(second);
+
+        assertEquals(all.getCount(0), first.getCount(0));
+        assertEquals(all.getMean(0), first.getMean(0), 1e-9);
+        assertEquals(all.getVariance(0), first.getVariance(0), 1e-9);
+        assertEquals(all.getMin(0), first.getMin(0));
+        assertEquals(all.getMax(0), first.getMax(0));
+    }
+
+    @Test
+    public void testToSensorDataValues() {
+        ValueAggregator aggregator = new ValueAggregator();
+        aggregator.add("SDS_P2", 1.23456);
+        aggregator.add("SDS_P1", 3.0);
+        aggregator.reset();
+        assertTrue(aggregator.isEmpty());
+
+        aggregator.add("SDS_P1", 3.0);
+        aggregator.add("SDS_P1", 4.0);
+        DataRecordDto.SensorDataValue[] expected = new DataRecordDto.SensorDataValue[] {
+                new DataRecordDto.SensorDataValue("SDS_P1", 3.5)
+        };
+        assertArrayEquals(expected, aggregator.toSensorDataValues(3));
+    }
+}
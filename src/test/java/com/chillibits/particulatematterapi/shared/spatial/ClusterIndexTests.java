@@ -0,0 +1,97 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.shared.spatial;
+
+import org.junit.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+public class ClusterIndexTests {
+
+    @Test
+    public void testClustersCoverAllPoints() {
+        List<GeoPoint> points = getRandomPoints(5000);
+        ClusterIndex index = new ClusterIndex(points);
+
+        int lastClusterCount = 0;
+        for(int zoom = 0; zoom <= ClusterIndex.MAX_ZOOM; zoom++) {
+            List<ClusterIndex.Cluster> clusters = index.getClusters(-90, -180, 90, 180, zoom);
+            // Every point belongs to exactly one cluster
+            Set<Long> ids = new HashSet<>();
+            clusters.forEach(cluster -> Arrays.stream(index.getMemberIds(cluster)).forEach(ids::add));
+            assertEquals(points.size(), ids.size());
+            assertEquals(points.size(), clusters.stream().mapToInt(ClusterIndex.Cluster::getCount).sum());
+            // Clusters get finer with higher zoom levels
+            assertTrue(clusters.size() >= lastClusterCount);
+            lastClusterCount = clusters.size();
+        }
+    }
+
+    @Test
+    public void testClusterCentroid() {
+        ClusterIndex index = new ClusterIndex(Arrays.asList(
+                new GeoPoint(1, 48.0, 11.0, true),
+                new GeoPoint(2, 48.2, 11.4, true),
+                new GeoPoint(3, -33.9, 151.2, true)
+        ));
+
+        List<ClusterIndex.Cluster> clusters = index.getClusters(40, 0, 55, 20, 2);
+        assertEquals(1, clusters.size());
+        assertEquals(2, clusters.get(0).getCount());
+        assertEquals(48.1, clusters.get(0).getLatitude(), 1e-9);
+        assertEquals(11.2, clusters.get(0).getLongitude(), 1e-9);
+
+        // On the highest zoom level the points are single clusters with their ids
+        clusters = index.getClusters(40, 0, 55, 20, ClusterIndex.MAX_ZOOM);
+        assertEquals(2, clusters.size());
+        assertEquals(new HashSet<>(Arrays.asList(1L, 2L)), new HashSet<>(Arrays.asList(clusters.get(0).getId(), clusters.get(1).getId())));
+    }
+
+    @Test
+    public void testViewportMatchesFullScan() {
+        List<GeoPoint> points = getRandomPoints(5000);
+        ClusterIndex index = new ClusterIndex(points);
+
+        // On a high zoom level with a small viewport, the cells are looked up one by one
+        List<ClusterIndex.Cluster> clusters = index.getClusters(50, 8, 50.5, 9, 14);
+        long expected = points.stream().filter(point -> point.getLatitude() >= 50 && point.getLatitude() <= 50.5
+                && point.getLongitude() >= 8 && point.getLongitude() <= 9).count();
+        int count = clusters.stream().mapToInt(ClusterIndex.Cluster::getCount).sum();
+        // Cells on the border of the viewport can contain some points outside of it
+        assertTrue(count >= expected && count <= expected * 1.1 + 5);
+    }
+
+    @Test
+    public void testAntimeridian() {
+        ClusterIndex index = new ClusterIndex(Arrays.asList(
+                new GeoPoint(1, 0, 179.9, true),
+                new GeoPoint(2, 0, -179.9, true),
+                new GeoPoint(3, 0, 0, true)
+        ));
+
+        List<ClusterIndex.Cluster> clusters = index.getClusters(-1, 179, 1, -179, 8);
+        assertEquals(2, clusters.size());
+    }
+
+    // ---------------------------------------------- Utility functions ------------------------------------------------
+
+    private List<GeoPoint> getRandomPoints(int count) {
+        Random random = new Random(44);
+        List<GeoPoint> points = new ArrayList<>();
+        for(int i = 0; i < count; i++)
+            points.add(new GeoPoint(i, 47 + random.nextDouble() * 8, 5 + random.nextDouble() * 10, true));
+        return points;
+    }
+}
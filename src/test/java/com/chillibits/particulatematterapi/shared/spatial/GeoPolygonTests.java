@@ -0,0 +1,47 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.shared.spatial;
+
+import org.junit.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+public class GeoPolygonTests {
+
+    @Test
+    public void testMultiPolygonFeature() {
+        GeoPolygon polygon = GeoPolygon.parse("{\"type\":\"Feature\",\"properties\":{},\"geometry\":{\"type\":\"MultiPolygon\",\"coordinates\":" +
+                "[[[[0,0],[10,0],[10,10],[0,10],[0,0]],[[4,4],[6,4],[6,6],[4,6],[4,4]]],[[[20,20],[30,20],[25,30],[20,20]]]]}}", 100);
+
+        assertTrue(polygon.contains(2, 2));
+        assertFalse(polygon.contains(5, 5)); // In the hole
+        assertTrue(polygon.contains(22, 25));
+        assertFalse(polygon.contains(29, 21)); // Next to the triangle
+        assertFalse(polygon.contains(15, 15));
+        assertEquals(new BoundingBox(0, 0, 30, 30), polygon.getBounds());
+    }
+
+    @Test
+    public void testInvalidPolygons() {
+        assertThrows(IllegalArgumentException.class, () -> GeoPolygon.parse("no json", 100));
+        assertThrows(IllegalArgumentException.class, () -> GeoPolygon.parse("{\"type\":\"Polygon\",\"coordinates\":[[[0,0],[1,1],[0,0]]]}", 100));
+        assertThrows(IllegalArgumentException.class, () -> GeoPolygon.parse("{\"type\":\"Polygon\",\"coordinates\":[[[0,0],[1,0],[1,100],[0,0]]]}", 100));
+        assertThrows(IllegalArgumentException.class, () -> GeoPolygon.parse("{\"type\":\"Polygon\",\"coordinates\":[[[0,0],[1,0],[1,1],[0,0]]]}", 3));
+    }
+
+    @Test
+    public void testBoundingBox() {
+        BoundingBox box = BoundingBox.parse("170, -10, -170, 10");
+        assertTrue(box.contains(0, 175));
+        assertTrue(box.contains(0, -175));
+        assertFalse(box.contains(0, 0));
+        assertThrows(IllegalArgumentException.class, () -> BoundingBox.parse("0,10,10,0"));
+    }
+}
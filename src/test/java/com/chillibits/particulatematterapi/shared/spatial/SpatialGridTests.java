@@ -0,0 +1,123 @@
+/*
+ * Copyright © Marc Auberer 2019-2021. All rights reserved
+ */
+
+package com.chillibits.particulatematterapi.shared.spatial;
+
+import org.junit.Test;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+@SpringBootTest
+public class SpatialGridTests {
+
+    @Test
+    public void testFindInRadiusMatchesFullScan() {
+        SpatialGrid grid = new SpatialGrid(0.1);
+        List<GeoPoint> points = getRandomPoints(grid, 5000);
+
+        Random random = new Random(42);
+        for(int i = 0; i < 50; i++) {
+            double latitude = 47 + random.nextDouble() * 8;
+            double longitude = 5 + random.nextDouble() * 10;
+            double radius = random.nextDouble() * 50000;
+            List<Long> expected = points.stream()
+                    .filter(point -> SpatialGrid.getDistance(latitude, longitude, point.getLatitude(), point.getLongitude()) <= radius)
+                    .sorted(Comparator.comparingDouble(point -> SpatialGrid.getDistance(latitude, longitude, point.getLatitude(), point.getLongitude())))
+                    .map(GeoPoint::getId)
+                    .collect(Collectors.toList());
+            List<Long> result = grid.findInRadius(latitude, longitude, radius, false).stream().map(GeoPoint::getId).collect(Collectors.toList());
+            assertEquals(expected, result);
+        }
+    }
+
+    @Test
+    public void testFindNearestMatchesFullScan() {
+        SpatialGrid grid = new SpatialGrid(0.1);
+        List<GeoPoint> points = getRandomPoints(grid, 5000);
+
+        Random random = new Random(43);
+        for(int i = 0; i < 50; i++) {
+            double latitude = 40 + random.nextDouble() * 20;
+            double longitude = random.nextDouble() * 20;
+            List<Long> expected = points.stream()
+                    .filter(GeoPoint::isPublished)
+                    .sorted(Comparator.comparingDouble(point -> SpatialGrid.getDistance(latitude, longitude, point.getLatitude(), point.getLongitude())))
+                    .limit(10)
+                    .map(GeoPoint::getId)
+                    .collect(Collectors.toList());
+            List<Long> result = grid.findNearest(latitude, longitude, 10, true).stream().map(GeoPoint::getId).collect(Collectors.toList());
+            assertEquals(expected, result);
+        }
+    }
+
+    @Test
+    public void testFindInBoundingBoxMatchesFullScan() {
+        SpatialGrid grid = new SpatialGrid(0.1);
+        List<GeoPoint> points = getRandomPoints(grid, 5000);
+
+        Random random = new Random(45);
+        for(int i = 0; i < 50; i++) {
+            double minLatitude = 47 + random.nextDouble() * 8;
+            double minLongitude = 5 + random.nextDouble() * 10;
+            BoundingBox box = new BoundingBox(minLatitude, minLongitude, minLatitude + random.nextDouble(), minLongitude + random.nextDouble() * 3);
+            Set<Long> expected = points.stream()
+                    .filter(point -> box.contains(point.getLatitude(), point.getLongitude()))
+                    .map(GeoPoint::getId)
+                    .collect(Collectors.toSet());
+            Set<Long> result = grid.findInBoundingBox(box, false).stream().map(GeoPoint::getId).collect(Collectors.toSet());
+            assertEquals(expected, result);
+        }
+    }
+
+    @Test
+    public void testAntimeridian() {
+        SpatialGrid grid = new SpatialGrid(0.1);
+        grid.put(new GeoPoint(1, 0, 179.99, true));
+        grid.put(new GeoPoint(2, 0, -179.99, true));
+        grid.put(new GeoPoint(3, 0, 170, true));
+
+        List<GeoPoint> result = grid.findInRadius(0, 180, 5000, false);
+        assertEquals(2, result.size());
+        assertEquals(2, grid.findNearest(0, -179.95, 2, false).size());
+        assertTrue(grid.findNearest(0, -179.95, 2, false).stream().noneMatch(point -> point.getId() == 3));
+    }
+
+    @Test
+    public void testUpdateAndRemove() {
+        SpatialGrid grid = new SpatialGrid(0.1);
+        grid.put(new GeoPoint(1, 48.1, 11.5, true));
+        grid.put(new GeoPoint(1, 52.5, 13.4, true));
+
+        assertEquals(1, grid.size());
+        assertTrue(grid.findInRadius(48.1, 11.5, 1000, false).isEmpty());
+        assertEquals(1, grid.findInRadius(52.5, 13.4, 1000, false).size());
+
+        grid.remove(1);
+        assertNull(grid.get(1));
+        assertTrue(grid.findNearest(52.5, 13.4, 5, false).isEmpty());
+    }
+
+    // ---------------------------------------------- Utility functions ------------------------------------------------
+
+    private List<GeoPoint> getRandomPoints(SpatialGrid grid, int count) {
+        Random random = new Random(41);
+        List<GeoPoint> points = new ArrayList<>();
+        for(int i = 0; i < count; i++) {
+            GeoPoint point = new GeoPoint(i, 47 + random.nextDouble() * 8, 5 + random.nextDouble() * 10, random.nextBoolean());
+            grid.put(point);
+            points.add(point);
+        }
+        return points;
+    }
+}